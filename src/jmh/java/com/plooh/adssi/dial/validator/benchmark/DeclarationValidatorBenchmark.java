@@ -0,0 +1,87 @@
+package com.plooh.adssi.dial.validator.benchmark;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.plooh.adssi.dial.validator.service.DeclarationValidator;
+import com.plooh.adssi.dial.validator.service.SignatureVerifier;
+import com.plooh.adssi.dial.validator.util.Jws;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.spec.ECGenParameterSpec;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Declarations validated per second by {@link DeclarationValidator}, i.e. the parsing and signature
+ * verification of POST /publish, depending on the number of threads of the {@link SignatureVerifier}. The
+ * throughput should grow with the threads up to the number of cores. The cache of the verified signatures
+ * is disabled, so that every invocation verifies every signature.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 3, time = 2)
+@Fork(1)
+public class DeclarationValidatorBenchmark {
+
+    private static final int DECLARATIONS = 256;
+    private static final int KEYS = 16;
+
+    @Param({"1", "2", "4"})
+    public int parallelism;
+
+    private SignatureVerifier verifier;
+    private DeclarationValidator validator;
+    private String record;
+
+    @Setup(Level.Trial)
+    public void setUp() throws GeneralSecurityException {
+        verifier = new SignatureVerifier(parallelism, 16, KEYS, 0);
+        validator = new DeclarationValidator(verifier, DECLARATIONS);
+        KeyPairGenerator generator = KeyPairGenerator.getInstance("EC");
+        generator.initialize(new ECGenParameterSpec("secp256r1"));
+        KeyPair[] keyPairs = new KeyPair[KEYS];
+        for (int i = 0; i < KEYS; i++) {
+            keyPairs[i] = generator.generateKeyPair();
+        }
+        ObjectMapper mapper = new ObjectMapper();
+        ObjectNode root = mapper.createObjectNode();
+        ArrayNode declarations = root.putArray("declarations");
+        for (int i = 0; i < DECLARATIONS; i++) {
+            ObjectNode payload = mapper.createObjectNode().put("id", "declaration-" + i).put("type", "validator")
+                .put("endpoint", "https://validator-" + i + ".example.org");
+            declarations.add(Jws.sign(keyPairs[i % KEYS], payload.toString().getBytes(StandardCharsets.UTF_8)));
+        }
+        record = root.toString();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        verifier.shutdown();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(DECLARATIONS)
+    public List<DeclarationValidator.Result> validate() {
+        return validator.validate(record).join();
+    }
+
+}
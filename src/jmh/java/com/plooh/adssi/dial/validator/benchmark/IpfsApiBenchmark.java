@@ -0,0 +1,101 @@
+package com.plooh.adssi.dial.validator.benchmark;
+
+import com.plooh.adssi.dial.validator.model.BatchAddResult;
+import com.plooh.adssi.dial.validator.model.PinPage;
+import io.ipfs.api.IPFS;
+import io.ipfs.api.MerkleNode;
+import io.ipfs.api.NamedStreamable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Latency of the {@link com.plooh.adssi.dial.validator.service.IpfsApi} operations against an in-process
+ * stub of the IPFS HTTP API, so that the client side cost (request building, response parsing, copies)
+ * is measured without the daemon.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class IpfsApiBenchmark {
+
+    @Param({"1024", "1048576"})
+    public int contentSize;
+
+    @Param({"false", "true"})
+    public boolean cached;
+
+    private IpfsFixture fixture;
+    private List<NamedStreamable> batch;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        fixture = new IpfsFixture(contentSize, 100, 1000, cached);
+        batch = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            batch.add(new NamedStreamable.ByteArrayWrapper("file-" + i + ".json", fixture.content));
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        fixture.close();
+    }
+
+    @Benchmark
+    public byte[] getFileByHash() {
+        return fixture.ipfsApi.getFileByHash(IpfsFixture.FILE_HASH);
+    }
+
+    @Benchmark
+    public long getFileStreamByHash() throws IOException {
+        try (InputStream in = fixture.ipfsApi.getFileStreamByHash(IpfsFixture.FILE_HASH)) {
+            return in.transferTo(OutputStream.nullOutputStream());
+        }
+    }
+
+    @Benchmark
+    public List<MerkleNode> getFileInfoByHash() {
+        return fixture.ipfsApi.getFileInfoByHash(IpfsFixture.DIRECTORY_HASH);
+    }
+
+    @Benchmark
+    public String addFile() {
+        return fixture.ipfsApi.addFile(fixture.content, "file.json");
+    }
+
+    @Benchmark
+    public BatchAddResult addFiles() {
+        return fixture.ipfsApi.addFiles(batch, true);
+    }
+
+    @Benchmark
+    public List<String> pinFileByHash() {
+        return fixture.ipfsApi.pinFileByHash(IpfsFixture.DIRECTORY_HASH);
+    }
+
+    @Benchmark
+    public PinPage listFiles() {
+        return fixture.ipfsApi.listFiles(IPFS.PinType.all, null, 100);
+    }
+
+}
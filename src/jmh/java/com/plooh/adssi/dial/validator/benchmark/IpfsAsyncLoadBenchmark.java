@@ -0,0 +1,97 @@
+package com.plooh.adssi.dial.validator.benchmark;
+
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+
+import com.plooh.adssi.dial.validator.controller.IpfsController;
+import com.plooh.adssi.dial.validator.controller.RestExceptionHandler;
+import com.plooh.adssi.dial.validator.service.ArchiveExtractor;
+import com.plooh.adssi.dial.validator.service.IpfsAsyncApi;
+import com.plooh.adssi.dial.validator.service.PinWriteBehind;
+import java.io.IOException;
+import java.time.Duration;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+import org.springframework.util.unit.DataSize;
+
+/**
+ * Throughput of {@link IpfsController} under concurrent load, in the blocking mode ({@code caller}: the
+ * IPFS calls run on the request threads) and in the asynchronous mode ({@code fixed}: the request threads
+ * are released while the IPFS node answers).
+ *
+ * The servlet container is simulated by a pool of {@code servletThreads} threads running the dispatches
+ * of the requests, in front of a stub IPFS daemon answering after {@code latencyMillis}. In the blocking
+ * mode the throughput is bounded by servletThreads / latency, whatever the number of clients.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 3, time = 2)
+@Threads(64)
+@Fork(1)
+public class IpfsAsyncLoadBenchmark {
+
+    @Param({"CALLER", "FIXED"})
+    public IpfsAsyncApi.ExecutorType executor;
+
+    @Param({"8"})
+    public int servletThreads;
+
+    @Param({"100"})
+    public int latencyMillis;
+
+    private IpfsFixture fixture;
+    private IpfsAsyncApi ipfsAsyncApi;
+    private ExecutorService servlet;
+    private MockMvc mvc;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        fixture = new IpfsFixture(1024, 10, 10, false);
+        fixture.daemon.latency(Duration.ofMillis(latencyMillis));
+        ipfsAsyncApi = new IpfsAsyncApi(fixture.ipfsApi, executor, 256, 1024);
+        servlet = Executors.newFixedThreadPool(servletThreads);
+        mvc = MockMvcBuilders
+            .standaloneSetup(new IpfsController(fixture.ipfsApi, ipfsAsyncApi, new ArchiveExtractor(DataSize.ofMegabytes(64)),
+                fixture.gzipContentCache, PinWriteBehind.disabled()))
+            .setControllerAdvice(new RestExceptionHandler())
+            .build();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        servlet.shutdownNow();
+        ipfsAsyncApi.shutdown();
+        fixture.close();
+    }
+
+    @Benchmark
+    public String getFileInfoByHash() throws Exception {
+        MvcResult started = servlet.submit(() -> mvc.perform(get("/ipfs/files/{hash}/info", IpfsFixture.DIRECTORY_HASH))
+            .andReturn()).get();
+        // the client waits for the result without holding a servlet thread, which is only taken back to
+        // write the response
+        started.getAsyncResult();
+        return servlet.submit(() -> mvc.perform(asyncDispatch(started)).andReturn().getResponse().getContentAsString()).get();
+    }
+
+}
@@ -0,0 +1,100 @@
+package com.plooh.adssi.dial.validator.benchmark;
+
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.head;
+
+import com.plooh.adssi.dial.validator.controller.IpfsController;
+import com.plooh.adssi.dial.validator.controller.RestExceptionHandler;
+import com.plooh.adssi.dial.validator.service.ArchiveExtractor;
+import com.plooh.adssi.dial.validator.service.IpfsAsyncApi;
+import com.plooh.adssi.dial.validator.service.PinWriteBehind;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.RequestBuilder;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+import org.springframework.util.unit.DataSize;
+
+/**
+ * Latency of the {@link IpfsController} request path through Spring MVC (argument resolution, content
+ * negotiation and JSON serialization, e.g. of the {@code MerkleNode} lists), on top of an
+ * {@link com.plooh.adssi.dial.validator.service.IpfsApi} connected to a stub IPFS daemon.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class IpfsControllerBenchmark {
+
+    @Param({"1024"})
+    public int contentSize;
+
+    @Param({"10", "1000"})
+    public int links;
+
+    private IpfsFixture fixture;
+    private MockMvc mvc;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        fixture = new IpfsFixture(contentSize, links, links, false);
+        mvc = MockMvcBuilders
+            .standaloneSetup(new IpfsController(fixture.ipfsApi, new IpfsAsyncApi(fixture.ipfsApi, Runnable::run),
+                new ArchiveExtractor(DataSize.ofMegabytes(64)), fixture.gzipContentCache,
+                PinWriteBehind.disabled()))
+            .setControllerAdvice(new RestExceptionHandler())
+            .build();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        fixture.close();
+    }
+
+    @Benchmark
+    public byte[] getFileByHash() throws Exception {
+        MvcResult result = perform(get("/ipfs/files/{hash}", IpfsFixture.FILE_HASH));
+        // the returned future holds a streaming body, which is written by a second async dispatch
+        return mvc.perform(asyncDispatch(result)).andReturn().getResponse().getContentAsByteArray();
+    }
+
+    @Benchmark
+    public String getFileInfoByHash() throws Exception {
+        return perform(get("/ipfs/files/{hash}/info", IpfsFixture.DIRECTORY_HASH)).getResponse().getContentAsString();
+    }
+
+    @Benchmark
+    public String getAllFiles() throws Exception {
+        return perform(get("/ipfs/files").param("limit", "100").accept(MediaType.APPLICATION_JSON))
+            .getResponse().getContentAsString();
+    }
+
+    @Benchmark
+    public int isFilePinned() throws Exception {
+        return perform(head("/ipfs/files/{hash}/pin", IpfsFixture.FILE_HASH)).getResponse().getStatus();
+    }
+
+    private MvcResult perform(RequestBuilder request) throws Exception {
+        MvcResult result = mvc.perform(request).andReturn();
+        return mvc.perform(asyncDispatch(result)).andReturn();
+    }
+
+}
@@ -0,0 +1,75 @@
+package com.plooh.adssi.dial.validator.benchmark;
+
+import com.plooh.adssi.dial.validator.service.DiskContentCache;
+import com.plooh.adssi.dial.validator.service.GzipContentCache;
+import com.plooh.adssi.dial.validator.service.IpfsApi;
+import com.plooh.adssi.dial.validator.service.IpfsContentCache;
+import com.plooh.adssi.dial.validator.service.IpfsGuard;
+import com.plooh.adssi.dial.validator.service.IpfsMetrics;
+import com.plooh.adssi.dial.validator.service.IpfsNodePool;
+import com.plooh.adssi.dial.validator.service.PinIndex;
+import com.plooh.adssi.dial.validator.util.StubIpfsDaemon;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.io.IOException;
+import java.util.Random;
+import org.springframework.util.unit.DataSize;
+
+/**
+ * Stub IPFS daemon answering the commands used by {@link IpfsApi} with canned responses, and the
+ * {@link IpfsApi} connected to it.
+ */
+class IpfsFixture implements AutoCloseable {
+
+    static final String FILE_HASH = "zb2rhfE3SX3q7Ha6UErfMqQReKsmLn73BvdDRagHDM6X1eRFN";
+    static final String DIRECTORY_HASH = "QmfM2r8seH2GiRaC4esTjeraXEachRt8ZsSeGaWTPLyMoG";
+
+    final StubIpfsDaemon daemon;
+    final IpfsApi ipfsApi;
+    final GzipContentCache gzipContentCache;
+    final byte[] content;
+
+    /**
+     * @param contentSize size of the content returned by cat
+     * @param links number of links returned by ls
+     * @param pins number of pins returned by pin/ls
+     * @param cached whether the IpfsApi content cache is enabled
+     */
+    IpfsFixture(int contentSize, int links, int pins, boolean cached) throws IOException {
+        content = new byte[contentSize];
+        new Random(42).nextBytes(content);
+
+        StringBuilder ls = new StringBuilder("{\"Objects\":[{\"Hash\":\"" + DIRECTORY_HASH + "\",\"Links\":[");
+        for (int i = 0; i < links; i++) {
+            ls.append(i == 0 ? "" : ",").append("{\"Name\":\"file-").append(i).append(".json\",\"Hash\":\"")
+                .append(FILE_HASH).append("\",\"Size\":").append(contentSize).append(",\"Type\":2}");
+        }
+        ls.append("]}]}");
+
+        StringBuilder pinLs = new StringBuilder();
+        for (int i = 0; i < pins; i++) {
+            pinLs.append("{\"Cid\":\"").append(i % 2 == 0 ? FILE_HASH : DIRECTORY_HASH).append("\",\"Type\":\"recursive\"}\n");
+        }
+
+        daemon = new StubIpfsDaemon()
+            .recording(false)
+            .respond("cat", request -> content)
+            .respond("files/stat", "{\"Hash\":\"" + FILE_HASH + "\",\"Size\":" + contentSize + ",\"Type\":\"file\"}")
+            .respond("ls", ls.toString())
+            .respond("add", "{\"Name\":\"file.json\",\"Hash\":\"" + FILE_HASH + "\",\"Size\":\"" + contentSize + "\"}\n"
+                + "{\"Name\":\"\",\"Hash\":\"" + DIRECTORY_HASH + "\",\"Size\":\"" + (contentSize + 60) + "\"}\n")
+            .respond("pin/add", "{\"Pins\":[\"" + DIRECTORY_HASH + "\"]}")
+            .respond("pin/ls", pinLs.toString());
+
+        IpfsContentCache cache = new IpfsContentCache(cached, DataSize.ofMegabytes(64), DataSize.ofMegabytes(1), DataSize.ofMegabytes(8));
+        ipfsApi = new IpfsApi(IpfsNodePool.of(daemon.ipfs()), cache, DiskContentCache.disabled(), new PinIndex(1024),
+            new IpfsMetrics(new SimpleMeterRegistry()), IpfsGuard.unlimited());
+        ipfsApi.reconcilePinIndex();
+        gzipContentCache = new GzipContentCache(cached, DataSize.ofMegabytes(16), DataSize.ofBytes(256), cache);
+    }
+
+    @Override
+    public void close() {
+        daemon.close();
+    }
+
+}
@@ -0,0 +1,87 @@
+package com.plooh.adssi.dial.validator.benchmark;
+
+import com.plooh.adssi.dial.validator.util.IpfsUtil;
+import io.ipfs.cid.Cid;
+import io.ipfs.multibase.Multibase;
+import io.ipfs.multihash.Multihash;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Throughput of the CID codec of {@link IpfsUtil} against the multiformats library it replaces.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class IpfsUtilBenchmark {
+
+    @Param({"QmfM2r8seH2GiRaC4esTjeraXEachRt8ZsSeGaWTPLyMoG",
+        "zb2rhfE3SX3q7Ha6UErfMqQReKsmLn73BvdDRagHDM6X1eRFN",
+        "bafkreiffsgtnic7uebaeuaixgph3pmmq2ywglpylzwrswv5so7m23hyuny"})
+    public String cid;
+
+    private Multihash multihash;
+    private final byte[] buffer = new byte[IpfsUtil.MAX_CID_BYTES];
+    private final StringBuilder builder = new StringBuilder(128);
+
+    @Setup
+    public void setUp() {
+        multihash = Cid.decode(cid);
+    }
+
+    @Benchmark
+    public Multihash decode() {
+        return IpfsUtil.fromBase58(cid);
+    }
+
+    @Benchmark
+    public Multihash decodeWithLibrary() {
+        return Cid.decode(cid);
+    }
+
+    @Benchmark
+    public int decodeIntoBuffer() {
+        return IpfsUtil.decode(cid, buffer);
+    }
+
+    @Benchmark
+    public String encodeBase58() {
+        return IpfsUtil.toBase58(multihash);
+    }
+
+    @Benchmark
+    public String encodeBase58WithLibrary() {
+        return Multibase.encode(Multibase.Base.Base58BTC, multihash.toBytes());
+    }
+
+    @Benchmark
+    public String encodeBase32() {
+        return IpfsUtil.toBase32(multihash);
+    }
+
+    @Benchmark
+    public String encodeBase32WithLibrary() {
+        return Multibase.encode(Multibase.Base.Base32, multihash.toBytes());
+    }
+
+    @Benchmark
+    public StringBuilder encodeIntoBuilder() {
+        builder.setLength(0);
+        IpfsUtil.encode(Multibase.Base.Base58BTC, buffer, 0, IpfsUtil.toBytes(multihash, buffer), builder);
+        return builder;
+    }
+
+}
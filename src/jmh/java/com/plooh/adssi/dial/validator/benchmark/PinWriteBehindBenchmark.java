@@ -0,0 +1,96 @@
+package com.plooh.adssi.dial.validator.benchmark;
+
+import com.plooh.adssi.dial.validator.service.PinWriteBehind;
+import com.plooh.adssi.dial.validator.util.IpfsUtil;
+import com.plooh.adssi.dial.validator.util.UnixFsHasher;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.util.FileSystemUtils;
+
+/**
+ * Pins per second under 64 concurrent callers, each pin sent alone to the IPFS node or queued to the
+ * {@link PinWriteBehind} and pinned in groups.
+ *
+ * Like the go daemon, which holds its pin lock and flushes the pin set for every pin/add, the stub
+ * daemon answers one pin/add at a time after {@code latencyMillis}, whatever the number of CIDs.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 3, time = 2)
+@Threads(64)
+@Fork(1)
+public class PinWriteBehindBenchmark {
+
+    private static final int CIDS = 4096;
+
+    @Param({"false", "true"})
+    public boolean writeBehind;
+
+    @Param({"5"})
+    public int latencyMillis;
+
+    private IpfsFixture fixture;
+    private Path directory;
+    private PinWriteBehind pins;
+    private String[] cids;
+    private final AtomicInteger next = new AtomicInteger();
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        fixture = new IpfsFixture(1024, 10, 10, false);
+        Object pinLock = new Object();
+        fixture.daemon.respond("pin/add", request -> {
+            synchronized (pinLock) {
+                try {
+                    Thread.sleep(latencyMillis);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            return ("{\"Pins\":[\"" + IpfsFixture.FILE_HASH + "\"]}").getBytes(StandardCharsets.UTF_8);
+        });
+        cids = new String[CIDS];
+        for (int i = 0; i < CIDS; i++) {
+            cids[i] = IpfsUtil.toBase58(UnixFsHasher.hash(("pin-" + i).getBytes(StandardCharsets.UTF_8)));
+        }
+        directory = Files.createTempDirectory("pin-write-behind");
+        pins = new PinWriteBehind(fixture.ipfsApi, writeBehind, directory.toString(), 256, Duration.ofMillis(20), 100_000);
+        pins.start();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        pins.stop();
+        fixture.close();
+        FileSystemUtils.deleteRecursively(directory);
+    }
+
+    @Benchmark
+    public List<String> pin() {
+        String cid = cids[Math.floorMod(next.getAndIncrement(), CIDS)];
+        return writeBehind ? pins.pin(cid).join() : fixture.ipfsApi.pinFileByHash(cid);
+    }
+
+}
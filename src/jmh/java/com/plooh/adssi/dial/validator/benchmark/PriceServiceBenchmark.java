@@ -0,0 +1,74 @@
+package com.plooh.adssi.dial.validator.benchmark;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.plooh.adssi.dial.validator.model.Price;
+import com.plooh.adssi.dial.validator.service.PriceService;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Latency of POST /price by number of declarations of the record, computed ({@code price}, with no
+ * memoization) and memoized ({@code memoized}, the record has been priced before). The computed latency
+ * should grow linearly with the size of the record.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 3, time = 2)
+@Fork(1)
+public class PriceServiceBenchmark {
+
+    @Param({"16", "256", "4096"})
+    public int declarations;
+
+    private PriceService priceService;
+    private PriceService memoizingPriceService;
+    private byte[] record;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        priceService = new PriceService(100, 10, 0);
+        memoizingPriceService = new PriceService(100, 10, 16);
+        ObjectMapper mapper = new ObjectMapper();
+        ObjectNode root = mapper.createObjectNode();
+        ArrayNode array = root.putArray("declarations");
+        Base64.Encoder encoder = Base64.getUrlEncoder().withoutPadding();
+        for (int i = 0; i < declarations; i++) {
+            ObjectNode payload = mapper.createObjectNode().put("id", "declaration-" + i).put("type", "validator")
+                .put("endpoint", "https://validator-" + i + ".example.org");
+            array.addObject()
+                .put("protected", encoder.encodeToString(new byte[180]))
+                .put("payload", encoder.encodeToString(payload.toString().getBytes(StandardCharsets.UTF_8)))
+                .put("signature", encoder.encodeToString(new byte[64]));
+        }
+        record = root.toString().getBytes(StandardCharsets.UTF_8);
+        memoizingPriceService.price(record);
+    }
+
+    @Benchmark
+    public Price price() {
+        return priceService.price(record);
+    }
+
+    @Benchmark
+    public Price memoized() {
+        return memoizingPriceService.price(record);
+    }
+
+}
@@ -0,0 +1,86 @@
+package com.plooh.adssi.dial.validator.benchmark;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.plooh.adssi.dial.validator.service.SignatureVerifier;
+import com.plooh.adssi.dial.validator.util.Jws;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.spec.ECGenParameterSpec;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Signatures verified per second by {@link SignatureVerifier}, in batches on its pool, depending on the
+ * number of threads and on the cache of the verified signatures: disabled (0), every signature is
+ * verified, or enabled, the signatures are verified once and then found in the cache.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 3, time = 2)
+@Fork(1)
+public class SignatureVerifierBenchmark {
+
+    private static final int SIGNATURES = 256;
+    private static final int KEYS = 16;
+
+    @Param({"1", "4"})
+    public int parallelism;
+
+    @Param({"0", "100000"})
+    public long resultCacheSize;
+
+    private SignatureVerifier verifier;
+    private JsonNode[] signed;
+
+    @Setup(Level.Trial)
+    public void setUp() throws GeneralSecurityException {
+        verifier = new SignatureVerifier(parallelism, 16, KEYS, resultCacheSize);
+        KeyPairGenerator generator = KeyPairGenerator.getInstance("EC");
+        generator.initialize(new ECGenParameterSpec("secp256r1"));
+        KeyPair[] keyPairs = new KeyPair[KEYS];
+        for (int i = 0; i < KEYS; i++) {
+            keyPairs[i] = generator.generateKeyPair();
+        }
+        ObjectMapper mapper = new ObjectMapper();
+        signed = new JsonNode[SIGNATURES];
+        for (int i = 0; i < SIGNATURES; i++) {
+            String payload = mapper.createObjectNode().put("id", "declaration-" + i).put("type", "validator").toString();
+            signed[i] = Jws.sign(keyPairs[i % KEYS], payload.getBytes(StandardCharsets.UTF_8));
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        verifier.shutdown();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(SIGNATURES)
+    public List<Boolean> verify() {
+        return verifier.verifyAll(SIGNATURES, index -> {
+            JsonNode header = Jws.header(signed[index]);
+            return verifier.verify(header.get("kid").asText(), header.get("jwk"), Jws.signingInput(signed[index]),
+                Jws.signature(signed[index]));
+        }).join();
+    }
+
+}
@@ -1,6 +1,10 @@
 package com.plooh.adssi.dial.validator.config;
 
-import io.ipfs.api.IPFS;
+import com.plooh.adssi.dial.validator.service.IpfsNode;
+import com.plooh.adssi.dial.validator.service.IpfsNodePool;
+import java.time.Duration;
+import java.util.List;
+import java.util.stream.Collectors;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.lang3.StringUtils;
 import org.springframework.beans.factory.annotation.Value;
@@ -15,17 +19,47 @@ public class IpfsApiProvider {
     private String host;
 
     @Value("${ipfs.port}")
-    private int port;
+    private String port;
 
     @Value("${ipfs.multiaddr}")
     private String multiaddr;
 
+    /** Comma separated multiaddrs or host:port of the IPFS nodes, in the order of preference for writes. */
+    @Value("${ipfs.nodes}")
+    private List<String> nodes;
+
+    @Value("${ipfs.pool.write-policy}")
+    private IpfsNodePool.WritePolicy writePolicy;
+
+    @Value("${ipfs.pool.replicas}")
+    private int replicas;
+
+    @Value("${ipfs.pool.failure-threshold}")
+    private int failureThreshold;
+
+    @Value("${ipfs.pool.health-check.timeout}")
+    private Duration healthCheckTimeout;
+
+    @Value("${ipfs.pool.hedge.enabled}")
+    private boolean hedging;
+
+    @Value("${ipfs.pool.hedge.min-delay}")
+    private Duration minHedgeDelay;
+
+    @Value("${ipfs.pool.hedge.max-delay}")
+    private Duration maxHedgeDelay;
+
     @Bean
-    public IPFS ipfs() {
-        if (StringUtils.isNotBlank(multiaddr)){
-            return new IPFS(multiaddr);
+    public IpfsNodePool ipfsNodePool() {
+        List<String> addresses = nodes.stream().filter(StringUtils::isNotBlank).collect(Collectors.toList());
+        if (addresses.isEmpty()) {
+            addresses = List.of(StringUtils.isNotBlank(multiaddr) ? multiaddr : host + ":" + port);
         }
-        return new IPFS(host, port);
+        IpfsNodePool pool = new IpfsNodePool(addresses.stream().map(IpfsNode::parse).collect(Collectors.toList()),
+            writePolicy, replicas, failureThreshold, healthCheckTimeout, hedging, minHedgeDelay, maxHedgeDelay);
+        log.info("IPFS nodes: {}, write policy: {}, replicas: {}", addresses, writePolicy, replicas);
+        pool.checkHealth();
+        return pool;
     }
 
 }
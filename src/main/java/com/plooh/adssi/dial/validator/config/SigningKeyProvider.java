@@ -0,0 +1,91 @@
+package com.plooh.adssi.dial.validator.config;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.OpenOption;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.security.GeneralSecurityException;
+import java.security.KeyFactory;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.spec.ECGenParameterSpec;
+import java.security.spec.PKCS8EncodedKeySpec;
+import java.security.spec.X509EncodedKeySpec;
+import java.util.Set;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * The P-256 key pair the validator signs with, read from {@code validator.signing.key-file} (PKCS#8) and
+ * the {@code .pub} file next to it (X.509), generated on the first start.
+ */
+@Slf4j
+@Configuration
+public class SigningKeyProvider {
+
+    @Value("${validator.signing.key-file}")
+    private String keyFile;
+
+    @Bean
+    public KeyPair signingKeyPair() {
+        Path privateKey = Paths.get(keyFile);
+        Path publicKey = Paths.get(keyFile + ".pub");
+        try {
+            if (Files.exists(privateKey)) {
+                if (!Files.exists(publicKey)) {
+                    throw new IllegalStateException("Missing public key " + publicKey + " of the signing key " + privateKey);
+                }
+                KeyFactory factory = KeyFactory.getInstance("EC");
+                return new KeyPair(factory.generatePublic(new X509EncodedKeySpec(Files.readAllBytes(publicKey))),
+                    factory.generatePrivate(new PKCS8EncodedKeySpec(Files.readAllBytes(privateKey))));
+            }
+            KeyPairGenerator generator = KeyPairGenerator.getInstance("EC");
+            generator.initialize(new ECGenParameterSpec("secp256r1"));
+            KeyPair keyPair = generator.generateKeyPair();
+            if (privateKey.getParent() != null) {
+                Files.createDirectories(privateKey.getParent());
+            }
+            // the public key first, so that a private key is never left without its public key
+            Files.write(publicKey, keyPair.getPublic().getEncoded());
+            writePrivateKey(privateKey, keyPair.getPrivate().getEncoded());
+            log.info("Generated the signing key {}", privateKey);
+            return keyPair;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot read the signing key " + privateKey, e);
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("Invalid signing key " + privateKey, e);
+        }
+    }
+
+    /**
+     * Create the file readable by the owner only from the start, so that the key is never readable by
+     * others, and fail rather than replace an existing key.
+     */
+    private static void writePrivateKey(Path file, byte[] key) throws IOException {
+        try (SeekableByteChannel channel = createOwnerOnly(file)) {
+            ByteBuffer buffer = ByteBuffer.wrap(key);
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+        }
+    }
+
+    private static SeekableByteChannel createOwnerOnly(Path file) throws IOException {
+        Set<OpenOption> options = Set.of(StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+        try {
+            return Files.newByteChannel(file, options, PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rw-------")));
+        } catch (UnsupportedOperationException e) {
+            log.warn("Cannot restrict the permissions of {}", file);
+            return Files.newByteChannel(file, options);
+        }
+    }
+
+}
@@ -0,0 +1,64 @@
+package com.plooh.adssi.dial.validator.controller;
+
+import org.springframework.http.HttpHeaders;
+
+/**
+ * Entity tags of the responses, and the conditional requests answered with 304 Not Modified.
+ */
+final class EntityTags {
+
+    private EntityTags() {
+    }
+
+    /**
+     * @param value opaque value, e.g. a CID
+     * @return the strong entity tag of the value
+     */
+    static String of(String value) {
+        return "\"" + value + "\"";
+    }
+
+    /**
+     * The entity tag of a JSON response is weak, so that the response may be compressed by the server
+     * (server.compression): the compressed bytes differ, the content is the same.
+     *
+     * @param tag strong entity tag
+     * @return the weak entity tag
+     */
+    static String weak(String tag) {
+        return "W/" + tag;
+    }
+
+    /**
+     * Compare the entity tags of If-None-Match with the weak comparison of RFC 7232, since the tags sent
+     * back by the clients may be weak ones.
+     *
+     * @param headers request headers
+     * @param tags strong entity tags of the current representations
+     * @return true if an entity tag of If-None-Match is one of the tags, or If-None-Match is *
+     */
+    static boolean isNotModified(HttpHeaders headers, String... tags) {
+        return match(headers, tags) != null;
+    }
+
+    /**
+     * @param headers request headers
+     * @param tags strong entity tags of the current representations
+     * @return the tag matched by If-None-Match, the first tag for *, or null if none is matched
+     */
+    static String match(HttpHeaders headers, String... tags) {
+        for (String tag : headers.getIfNoneMatch()) {
+            if (tag.equals("*")) {
+                return tags[0];
+            }
+            String opaque = tag.startsWith("W/") ? tag.substring(2) : tag;
+            for (String current : tags) {
+                if (opaque.equals(current)) {
+                    return current;
+                }
+            }
+        }
+        return null;
+    }
+
+}
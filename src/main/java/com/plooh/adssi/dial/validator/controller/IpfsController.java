@@ -1,24 +1,70 @@
 package com.plooh.adssi.dial.validator.controller;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.plooh.adssi.dial.validator.model.BatchAddResult;
+import com.plooh.adssi.dial.validator.model.Pin;
+import com.plooh.adssi.dial.validator.model.PinPage;
+import com.plooh.adssi.dial.validator.service.ArchiveExtractor;
+import com.plooh.adssi.dial.validator.service.GzipContentCache;
 import com.plooh.adssi.dial.validator.service.IpfsApi;
+import com.plooh.adssi.dial.validator.service.IpfsAsyncApi;
+import com.plooh.adssi.dial.validator.service.PinWriteBehind;
+import com.plooh.adssi.dial.validator.util.InputStreamSourceWrapper;
+import com.plooh.adssi.dial.validator.util.IpfsUtil;
+import io.ipfs.api.IPFS;
 import io.ipfs.api.MerkleNode;
+import io.ipfs.api.NamedStreamable;
+import java.io.BufferedWriter;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.lang.StringUtils;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpRange;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+/**
+ * IPFS endpoints. The calls to the IPFS nodes are made through {@link IpfsAsyncApi}, so the request
+ * threads are released until the nodes answer.
+ *
+ * The content of a CID never changes, so the content and the information of a CID are served with the
+ * CID as ETag and may be cached forever. A request whose If-None-Match matches the CID is answered 304
+ * without calling the nodes.
+ */
 @Slf4j
 @RequiredArgsConstructor
 @RestController
 @RequestMapping(value = "/ipfs")
 public class IpfsController {
 
+    public static final String NDJSON_VALUE = "application/x-ndjson";
+
+    private static final ObjectWriter PIN_WRITER = new ObjectMapper().writerFor(Pin.class);
+
+    private static final int MAX_PAGE_SIZE = 10_000;
+    private static final String IMMUTABLE = "public, max-age=31536000, immutable";
+    private static final String GZIP = "gzip";
+    private static final String GZIP_ETAG_SUFFIX = "-gzip";
+
     private final IpfsApi ipfsApi;
+    private final IpfsAsyncApi ipfsAsyncApi;
+    private final ArchiveExtractor archiveExtractor;
+    private final GzipContentCache gzipContentCache;
+    private final PinWriteBehind pinWriteBehind;
 
     @GetMapping(value = "/health")
     public ResponseEntity<String> health() {
@@ -32,67 +78,265 @@ public class IpfsController {
     }
 
     @PostMapping(value = "/files", consumes = {"multipart/form-data"})
-    public ResponseEntity<String> addFile(@RequestParam("file") MultipartFile file) {
+    public CompletableFuture<ResponseEntity<String>> addFile(@RequestParam("file") MultipartFile file) {
         if ( file == null || file.isEmpty()){
-            return ResponseEntity.status(HttpStatus.BAD_REQUEST).build();
+            return CompletableFuture.completedFuture(ResponseEntity.status(HttpStatus.BAD_REQUEST).build());
         }
 
-        log.info("Adding file: {}, Content Type: {} to IPFS.", file.getOriginalFilename(), file.getContentType());
-        try {
-            return ResponseEntity.status(HttpStatus.CREATED).body(ipfsApi.addFile(file.getBytes(), file.getOriginalFilename()));
-        } catch (IOException e) {
-            log.error(e.getMessage(), e);
+        log.debug("Adding file: {}, Content Type: {} to IPFS.", file.getOriginalFilename(), file.getContentType());
+        return ipfsAsyncApi.addFile(file, file.getOriginalFilename())
+            .thenApply(hash -> ResponseEntity.status(HttpStatus.CREATED).body(hash));
+    }
+
+    /**
+     * Compute the CID the file would have once added, without storing it.
+     */
+    @PostMapping(value = "/files/only-hash", consumes = {"multipart/form-data"})
+    public ResponseEntity<String> hashFile(@RequestParam("file") MultipartFile file) throws IOException {
+        if (file == null || file.isEmpty()) {
             return ResponseEntity.status(HttpStatus.BAD_REQUEST).build();
         }
+
+        return ResponseEntity.ok(IpfsUtil.toBase58(ipfsApi.hashFile(file)));
+    }
+
+    @PostMapping(value = "/files/batch", consumes = {"multipart/form-data"})
+    public CompletableFuture<ResponseEntity<BatchAddResult>> addFiles(@RequestParam(value = "files", required = false) List<MultipartFile> files,
+                                                   @RequestParam(value = "archive", required = false) MultipartFile archive,
+                                                   @RequestParam(value = "wrap", defaultValue = "false") boolean wrap) {
+        List<NamedStreamable> batch = new ArrayList<>();
+        if (files != null) {
+            files.stream()
+                .filter(file -> !file.isEmpty())
+                .forEach(file -> batch.add(new InputStreamSourceWrapper(file.getOriginalFilename(), file)));
+        }
+        if (archive != null && !archive.isEmpty()) {
+            try {
+                batch.addAll(archiveExtractor.extract(archive));
+            } catch (IOException e) {
+                // an archive which cannot be extracted is an error of the client
+                log.debug("Invalid archive {}: {}", archive.getOriginalFilename(), e.getMessage());
+                return CompletableFuture.completedFuture(ResponseEntity.status(HttpStatus.BAD_REQUEST).build());
+            }
+        }
+        if (batch.isEmpty()) {
+            return CompletableFuture.completedFuture(ResponseEntity.status(HttpStatus.BAD_REQUEST).build());
+        }
+
+        log.debug("Adding batch of {} entries to IPFS, wrapped: {}.", batch.size(), wrap);
+        return ipfsAsyncApi.addFiles(batch, wrap)
+            .thenApply(result -> ResponseEntity.status(HttpStatus.CREATED).body(result));
     }
 
     @GetMapping(value = "/files/{hash}")
-    public ResponseEntity<byte[]> getFileByHash(@PathVariable("hash") String hash) {
-        if (StringUtils.isBlank(hash)) {
-            return ResponseEntity.status(HttpStatus.BAD_REQUEST).build();
+    public CompletableFuture<ResponseEntity<StreamingResponseBody>> getFileByHash(@PathVariable("hash") String hash,
+                                                                                  @RequestHeader HttpHeaders headers) {
+        if (!isCid(hash)) {
+            return CompletableFuture.completedFuture(ResponseEntity.status(HttpStatus.BAD_REQUEST).build());
+        }
+
+        // checked before compressing, the tag of the variant the client holds is sent back
+        String matched = EntityTags.match(headers, EntityTags.of(hash), EntityTags.of(hash + GZIP_ETAG_SUFFIX));
+        if (matched != null) {
+            return CompletableFuture.completedFuture(ResponseEntity.status(HttpStatus.NOT_MODIFIED)
+                .eTag(matched)
+                .header(HttpHeaders.CACHE_CONTROL, IMMUTABLE)
+                .header(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING)
+                .build());
+        }
+
+        List<HttpRange> ranges = parseRanges(headers);
+        // only the hot content is compressed, from the local caches
+        byte[] gzip = ranges.size() != 1 && acceptsGzip(headers) ? gzipContentCache.getGzip(IpfsUtil.fromBase58(hash)) : null;
+        String etag = gzip == null ? EntityTags.of(hash) : EntityTags.of(hash + GZIP_ETAG_SUFFIX);
+        if (gzip != null) {
+            return CompletableFuture.completedFuture(ResponseEntity.ok()
+                .eTag(etag)
+                .header(HttpHeaders.CACHE_CONTROL, IMMUTABLE)
+                .header(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING)
+                .header(HttpHeaders.CONTENT_ENCODING, GZIP)
+                .contentType(MediaType.APPLICATION_OCTET_STREAM)
+                .contentLength(gzip.length)
+                .body(out -> out.write(gzip)));
+        }
+
+        log.debug("Getting file content for {} from IPFS.", hash);
+        if (ranges.size() != 1) {
+            return ipfsAsyncApi.getFileStreamByHash(hash).thenApply(content -> ResponseEntity.ok()
+                .eTag(etag)
+                .header(HttpHeaders.CACHE_CONTROL, IMMUTABLE)
+                .header(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING)
+                .header(HttpHeaders.ACCEPT_RANGES, "bytes")
+                .contentType(MediaType.APPLICATION_OCTET_STREAM)
+                .body(stream(content)));
         }
 
-        log.info("Getting file info for {} from IPFS.", hash);
-        return ResponseEntity.ok(ipfsApi.getFileByHash(hash));
+        HttpRange range = ranges.get(0);
+        return ipfsAsyncApi.getFileSizeByHash(hash).thenCompose(size -> getFileRange(hash, range, size));
     }
 
     @GetMapping(value = "/files/{hash}/info")
-    public ResponseEntity<List<MerkleNode>> getFileInfoByHash(@PathVariable("hash") String hash) {
-        if (StringUtils.isBlank(hash)) {
-            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(List.of());
+    public CompletableFuture<ResponseEntity<List<MerkleNode>>> getFileInfoByHash(@PathVariable("hash") String hash,
+                                                                                 @RequestHeader HttpHeaders headers) {
+        if (!isCid(hash)) {
+            return CompletableFuture.completedFuture(ResponseEntity.status(HttpStatus.BAD_REQUEST).body(List.of()));
+        }
+
+        String etag = EntityTags.weak(EntityTags.of(hash));
+        if (isNotModified(headers, hash)) {
+            return CompletableFuture.completedFuture(ResponseEntity.status(HttpStatus.NOT_MODIFIED)
+                .eTag(etag)
+                .header(HttpHeaders.CACHE_CONTROL, IMMUTABLE)
+                .build());
         }
 
-        log.info("Getting file content for {} from IPFS.", hash);
-        List<MerkleNode> list = ipfsApi.getFileInfoByHash(hash);
-        return ResponseEntity.ok(list);
+        log.debug("Getting file content for {} from IPFS.", hash);
+        return ipfsAsyncApi.getFileInfoByHash(hash).thenApply(info -> ResponseEntity.ok()
+            .eTag(etag)
+            .header(HttpHeaders.CACHE_CONTROL, IMMUTABLE)
+            .body(info));
     }
 
     @PostMapping(value = "/files/{hash}/pin")
-    public ResponseEntity<List<String>> pinFileByHash(@PathVariable("hash") String hash) {
-        if (StringUtils.isBlank(hash)) {
-            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(List.of());
+    public CompletableFuture<ResponseEntity<List<String>>> pinFileByHash(@PathVariable("hash") String hash) {
+        if (!isCid(hash)) {
+            return CompletableFuture.completedFuture(ResponseEntity.status(HttpStatus.BAD_REQUEST).body(List.of()));
         }
 
-        log.info("Pinning file info for {} from IPFS.", hash);
-        List<String> list = ipfsApi.pinFileByHash(hash);
-        return ResponseEntity.ok(list);
+        log.debug("Pinning file info for {} from IPFS.", hash);
+        CompletableFuture<List<String>> pinned = pinWriteBehind.isEnabled()
+            ? pinWriteBehind.pin(hash)
+            : ipfsAsyncApi.pinFileByHash(hash);
+        return pinned.thenApply(ResponseEntity::ok);
+    }
+
+    @RequestMapping(value = "/files/{hash}/pin", method = RequestMethod.HEAD)
+    public CompletableFuture<ResponseEntity<Void>> isFilePinned(@PathVariable("hash") String hash) {
+        if (!isCid(hash)) {
+            return CompletableFuture.completedFuture(ResponseEntity.status(HttpStatus.BAD_REQUEST).build());
+        }
+
+        return ipfsAsyncApi.isPinned(hash)
+            .thenApply(pinned -> pinned ? ResponseEntity.ok().<Void>build() : ResponseEntity.notFound().<Void>build());
     }
 
     @PostMapping(value = "/files/{hash}/unpin")
-    public ResponseEntity<List<String>> unpinFileByHash(@PathVariable("hash") String hash) {
-        if (StringUtils.isBlank(hash)) {
-            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(List.of());
+    public CompletableFuture<ResponseEntity<List<String>>> unpinFileByHash(@PathVariable("hash") String hash) {
+        if (!isCid(hash)) {
+            return CompletableFuture.completedFuture(ResponseEntity.status(HttpStatus.BAD_REQUEST).body(List.of()));
         }
 
-        log.info("Unpinning file info for {} from IPFS.", hash);
-        List<String> list = ipfsApi.unpinFileByHash(hash);
-        return ResponseEntity.ok(list);
+        log.debug("Unpinning file info for {} from IPFS.", hash);
+        return ipfsAsyncApi.unpinFileByHash(hash).thenApply(ResponseEntity::ok);
     }
 
     @GetMapping(value = "/files")
-    public ResponseEntity<List<String>> getAllFiles() {
-        List<String> list = ipfsApi.listAllFiles();
-        return ResponseEntity.ok(list);
+    public CompletableFuture<ResponseEntity<PinPage>> getAllFiles(@RequestParam(value = "type", defaultValue = "all") IPFS.PinType type,
+                                               @RequestParam(value = "cursor", required = false) String cursor,
+                                               @RequestParam(value = "limit", defaultValue = "1000") int limit) {
+        if (limit < 1 || limit > MAX_PAGE_SIZE) {
+            return CompletableFuture.completedFuture(ResponseEntity.status(HttpStatus.BAD_REQUEST).build());
+        }
+        return ipfsAsyncApi.listFiles(type, cursor, limit).thenApply(ResponseEntity::ok);
+    }
+
+    @GetMapping(value = "/files", produces = NDJSON_VALUE)
+    public ResponseEntity<StreamingResponseBody> streamAllFiles(@RequestParam(value = "type", defaultValue = "all") IPFS.PinType type) {
+        return ResponseEntity.ok()
+            .contentType(MediaType.parseMediaType(NDJSON_VALUE))
+            .body(out -> {
+                Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+                ipfsApi.streamFiles(type, pin -> {
+                    try {
+                        writer.write(PIN_WRITER.writeValueAsString(pin));
+                        writer.write('\n');
+                        return true;
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                });
+                writer.flush();
+            });
+    }
+
+    private CompletableFuture<ResponseEntity<StreamingResponseBody>> getFileRange(String hash, HttpRange range, long size) {
+        long start;
+        long end;
+        try {
+            start = range.getRangeStart(size);
+            end = range.getRangeEnd(size);
+        } catch (IllegalArgumentException e) {
+            start = size;
+            end = size;
+        }
+        if (start >= size) {
+            return CompletableFuture.completedFuture(ResponseEntity.status(HttpStatus.REQUESTED_RANGE_NOT_SATISFIABLE)
+                .header(HttpHeaders.CONTENT_RANGE, "bytes */" + size)
+                .build());
+        }
+
+        long length = end - start + 1;
+        String contentRange = "bytes " + start + "-" + end + "/" + size;
+        return ipfsAsyncApi.getFileStreamByHash(hash, start, length).thenApply(content -> ResponseEntity.status(HttpStatus.PARTIAL_CONTENT)
+            .eTag(EntityTags.of(hash))
+            .header(HttpHeaders.CACHE_CONTROL, IMMUTABLE)
+            .header(HttpHeaders.ACCEPT_RANGES, "bytes")
+            .header(HttpHeaders.CONTENT_RANGE, contentRange)
+            .contentType(MediaType.APPLICATION_OCTET_STREAM)
+            .contentLength(length)
+            .body(stream(content)));
+    }
+
+    /**
+     * @return true if the hash is a CID, so that a malformed one is answered with 400 rather than sent to IPFS
+     */
+    private static boolean isCid(String hash) {
+        if (StringUtils.isBlank(hash)) {
+            return false;
+        }
+        try {
+            IpfsUtil.fromBase58(hash);
+            return true;
+        } catch (RuntimeException e) {
+            return false;
+        }
+    }
+
+    /**
+     * @return true if an entity tag of If-None-Match is the CID, of any of the representations
+     */
+    private static boolean isNotModified(HttpHeaders headers, String hash) {
+        return EntityTags.isNotModified(headers, EntityTags.of(hash), EntityTags.of(hash + GZIP_ETAG_SUFFIX));
+    }
+
+    private static boolean acceptsGzip(HttpHeaders headers) {
+        for (String value : headers.getOrEmpty(HttpHeaders.ACCEPT_ENCODING)) {
+            for (String coding : value.split(",")) {
+                String[] parameters = coding.trim().split(";");
+                if ((parameters[0].trim().equalsIgnoreCase(GZIP) || parameters[0].trim().equals("*"))
+                    && !(parameters.length > 1 && parameters[1].trim().matches("q=0(\\.0*)?"))) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private static List<HttpRange> parseRanges(HttpHeaders headers) {
+        try {
+            return headers.getRange();
+        } catch (IllegalArgumentException e) {
+            // an invalid Range header is ignored and the full content is served
+            return List.of();
+        }
+    }
+
+    private static StreamingResponseBody stream(InputStream content) {
+        return out -> {
+            try (InputStream in = content) {
+                IpfsUtil.copy(in, out);
+            }
+        };
     }
 
 }
@@ -0,0 +1,34 @@
+package com.plooh.adssi.dial.validator.controller;
+
+import com.plooh.adssi.dial.validator.model.PinJob;
+import com.plooh.adssi.dial.validator.model.PinJobRequest;
+import com.plooh.adssi.dial.validator.service.PinJobService;
+import java.net.URI;
+import javax.validation.Valid;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+@Slf4j
+@RequiredArgsConstructor
+@RestController
+@RequestMapping(value = "/ipfs/pins/jobs")
+public class PinJobController {
+
+    private final PinJobService pinJobService;
+
+    @PostMapping
+    public ResponseEntity<PinJob> submit(@Valid @RequestBody PinJobRequest request) {
+        PinJob job = pinJobService.submit(request.getAction(), request.getCids());
+        return ResponseEntity.accepted()
+            .location(URI.create("/ipfs/pins/jobs/" + job.getId()))
+            .body(job);
+    }
+
+    @GetMapping(value = "/{id}")
+    public ResponseEntity<PinJob> getJob(@PathVariable("id") String id) {
+        return ResponseEntity.of(pinJobService.getJob(id));
+    }
+
+}
@@ -0,0 +1,60 @@
+package com.plooh.adssi.dial.validator.controller;
+
+import com.plooh.adssi.dial.validator.service.BadRequestException;
+import com.plooh.adssi.dial.validator.service.IpfsException;
+import com.plooh.adssi.dial.validator.service.IpfsNotFoundException;
+import com.plooh.adssi.dial.validator.service.IpfsTimeoutException;
+import com.plooh.adssi.dial.validator.service.IpfsUnavailableException;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.ExceptionHandler;
+import org.springframework.web.bind.annotation.RestControllerAdvice;
+import org.springframework.web.multipart.MaxUploadSizeExceededException;
+
+@Slf4j
+@RestControllerAdvice
+public class RestExceptionHandler {
+
+    @ExceptionHandler(BadRequestException.class)
+    public ResponseEntity<String> handleBadRequest(BadRequestException e) {
+        return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(e.getMessage());
+    }
+
+    @ExceptionHandler(MaxUploadSizeExceededException.class)
+    public ResponseEntity<String> handleMaxUploadSizeExceeded(MaxUploadSizeExceededException e) {
+        log.warn("Rejected upload: {}", e.getMessage());
+        return ResponseEntity.status(HttpStatus.PAYLOAD_TOO_LARGE).body("Upload exceeds the configured maximum size");
+    }
+
+    @ExceptionHandler(IpfsNotFoundException.class)
+    public ResponseEntity<String> handleIpfsNotFound(IpfsNotFoundException e) {
+        return ResponseEntity.status(HttpStatus.NOT_FOUND).body(e.getMessage());
+    }
+
+    @ExceptionHandler(IpfsTimeoutException.class)
+    public ResponseEntity<String> handleIpfsTimeout(IpfsTimeoutException e) {
+        log.warn(e.getMessage());
+        return ResponseEntity.status(HttpStatus.GATEWAY_TIMEOUT).body(e.getMessage());
+    }
+
+    @ExceptionHandler(IpfsUnavailableException.class)
+    public ResponseEntity<String> handleIpfsUnavailable(IpfsUnavailableException e) {
+        log.warn(e.getMessage());
+        ResponseEntity.BodyBuilder response = ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE);
+        if (e.getRetryAfter() != null) {
+            // Retry-After is in whole seconds, round up so that clients do not retry too early
+            long seconds = (e.getRetryAfter().toMillis() + 999) / 1000;
+            response.header(HttpHeaders.RETRY_AFTER, String.valueOf(Math.max(1, seconds)));
+        }
+        return response.body(e.getMessage());
+    }
+
+    @ExceptionHandler(IpfsException.class)
+    public ResponseEntity<String> handleIpfs(IpfsException e) {
+        log.error(e.getMessage(), e);
+        return ResponseEntity.status(HttpStatus.BAD_GATEWAY).body(e.getMessage());
+    }
+
+}
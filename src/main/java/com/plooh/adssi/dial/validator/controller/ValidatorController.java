@@ -1,8 +1,24 @@
 package com.plooh.adssi.dial.validator.controller;
 
+import com.plooh.adssi.dial.validator.model.MembershipSnapshot;
+import com.plooh.adssi.dial.validator.model.Price;
+import com.plooh.adssi.dial.validator.model.PublishResult;
+import com.plooh.adssi.dial.validator.service.DeclarationIndex;
+import com.plooh.adssi.dial.validator.service.IpfsAsyncApi;
+import com.plooh.adssi.dial.validator.service.MembershipSnapshotService;
+import com.plooh.adssi.dial.validator.service.PriceService;
+import com.plooh.adssi.dial.validator.service.PublishService;
+import java.util.concurrent.CompletableFuture;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RestController;
 
 import lombok.RequiredArgsConstructor;
@@ -11,59 +27,104 @@ import lombok.RequiredArgsConstructor;
 @RestController
 public class ValidatorController {
 
+    private final PublishService publishService;
+    private final PriceService priceService;
+    private final DeclarationIndex declarationIndex;
+    private final IpfsAsyncApi ipfsAsyncApi;
+    private final MembershipSnapshotService snapshotService;
+
     /**
      * Returns a file containinng the latest version of the decclaration with the
-     * given id
+     * given id. The CID of the version, found in the {@link DeclarationIndex}, is
+     * the ETag, so that a client holding the latest version gets a 304 without
+     * its content being read.
      * 
-     * @return
+     * @param id
+     * @return the latest version of the declaration, or 404 if it has never been
+     *         published
      */
     @GetMapping("/declaration/{id}")
-    public String getDeclaration() {
-        return null;
+    public CompletableFuture<ResponseEntity<byte[]>> getDeclaration(@PathVariable("id") String id,
+                                                                    @RequestHeader HttpHeaders headers) {
+        String hash = declarationIndex.getLatest(id);
+        if (hash == null) {
+            return CompletableFuture.completedFuture(ResponseEntity.status(HttpStatus.NOT_FOUND).build());
+        }
+        String etag = EntityTags.weak(EntityTags.of(hash));
+        if (EntityTags.isNotModified(headers, EntityTags.of(hash))) {
+            return CompletableFuture.completedFuture(ResponseEntity.status(HttpStatus.NOT_MODIFIED)
+                .eTag(etag)
+                .cacheControl(CacheControl.noCache())
+                .build());
+        }
+        return ipfsAsyncApi.getFileByHash(hash).thenApply(content -> ResponseEntity.ok()
+            .eTag(etag)
+            .cacheControl(CacheControl.noCache())
+            .contentType(MediaType.APPLICATION_JSON)
+            .body(content));
     }
 
     /**
      * Returns a signed actual list of all validators active in the current time
-     * window.
+     * window. The list is signed once per window and membership change, and a
+     * client holding it gets a 304.
      * 
      * @return
      */
     @GetMapping("/validators")
-    public String getValidators() {
-        return null;
+    public ResponseEntity<byte[]> getValidators(@RequestHeader HttpHeaders headers) {
+        return snapshot(MembershipSnapshotService.Membership.VALIDATORS, headers);
     }
 
     /**
-     * Returns a signed actual list of all known to the current time window.
+     * Returns a signed actual list of all known to the current time window. The
+     * list is signed once per window and membership change, and a client holding
+     * it gets a 304.
      * 
      * @return
      */
     @GetMapping("/routers")
-    public String getRouters() {
-        return null;
+    public ResponseEntity<byte[]> getRouters(@RequestHeader HttpHeaders headers) {
+        return snapshot(MembershipSnapshotService.Membership.ROUTERS, headers);
     }
 
     /**
      * Validates and published the list of declarations contained in the current
-     * file.
+     * file. The valid declarations are published even if others are rejected.
      * 
      * @param record
-     * @return
+     * @return the result of every declaration of the record
      */
     @PostMapping("/publish")
-    public String publishDeclarations(@RequestBody String record) {
-        return null;
+    public CompletableFuture<PublishResult> publishDeclarations(@RequestBody String record) {
+        return publishService.publish(record);
     }
 
     /**
      * Analyzes and returns the price required to validate and publish the current
-     * record.
+     * record. Pricing the same record again is answered from memory.
      * 
      * @param record
-     * @return
+     * @return the price of the record
      */
     @PostMapping("/price")
-    public String priceDeclarations(@RequestBody String record) {
-        return null;
+    public Price priceDeclarations(@RequestBody byte[] record) {
+        return priceService.price(record);
+    }
+
+    private ResponseEntity<byte[]> snapshot(MembershipSnapshotService.Membership membership, HttpHeaders headers) {
+        MembershipSnapshot snapshot = snapshotService.get(membership);
+        String etag = EntityTags.weak(snapshot.getEtag());
+        if (EntityTags.isNotModified(headers, snapshot.getEtag())) {
+            return ResponseEntity.status(HttpStatus.NOT_MODIFIED)
+                .eTag(etag)
+                .cacheControl(CacheControl.noCache())
+                .build();
+        }
+        return ResponseEntity.ok()
+            .eTag(etag)
+            .cacheControl(CacheControl.noCache())
+            .contentType(MediaType.APPLICATION_JSON)
+            .body(snapshot.getContent());
     }
 }
@@ -0,0 +1,29 @@
+package com.plooh.adssi.dial.validator.model;
+
+import java.util.List;
+import lombok.Value;
+
+/**
+ * Result of adding many files to IPFS in a single request.
+ */
+@Value
+public class BatchAddResult {
+
+    /**
+     * Every added file and directory, with its path inside the batch.
+     */
+    List<AddedFile> files;
+
+    /**
+     * Hash of the directory wrapping the batch, or null if the batch was not wrapped.
+     */
+    String root;
+
+    @Value
+    public static class AddedFile {
+        String name;
+        String hash;
+        Long size;
+    }
+
+}
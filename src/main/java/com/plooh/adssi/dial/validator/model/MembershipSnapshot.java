@@ -0,0 +1,39 @@
+package com.plooh.adssi.dial.validator.model;
+
+import java.time.Instant;
+import lombok.Value;
+
+/**
+ * Signed list of the members of a membership (the validators or the routers) for a time window, encoded
+ * once and served as is to every caller.
+ */
+@Value
+public class MembershipSnapshot {
+
+    /**
+     * Index of the time window since the epoch.
+     */
+    long window;
+
+    Instant notBefore;
+
+    Instant notAfter;
+
+    /**
+     * Modifications of the membership in the declaration index when the snapshot was built.
+     */
+    long version;
+
+    int members;
+
+    /**
+     * The signed list, a JWS in the flattened JSON serialization.
+     */
+    byte[] content;
+
+    /**
+     * Entity tag of the content, quoted.
+     */
+    String etag;
+
+}
@@ -0,0 +1,9 @@
+package com.plooh.adssi.dial.validator.model;
+
+import lombok.Value;
+
+@Value
+public class Pin {
+    String hash;
+    String type;
+}
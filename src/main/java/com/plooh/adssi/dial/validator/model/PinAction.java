@@ -0,0 +1,6 @@
+package com.plooh.adssi.dial.validator.model;
+
+public enum PinAction {
+    PIN,
+    UNPIN
+}
@@ -0,0 +1,98 @@
+package com.plooh.adssi.dial.validator.model;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import java.time.Instant;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import lombok.AccessLevel;
+import lombok.Getter;
+import lombok.Value;
+
+/**
+ * Bulk pin or unpin job, with the result of every CID it was asked to process.
+ */
+@Getter
+public class PinJob {
+
+    public enum Status {
+        RUNNING,
+        COMPLETED
+    }
+
+    public enum State {
+        PENDING,
+        DONE,
+        SKIPPED,
+        FAILED
+    }
+
+    @Value
+    public static class Result {
+        State state;
+        List<String> hashes;
+        String message;
+
+        public static final Result PENDING = new Result(State.PENDING, List.of(), null);
+    }
+
+    private final String id;
+    private final PinAction action;
+    private final Instant createdAt;
+    private final Map<String, Result> results;
+
+    @Getter(AccessLevel.NONE)
+    private final AtomicInteger pending;
+
+    @JsonIgnore
+    private final CompletableFuture<PinJob> completion = new CompletableFuture<>();
+
+    public PinJob(String id, PinAction action, List<String> cids) {
+        this.id = id;
+        this.action = action;
+        this.createdAt = Instant.now();
+        this.results = new ConcurrentHashMap<>();
+        cids.forEach(cid -> results.put(cid, Result.PENDING));
+        this.pending = new AtomicInteger(results.size());
+        if (results.isEmpty()) {
+            completion.complete(this);
+        }
+    }
+
+    public Map<String, Result> getResults() {
+        return Collections.unmodifiableMap(results);
+    }
+
+    public Status getStatus() {
+        return pending.get() == 0 ? Status.COMPLETED : Status.RUNNING;
+    }
+
+    public int getTotal() {
+        return results.size();
+    }
+
+    public int getPending() {
+        return pending.get();
+    }
+
+    /**
+     * Record the result of the given CID and complete the job once no CID is pending anymore.
+     *
+     * @param cid
+     * @param result
+     */
+    public void complete(String cid, Result result) {
+        Result previous = results.put(cid, result);
+        if (previous != null && previous.getState() == State.PENDING && pending.decrementAndGet() == 0) {
+            completion.complete(this);
+        }
+    }
+
+    public long getFailed() {
+        return results.values().stream().filter(result -> result.getState() == State.FAILED).count();
+    }
+
+}
@@ -0,0 +1,21 @@
+package com.plooh.adssi.dial.validator.model;
+
+import java.util.List;
+import javax.validation.constraints.NotEmpty;
+import javax.validation.constraints.NotNull;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class PinJobRequest {
+
+    @NotNull
+    private PinAction action;
+
+    @NotEmpty
+    private List<String> cids;
+
+}
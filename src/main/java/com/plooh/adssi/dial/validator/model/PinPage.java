@@ -0,0 +1,20 @@
+package com.plooh.adssi.dial.validator.model;
+
+import java.util.List;
+import lombok.Value;
+
+/**
+ * One page of the pins of the IPFS node.
+ */
+@Value
+public class PinPage {
+
+    List<Pin> pins;
+
+    /**
+     * Cursor of the next page, or null if this is the last page. It is the position of the next page in the
+     * listing of the node, not a key, see {@link com.plooh.adssi.dial.validator.service.IpfsApi#listFiles}.
+     */
+    String next;
+
+}
@@ -0,0 +1,26 @@
+package com.plooh.adssi.dial.validator.model;
+
+import lombok.Value;
+
+/**
+ * Price of validating and publishing a record.
+ */
+@Value
+public class Price {
+
+    /**
+     * Number of declarations of the record.
+     */
+    int declarations;
+
+    /**
+     * Size in bytes of the declarations of the record.
+     */
+    long bytes;
+
+    /**
+     * Price of the record: a price per declaration plus a price per started kilobyte of each declaration.
+     */
+    long amount;
+
+}
@@ -0,0 +1,41 @@
+package com.plooh.adssi.dial.validator.model;
+
+import java.util.List;
+import lombok.Value;
+
+/**
+ * Result of publishing a record, with the result of every declaration it contains.
+ */
+@Value
+public class PublishResult {
+
+    public enum Status {
+        PUBLISHED,
+        REJECTED
+    }
+
+    @Value
+    public static class DeclarationResult {
+        int index;
+        String id;
+        Status status;
+        String hash;
+        String message;
+    }
+
+    List<DeclarationResult> declarations;
+
+    /**
+     * Price of the record, as given by POST /price.
+     */
+    Price price;
+
+    public long getPublished() {
+        return declarations.stream().filter(result -> result.getStatus() == Status.PUBLISHED).count();
+    }
+
+    public long getRejected() {
+        return declarations.stream().filter(result -> result.getStatus() == Status.REJECTED).count();
+    }
+
+}
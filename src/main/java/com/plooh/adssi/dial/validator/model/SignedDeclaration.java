@@ -0,0 +1,42 @@
+package com.plooh.adssi.dial.validator.model;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import lombok.Value;
+
+/**
+ * A declaration of a record whose signature has been verified.
+ */
+@Value
+public class SignedDeclaration {
+
+    /**
+     * Position of the declaration in its record.
+     */
+    int index;
+
+    /**
+     * Id of the declaration, shared by its versions.
+     */
+    String id;
+
+    /**
+     * Type of the declaration, e.g. validator or router, or null.
+     */
+    String type;
+
+    /**
+     * Thumbprint of the key which signed the declaration.
+     */
+    String keyId;
+
+    /**
+     * Decoded payload of the declaration.
+     */
+    JsonNode payload;
+
+    /**
+     * The signed declaration as published: the JWS in the flattened JSON serialization.
+     */
+    byte[] content;
+
+}
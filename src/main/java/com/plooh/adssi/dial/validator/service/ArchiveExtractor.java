@@ -0,0 +1,148 @@
+package com.plooh.adssi.dial.validator.service;
+
+import io.ipfs.api.NamedStreamable;
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import org.apache.commons.compress.archivers.ArchiveEntry;
+import org.apache.commons.compress.archivers.ArchiveException;
+import org.apache.commons.compress.archivers.ArchiveInputStream;
+import org.apache.commons.compress.archivers.ArchiveStreamFactory;
+import org.apache.commons.compress.compressors.CompressorException;
+import org.apache.commons.compress.compressors.CompressorStreamFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.InputStreamSource;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+
+/**
+ * Extracts a zip or (optionally compressed) tar archive into a tree of {@link NamedStreamable}s that can
+ * be added to IPFS in a single request.
+ */
+@Component
+public class ArchiveExtractor {
+
+    private final long maxSize;
+
+    public ArchiveExtractor(@Value("${ipfs.batch.max-archive-size}") DataSize maxSize) {
+        this.maxSize = maxSize.toBytes();
+    }
+
+    /**
+     * Extract the given archive. The extracted content is limited to the configured maximum size, so
+     * that a highly compressed archive can not exhaust the heap. Empty and {@code .} segments of the
+     * paths are ignored, a {@code ..} segment fails the extraction, and so does a path given to two files
+     * or to both a file and a directory.
+     *
+     * @param archive
+     * @return top level files and directories of the archive
+     */
+    public List<NamedStreamable> extract(InputStreamSource archive) throws IOException {
+        Directory root = new Directory("");
+        long total = 0;
+        try (ArchiveInputStream in = open(archive.getInputStream())) {
+            ArchiveEntry entry;
+            while ((entry = in.getNextEntry()) != null) {
+                if (!in.canReadEntryData(entry)) {
+                    throw new IOException("Unsupported archive entry: " + entry.getName());
+                }
+                String[] path = entry.getName().replace('\\', '/').split("/");
+                for (String segment : path) {
+                    // the names are sent to the node as is, a parent segment would escape the added tree
+                    if ("..".equals(segment)) {
+                        throw new IOException("Invalid archive entry path: " + entry.getName());
+                    }
+                }
+                if (!entry.isDirectory() && (path.length == 0 || path[path.length - 1].isEmpty() || ".".equals(path[path.length - 1]))) {
+                    throw new IOException("Invalid archive entry path: " + entry.getName());
+                }
+                Directory parent = root;
+                int depth = entry.isDirectory() ? path.length : path.length - 1;
+                for (int i = 0; i < depth; i++) {
+                    if (!path[i].isEmpty() && !".".equals(path[i])) {
+                        parent = parent.directory(path[i]);
+                    }
+                }
+                if (!entry.isDirectory()) {
+                    String name = path[path.length - 1];
+                    parent.checkAbsent(name);
+                    byte[] content = read(in, maxSize - total);
+                    total += content.length;
+                    parent.children.put(name, new NamedStreamable.ByteArrayWrapper(name, content));
+                }
+            }
+        }
+        return root.toChildren();
+    }
+
+    private static ArchiveInputStream open(InputStream raw) throws IOException {
+        InputStream in = new BufferedInputStream(raw);
+        try {
+            try {
+                in = new BufferedInputStream(new CompressorStreamFactory().createCompressorInputStream(in));
+            } catch (CompressorException e) {
+                // not compressed, read the archive as is
+            }
+            return new ArchiveStreamFactory().createArchiveInputStream(in);
+        } catch (ArchiveException e) {
+            in.close();
+            throw new IOException("Unsupported archive format", e);
+        }
+    }
+
+    private static byte[] read(InputStream in, long remaining) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        int read;
+        while ((read = in.read(buffer)) != -1) {
+            if (out.size() + read > remaining) {
+                throw new IOException("Archive content exceeds the maximum size");
+            }
+            out.write(buffer, 0, read);
+        }
+        return out.toByteArray();
+    }
+
+    private static class Directory {
+        private final String name;
+        private final Map<String, Object> children = new LinkedHashMap<>();
+
+        Directory(String name) {
+            this.name = name;
+        }
+
+        Directory directory(String child) throws IOException {
+            Object existing = children.computeIfAbsent(child, Directory::new);
+            if (!(existing instanceof Directory)) {
+                throw new IOException("Archive entry is both a file and a directory: " + child);
+            }
+            return (Directory) existing;
+        }
+
+        void checkAbsent(String child) throws IOException {
+            Object existing = children.get(child);
+            if (existing instanceof Directory) {
+                throw new IOException("Archive entry is both a file and a directory: " + child);
+            }
+            if (existing != null) {
+                throw new IOException("Duplicate archive entry: " + child);
+            }
+        }
+
+        List<NamedStreamable> toChildren() {
+            List<NamedStreamable> list = new ArrayList<>();
+            for (Object child : children.values()) {
+                list.add(child instanceof Directory
+                    ? new NamedStreamable.DirWrapper(((Directory) child).name, ((Directory) child).toChildren())
+                    : (NamedStreamable) child);
+            }
+            return list;
+        }
+    }
+
+}
@@ -0,0 +1,17 @@
+package com.plooh.adssi.dial.validator.service;
+
+/**
+ * The request is invalid, answered with 400. Other {@link IllegalArgumentException}s are bugs of the
+ * service, not of the client.
+ */
+public class BadRequestException extends IllegalArgumentException {
+
+    public BadRequestException(String message) {
+        super(message);
+    }
+
+    public BadRequestException(String message, Throwable cause) {
+        super(message, cause);
+    }
+
+}
@@ -0,0 +1,322 @@
+package com.plooh.adssi.dial.validator.service;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import javax.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+/**
+ * Index of the CID of the latest published version of every declaration, by declaration id, so that
+ * GET /declaration/{id} does not have to search IPFS, and of its type, so that the declarations of a type
+ * are listed without reading them.
+ *
+ * A declaration id belongs to the key which signed its first version: the versions signed by another key
+ * are not indexed, so that nobody else can replace the latest version of a declaration.
+ *
+ * The index is held in memory and persisted in {@code validator.declarations.index.directory}: every
+ * update is appended to a log, and the log is periodically compacted into a snapshot of the index, so
+ * that a restart reads one entry per declaration plus the updates since the last compaction. The
+ * snapshot is replaced atomically before the log is emptied, and replaying a log over a snapshot which
+ * already contains it gives the same index. The updates are written to disk by {@link #sync()}, so a
+ * crash at any point loses at most the updates since the last sync.
+ */
+@Slf4j
+@Component
+public class DeclarationIndex implements MeterBinder {
+
+    private static final String SNAPSHOT = "snapshot";
+    private static final String JOURNAL = "log";
+    private static final int MAX_FIELD_LENGTH = 1 << 16;
+
+    private final Path directory;
+    private final Map<String, Entry> latest = new ConcurrentHashMap<>();
+    // updates by type, then by key: a declaration keeps the key of its first version
+    private final Map<String, Map<String, Long>> modifications = new ConcurrentHashMap<>();
+    // guarded by this
+    private FileChannel journal;
+    private long journalRecords;
+
+    public DeclarationIndex(@Value("${validator.declarations.index.directory}") String directory) {
+        this.directory = Paths.get(directory);
+        try {
+            Files.createDirectories(this.directory);
+            load();
+            this.journal = FileChannel.open(this.directory.resolve(JOURNAL), StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.APPEND);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot open the declaration index in " + directory, e);
+        }
+        log.info("Declaration index loaded from {}: {} declarations, {} updates to compact", directory, latest.size(), journalRecords);
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        Gauge.builder("validator.declarations.index.size", latest, Map::size)
+            .description("Number of declarations in the index")
+            .register(registry);
+    }
+
+    /**
+     * @param id id of a declaration
+     * @return the CID of the latest version of the declaration, or null if it has never been published
+     */
+    public String getLatest(String id) {
+        Entry entry = latest.get(id);
+        return entry != null ? entry.hash : null;
+    }
+
+    /**
+     * @param id id of a declaration
+     * @return the id of the key which signed the first version of the declaration, or null if it has never
+     *         been published
+     */
+    public String getKeyId(String id) {
+        Entry entry = latest.get(id);
+        return entry != null ? entry.keyId : null;
+    }
+
+    /**
+     * Scans the whole index.
+     *
+     * @param type type of declaration
+     * @param keyIds ids of the keys whose declarations are listed
+     * @return the CID of the latest version of every declaration of the keys whose latest version has the
+     *         type, by id
+     */
+    public SortedMap<String, String> getLatestByType(String type, Set<String> keyIds) {
+        SortedMap<String, String> declarations = new TreeMap<>();
+        latest.forEach((id, entry) -> {
+            if (type.equals(entry.type) && keyIds.contains(entry.keyId)) {
+                declarations.put(id, entry.hash);
+            }
+        });
+        return declarations;
+    }
+
+    /**
+     * @param type type of declaration
+     * @param keyIds ids of the keys whose declarations are listed
+     * @return the number of updates which added, changed or removed a declaration of the type of one of the
+     *         keys since the start, so that a list of {@link #getLatestByType(String, Set)} is known to be
+     *         stale when it has changed, and only then
+     */
+    public long getModifications(String type, Set<String> keyIds) {
+        Map<String, Long> byKey = modifications.get(type);
+        if (byKey == null) {
+            return 0;
+        }
+        long count = 0;
+        for (String keyId : keyIds) {
+            count += byKey.getOrDefault(keyId, 0L);
+        }
+        return count;
+    }
+
+    /**
+     * Record the CID of the latest version of a declaration, unless the declaration belongs to another key.
+     * The update is written to disk by the next {@link #sync()}.
+     *
+     * @param id id of the declaration
+     * @param type type of the version, or null
+     * @param hash CID of the version
+     * @param keyId id of the key which signed the version
+     * @return false if the declaration belongs to another key, in which case the index is not updated
+     */
+    public synchronized boolean update(String id, String type, String hash, String keyId) {
+        Entry entry = new Entry(hash, type, keyId);
+        Entry previous = latest.get(id);
+        if (previous != null && !previous.keyId.equals(keyId)) {
+            return false;
+        }
+        if (entry.equals(previous)) {
+            return true;
+        }
+        try {
+            ByteArrayOutputStream record = new ByteArrayOutputStream();
+            write(new DataOutputStream(record), id, entry);
+            ByteBuffer buffer = ByteBuffer.wrap(record.toByteArray());
+            while (buffer.hasRemaining()) {
+                journal.write(buffer);
+            }
+            journalRecords++;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Error while writing to the declaration index", e);
+        }
+        latest.put(id, entry);
+        modified(type, keyId);
+        if (previous != null && !Objects.equals(previous.type, type)) {
+            modified(previous.type, keyId);
+        }
+        return true;
+    }
+
+    /**
+     * Write the updates of the log to disk, e.g. once the updates of a record have been made and before
+     * answering that it is published.
+     */
+    public synchronized void sync() {
+        try {
+            journal.force(false);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Error while writing to the declaration index", e);
+        }
+    }
+
+    public int size() {
+        return latest.size();
+    }
+
+    /**
+     * Write the index to a new snapshot and empty the log, unless no update has been logged since the last
+     * compaction.
+     */
+    @Scheduled(initialDelayString = "${validator.declarations.index.compaction-interval}",
+        fixedDelayString = "${validator.declarations.index.compaction-interval}")
+    public synchronized void compact() {
+        if (journalRecords == 0) {
+            return;
+        }
+        Path snapshot = directory.resolve(SNAPSHOT);
+        Path next = directory.resolve(SNAPSHOT + ".tmp");
+        try {
+            try (FileChannel channel = FileChannel.open(next, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+                DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(channel)));
+                for (Map.Entry<String, Entry> entry : latest.entrySet()) {
+                    write(out, entry.getKey(), entry.getValue());
+                }
+                out.flush();
+                channel.force(true);
+            }
+            Files.move(next, snapshot, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            journal.truncate(0);
+            journal.force(true);
+            log.info("Compacted {} updates of the declaration index into a snapshot of {} declarations", journalRecords, latest.size());
+            journalRecords = 0;
+        } catch (IOException e) {
+            log.warn("Compaction of the declaration index failed", e);
+        }
+    }
+
+    private void modified(String type, String keyId) {
+        if (type != null) {
+            modifications.computeIfAbsent(type, key -> new ConcurrentHashMap<>()).merge(keyId, 1L, Long::sum);
+        }
+    }
+
+    @PreDestroy
+    public synchronized void close() throws IOException {
+        compact();
+        journal.close();
+    }
+
+    private void load() throws IOException {
+        Path snapshot = directory.resolve(SNAPSHOT);
+        if (Files.exists(snapshot)) {
+            read(snapshot);
+        }
+        Path journalFile = directory.resolve(JOURNAL);
+        if (Files.exists(journalFile)) {
+            Replay replay = read(journalFile);
+            journalRecords = replay.records;
+            if (Files.size(journalFile) > replay.length) {
+                // an update interrupted by a crash is cut off, so that the next ones follow a whole record
+                try (FileChannel channel = FileChannel.open(journalFile, StandardOpenOption.WRITE)) {
+                    channel.truncate(replay.length);
+                }
+            }
+        }
+    }
+
+    /**
+     * Read the records of the file into the index, up to the first incomplete record.
+     */
+    private Replay read(Path file) throws IOException {
+        Replay replay = new Replay();
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            while (true) {
+                byte[] id;
+                byte[] hash;
+                byte[] type;
+                byte[] keyId;
+                try {
+                    id = readField(in);
+                    hash = readField(in);
+                    type = readField(in);
+                    keyId = readField(in);
+                } catch (EOFException e) {
+                    return replay;
+                }
+                latest.put(new String(id, StandardCharsets.UTF_8), new Entry(new String(hash, StandardCharsets.UTF_8),
+                    type.length > 0 ? new String(type, StandardCharsets.UTF_8) : null, new String(keyId, StandardCharsets.UTF_8)));
+                replay.records++;
+                replay.length += 16 + id.length + hash.length + type.length + keyId.length;
+            }
+        }
+    }
+
+    private static byte[] readField(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0 || length > MAX_FIELD_LENGTH) {
+            // the length of a record whose writing was interrupted
+            throw new EOFException();
+        }
+        byte[] field = new byte[length];
+        in.readFully(field);
+        return field;
+    }
+
+    private static void write(DataOutputStream out, String id, Entry entry) throws IOException {
+        writeField(out, id);
+        writeField(out, entry.hash);
+        // no type is written as an empty one
+        writeField(out, entry.type != null ? entry.type : "");
+        writeField(out, entry.keyId);
+    }
+
+    private static void writeField(DataOutputStream out, String field) throws IOException {
+        byte[] bytes = field.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    @lombok.Value
+    private static class Entry {
+        String hash;
+        String type;
+        String keyId;
+    }
+
+    private static class Replay {
+        private long records;
+        private long length;
+    }
+
+}
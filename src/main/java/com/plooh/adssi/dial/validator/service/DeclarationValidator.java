@@ -0,0 +1,126 @@
+package com.plooh.adssi.dial.validator.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.plooh.adssi.dial.validator.model.SignedDeclaration;
+import com.plooh.adssi.dial.validator.util.Jws;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+/**
+ * Parses the records of declarations and verifies the signature of every declaration.
+ *
+ * A record is a JSON object whose {@code declarations} array holds the signed declarations, each a JWS
+ * (see {@link Jws}) whose payload is a JSON object with an {@code id}. The declarations are decoded and
+ * verified in parallel batches by the {@link SignatureVerifier}.
+ */
+@Slf4j
+@Service
+public class DeclarationValidator {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+    private static final int MAX_ID_LENGTH = 1024;
+    private static final int MAX_TYPE_LENGTH = 256;
+
+    private final SignatureVerifier verifier;
+    private final int maxDeclarations;
+
+    public DeclarationValidator(SignatureVerifier verifier,
+                                @Value("${validator.publish.max-declarations}") int maxDeclarations) {
+        this.verifier = verifier;
+        this.maxDeclarations = maxDeclarations;
+    }
+
+    /**
+     * Parse the record and verify its declarations on the pool of the verifier.
+     *
+     * @param record
+     * @return the result of every declaration of the record, in the order of the record
+     * @throws BadRequestException if the record is not a valid record, before any verification
+     */
+    public CompletableFuture<List<Result>> validate(String record) {
+        List<JsonNode> declarations = parse(record);
+        return verifier.verifyAll(declarations.size(), index -> validate(index, declarations.get(index)));
+    }
+
+    private List<JsonNode> parse(String record) {
+        JsonNode declarations;
+        try {
+            declarations = MAPPER.readTree(record).path("declarations");
+        } catch (JsonProcessingException e) {
+            throw new BadRequestException("The record is not valid JSON: " + e.getOriginalMessage(), e);
+        }
+        if (!declarations.isArray()) {
+            throw new BadRequestException("The record has no declarations array");
+        }
+        if (declarations.size() > maxDeclarations) {
+            throw new BadRequestException("The record has more than " + maxDeclarations + " declarations");
+        }
+        List<JsonNode> list = new ArrayList<>(declarations.size());
+        declarations.forEach(list::add);
+        return list;
+    }
+
+    private Result validate(int index, JsonNode jws) {
+        try {
+            if (!jws.isObject()) {
+                throw new IllegalArgumentException("The declaration is not a JWS");
+            }
+            JsonNode header = Jws.header(jws);
+            if (!Jws.ES256.equals(header.path("alg").asText())) {
+                throw new IllegalArgumentException("Unsupported algorithm: " + header.path("alg").asText());
+            }
+            JsonNode jwk = header.path("jwk");
+            String keyId = header.path("kid").asText();
+            if (!jwk.isObject() || !Jws.thumbprint(jwk).equals(keyId)) {
+                throw new IllegalArgumentException("The key id is not the thumbprint of the key");
+            }
+            if (!verifier.verify(keyId, jwk, Jws.signingInput(jws), Jws.signature(jws))) {
+                throw new IllegalArgumentException("Invalid signature");
+            }
+            JsonNode payload = Jws.payload(jws);
+            String id = payload.path("id").asText();
+            if (id.isEmpty()) {
+                throw new IllegalArgumentException("The declaration has no id");
+            }
+            if (id.length() > MAX_ID_LENGTH) {
+                throw new IllegalArgumentException("The declaration id is longer than " + MAX_ID_LENGTH + " characters");
+            }
+            String type = payload.hasNonNull("type") ? payload.get("type").asText() : null;
+            if (type != null && type.length() > MAX_TYPE_LENGTH) {
+                throw new IllegalArgumentException("The declaration type is longer than " + MAX_TYPE_LENGTH + " characters");
+            }
+            return Result.valid(new SignedDeclaration(index, id, type, keyId, payload, MAPPER.writeValueAsBytes(jws)));
+        } catch (IllegalArgumentException | JsonProcessingException e) {
+            return Result.invalid(index, e.getMessage());
+        }
+    }
+
+    /**
+     * The declaration at a position of a record when it is valid, otherwise why it is not.
+     */
+    @lombok.Value
+    public static class Result {
+        int index;
+        SignedDeclaration declaration;
+        String error;
+
+        static Result valid(SignedDeclaration declaration) {
+            return new Result(declaration.getIndex(), declaration, null);
+        }
+
+        static Result invalid(int index, String error) {
+            return new Result(index, null, error);
+        }
+
+        public boolean isValid() {
+            return declaration != null;
+        }
+    }
+
+}
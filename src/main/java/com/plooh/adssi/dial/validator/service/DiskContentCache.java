@@ -0,0 +1,667 @@
+package com.plooh.adssi.dial.validator.service;
+
+import com.plooh.adssi.dial.validator.util.FileRegionInputStream;
+import com.plooh.adssi.dial.validator.util.UnixFsHasher;
+import io.ipfs.multihash.Multihash;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import io.micrometer.core.instrument.binder.cache.CacheMeterBinder;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+
+/**
+ * Second level of the content cache, on disk, so that the content of the CIDs survives restarts and is
+ * not bounded by the heap.
+ *
+ * Objects are appended as records (multihash, length, content) to segment files of
+ * {@code ipfs.cache.disk.segment-size}, preallocated and memory-mapped. The segments describe themselves:
+ * at startup the index is rebuilt by reading the record headers only, never the content. A record is
+ * committed by writing its magic number last, so a record interrupted by a crash is ignored.
+ *
+ * The disk budget {@code ipfs.cache.disk.max-size} is a number of segments. When a new segment is needed
+ * the oldest one is recycled: the objects read since they were written get a second chance and are copied
+ * to the new segment, the others are evicted. This approximates LRU without rewriting the segments on
+ * every read.
+ *
+ * Only content whose CID can be computed by {@link UnixFsHasher} is stored, and the content loaded from a
+ * previous run is checked against its CID the first time it is read, so a corrupted record is never served.
+ */
+@Slf4j
+@Component
+public class DiskContentCache implements MeterBinder {
+
+    static final int MAGIC = 0x43494431;
+
+    private static final String SEGMENT_PREFIX = "segment-";
+    private static final String SEGMENT_SUFFIX = ".dat";
+    private static final String INCOMING_SUFFIX = ".tmp";
+    // magic, key length, content length
+    private static final int HEADER_SIZE = 4 + 2 + 4;
+
+    private final boolean enabled;
+    private final Path directory;
+    private final int segmentSize;
+    private final int maxSegments;
+    private final Map<Multihash, Entry> index = new ConcurrentHashMap<>();
+    // oldest first, the last one is written, guarded by this
+    private final Deque<Segment> segments = new ArrayDeque<>();
+    private int nextSegmentId;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong puts = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+    private final AtomicLong corrupted = new AtomicLong();
+
+    @Autowired
+    public DiskContentCache(@Value("${ipfs.cache.disk.enabled}") boolean enabled,
+                            @Value("${ipfs.cache.disk.directory}") String directory,
+                            @Value("${ipfs.cache.disk.max-size}") DataSize maxSize,
+                            @Value("${ipfs.cache.disk.segment-size}") DataSize segmentSize) {
+        if (segmentSize.toBytes() > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Segment size must be less than 2GB: " + segmentSize);
+        }
+        this.directory = Paths.get(directory);
+        this.segmentSize = (int) segmentSize.toBytes();
+        this.maxSegments = (int) Math.max(2, maxSize.toBytes() / segmentSize.toBytes());
+        this.enabled = enabled && load();
+        log.info("IPFS disk content cache enabled: {}, directory: {}, max size: {}, segment size: {}, objects: {}",
+            this.enabled, directory, maxSize, segmentSize, index.size());
+    }
+
+    /**
+     * @return a cache storing nothing
+     */
+    public static DiskContentCache disabled() {
+        return new DiskContentCache(false, ".", DataSize.ofMegabytes(2), DataSize.ofMegabytes(1));
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        new DiskCacheMetrics(this).bindTo(registry);
+    }
+
+    /**
+     * Get the cached content of the given multihash.
+     *
+     * @param multihash
+     * @return cached content or null
+     */
+    public byte[] get(Multihash multihash) {
+        Entry entry = acquire(multihash);
+        if (entry == null) {
+            return null;
+        }
+        try {
+            byte[] content = new byte[entry.length];
+            entry.segment.region(entry.offset, entry.length).get(content);
+            return content;
+        } finally {
+            entry.segment.release();
+        }
+    }
+
+    /**
+     * Get the cached content of the given multihash as a stream over the segment file. The caller must
+     * close the stream.
+     *
+     * @param multihash
+     * @return cached content stream or null
+     */
+    public InputStream getStream(Multihash multihash) {
+        return getStream(multihash, 0, Long.MAX_VALUE);
+    }
+
+    /**
+     * Get a range of the cached content of the given multihash as a stream over the segment file. The
+     * caller must close the stream.
+     *
+     * @param multihash
+     * @param offset first byte of the range
+     * @param length number of bytes of the range
+     * @return cached content stream or null
+     */
+    public InputStream getStream(Multihash multihash, long offset, long length) {
+        Entry entry = acquire(multihash);
+        if (entry == null) {
+            return null;
+        }
+        int from = (int) Math.min(offset, entry.length);
+        int count = (int) Math.min(length, entry.length - from);
+        Segment segment = entry.segment;
+        return new FileRegionInputStream(segment.channel, entry.offset + from, segment.region(entry.offset + from, count),
+            segment::release);
+    }
+
+    /**
+     * Get the size of the cached content of the given multihash, without checking the content.
+     *
+     * @param multihash
+     * @return size in bytes, or -1 if the content is not cached
+     */
+    public long size(Multihash multihash) {
+        Entry entry = enabled ? index.get(new Multihash(multihash)) : null;
+        return entry != null ? entry.length : -1;
+    }
+
+    /**
+     * Cache the content of the given multihash, unless it does not fit in a segment or its CID cannot be
+     * computed locally.
+     *
+     * @param multihash
+     * @param content
+     */
+    public void put(Multihash multihash, byte[] content) {
+        Multihash key = new Multihash(multihash);
+        if (!enabled || content == null || !fits(key, content.length) || index.containsKey(key)
+            || !isContentOf(UnixFsHasher.hash(content), key)) {
+            return;
+        }
+        append(key, content.length, (channel, position) -> write(channel, ByteBuffer.wrap(content), position));
+    }
+
+    /**
+     * Wrap the given content stream so that the content is cached once it has been read to the end. The
+     * content is spooled to a file of the cache directory while it is read, not to the heap.
+     *
+     * @param multihash
+     * @param in content stream
+     * @return stream to read instead of the given one
+     */
+    public InputStream readThrough(Multihash multihash, InputStream in) {
+        Multihash key = new Multihash(multihash);
+        return enabled && !index.containsKey(key) ? new ReadThroughInputStream(key, in) : in;
+    }
+
+    @PreDestroy
+    public synchronized void close() {
+        for (Segment segment : segments) {
+            segment.release();
+        }
+        segments.clear();
+        index.clear();
+    }
+
+    private Entry acquire(Multihash multihash) {
+        if (!enabled) {
+            return null;
+        }
+        Entry entry = index.get(new Multihash(multihash));
+        // the segment may have been recycled since the lookup
+        if (entry == null || !entry.segment.retain()) {
+            misses.incrementAndGet();
+            return null;
+        }
+        if (!entry.verified && !verify(entry)) {
+            entry.segment.release();
+            misses.incrementAndGet();
+            return null;
+        }
+        entry.referenced = true;
+        hits.incrementAndGet();
+        return entry;
+    }
+
+    private boolean verify(Entry entry) {
+        try {
+            ByteBuffer content = entry.segment.region(entry.offset, entry.length);
+            if (isContentOf(UnixFsHasher.hash(new FileRegionInputStream(entry.segment.channel, entry.offset, content, () -> { })),
+                entry.key)) {
+                entry.verified = true;
+                return true;
+            }
+        } catch (IOException e) {
+            log.warn("Error while checking {} in the disk content cache", entry.key, e);
+        }
+        log.warn("Content of {} in the disk content cache does not match its CID, evicting it", entry.key);
+        corrupted.incrementAndGet();
+        index.remove(entry.key, entry);
+        return false;
+    }
+
+    private boolean fits(Multihash key, long length) {
+        return HEADER_SIZE + key.toBytes().length + length <= segmentSize;
+    }
+
+    private static boolean isContentOf(Multihash computed, Multihash key) {
+        return new Multihash(computed).equals(key);
+    }
+
+    private synchronized void append(Multihash key, int length, ContentWriter writer) {
+        if (index.containsKey(key)) {
+            return;
+        }
+        try {
+            byte[] keyBytes = key.toBytes();
+            int recordSize = HEADER_SIZE + keyBytes.length + length;
+            Segment segment = segments.peekLast();
+            if (segment == null || segment.position + recordSize > segment.capacity) {
+                segment = roll(recordSize);
+            }
+            int position = segment.position;
+            int offset = position + HEADER_SIZE + keyBytes.length;
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE + keyBytes.length)
+                .putInt(0).putShort((short) keyBytes.length).put(keyBytes).putInt(length).flip();
+            write(segment.channel, header, position);
+            writer.write(segment.channel, offset);
+            // the record is committed by its magic number, written last
+            write(segment.channel, ByteBuffer.allocate(4).putInt(0, MAGIC), position);
+            segment.position = offset + length;
+            Entry entry = new Entry(key, segment, position, offset, length, true);
+            segment.entries.add(entry);
+            index.put(key, entry);
+            puts.incrementAndGet();
+        } catch (IOException e) {
+            log.warn("Error while writing {} to the disk content cache", key, e);
+        }
+    }
+
+    /**
+     * @param reserved size of the record written first to the next segment, left free by the recycling
+     */
+    private Segment roll(int reserved) throws IOException {
+        Segment next = Segment.open(segmentPath(nextSegmentId++), segmentSize);
+        Segment oldest = segments.size() >= maxSegments ? segments.pollFirst() : null;
+        segments.addLast(next);
+        if (oldest != null) {
+            recycle(oldest, next, Math.min(next.capacity / 2, next.capacity - reserved));
+        }
+        return next;
+    }
+
+    /**
+     * Copy the objects of the oldest segment read since they were written to the next segment, up to the
+     * given limit, at most half of it so that there is room for new objects, and evict the other objects.
+     */
+    private void recycle(Segment oldest, Segment next, int limit) throws IOException {
+        for (Entry entry : oldest.entries) {
+            if (index.get(entry.key) != entry) {
+                continue;
+            }
+            int recordSize = entry.offset + entry.length - entry.record;
+            if (entry.referenced && next.position + recordSize <= limit) {
+                write(next.channel, oldest.region(entry.record, recordSize), next.position);
+                Entry moved = new Entry(entry.key, next, next.position, next.position + entry.offset - entry.record,
+                    entry.length, entry.verified);
+                next.position += recordSize;
+                next.entries.add(moved);
+                index.replace(entry.key, entry, moved);
+            } else {
+                index.remove(entry.key, entry);
+                evictions.incrementAndGet();
+            }
+        }
+        delete(oldest);
+    }
+
+    /**
+     * @return false if the directory cannot be used, in which case nothing is cached
+     */
+    private boolean load() {
+        try {
+            Files.createDirectories(directory);
+            TreeMap<Integer, Path> files = new TreeMap<>();
+            try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory)) {
+                for (Path file : stream) {
+                    String name = file.getFileName().toString();
+                    if (name.endsWith(INCOMING_SUFFIX)) {
+                        // content of a read interrupted by a restart
+                        Files.deleteIfExists(file);
+                    } else if (name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX)) {
+                        files.put(Integer.parseInt(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length())), file);
+                    }
+                }
+            }
+            for (Map.Entry<Integer, Path> file : files.entrySet()) {
+                Segment segment = Segment.open(file.getValue(), segmentSize);
+                scan(segment);
+                segments.addLast(segment);
+                nextSegmentId = file.getKey() + 1;
+            }
+            // the budget may have been reduced since the previous run
+            while (segments.size() > maxSegments) {
+                Segment oldest = segments.pollFirst();
+                for (Entry entry : oldest.entries) {
+                    index.remove(entry.key, entry);
+                }
+                delete(oldest);
+            }
+            return true;
+        } catch (IOException | RuntimeException e) {
+            log.error("Disk content cache directory {} cannot be used, the content is only cached in memory", directory, e);
+            close();
+            return false;
+        }
+    }
+
+    /**
+     * Rebuild the index of the segment from the headers of its records, up to the first record which is
+     * not committed.
+     */
+    private void scan(Segment segment) {
+        MappedByteBuffer buffer = segment.buffer;
+        int position = 0;
+        while (position + HEADER_SIZE <= segment.capacity && buffer.getInt(position) == MAGIC) {
+            int keyLength = buffer.getShort(position + 4) & 0xFFFF;
+            int offset = position + HEADER_SIZE + keyLength;
+            if (offset > segment.capacity) {
+                break;
+            }
+            int length = buffer.getInt(offset - 4);
+            if (length < 0 || (long) offset + length > segment.capacity) {
+                break;
+            }
+            byte[] keyBytes = new byte[keyLength];
+            segment.region(position + 6, keyLength).get(keyBytes);
+            Multihash key;
+            try {
+                key = Multihash.deserialize(keyBytes);
+            } catch (IOException | RuntimeException e) {
+                break;
+            }
+            Entry entry = new Entry(key, segment, position, offset, length, false);
+            segment.entries.add(entry);
+            index.put(key, entry);
+            position = offset + length;
+        }
+        segment.position = position;
+    }
+
+    private void delete(Segment segment) {
+        segment.release();
+        try {
+            Files.deleteIfExists(segment.path);
+        } catch (IOException e) {
+            log.warn("Error while deleting the disk content cache segment {}", segment.path, e);
+        }
+    }
+
+    private Path segmentPath(int id) {
+        return directory.resolve(String.format("%s%08d%s", SEGMENT_PREFIX, id, SEGMENT_SUFFIX));
+    }
+
+    private synchronized long usedBytes() {
+        long used = 0;
+        for (Segment segment : segments) {
+            used += segment.position;
+        }
+        return used;
+    }
+
+    private static void write(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            position += channel.write(buffer, position);
+        }
+    }
+
+    @FunctionalInterface
+    private interface ContentWriter {
+        void write(FileChannel channel, long position) throws IOException;
+    }
+
+    private static class Entry {
+
+        private final Multihash key;
+        private final Segment segment;
+        private final int record;
+        private final int offset;
+        private final int length;
+        private volatile boolean verified;
+        private volatile boolean referenced;
+
+        Entry(Multihash key, Segment segment, int record, int offset, int length, boolean verified) {
+            this.key = key;
+            this.segment = segment;
+            this.record = record;
+            this.offset = offset;
+            this.length = length;
+            this.verified = verified;
+        }
+    }
+
+    /**
+     * A segment file and its mapping. The file is closed once it has been recycled and no stream reads it
+     * anymore.
+     */
+    private static class Segment {
+
+        private final Path path;
+        private final FileChannel channel;
+        private final MappedByteBuffer buffer;
+        private final int capacity;
+        private final List<Entry> entries = new ArrayList<>();
+        private final AtomicInteger references = new AtomicInteger(1);
+        private int position;
+
+        private Segment(Path path, FileChannel channel, MappedByteBuffer buffer, int capacity) {
+            this.path = path;
+            this.channel = channel;
+            this.buffer = buffer;
+            this.capacity = capacity;
+        }
+
+        static Segment open(Path path, int segmentSize) throws IOException {
+            try (RandomAccessFile file = new RandomAccessFile(path.toFile(), "rw")) {
+                if (file.length() == 0) {
+                    file.setLength(segmentSize);
+                }
+            }
+            FileChannel channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            int capacity = (int) Math.min(channel.size(), Integer.MAX_VALUE);
+            return new Segment(path, channel, channel.map(FileChannel.MapMode.READ_ONLY, 0, capacity), capacity);
+        }
+
+        ByteBuffer region(int offset, int length) {
+            return buffer.duplicate().position(offset).limit(offset + length).slice();
+        }
+
+        boolean retain() {
+            int count;
+            do {
+                count = references.get();
+                if (count == 0) {
+                    return false;
+                }
+            } while (!references.compareAndSet(count, count + 1));
+            return true;
+        }
+
+        void release() {
+            if (references.decrementAndGet() == 0) {
+                try {
+                    channel.close();
+                } catch (IOException e) {
+                    log.warn("Error while closing the disk content cache segment {}", path, e);
+                }
+            }
+        }
+    }
+
+    private class ReadThroughInputStream extends FilterInputStream {
+
+        private final Multihash key;
+        private Path spool;
+        private FileChannel copy;
+        private long size;
+        private boolean done;
+
+        ReadThroughInputStream(Multihash key, InputStream in) {
+            super(in);
+            this.key = key;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int read = super.read();
+            if (read == -1) {
+                complete();
+            } else {
+                spool(new byte[] {(byte) read}, 0, 1);
+            }
+            return read;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int read = super.read(b, off, len);
+            if (read == -1) {
+                complete();
+            } else {
+                spool(b, off, read);
+            }
+            return read;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            abort();
+            return super.skip(n);
+        }
+
+        @Override
+        public boolean markSupported() {
+            return false;
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                super.close();
+            } finally {
+                abort();
+            }
+        }
+
+        private void spool(byte[] b, int off, int len) {
+            if (done || len == 0) {
+                return;
+            }
+            size += len;
+            if (!fits(key, size)) {
+                abort();
+                return;
+            }
+            try {
+                if (copy == null) {
+                    spool = Files.createTempFile(directory, "incoming-", INCOMING_SUFFIX);
+                    copy = FileChannel.open(spool, StandardOpenOption.READ, StandardOpenOption.WRITE);
+                }
+                write(copy, ByteBuffer.wrap(b, off, len), size - len);
+            } catch (IOException e) {
+                log.debug("Error while spooling {} to the disk content cache", key, e);
+                abort();
+            }
+        }
+
+        private void complete() {
+            if (done) {
+                return;
+            }
+            try (InputStream content = copy != null ? Files.newInputStream(spool) : null) {
+                if (content != null && isContentOf(UnixFsHasher.hash(content), key)) {
+                    long length = size;
+                    FileChannel source = copy;
+                    append(key, (int) length, (channel, position) -> {
+                        long transferred = 0;
+                        while (transferred < length) {
+                            transferred += source.transferTo(transferred, length - transferred, channel.position(position + transferred));
+                        }
+                    });
+                }
+            } catch (IOException e) {
+                log.debug("Error while reading back {} from the disk content cache", key, e);
+            } finally {
+                abort();
+            }
+        }
+
+        private void abort() {
+            done = true;
+            if (copy == null) {
+                return;
+            }
+            try {
+                copy.close();
+                Files.deleteIfExists(spool);
+            } catch (IOException e) {
+                log.debug("Error while deleting {}", spool, e);
+            }
+            copy = null;
+        }
+    }
+
+    private static class DiskCacheMetrics extends CacheMeterBinder {
+
+        private final DiskContentCache cache;
+
+        DiskCacheMetrics(DiskContentCache cache) {
+            super(cache, "ipfs.content.disk", Tags.empty());
+            this.cache = cache;
+        }
+
+        @Override
+        protected Long size() {
+            return (long) cache.index.size();
+        }
+
+        @Override
+        protected long hitCount() {
+            return cache.hits.get();
+        }
+
+        @Override
+        protected Long missCount() {
+            return cache.misses.get();
+        }
+
+        @Override
+        protected Long evictionCount() {
+            return cache.evictions.get();
+        }
+
+        @Override
+        protected long putCount() {
+            return cache.puts.get();
+        }
+
+        @Override
+        protected void bindImplementationSpecificMetrics(MeterRegistry registry) {
+            Gauge.builder("ipfs.content.disk.used", cache, DiskContentCache::usedBytes)
+                .baseUnit("bytes")
+                .description("Bytes of the segments used by the records")
+                .register(registry);
+            FunctionCounter.builder("ipfs.content.disk.corrupted", cache.corrupted, AtomicLong::get)
+                .description("Objects evicted because their content did not match their CID")
+                .register(registry);
+        }
+    }
+
+}
@@ -0,0 +1,89 @@
+package com.plooh.adssi.dial.validator.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.ipfs.multihash.Multihash;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.zip.GZIPOutputStream;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+
+/**
+ * Gzip variants of the hot content, i.e. of the content held by the {@link IpfsContentCache}, so that
+ * popular declarations are compressed once instead of on every download.
+ *
+ * Content is only compressed when it saves at least 10% of its size: for already compressed content
+ * (images, archives) an empty variant is cached instead, so that it is not compressed again.
+ */
+@Slf4j
+@Component
+public class GzipContentCache implements MeterBinder {
+
+    private static final byte[] NOT_COMPRESSIBLE = new byte[0];
+    private static final double MAX_RATIO = 0.9;
+
+    private final boolean enabled;
+    private final long minSize;
+    private final IpfsContentCache contentCache;
+    private final Cache<Multihash, byte[]> variants;
+
+    public GzipContentCache(@Value("${ipfs.cache.gzip.enabled}") boolean enabled,
+                            @Value("${ipfs.cache.gzip.max-size}") DataSize maxSize,
+                            @Value("${ipfs.cache.gzip.min-size}") DataSize minSize,
+                            IpfsContentCache contentCache) {
+        this.enabled = enabled;
+        this.minSize = minSize.toBytes();
+        this.contentCache = contentCache;
+        this.variants = Caffeine.newBuilder()
+            .maximumWeight(maxSize.toBytes())
+            .weigher((Multihash key, byte[] value) -> value.length + 1)
+            .recordStats()
+            .build();
+        log.info("Gzip content cache enabled: {}, max size: {}", enabled, maxSize);
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        CaffeineCacheMetrics.monitor(registry, variants, "ipfs.content.gzip");
+    }
+
+    /**
+     * Get the gzip variant of the content of the given multihash, compressing it if the content is hot.
+     *
+     * @param multihash
+     * @return the compressed content, or null if the content is not in the content cache, is too small or
+     * does not compress well
+     */
+    public byte[] getGzip(Multihash multihash) {
+        if (!enabled) {
+            return null;
+        }
+        byte[] variant = variants.getIfPresent(multihash);
+        if (variant == null) {
+            byte[] content = contentCache.getContent(multihash);
+            if (content == null || content.length < minSize) {
+                return null;
+            }
+            variant = variants.get(multihash, key -> gzip(content));
+        }
+        return variant == NOT_COMPRESSIBLE ? null : variant;
+    }
+
+    private static byte[] gzip(byte[] content) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(content.length / 2);
+        try (GZIPOutputStream gzip = new GZIPOutputStream(out)) {
+            gzip.write(content);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return out.size() < content.length * MAX_RATIO ? out.toByteArray() : NOT_COMPRESSIBLE;
+    }
+
+}
@@ -1,18 +1,34 @@
 package com.plooh.adssi.dial.validator.service;
 
+import com.plooh.adssi.dial.validator.model.BatchAddResult;
+import com.plooh.adssi.dial.validator.model.Pin;
+import com.plooh.adssi.dial.validator.model.PinPage;
+import com.plooh.adssi.dial.validator.util.InputStreamSourceWrapper;
+import com.plooh.adssi.dial.validator.util.IpfsRpc;
 import com.plooh.adssi.dial.validator.util.IpfsUtil;
+import com.plooh.adssi.dial.validator.util.SingleFlight;
+import com.plooh.adssi.dial.validator.util.UnixFsHasher;
 import io.ipfs.api.IPFS;
 import io.ipfs.api.MerkleNode;
 import io.ipfs.api.NamedStreamable;
 import io.ipfs.api.Options;
 import io.ipfs.multihash.Multihash;
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.net.URLEncoder;
 import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Base64;
 import java.util.List;
 import java.util.Map;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
 import java.util.stream.Collectors;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.core.io.InputStreamSource;
 import org.springframework.stereotype.Service;
 
 @Slf4j
@@ -20,7 +36,21 @@ import org.springframework.stereotype.Service;
 @RequiredArgsConstructor
 public class IpfsApi {
 
-    private final IPFS ipfs;
+    // blocks of the unpinned DAGs checked one by one with the node, beyond which the whole index is reloaded
+
+    private final IpfsNodePool pool;
+    private final IpfsContentCache cache;
+    private final DiskContentCache diskCache;
+    private final PinIndex pinIndex;
+    private final IpfsMetrics metrics;
+    private final IpfsGuard guard;
+
+    // concurrent identical calls are sent once, keyed by the bare multihash so that every encoding and
+    // version of a CID share the call, the adds by the CID computed locally from the content
+    private final SingleFlight<Multihash, byte[]> catFlights = new SingleFlight<>();
+    private final SingleFlight<Multihash, List<MerkleNode>> lsFlights = new SingleFlight<>();
+    private final SingleFlight<Multihash, List<Multihash>> pinFlights = new SingleFlight<>();
+    private final SingleFlight<Multihash, MerkleNode> addFlights = new SingleFlight<>();
 
     /**
      *  Get the IPFS Name
@@ -28,12 +58,24 @@ public class IpfsApi {
      * @return
      */
     public String getIpfsName(){
-        return ipfs.host;
+        return pool.getPrimaryHost();
+    }
+
+    /**
+     * Compute the CID the IPFS node would give to the file, without sending it to the node.
+     *
+     * @param content source of the file content, read once
+     * @return unique identifier of the file called "multihash"
+     */
+    public Multihash hashFile(InputStreamSource content) throws IOException {
+        try (InputStream in = content.getInputStream()) {
+            return UnixFsHasher.hash(in);
+        }
     }
 
     /**
      * Add a file on the IPFS network by uploading it to the connected IPFS
-     * node and stored in its local datastore.
+     * node and stored in its local datastore. Content already pinned on the node is not uploaded again.
      *
      * @param content
      * @return unique identifier of the file called "multihash"
@@ -44,41 +86,216 @@ public class IpfsApi {
 
     public String addFile(byte[] content, String fileName){
         try {
+            Multihash local = UnixFsHasher.hash(content);
+            if (isStored(local)) {
+                return IpfsUtil.toBase58(local);
+            }
             NamedStreamable file = new NamedStreamable.ByteArrayWrapper(fileName, content);
-            MerkleNode response = ipfs.add(file, Map.of(Options.RAW_LEAVES, "true")).get(0);
-            String hash = IpfsUtil.toBase58(response.hash);
-            log.info("Filename: {}, Hash (base 58): {}", response.name.orElse("unknown"), hash);
-            return hash;
+            MerkleNode response = addFlights.execute(flightKey(local), () -> {
+                MerkleNode added = call(IpfsOperation.ADD, () -> pool.write(ipfs -> IpfsRpc.add(ipfs, List.of(file),
+                    Map.of(Options.RAW_LEAVES, "true"), readTimeout(IpfsOperation.ADD), bytes -> metrics.sent(IpfsOperation.ADD, bytes)),
+                    this::pinReplicas)).get(0);
+                pinIndex.add(added.hash);
+                return added;
+            }, () -> metrics.coalesced(IpfsOperation.ADD));
+            return toHash(response);
         } catch (IOException e) {
-            throw new RuntimeException("Error while adding file to the IPFS node", e);
+            throw IpfsException.of("Error while adding file to the IPFS node", e);
         }
     }
 
     /**
-     * Get the file content of the given hash.
+     * Add a file on the IPFS network, streaming its content to the connected IPFS node so that
+     * it is never held on the heap as a whole. The content is read a first time to compute its CID, and
+     * is not uploaded if it is already pinned on the node.
+     *
+     * @param content source of the file content, e.g. an uploaded multipart file
+     * @param fileName
+     * @return unique identifier of the file called "multihash"
+     */
+    public String addFile(InputStreamSource content, String fileName){
+        try {
+            Multihash local = hashFile(content);
+            if (isStored(local)) {
+                return IpfsUtil.toBase58(local);
+            }
+            NamedStreamable file = new InputStreamSourceWrapper(fileName, content);
+            MerkleNode response = call(IpfsOperation.ADD, () -> pool.write(ipfs -> IpfsRpc.add(ipfs, List.of(file),
+                Map.of(Options.RAW_LEAVES, "true"), readTimeout(IpfsOperation.ADD), bytes -> metrics.sent(IpfsOperation.ADD, bytes)),
+                this::pinReplicas)).get(0);
+            pinIndex.add(response.hash);
+            return toHash(response);
+        } catch (IOException e) {
+            throw IpfsException.of("Error while adding file to the IPFS node", e);
+        }
+    }
+
+    /**
+     * Add many files and directories on the IPFS network with a single request to the connected
+     * IPFS node, optionally wrapping them in a directory.
+     *
+     * @param files files and directories to add
+     * @param wrapWithDirectory whether to wrap the files in a directory
+     * @return the hash of every added file and directory, and the hash of the wrapping directory
+     */
+    public BatchAddResult addFiles(List<NamedStreamable> files, boolean wrapWithDirectory) {
+        try {
+            List<MerkleNode> nodes = call(IpfsOperation.ADD, () -> pool.write(ipfs -> IpfsRpc.add(ipfs, files,
+                Map.of(Options.RAW_LEAVES, "true", Options.WRAP_WITH_DIRECTORY, String.valueOf(wrapWithDirectory)),
+                readTimeout(IpfsOperation.ADD), bytes -> metrics.sent(IpfsOperation.ADD, bytes)), this::pinReplicas));
+            List<BatchAddResult.AddedFile> added = new ArrayList<>(nodes.size());
+            String root = null;
+            for (MerkleNode node : nodes) {
+                pinIndex.add(node.hash);
+                String hash = IpfsUtil.toBase58(node.hash);
+                String name = node.name.orElse("");
+                if (wrapWithDirectory && name.isEmpty()) {
+                    root = hash;
+                } else {
+                    Long size = node.largeSize.map(Long::valueOf).or(() -> node.size.map(Long::valueOf)).orElse(null);
+                    added.add(new BatchAddResult.AddedFile(name, hash, size));
+                }
+            }
+            log.debug("Added {} files to IPFS, root: {}", added.size(), root);
+            return new BatchAddResult(added, root);
+        } catch (IOException e) {
+            throw IpfsException.of("Error while adding files to the IPFS node", e);
+        }
+    }
+
+    /**
+     * Get the file content of the given hash. Content is served from the local caches, in memory then on
+     * disk, when present, otherwise the read is hedged over the IPFS nodes.
      *
      * @param hash
      * @return file content
      */
     public byte[] getFileByHash(String hash){
+        Multihash multihash = IpfsUtil.fromBase58(hash);
+        byte[] cached = cache.getContent(multihash);
+        if (cached != null) {
+            return cached;
+        }
+        cached = diskCache.get(multihash);
+        if (cached != null) {
+            cache.putContent(multihash, cached);
+            return cached;
+        }
         try {
-            return ipfs.cat(IpfsUtil.fromBase58(hash));
+            return catFlights.execute(flightKey(multihash), () -> {
+                byte[] content = call(IpfsOperation.CAT, () -> pool.hedgedRead(ipfs -> ipfs.cat(multihash),
+                    "cat?arg=" + multihash, InputStream::readAllBytes, metrics.hedge(IpfsOperation.CAT)));
+                metrics.received(IpfsOperation.CAT, content.length);
+                cache.putContent(multihash, content);
+                diskCache.put(multihash, content);
+                return content;
+            }, () -> metrics.coalesced(IpfsOperation.CAT));
         } catch (IOException e) {
-            throw new RuntimeException("Error while getting file from the IPFS node", e);
+            throw IpfsException.of("Error while getting file from the IPFS node", e);
         }
     }
 
     /**
-     * Get file information of the given hash.
+     * Get the file content of the given hash as a stream, without loading it onto the heap. Content
+     * cached on disk is streamed from the segment file. The caller must close the stream.
+     *
+     * @param hash
+     * @return file content stream
+     */
+    public InputStream getFileStreamByHash(String hash) {
+        Multihash multihash = IpfsUtil.fromBase58(hash);
+        byte[] cached = cache.getContent(multihash);
+        if (cached != null) {
+            return new ByteArrayInputStream(cached);
+        }
+        InputStream stored = diskCache.getStream(multihash);
+        if (stored != null) {
+            return stored;
+        }
+        try {
+            return diskCache.readThrough(multihash, cache.readThrough(multihash,
+                callStream(IpfsOperation.CAT, () -> pool.readStream(ipfs -> ipfs.catStream(multihash)))));
+        } catch (IOException e) {
+            throw IpfsException.of("Error while getting file from the IPFS node", e);
+        }
+    }
+
+    /**
+     * Get a range of the file content of the given hash as a stream. Only the requested range is
+     * read by the IPFS node. The caller must close the stream.
+     *
+     * @param hash
+     * @param offset first byte of the range
+     * @param length number of bytes of the range
+     * @return file content stream
+     */
+    public InputStream getFileStreamByHash(String hash, long offset, long length) {
+        Multihash multihash = IpfsUtil.fromBase58(hash);
+        byte[] cached = cache.getContent(multihash);
+        if (cached != null) {
+            int from = (int) Math.min(offset, cached.length);
+            return new ByteArrayInputStream(cached, from, (int) Math.min(length, cached.length - from));
+        }
+        InputStream stored = diskCache.getStream(multihash, offset, length);
+        if (stored != null) {
+            return stored;
+        }
+        try {
+            return callStream(IpfsOperation.CAT,
+                () -> pool.readStream(ipfs -> IpfsRpc.stream(ipfs, "cat?arg=" + multihash + "&offset=" + offset + "&length=" + length,
+                    readTimeout(IpfsOperation.CAT))));
+        } catch (IOException e) {
+            throw IpfsException.of("Error while getting file from the IPFS node", e);
+        }
+    }
+
+    /**
+     * Get the size in bytes of the file content of the given hash.
+     *
+     * @param hash
+     * @return file size
+     */
+    public long getFileSizeByHash(String hash) {
+        Multihash multihash = IpfsUtil.fromBase58(hash);
+        byte[] cached = cache.getContent(multihash);
+        if (cached != null) {
+            return cached.length;
+        }
+        long stored = diskCache.size(multihash);
+        if (stored >= 0) {
+            return stored;
+        }
+        try {
+            Map<String, Object> stat = call(IpfsOperation.STAT, () -> pool.read(ipfs -> IpfsRpc.map(ipfs, "files/stat?arg=/ipfs/" + multihash,
+                readTimeout(IpfsOperation.STAT))));
+            return ((Number) stat.get("Size")).longValue();
+        } catch (IOException e) {
+            throw IpfsException.of("Error while getting file size from the IPFS node", e);
+        }
+    }
+
+    /**
+     * Get file information of the given hash. Information is served from the local cache when present,
+     * otherwise the read is hedged over the IPFS nodes.
      *
      * @param hash
      * @return list of the content-addressable objects added on the IPFS network
      */
     public List<MerkleNode> getFileInfoByHash(String hash) {
+        Multihash multihash = IpfsUtil.fromBase58(hash);
+        List<MerkleNode> cached = cache.getInfo(multihash);
+        if (cached != null) {
+            return cached;
+        }
         try {
-            return ipfs.ls(IpfsUtil.fromBase58(hash));
+            return lsFlights.execute(flightKey(multihash), () -> {
+                List<MerkleNode> info = call(IpfsOperation.LS, () -> pool.hedgedRead(ipfs -> ipfs.ls(multihash),
+                    "ls?arg=" + multihash, IpfsRpc::links, metrics.hedge(IpfsOperation.LS)));
+                cache.putInfo(multihash, info);
+                return info;
+            }, () -> metrics.coalesced(IpfsOperation.LS));
         } catch (IOException e) {
-            throw new RuntimeException("Error while getting info from the IPFS node", e);
+            throw IpfsException.of("Error while getting info from the IPFS node", e);
         }
     }
 
@@ -92,10 +309,36 @@ public class IpfsApi {
      */
     public List<String> pinFileByHash(String hash) {
         try {
-            List<Multihash> list = ipfs.pin.add(IpfsUtil.fromBase58(hash));
-            return list.stream().map(multihash -> IpfsUtil.toBase58(multihash)).collect(Collectors.toList());
+            Multihash multihash = IpfsUtil.fromBase58(hash);
+            List<Multihash> list = pinFlights.execute(flightKey(multihash), () -> {
+                String command = "pin/add?arg=" + multihash;
+                List<Multihash> pinned = pins(call(IpfsOperation.PIN_ADD, () -> pool.write(ipfs -> pin(ipfs, command),
+                    result -> ipfs -> pin(ipfs, command))));
+                pinned.forEach(pinIndex::add);
+                return pinned;
+            }, () -> metrics.coalesced(IpfsOperation.PIN_ADD));
+            return list.stream().map(IpfsUtil::toBase58).collect(Collectors.toList());
+        } catch (IOException e) {
+            throw IpfsException.of("Error while pining to the IPFS node", e);
+        }
+    }
+
+    /**
+     * Pin several files with a single call to the IPFS node, which fails if any of them cannot be pinned.
+     *
+     * @param hashes
+     * @return list of the unique identifiers of the pinned files
+     */
+    public List<String> pinFilesByHash(List<String> hashes) {
+        String command = hashes.stream().map(hash -> "arg=" + IpfsUtil.fromBase58(hash))
+            .collect(Collectors.joining("&", "pin/add?", ""));
+        try {
+            List<Multihash> pinned = pins(call(IpfsOperation.PIN_ADD, () -> pool.write(ipfs -> pin(ipfs, command),
+                result -> ipfs -> pin(ipfs, command))));
+            pinned.forEach(pinIndex::add);
+            return pinned.stream().map(IpfsUtil::toBase58).collect(Collectors.toList());
         } catch (IOException e) {
-            throw new RuntimeException("Error while pining to the IPFS node", e);
+            throw IpfsException.of("Error while pining to the IPFS node", e);
         }
     }
 
@@ -107,25 +350,229 @@ public class IpfsApi {
      */
     public List<String> unpinFileByHash(String hash) {
         try {
-            List<Multihash> list = ipfs.pin.rm(IpfsUtil.fromBase58(hash));
-            return list.stream().map(multihash -> IpfsUtil.toBase58(multihash)).collect(Collectors.toList());
+            Multihash multihash = IpfsUtil.fromBase58(hash);
+            List<Multihash> list = pins(call(IpfsOperation.PIN_RM, () -> pool.writeEverywhere(
+                ipfs -> IpfsRpc.map(ipfs, "pin/rm?arg=" + multihash, readTimeout(IpfsOperation.PIN_RM)))));
+            // the blocks of the DAGs may still be pinned by other pins, left to the next reconciliation
+            list.forEach(pinIndex::remove);
+            pinIndex.markStale();
+            return list.stream().map(IpfsUtil::toBase58).collect(Collectors.toList());
+        } catch (IOException e) {
+            throw IpfsException.of("Error while unpining to the IPFS node", e);
+        }
+    }
+
+    /**
+     * Check whether the file with the given hash is pinned on the connected IPFS node. The answer comes
+     * from the in-memory {@link PinIndex}, loaded first if it is not yet.
+     *
+     * @param hash
+     * @return true if the file is pinned, directly, recursively or indirectly
+     */
+    public boolean isPinned(String hash) {
+        Multihash multihash = IpfsUtil.fromBase58(hash);
+        if (!pinIndex.isReady()) {
+            pinIndex.reconcileIfNotReady(this::listPins);
+        }
+        return pinIndex.contains(multihash);
+    }
+
+    /**
+     * Subscribe to a pubsub topic on the primary node. The subscription is not limited by the bulkhead
+     * and deadline of the other calls since it lasts until the returned stream is closed.
+     *
+     * @param topic
+     * @param idleTimeout time without message after which the stream fails
+     * @return the messages, as newline delimited JSON objects
+     */
+    public InputStream subscribe(String topic, Duration idleTimeout) {
+        try {
+            return pool.primary(ipfs -> IpfsRpc.stream(ipfs, "pubsub/sub?arg=" + URLEncoder.encode(topic, StandardCharsets.UTF_8),
+                (int) idleTimeout.toMillis()));
         } catch (IOException e) {
-            throw new RuntimeException("Error while unpining to the IPFS node", e);
+            throw IpfsException.of("Error while subscribing to " + topic, e);
         }
     }
 
     /**
-     * list all the content hosted on the connected IPFS node
+     * Reload the {@link PinIndex} with all the pins of the connected IPFS node.
+     */
+    public void reconcilePinIndex() {
+        pinIndex.reconcile(this::listPins);
+    }
+
+    /**
+     * @return true if pins have been removed since the last reconciliation of the {@link PinIndex}
+     */
+    public boolean isPinIndexStale() {
+        return pinIndex.isStale();
+    }
+
+    private void listPins(Consumer<Multihash> consumer) {
+        streamPins(IPFS.PinType.all, json -> {
+            consumer.accept(IpfsUtil.fromBase58((String) json.get("Cid")));
+            return true;
+        });
+    }
+
+    /**
+     * List one page of the content pinned on the connected IPFS node. The pins are streamed from the
+     * node, so the memory used does not depend on the number of pins.
+     *
+     * The node lists the pins in no particular order and cannot resume a listing, so the cursor is the
+     * position of the next page in the listing: pins added or removed while paging shift the next pages,
+     * which may then skip or repeat pins.
+     *
+     * @param type type of the pins to list
+     * @param cursor cursor returned with the previous page, or null for the first page
+     * @param limit maximum number of pins of the page
+     * @return page of pins
+     */
+    public PinPage listFiles(IPFS.PinType type, String cursor, int limit) {
+        long offset = decodeCursor(cursor);
+        List<Pin> pins = new ArrayList<>(Math.min(limit, 1024));
+        long[] position = {0};
+        boolean[] more = {false};
+        streamFiles(type, pin -> {
+            if (position[0]++ < offset) {
+                return true;
+            }
+            if (pins.size() == limit) {
+                more[0] = true;
+                return false;
+            }
+            pins.add(pin);
+            return true;
+        });
+        return new PinPage(pins, more[0] ? encodeCursor(offset + limit) : null);
+    }
+
+    /**
+     * Stream the content pinned on the connected IPFS node to the consumer, one pin at a time.
      *
-     * @return list of all content
+     * @param type type of the pins to list
+     * @param consumer receives each pin, returns false to stop the listing
+     */
+    public void streamFiles(IPFS.PinType type, Predicate<Pin> consumer) {
+        streamPins(type, json -> consumer.test(
+            new Pin(IpfsUtil.toBase58(IpfsUtil.fromBase58((String) json.get("Cid"))), (String) json.get("Type"))));
+    }
+
+    /**
+     * The listing is opened within the bulkhead and deadline of {@link IpfsOperation#PIN_LS}, like a cat,
+     * and read outside them: a slow consumer, e.g. a client of GET /ipfs/files, neither holds a slot of the
+     * bulkhead nor is cut off by the deadline.
      */
-    public List<String> listAllFiles() {
+    private void streamPins(IPFS.PinType type, Predicate<Map<String, Object>> consumer) {
         try {
-            Map<Multihash, Object> map = ipfs.pin.ls(IPFS.PinType.all);
-            return map.keySet().stream().map(multihash -> IpfsUtil.toBase58(multihash)).collect(Collectors.toList());
+            IpfsRpc.forEach(callStream(IpfsOperation.PIN_LS, () -> pool.primary(ipfs -> IpfsRpc.stream(ipfs, "pin/ls?stream=true&type=" + type,
+                readTimeout(IpfsOperation.PIN_LS)))), consumer);
         } catch (IOException e) {
-            throw new RuntimeException("Error while getting files from the IPFS node", e);
+            throw IpfsException.of("Error while getting files from the IPFS node", e);
         }
     }
 
+    private <T> T call(IpfsOperation operation, IpfsMetrics.IpfsCall<T> call) throws IOException {
+        return guard.call(operation, () -> metrics.record(operation, call));
+    }
+
+    private InputStream callStream(IpfsOperation operation, IpfsMetrics.IpfsCall<InputStream> call) throws IOException {
+        return guard.call(operation, () -> metrics.recordStream(operation, call));
+    }
+
+    private IpfsNodePool.IpfsNodeCall<?> pinReplicas(List<MerkleNode> added) {
+        return ipfs -> {
+            for (MerkleNode node : added) {
+                pin(ipfs, "pin/add?arg=" + node.hash);
+            }
+            return null;
+        };
+    }
+
+    /**
+     * The node answers a pin/add once the whole DAG is pinned, so the socket waits as long as the
+     * deadline of {@link IpfsOperation#PIN_ADD}.
+     */
+    private Map<String, Object> pin(IPFS ipfs, String command) throws IOException {
+        return IpfsRpc.map(ipfs, command, readTimeout(IpfsOperation.PIN_ADD));
+    }
+
+    /**
+     * @param operation
+     * @return the deadline of the calls of the operation, {@code ipfs.timeout.<op>}
+     */
+    public Duration timeout(IpfsOperation operation) {
+        return guard.timeout(operation);
+    }
+
+    /**
+     * @return the read timeout of the calls of the operation: its deadline, so that a call which answers
+     *         once done, like a pin/add, is not failed by the socket before
+     */
+    private int readTimeout(IpfsOperation operation) {
+        return (int) Math.min(Integer.MAX_VALUE, guard.timeout(operation).toMillis());
+    }
+
+    private static List<Multihash> pins(Map<String, Object> result) {
+        List<Multihash> pins = new ArrayList<>();
+        Object list = result.get("Pins");
+        if (list instanceof List) {
+            for (Object pin : (List<?>) list) {
+                pins.add(IpfsUtil.fromBase58(pin.toString()));
+            }
+        }
+        return pins;
+    }
+
+    /**
+     * Check the {@link PinIndex}, then the node, since an entry of the index may be stale until the next
+     * reconciliation, e.g. for content unpinned and garbage collected by another client of the node. A
+     * stale entry is removed.
+     *
+     * @return true if the content of the CID is pinned on the node, or has just been added to it
+     */
+    private boolean isStored(Multihash local) {
+        if (!pinIndex.contains(local)) {
+            return false;
+        }
+        try {
+            // offline, so that the node does not look for a missing block on the network
+            call(IpfsOperation.STAT, () -> pool.primary(ipfs -> IpfsRpc.map(ipfs, "block/stat?offline=true&arg=" + local,
+                readTimeout(IpfsOperation.STAT))));
+        } catch (IOException | IpfsException e) {
+            log.debug("Content {} is in the pin index but not stored on the node, uploaded", local, e);
+            pinIndex.remove(local);
+            return false;
+        }
+        metrics.deduplicated(IpfsOperation.ADD);
+        log.debug("Content {} is already stored, not uploaded", local);
+        return true;
+    }
+
+    private static Multihash flightKey(Multihash multihash) {
+        // a CID equals another one only with the same version and codec, the bare multihash does not
+        return new Multihash(multihash);
+    }
+
+    private static String toHash(MerkleNode node) {
+        String hash = IpfsUtil.toBase58(node.hash);
+        log.debug("Filename: {}, Hash (base 58): {}", node.name.orElse("unknown"), hash);
+        return hash;
+    }
+
+    private static long decodeCursor(String cursor) {
+        if (cursor == null || cursor.isEmpty()) {
+            return 0;
+        }
+        try {
+            return Long.parseLong(new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8));
+        } catch (IllegalArgumentException e) {
+            throw new BadRequestException("Invalid cursor: " + cursor, e);
+        }
+    }
+
+    private static String encodeCursor(long offset) {
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(Long.toString(offset).getBytes(StandardCharsets.UTF_8));
+    }
+
 }
@@ -0,0 +1,166 @@
+package com.plooh.adssi.dial.validator.service;
+
+import com.plooh.adssi.dial.validator.model.BatchAddResult;
+import com.plooh.adssi.dial.validator.model.PinPage;
+import io.ipfs.api.IPFS;
+import io.ipfs.api.MerkleNode;
+import io.ipfs.api.NamedStreamable;
+import java.io.InputStream;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+import javax.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.InputStreamSource;
+import org.springframework.stereotype.Service;
+
+/**
+ * Asynchronous variant of {@link IpfsApi}: every call runs on a dedicated executor and completes the
+ * returned future, so that the request threads of the controllers are released while the IPFS nodes
+ * answer.
+ *
+ * The executor is chosen by {@code ipfs.async.executor}:
+ * <ul>
+ *     <li>{@code virtual}: a virtual thread per call, on JVMs supporting them; otherwise the fixed pool is
+ *     used</li>
+ *     <li>{@code fixed}: a pool of {@code ipfs.async.threads} threads with a queue of
+ *     {@code ipfs.async.queue-capacity} calls</li>
+ *     <li>{@code caller}: the call runs on the calling thread and the future is completed when returned,
+ *     i.e. the blocking mode</li>
+ * </ul>
+ * Calls rejected by a full pool fail with an {@link IpfsUnavailableException}.
+ */
+@Slf4j
+@Service
+public class IpfsAsyncApi {
+
+    private static final Duration REJECTED_RETRY_AFTER = Duration.ofSeconds(1);
+
+    public enum ExecutorType {
+        VIRTUAL, FIXED, CALLER
+    }
+
+    private final IpfsApi ipfsApi;
+    private final Executor executor;
+
+    @Autowired
+    public IpfsAsyncApi(IpfsApi ipfsApi,
+                        @Value("${ipfs.async.executor}") ExecutorType type,
+                        @Value("${ipfs.async.threads}") int threads,
+                        @Value("${ipfs.async.queue-capacity}") int queueCapacity) {
+        this(ipfsApi, executor(type, threads, queueCapacity));
+    }
+
+    public IpfsAsyncApi(IpfsApi ipfsApi, Executor executor) {
+        this.ipfsApi = ipfsApi;
+        this.executor = executor;
+    }
+
+    public CompletableFuture<String> addFile(InputStreamSource content, String fileName) {
+        return supply(() -> ipfsApi.addFile(content, fileName));
+    }
+
+    public CompletableFuture<BatchAddResult> addFiles(List<NamedStreamable> files, boolean wrapWithDirectory) {
+        return supply(() -> ipfsApi.addFiles(files, wrapWithDirectory));
+    }
+
+    /**
+     * @see IpfsApi#getFileByHash(String)
+     */
+    public CompletableFuture<byte[]> getFileByHash(String hash) {
+        return supply(() -> ipfsApi.getFileByHash(hash));
+    }
+
+    /**
+     * @see IpfsApi#getFileStreamByHash(String)
+     */
+    public CompletableFuture<InputStream> getFileStreamByHash(String hash) {
+        return supply(() -> ipfsApi.getFileStreamByHash(hash));
+    }
+
+    /**
+     * @see IpfsApi#getFileStreamByHash(String, long, long)
+     */
+    public CompletableFuture<InputStream> getFileStreamByHash(String hash, long offset, long length) {
+        return supply(() -> ipfsApi.getFileStreamByHash(hash, offset, length));
+    }
+
+    public CompletableFuture<Long> getFileSizeByHash(String hash) {
+        return supply(() -> ipfsApi.getFileSizeByHash(hash));
+    }
+
+    public CompletableFuture<List<MerkleNode>> getFileInfoByHash(String hash) {
+        return supply(() -> ipfsApi.getFileInfoByHash(hash));
+    }
+
+    public CompletableFuture<List<String>> pinFileByHash(String hash) {
+        return supply(() -> ipfsApi.pinFileByHash(hash));
+    }
+
+    public CompletableFuture<List<String>> unpinFileByHash(String hash) {
+        return supply(() -> ipfsApi.unpinFileByHash(hash));
+    }
+
+    public CompletableFuture<Boolean> isPinned(String hash) {
+        return supply(() -> ipfsApi.isPinned(hash));
+    }
+
+    public CompletableFuture<PinPage> listFiles(IPFS.PinType type, String cursor, int limit) {
+        return supply(() -> ipfsApi.listFiles(type, cursor, limit));
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (executor instanceof ExecutorService) {
+            ((ExecutorService) executor).shutdownNow();
+        }
+    }
+
+    private <T> CompletableFuture<T> supply(Supplier<T> call) {
+        try {
+            return CompletableFuture.supplyAsync(call, executor);
+        } catch (RejectedExecutionException e) {
+            return CompletableFuture.failedFuture(
+                new IpfsUnavailableException("Too many concurrent IPFS calls", e, REJECTED_RETRY_AFTER));
+        }
+    }
+
+    private static Executor executor(ExecutorType type, int threads, int queueCapacity) {
+        if (type == ExecutorType.CALLER) {
+            log.info("IPFS calls run on the request threads");
+            return Runnable::run;
+        }
+        if (type == ExecutorType.VIRTUAL) {
+            try {
+                // Executors.newVirtualThreadPerTaskExecutor() is only available from Java 21
+                Executor executor = (Executor) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+                log.info("IPFS calls run on virtual threads");
+                return executor;
+            } catch (ReflectiveOperationException e) {
+                log.info("Virtual threads are not supported by this JVM, falling back to a fixed pool");
+            }
+        }
+        log.info("IPFS calls run on a pool of {} threads with a queue of {}", threads, queueCapacity);
+        AtomicInteger count = new AtomicInteger();
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads, 60L, TimeUnit.SECONDS,
+            new ArrayBlockingQueue<>(queueCapacity), runnable -> {
+                Thread thread = new Thread(runnable, "ipfs-async-" + count.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+}
@@ -0,0 +1,194 @@
+package com.plooh.adssi.dial.validator.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.ipfs.api.MerkleNode;
+import io.ipfs.multihash.Multihash;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import java.io.ByteArrayOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+
+/**
+ * In-process read-through cache for content fetched from the IPFS node.
+ *
+ * CIDs are content addressed, so cached entries never have to be invalidated. Both caches are bounded
+ * by their total weight in bytes and use Caffeine's frequency aware (W-TinyLFU) eviction, so a burst of
+ * one-off reads does not flush the hot declarations out of the cache.
+ */
+@Slf4j
+@Component
+public class IpfsContentCache implements MeterBinder {
+
+    private static final int MERKLE_NODE_OVERHEAD = 128;
+
+    private final boolean enabled;
+    private final long maxObjectSize;
+    private final Cache<Multihash, byte[]> contents;
+    private final Cache<Multihash, List<MerkleNode>> infos;
+
+    public IpfsContentCache(@Value("${ipfs.cache.enabled}") boolean enabled,
+                            @Value("${ipfs.cache.max-size}") DataSize maxSize,
+                            @Value("${ipfs.cache.max-object-size}") DataSize maxObjectSize,
+                            @Value("${ipfs.cache.info-max-size}") DataSize infoMaxSize) {
+        this.enabled = enabled;
+        this.maxObjectSize = maxObjectSize.toBytes();
+        this.contents = Caffeine.newBuilder()
+            .maximumWeight(maxSize.toBytes())
+            .weigher((Multihash key, byte[] value) -> value.length)
+            .recordStats()
+            .build();
+        this.infos = Caffeine.newBuilder()
+            .maximumWeight(infoMaxSize.toBytes())
+            .weigher((Multihash key, List<MerkleNode> value) -> weigh(value))
+            .recordStats()
+            .build();
+        log.info("IPFS content cache enabled: {}, max size: {}, max object size: {}", enabled, maxSize, maxObjectSize);
+    }
+
+    /**
+     * Binds the hit, miss and eviction statistics of both caches to the actuator registry.
+     *
+     * @param registry
+     */
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        CaffeineCacheMetrics.monitor(registry, contents, "ipfs.content");
+        CaffeineCacheMetrics.monitor(registry, infos, "ipfs.info");
+    }
+
+    /**
+     * Get the cached content of the given multihash.
+     *
+     * @param multihash
+     * @return cached content or null
+     */
+    public byte[] getContent(Multihash multihash) {
+        return enabled ? contents.getIfPresent(multihash) : null;
+    }
+
+    /**
+     * Cache the content of the given multihash, unless it is larger than the per-object limit.
+     *
+     * @param multihash
+     * @param content
+     */
+    public void putContent(Multihash multihash, byte[] content) {
+        if (enabled && content != null && content.length <= maxObjectSize) {
+            contents.put(multihash, content);
+        }
+    }
+
+    /**
+     * Wrap the given content stream so that the content is cached once it has been read to the end,
+     * unless it turns out to be larger than the per-object limit.
+     *
+     * @param multihash
+     * @param in content stream
+     * @return stream to read instead of the given one
+     */
+    public InputStream readThrough(Multihash multihash, InputStream in) {
+        return enabled ? new ReadThroughInputStream(multihash, in) : in;
+    }
+
+    /**
+     * Get the cached file information of the given multihash.
+     *
+     * @param multihash
+     * @return cached list of nodes or null
+     */
+    public List<MerkleNode> getInfo(Multihash multihash) {
+        return enabled ? infos.getIfPresent(multihash) : null;
+    }
+
+    /**
+     * Cache the file information of the given multihash.
+     *
+     * @param multihash
+     * @param info
+     */
+    public void putInfo(Multihash multihash, List<MerkleNode> info) {
+        if (enabled && info != null) {
+            infos.put(multihash, List.copyOf(info));
+        }
+    }
+
+    private class ReadThroughInputStream extends FilterInputStream {
+
+        private final Multihash multihash;
+        private ByteArrayOutputStream copy = new ByteArrayOutputStream();
+
+        ReadThroughInputStream(Multihash multihash, InputStream in) {
+            super(in);
+            this.multihash = multihash;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int read = super.read();
+            if (read == -1) {
+                complete();
+            } else if (copy != null) {
+                copy.write(read);
+                checkSize();
+            }
+            return read;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int read = super.read(b, off, len);
+            if (read == -1) {
+                complete();
+            } else if (copy != null) {
+                copy.write(b, off, read);
+                checkSize();
+            }
+            return read;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            copy = null;
+            return super.skip(n);
+        }
+
+        @Override
+        public boolean markSupported() {
+            return false;
+        }
+
+        private void checkSize() {
+            if (copy.size() > maxObjectSize) {
+                copy = null;
+            }
+        }
+
+        private void complete() {
+            if (copy != null) {
+                putContent(multihash, copy.toByteArray());
+                copy = null;
+            }
+        }
+    }
+
+    private static int weigh(List<MerkleNode> nodes) {
+        long weight = 0;
+        for (MerkleNode node : nodes) {
+            weight += MERKLE_NODE_OVERHEAD
+                + node.name.map(String::length).orElse(0)
+                + node.data.map(data -> data.length).orElse(0)
+                + weigh(node.links);
+        }
+        return (int) Math.min(weight, Integer.MAX_VALUE);
+    }
+
+}
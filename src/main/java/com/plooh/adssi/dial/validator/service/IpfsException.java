@@ -0,0 +1,31 @@
+package com.plooh.adssi.dial.validator.service;
+
+/**
+ * Failure of a call to the IPFS nodes, answered with 502 Bad Gateway unless a subclass is more precise.
+ */
+public class IpfsException extends RuntimeException {
+
+    public IpfsException(String message, Throwable cause) {
+        super(message, cause);
+    }
+
+    /**
+     * @param message what was being done
+     * @param cause failure of the call to the IPFS node
+     * @return the exception matching the failure
+     */
+    public static IpfsException of(String message, Throwable cause) {
+        if (cause instanceof IpfsException) {
+            return (IpfsException) cause;
+        }
+        if (IpfsNodePool.isNodeFailure(cause)) {
+            return new IpfsUnavailableException(message + ": IPFS node unreachable", cause, null);
+        }
+        String detail = cause.getMessage();
+        if (detail != null && (detail.contains("not found") || detail.contains("no link named") || detail.contains("not pinned"))) {
+            return new IpfsNotFoundException(message + ": " + detail, cause);
+        }
+        return new IpfsException(message, cause);
+    }
+
+}
@@ -0,0 +1,225 @@
+package com.plooh.adssi.dial.validator.service;
+
+import com.plooh.adssi.dial.validator.util.CircuitBreaker;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.time.Duration;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.env.Environment;
+import org.springframework.stereotype.Component;
+
+/**
+ * Runs the calls of {@link IpfsApi} to the IPFS nodes with a deadline, a concurrency limit per class of
+ * operation and a circuit breaker, so that a slow or failing daemon cannot hold all the request threads.
+ *
+ * <ul>
+ *     <li>Each {@link IpfsOperation.Bulkhead} has its own pool of threads and bounded queue: a call is
+ *     rejected when both are full, so e.g. slow pins cannot starve reads.</li>
+ *     <li>The caller waits for the call up to the timeout of its operation ({@code ipfs.timeout.<op>}),
+ *     queuing included. A call timing out keeps its thread until the node answers or the socket read
+ *     times out, so the bulkhead also bounds the calls stuck on the node.</li>
+ *     <li>Timeouts and unreachable nodes are failures of the circuit breaker. Once it opens, calls are
+ *     rejected without reaching the nodes until the open duration has elapsed.</li>
+ * </ul>
+ * Rejected calls fail with an {@link IpfsUnavailableException}, timed out calls with an
+ * {@link IpfsTimeoutException}.
+ */
+@Slf4j
+@Component
+public class IpfsGuard implements MeterBinder {
+
+    private static final Duration BULKHEAD_RETRY_AFTER = Duration.ofSeconds(1);
+
+    private final Map<IpfsOperation, Duration> timeouts = new EnumMap<>(IpfsOperation.class);
+    private final Map<IpfsOperation.Bulkhead, ThreadPoolExecutor> bulkheads = new EnumMap<>(IpfsOperation.Bulkhead.class);
+    private final CircuitBreaker circuitBreaker;
+    private final Map<IpfsOperation.Bulkhead, Counter> bulkheadFull = new EnumMap<>(IpfsOperation.Bulkhead.class);
+    private final Map<IpfsOperation.Bulkhead, Counter> circuitOpen = new EnumMap<>(IpfsOperation.Bulkhead.class);
+    private Counter timedOut;
+
+    @Autowired
+    public IpfsGuard(Environment environment,
+                     @Value("${ipfs.circuit-breaker.window-size}") int windowSize,
+                     @Value("${ipfs.circuit-breaker.minimum-calls}") int minimumCalls,
+                     @Value("${ipfs.circuit-breaker.failure-rate-threshold}") double failureRateThreshold,
+                     @Value("${ipfs.circuit-breaker.open-duration}") Duration openDuration,
+                     @Value("${ipfs.circuit-breaker.half-open-calls}") int halfOpenCalls) {
+        for (IpfsOperation operation : IpfsOperation.values()) {
+            timeouts.put(operation, environment.getRequiredProperty("ipfs.timeout." + operation.getTag(), Duration.class));
+        }
+        for (IpfsOperation.Bulkhead bulkhead : IpfsOperation.Bulkhead.values()) {
+            String prefix = "ipfs.bulkhead." + bulkhead.getTag();
+            bulkheads.put(bulkhead, executor(bulkhead,
+                environment.getRequiredProperty(prefix + ".max-concurrent", Integer.class),
+                environment.getRequiredProperty(prefix + ".queue-capacity", Integer.class)));
+        }
+        this.circuitBreaker = new CircuitBreaker(windowSize, minimumCalls, failureRateThreshold, openDuration, halfOpenCalls);
+        log.info("IPFS timeouts: {}, circuit breaker opening at a failure rate of {} over {} calls", timeouts,
+            failureRateThreshold, windowSize);
+    }
+
+    public IpfsGuard(Map<IpfsOperation, Duration> timeouts, int maxConcurrent, int queueCapacity, CircuitBreaker circuitBreaker) {
+        this.timeouts.putAll(timeouts);
+        for (IpfsOperation.Bulkhead bulkhead : IpfsOperation.Bulkhead.values()) {
+            bulkheads.put(bulkhead, executor(bulkhead, maxConcurrent, queueCapacity));
+        }
+        this.circuitBreaker = circuitBreaker;
+    }
+
+    /**
+     * @return a guard without deadline and with a circuit breaker which never opens
+     */
+    public static IpfsGuard unlimited() {
+        Map<IpfsOperation, Duration> timeouts = new EnumMap<>(IpfsOperation.class);
+        for (IpfsOperation operation : IpfsOperation.values()) {
+            timeouts.put(operation, Duration.ofDays(1));
+        }
+        return new IpfsGuard(timeouts, 64, 1024, new CircuitBreaker(1, 1, 2, Duration.ZERO, 1));
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        Gauge.builder("ipfs.circuit.state", circuitBreaker, breaker -> breaker.getState().ordinal())
+            .description("State of the IPFS circuit breaker: 0 closed, 1 open, 2 half open")
+            .register(registry);
+        timedOut = Counter.builder("ipfs.client.timeouts")
+            .description("Calls to the IPFS nodes abandoned after the timeout of their operation")
+            .register(registry);
+        bulkheads.forEach((bulkhead, executor) -> {
+            bulkheadFull.put(bulkhead, rejected(registry, bulkhead, "bulkhead-full"));
+            circuitOpen.put(bulkhead, rejected(registry, bulkhead, "circuit-open"));
+            Gauge.builder("ipfs.bulkhead.active", executor, ThreadPoolExecutor::getActiveCount)
+                .description("Calls to the IPFS nodes running in the bulkhead")
+                .tag("bulkhead", bulkhead.getTag())
+                .register(registry);
+            Gauge.builder("ipfs.bulkhead.queued", executor, pool -> pool.getQueue().size())
+                .description("Calls to the IPFS nodes waiting for the bulkhead")
+                .tag("bulkhead", bulkhead.getTag())
+                .register(registry);
+        });
+    }
+
+    public CircuitBreaker.State getCircuitState() {
+        return circuitBreaker.getState();
+    }
+
+    /**
+     * @param operation
+     * @return the deadline of the calls of the operation, {@code ipfs.timeout.<op>}
+     */
+    public Duration timeout(IpfsOperation operation) {
+        return timeouts.get(operation);
+    }
+
+    /**
+     * Run the call in the bulkhead of the operation and wait for it up to the timeout of the operation.
+     *
+     * @param operation
+     * @param call
+     * @return the result of the call
+     * @throws IpfsUnavailableException if the circuit breaker is open or the bulkhead is full
+     * @throws IpfsTimeoutException if the call did not complete in time
+     * @throws IOException if the call failed
+     */
+    public <T> T call(IpfsOperation operation, IpfsMetrics.IpfsCall<T> call) throws IOException {
+        if (!circuitBreaker.tryAcquire()) {
+            increment(circuitOpen.get(operation.getBulkhead()));
+            throw new IpfsUnavailableException("IPFS nodes are unavailable, circuit breaker is open", null,
+                circuitBreaker.getRetryAfter());
+        }
+        Future<T> future;
+        try {
+            future = bulkheads.get(operation.getBulkhead()).submit((Callable<T>) call::call);
+        } catch (RejectedExecutionException e) {
+            circuitBreaker.release();
+            increment(bulkheadFull.get(operation.getBulkhead()));
+            throw new IpfsUnavailableException("Too many concurrent IPFS " + operation.getBulkhead().getTag() + " calls",
+                e, BULKHEAD_RETRY_AFTER);
+        }
+
+        Duration timeout = timeouts.get(operation);
+        try {
+            T result = future.get(timeout.toNanos(), TimeUnit.NANOSECONDS);
+            circuitBreaker.onSuccess();
+            return result;
+        } catch (TimeoutException e) {
+            future.cancel(true);
+            circuitBreaker.onFailure();
+            increment(timedOut);
+            throw new IpfsTimeoutException(operation, timeout);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (IpfsNodePool.isNodeFailure(cause)) {
+                circuitBreaker.onFailure();
+            } else {
+                circuitBreaker.onSuccess();
+            }
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            if (cause instanceof IllegalArgumentException || cause instanceof IpfsException) {
+                throw (RuntimeException) cause;
+            }
+            // the java client reports the errors of the node as runtime exceptions
+            throw new IOException(cause.getMessage(), cause);
+        } catch (InterruptedException e) {
+            future.cancel(true);
+            circuitBreaker.release();
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while calling the IPFS nodes");
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        bulkheads.values().forEach(ThreadPoolExecutor::shutdownNow);
+    }
+
+    private static ThreadPoolExecutor executor(IpfsOperation.Bulkhead bulkhead, int maxConcurrent, int queueCapacity) {
+        AtomicInteger threads = new AtomicInteger();
+        BlockingQueue<Runnable> queue = queueCapacity == 0 ? new SynchronousQueue<>() : new ArrayBlockingQueue<>(queueCapacity);
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(maxConcurrent, maxConcurrent, 60L, TimeUnit.SECONDS, queue,
+            runnable -> {
+                Thread thread = new Thread(runnable, "ipfs-" + bulkhead.getTag() + "-" + threads.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    private static Counter rejected(MeterRegistry registry, IpfsOperation.Bulkhead bulkhead, String reason) {
+        return Counter.builder("ipfs.client.rejected")
+            .description("Calls to the IPFS nodes rejected without being sent")
+            .tag("bulkhead", bulkhead.getTag())
+            .tag("reason", reason)
+            .register(registry);
+    }
+
+    private static void increment(Counter counter) {
+        if (counter != null) {
+            counter.increment();
+        }
+    }
+
+}
@@ -0,0 +1,297 @@
+package com.plooh.adssi.dial.validator.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.distribution.ValueAtPercentile;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.time.Duration;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Metrics of the calls made to the IPFS node, per {@link IpfsOperation}:
+ * <ul>
+ *     <li>{@code ipfs.client.requests}: timer with a percentile histogram, tagged with the outcome</li>
+ *     <li>{@code ipfs.client.errors}: failed calls, tagged with the exception</li>
+ *     <li>{@code ipfs.client.sent} and {@code ipfs.client.received}: content uploaded and
+ *     downloaded</li>
+ *     <li>{@code ipfs.client.requests.active}: calls in flight</li>
+ *     <li>{@code ipfs.client.hedges} and {@code ipfs.client.hedges.won}: hedged reads sent, and won by the
+ *     hedged request</li>
+ *     <li>{@code ipfs.client.coalesced}: calls not sent because an identical call was in flight</li>
+ *     <li>{@code ipfs.client.deduplicated}: adds not sent because the content is already stored</li>
+ * </ul>
+ * Streamed downloads are timed and counted as in flight until the stream is closed.
+ *
+ * The timer also publishes the percentile of the latency after which reads are hedged, over a decaying
+ * window of the last few minutes.
+ */
+@Component
+public class IpfsMetrics {
+
+    private static final Duration MIN_EXPECTED = Duration.ofMillis(1);
+    private static final Duration MAX_EXPECTED = Duration.ofMinutes(1);
+    private static final double DEFAULT_HEDGE_PERCENTILE = 0.95;
+    private static final long HEDGE_DELAY_REFRESH_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    private final MeterRegistry registry;
+    private final double hedgePercentile;
+    private final Map<IpfsOperation, Meters> meters = new EnumMap<>(IpfsOperation.class);
+
+    public IpfsMetrics(MeterRegistry registry) {
+        this(registry, DEFAULT_HEDGE_PERCENTILE);
+    }
+
+    @Autowired
+    public IpfsMetrics(MeterRegistry registry, @Value("${ipfs.pool.hedge.percentile}") double hedgePercentile) {
+        this.registry = registry;
+        this.hedgePercentile = hedgePercentile;
+        for (IpfsOperation operation : IpfsOperation.values()) {
+            meters.put(operation, new Meters(operation));
+        }
+    }
+
+    /**
+     * Call the IPFS node and record the call.
+     *
+     * @param operation
+     * @param call
+     * @return the result of the call
+     */
+    public <T> T record(IpfsOperation operation, IpfsCall<T> call) throws IOException {
+        Meters meters = this.meters.get(operation);
+        Timer.Sample sample = meters.start();
+        try {
+            T result = call.call();
+            meters.stop(sample, null);
+            return result;
+        } catch (IOException | RuntimeException e) {
+            meters.stop(sample, e);
+            throw e;
+        }
+    }
+
+    /**
+     * Open a stream from the IPFS node and record the call once the stream is closed, with the number of
+     * bytes read from it.
+     *
+     * @param operation
+     * @param call opens the stream
+     * @return the stream to read instead of the opened one
+     */
+    public InputStream recordStream(IpfsOperation operation, IpfsCall<InputStream> call) throws IOException {
+        Meters meters = this.meters.get(operation);
+        Timer.Sample sample = meters.start();
+        InputStream in;
+        try {
+            in = call.call();
+        } catch (IOException | RuntimeException e) {
+            meters.stop(sample, e);
+            throw e;
+        }
+        return new RecordingInputStream(in, meters, sample);
+    }
+
+    public void sent(IpfsOperation operation, long bytes) {
+        meters.get(operation).sent.increment(bytes);
+    }
+
+    public void received(IpfsOperation operation, long bytes) {
+        meters.get(operation).received.increment(bytes);
+    }
+
+    public void coalesced(IpfsOperation operation) {
+        meters.get(operation).coalesced.increment();
+    }
+
+    public void deduplicated(IpfsOperation operation) {
+        meters.get(operation).deduplicated.increment();
+    }
+
+    /**
+     * @param operation
+     * @return the hedging of the reads of the given operation, after the configured percentile of their
+     * latency
+     */
+    public IpfsNodePool.Hedge hedge(IpfsOperation operation) {
+        return meters.get(operation);
+    }
+
+    /**
+     * A call to the IPFS node.
+     */
+    @FunctionalInterface
+    public interface IpfsCall<T> {
+        T call() throws IOException;
+    }
+
+    private class Meters implements IpfsNodePool.Hedge {
+
+        private final IpfsOperation operation;
+        private final Timer success;
+        private final Counter sent;
+        private final Counter received;
+        private final Counter hedges;
+        private final Counter hedgesWon;
+        private final Counter coalesced;
+        private final Counter deduplicated;
+        private final AtomicInteger active = new AtomicInteger();
+        private volatile long hedgeDelayNanos;
+        private volatile long hedgeDelayRefreshedAt = System.nanoTime() - HEDGE_DELAY_REFRESH_NANOS;
+
+        Meters(IpfsOperation operation) {
+            this.operation = operation;
+            this.success = timer("success");
+            this.sent = Counter.builder("ipfs.client.sent")
+                .description("Content uploaded to the IPFS node")
+                .baseUnit("bytes")
+                .tag("op", operation.getTag())
+                .register(registry);
+            this.received = Counter.builder("ipfs.client.received")
+                .description("Content downloaded from the IPFS node")
+                .baseUnit("bytes")
+                .tag("op", operation.getTag())
+                .register(registry);
+            Gauge.builder("ipfs.client.requests.active", active, AtomicInteger::get)
+                .description("Calls to the IPFS node in flight")
+                .tag("op", operation.getTag())
+                .register(registry);
+            this.hedges = Counter.builder("ipfs.client.hedges")
+                .description("Reads sent to a second IPFS node after the latency percentile")
+                .tag("op", operation.getTag())
+                .register(registry);
+            this.hedgesWon = Counter.builder("ipfs.client.hedges.won")
+                .description("Hedged reads answered first by the second IPFS node")
+                .tag("op", operation.getTag())
+                .register(registry);
+            this.coalesced = Counter.builder("ipfs.client.coalesced")
+                .description("Calls sharing the result of an identical call in flight")
+                .tag("op", operation.getTag())
+                .register(registry);
+            this.deduplicated = Counter.builder("ipfs.client.deduplicated")
+                .description("Adds not sent because their locally computed CID is already stored")
+                .tag("op", operation.getTag())
+                .register(registry);
+        }
+
+        @Override
+        public long delayNanos() {
+            // reading the percentile takes a snapshot of the histogram, so it is only refreshed every second
+            long now = System.nanoTime();
+            if (now - hedgeDelayRefreshedAt >= HEDGE_DELAY_REFRESH_NANOS) {
+                ValueAtPercentile[] percentiles = success.takeSnapshot().percentileValues();
+                hedgeDelayNanos = percentiles.length == 0 ? 0 : (long) percentiles[0].value(TimeUnit.NANOSECONDS);
+                hedgeDelayRefreshedAt = now;
+            }
+            return hedgeDelayNanos;
+        }
+
+        @Override
+        public void sent() {
+            hedges.increment();
+        }
+
+        @Override
+        public void won() {
+            hedgesWon.increment();
+        }
+
+        Timer.Sample start() {
+            active.incrementAndGet();
+            return Timer.start(registry);
+        }
+
+        void stop(Timer.Sample sample, Throwable error) {
+            active.decrementAndGet();
+            if (error == null) {
+                sample.stop(success);
+                return;
+            }
+            sample.stop(timer("error"));
+            Counter.builder("ipfs.client.errors")
+                .description("Failed calls to the IPFS node")
+                .tags(Tags.of("op", operation.getTag(), "exception", error.getClass().getSimpleName()))
+                .register(registry)
+                .increment();
+        }
+
+        private Timer timer(String outcome) {
+            return Timer.builder("ipfs.client.requests")
+                .description("Calls to the IPFS node")
+                .tags(Tags.of("op", operation.getTag(), "outcome", outcome))
+                .publishPercentileHistogram()
+                .publishPercentiles(hedgePercentile)
+                .minimumExpectedValue(MIN_EXPECTED)
+                .maximumExpectedValue(MAX_EXPECTED)
+                .register(registry);
+        }
+    }
+
+    private static class RecordingInputStream extends FilterInputStream {
+
+        private final Meters meters;
+        private final Timer.Sample sample;
+        private long bytes;
+        private Throwable error;
+        private boolean closed;
+
+        RecordingInputStream(InputStream in, Meters meters, Timer.Sample sample) {
+            super(in);
+            this.meters = meters;
+            this.sample = sample;
+        }
+
+        @Override
+        public int read() throws IOException {
+            try {
+                int read = super.read();
+                if (read != -1) {
+                    bytes++;
+                }
+                return read;
+            } catch (IOException e) {
+                error = e;
+                throw e;
+            }
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            try {
+                int read = super.read(b, off, len);
+                if (read > 0) {
+                    bytes += read;
+                }
+                return read;
+            } catch (IOException e) {
+                error = e;
+                throw e;
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            try {
+                super.close();
+            } finally {
+                meters.received.increment(bytes);
+                meters.stop(sample, error);
+            }
+        }
+    }
+
+}
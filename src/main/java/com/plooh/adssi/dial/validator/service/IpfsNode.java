@@ -0,0 +1,148 @@
+package com.plooh.adssi.dial.validator.service;
+
+import com.plooh.adssi.dial.validator.util.IpfsRpc;
+import io.ipfs.api.IPFS;
+import java.io.IOException;
+import java.net.ConnectException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicInteger;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * One IPFS daemon of an {@link IpfsNodePool}, with the number of requests in flight to it and its
+ * health.
+ *
+ * The java client checks the version of the daemon when it is created, so the client is created lazily:
+ * a daemon which is down when the application starts is only connected by a later health check.
+ */
+@Slf4j
+public class IpfsNode {
+
+    private final String name;
+    private final Callable<IPFS> connector;
+    private final AtomicInteger outstanding = new AtomicInteger();
+    private final AtomicInteger failures = new AtomicInteger();
+    private volatile IPFS ipfs;
+    private volatile boolean healthy;
+
+    public IpfsNode(String name, Callable<IPFS> connector) {
+        this.name = name;
+        this.connector = connector;
+    }
+
+    /**
+     * @param ipfs client of a connected daemon
+     * @return a healthy node calling the given client
+     */
+    public static IpfsNode of(IPFS ipfs) {
+        IpfsNode node = new IpfsNode(ipfs.host + ":" + ipfs.port, () -> ipfs);
+        node.ipfs = ipfs;
+        node.healthy = true;
+        return node;
+    }
+
+    /**
+     * @param address multiaddr of the daemon API, e.g. "/ip4/127.0.0.1/tcp/5001", or host:port
+     * @return a node connected by the first health check
+     */
+    public static IpfsNode parse(String address) {
+        String trimmed = address.trim();
+        if (trimmed.startsWith("/")) {
+            return new IpfsNode(trimmed, () -> new IPFS(trimmed));
+        }
+        int colon = trimmed.lastIndexOf(':');
+        if (colon <= 0 || colon == trimmed.length() - 1) {
+            throw new IllegalArgumentException("Invalid IPFS node address: " + address);
+        }
+        String host = trimmed.substring(0, colon);
+        int port = Integer.parseInt(trimmed.substring(colon + 1));
+        return new IpfsNode(trimmed, () -> new IPFS(host, port));
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * @return the host of the daemon, or null while it has never been connected
+     */
+    public String getHost() {
+        IPFS client = ipfs;
+        return client == null ? null : client.host;
+    }
+
+    public boolean isHealthy() {
+        return healthy;
+    }
+
+    public int getOutstanding() {
+        return outstanding.get();
+    }
+
+    /**
+     * @return the client of the daemon
+     * @throws IOException if the daemon has never been connected
+     */
+    IPFS client() throws IOException {
+        IPFS client = ipfs;
+        if (client == null) {
+            throw new ConnectException("IPFS node " + name + " is not connected");
+        }
+        return client;
+    }
+
+    void acquire() {
+        outstanding.incrementAndGet();
+    }
+
+    void release() {
+        outstanding.decrementAndGet();
+    }
+
+    void succeeded() {
+        failures.set(0);
+    }
+
+    /**
+     * Record a failure to reach the daemon, and eject the node once it has failed the given number of
+     * times in a row.
+     *
+     * @return true if the node has just been ejected
+     */
+    boolean failed(int threshold) {
+        if (failures.incrementAndGet() >= threshold && healthy) {
+            healthy = false;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Connect the daemon if needed and check that it answers within the given timeout. A node passing the
+     * check is healthy again.
+     *
+     * @return true if the node has just been readmitted
+     */
+    boolean check(int timeoutMillis) throws Exception {
+        IPFS client = ipfs;
+        if (client == null) {
+            synchronized (this) {
+                if (ipfs == null) {
+                    ipfs = connector.call();
+                }
+            }
+        } else {
+            IpfsRpc.map(client, "version", timeoutMillis);
+        }
+        failures.set(0);
+        boolean readmitted = !healthy;
+        healthy = true;
+        return readmitted;
+    }
+
+    @Override
+    public String toString() {
+        return name;
+    }
+
+}
@@ -0,0 +1,22 @@
+package com.plooh.adssi.dial.validator.service;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+/**
+ * Periodically checks the nodes of the {@link IpfsNodePool}, ejecting the nodes which do not answer and
+ * readmitting the nodes which answer again.
+ */
+@Component
+@RequiredArgsConstructor
+public class IpfsNodeHealthChecker {
+
+    private final IpfsNodePool pool;
+
+    @Scheduled(initialDelayString = "${ipfs.pool.health-check.interval}", fixedDelayString = "${ipfs.pool.health-check.interval}")
+    public void check() {
+        pool.checkHealth();
+    }
+
+}
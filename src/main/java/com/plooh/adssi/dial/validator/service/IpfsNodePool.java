@@ -0,0 +1,622 @@
+package com.plooh.adssi.dial.validator.service;
+
+import com.plooh.adssi.dial.validator.util.IpfsRpc;
+import io.ipfs.api.IPFS;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.net.SocketException;
+import java.net.SocketTimeoutException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import javax.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Pool of the IPFS daemons behind {@link IpfsApi}.
+ *
+ * <ul>
+ *     <li>Reads go to the healthy node with the fewest requests in flight, a streamed read being in flight
+ *     until its stream is closed. A read failing to reach its node is retried on another node.</li>
+ *     <li>Writes go to the primary, the first healthy node in the configured order. With the
+ *     {@link WritePolicy#REPLICATE} policy, the written CIDs are then pinned on other healthy nodes so that
+ *     the content is held by the configured number of nodes. The replicas fetch the content from the
+ *     primary, so the daemons must be connected to each other.</li>
+ *     <li>Calls which depend on the state of one node, e.g. the pin listing, go to the primary.</li>
+ * </ul>
+ *
+ * Reads of small content can be hedged: when the node has not answered after a percentile of the latency
+ * of the read, the same read is sent to a second node, the first answer is used and the other request is
+ * aborted by closing its connection. At the default 95th percentile this costs about 5% more reads and
+ * cuts the tail latency caused by a slow or overloaded node.
+ *
+ * A node failing to answer a number of calls or health checks in a row is ejected, and readmitted by the
+ * first health check it passes. While every node is ejected, calls go to the ejected nodes rather than
+ * failing without trying.
+ */
+@Slf4j
+public class IpfsNodePool implements MeterBinder {
+
+    public enum WritePolicy {
+        /** Write to the primary only. */
+        PRIMARY,
+        /** Write to the primary and pin the written CIDs on other nodes. */
+        REPLICATE
+    }
+
+    private final List<IpfsNode> nodes;
+    private final WritePolicy writePolicy;
+    private final int replicas;
+    private final int failureThreshold;
+    private final int healthCheckTimeoutMillis;
+    private final boolean hedging;
+    private final long minHedgeDelayNanos;
+    private final long maxHedgeDelayNanos;
+    private final ExecutorService executor;
+    private final AtomicInteger next = new AtomicInteger();
+    private final AtomicLong ejections = new AtomicLong();
+    private final AtomicLong replicationFailures = new AtomicLong();
+
+    public IpfsNodePool(List<IpfsNode> nodes, WritePolicy writePolicy, int replicas, int failureThreshold,
+                        Duration healthCheckTimeout) {
+        this(nodes, writePolicy, replicas, failureThreshold, healthCheckTimeout, false, Duration.ZERO, Duration.ZERO);
+    }
+
+    /**
+     * @param hedging whether reads are hedged
+     * @param minHedgeDelay minimum delay before a read is hedged, whatever the latency percentile
+     * @param maxHedgeDelay maximum delay before a read is hedged
+     */
+    public IpfsNodePool(List<IpfsNode> nodes, WritePolicy writePolicy, int replicas, int failureThreshold,
+                        Duration healthCheckTimeout, boolean hedging, Duration minHedgeDelay, Duration maxHedgeDelay) {
+        if (nodes.isEmpty()) {
+            throw new IllegalArgumentException("At least one IPFS node is required");
+        }
+        if (replicas < 1 || failureThreshold < 1) {
+            throw new IllegalArgumentException("replicas and failure threshold must be positive");
+        }
+        this.nodes = List.copyOf(nodes);
+        this.writePolicy = writePolicy;
+        this.replicas = Math.min(replicas, nodes.size());
+        this.failureThreshold = failureThreshold;
+        this.healthCheckTimeoutMillis = (int) healthCheckTimeout.toMillis();
+        this.hedging = hedging;
+        this.minHedgeDelayNanos = minHedgeDelay.toNanos();
+        this.maxHedgeDelayNanos = maxHedgeDelay.toNanos();
+        AtomicInteger threads = new AtomicInteger();
+        this.executor = Executors.newCachedThreadPool(runnable -> {
+            Thread thread = new Thread(runnable, "ipfs-pool-" + threads.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * @param ipfs client of a connected daemon
+     * @return a pool of that single daemon
+     */
+    public static IpfsNodePool of(IPFS ipfs) {
+        return new IpfsNodePool(List.of(IpfsNode.of(ipfs)), WritePolicy.PRIMARY, 1, 3, Duration.ofSeconds(2));
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        Gauge.builder("ipfs.pool.nodes.healthy", this, pool -> pool.getHealthyNodes().size())
+            .description("Number of IPFS nodes receiving calls")
+            .register(registry);
+        FunctionCounter.builder("ipfs.pool.ejections", ejections, AtomicLong::get)
+            .description("Ejections of IPFS nodes failing to answer")
+            .register(registry);
+        FunctionCounter.builder("ipfs.pool.replication.failures", replicationFailures, AtomicLong::get)
+            .description("Writes which could not be replicated to an IPFS node")
+            .register(registry);
+        for (IpfsNode node : nodes) {
+            Gauge.builder("ipfs.pool.node.outstanding", node, IpfsNode::getOutstanding)
+                .description("Calls in flight to the IPFS node")
+                .tag("node", node.getName())
+                .register(registry);
+        }
+    }
+
+    public List<IpfsNode> getNodes() {
+        return nodes;
+    }
+
+    public List<IpfsNode> getHealthyNodes() {
+        List<IpfsNode> healthy = new ArrayList<>(nodes.size());
+        for (IpfsNode node : nodes) {
+            if (node.isHealthy()) {
+                healthy.add(node);
+            }
+        }
+        return healthy;
+    }
+
+    /**
+     * @return the host of the primary, or null while no node is healthy
+     */
+    public String getPrimaryHost() {
+        for (IpfsNode node : nodes) {
+            if (node.isHealthy()) {
+                return node.getHost();
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Call the healthy node with the fewest requests in flight, and retry on another node if it cannot be
+     * reached.
+     *
+     * @param call
+     * @return the result of the call
+     */
+    public <T> T read(IpfsNodeCall<T> call) throws IOException {
+        return read(call, false);
+    }
+
+    /**
+     * Open a stream from the healthy node with the fewest requests in flight. The call stays in flight
+     * until the returned stream is closed.
+     *
+     * @param call opens the stream
+     * @return the stream to read instead of the opened one
+     */
+    public InputStream readStream(IpfsNodeCall<InputStream> call) throws IOException {
+        return read(call, true);
+    }
+
+    /**
+     * Read from the node with the fewest requests in flight like {@link #read(IpfsNodeCall)}, and hedge
+     * the read on a second healthy node if the first one has not answered after the delay of the hedge.
+     * Without hedging, or with a single healthy node, the read is made with the given call.
+     *
+     * @param call reads without hedging
+     * @param command RPC command of the hedged read, answering what the call returns
+     * @param reader reads the response of the command
+     * @param hedge delay and metrics of the hedged reads
+     * @return the result of the read
+     */
+    public <T> T hedgedRead(IpfsNodeCall<T> call, String command, ResponseReader<T> reader, Hedge hedge) throws IOException {
+        if (!hedging || getHealthyNodes().size() < 2) {
+            return read(call);
+        }
+        long delay = Math.max(minHedgeDelayNanos, Math.min(maxHedgeDelayNanos, hedge.delayNanos()));
+        Set<IpfsNode> tried = new HashSet<>();
+        IpfsNode node = leastOutstandingNode(tried);
+        tried.add(node);
+        Attempt<T> first = attempt(node, command, reader);
+        boolean unreachable = false;
+        try {
+            return first.result.get(delay, TimeUnit.NANOSECONDS);
+        } catch (TimeoutException e) {
+            // hedged below
+        } catch (ExecutionException e) {
+            if (!isNodeFailure(e.getCause())) {
+                throw rethrow(e.getCause());
+            }
+            unreachable = true;
+        } catch (InterruptedException e) {
+            first.cancel();
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while reading from IPFS node " + node);
+        }
+
+        IpfsNode other = leastOutstandingNode(tried, true);
+        if (other == null) {
+            return await(first.result, first);
+        }
+        if (unreachable) {
+            Attempt<T> retry = attempt(other, command, reader);
+            return await(retry.result, retry);
+        }
+        hedge.sent();
+        Attempt<T> second = attempt(other, command, reader);
+        CompletableFuture<Attempt<T>> winner = new CompletableFuture<>();
+        AtomicInteger failures = new AtomicInteger();
+        for (Attempt<T> attempt : List.of(first, second)) {
+            attempt.result.whenComplete((result, error) -> {
+                if (error == null) {
+                    winner.complete(attempt);
+                } else if (failures.incrementAndGet() == 2) {
+                    winner.completeExceptionally(error);
+                }
+            });
+        }
+        Attempt<T> won = await(winner, first, second);
+        (won == first ? second : first).cancel();
+        if (won == second) {
+            hedge.won();
+        }
+        return won.result.join();
+    }
+
+    /**
+     * Call the primary.
+     *
+     * @param call
+     * @return the result of the call
+     */
+    public <T> T primary(IpfsNodeCall<T> call) throws IOException {
+        return call(primaryNode(), call);
+    }
+
+    /**
+     * Call the primary, then, with the {@link WritePolicy#REPLICATE} policy, make the replication call
+     * built from its result on as many other healthy nodes as needed to reach the configured number of
+     * replicas. Replication failures are logged and do not fail the write.
+     *
+     * @param call
+     * @param replication builds the call replicating the result of the write, e.g. pinning its CIDs
+     * @return the result of the call to the primary
+     */
+    public <T> T write(IpfsNodeCall<T> call, Function<? super T, IpfsNodeCall<?>> replication) throws IOException {
+        IpfsNode primary = primaryNode();
+        T result = call(primary, call);
+        if (writePolicy == WritePolicy.REPLICATE && replicas > 1) {
+            List<IpfsNode> targets = new ArrayList<>(replicas - 1);
+            for (IpfsNode node : getHealthyNodes()) {
+                if (node != primary && targets.size() < replicas - 1) {
+                    targets.add(node);
+                }
+            }
+            IpfsNodeCall<?> replica = replication.apply(result);
+            forEach(targets, node -> {
+                try {
+                    call(node, replica);
+                } catch (IOException | RuntimeException e) {
+                    replicationFailures.incrementAndGet();
+                    log.warn("Replication to IPFS node {} failed: {}", node, e.getMessage());
+                }
+            });
+        }
+        return result;
+    }
+
+    /**
+     * Call the primary, and make the same call on every other healthy node whatever the write policy, e.g.
+     * to unpin a CID which may have been replicated or written while the primary was ejected. Failures of
+     * the other nodes are ignored.
+     *
+     * @param call
+     * @return the result of the call to the primary
+     */
+    public <T> T writeEverywhere(IpfsNodeCall<T> call) throws IOException {
+        IpfsNode primary = primaryNode();
+        T result = call(primary, call);
+        List<IpfsNode> others = getHealthyNodes();
+        others.remove(primary);
+        forEach(others, node -> {
+            try {
+                call(node, call);
+            } catch (IOException | RuntimeException e) {
+                log.debug("Call to IPFS node {} failed: {}", node, e.getMessage());
+            }
+        });
+        return result;
+    }
+
+    /**
+     * Check every node, ejecting the nodes which do not answer and readmitting the others.
+     */
+    public void checkHealth() {
+        forEach(nodes, node -> {
+            try {
+                if (node.check(healthCheckTimeoutMillis)) {
+                    log.info("IPFS node {} is healthy again.", node);
+                }
+            } catch (Exception e) {
+                log.debug("Health check of IPFS node {} failed: {}", node, e.getMessage());
+                if (node.failed(failureThreshold)) {
+                    ejected(node, e);
+                }
+            }
+        });
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    @SuppressWarnings("unchecked")
+    private <T> T read(IpfsNodeCall<T> call, boolean stream) throws IOException {
+        Set<IpfsNode> tried = new HashSet<>();
+        while (true) {
+            IpfsNode node = leastOutstandingNode(tried);
+            tried.add(node);
+            node.acquire();
+            boolean release = true;
+            try {
+                T result = call.call(node.client());
+                node.succeeded();
+                if (stream) {
+                    release = false;
+                    return (T) new ReleasingInputStream((InputStream) result, node);
+                }
+                return result;
+            } catch (IOException | RuntimeException e) {
+                if (!failed(node, e) || tried.size() == nodes.size()) {
+                    throw e;
+                }
+                log.debug("IPFS node {} failed, retrying the read on another node: {}", node, e.getMessage());
+            } finally {
+                if (release) {
+                    node.release();
+                }
+            }
+        }
+    }
+
+    private <T> Attempt<T> attempt(IpfsNode node, String command, ResponseReader<T> reader) {
+        Attempt<T> attempt = new Attempt<>(node, command, reader);
+        node.acquire();
+        try {
+            executor.execute(attempt);
+        } catch (RuntimeException e) {
+            node.release();
+            throw e;
+        }
+        return attempt;
+    }
+
+    private static <T> T await(CompletableFuture<T> future, Attempt<?>... attempts) throws IOException {
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            throw rethrow(e.getCause());
+        } catch (InterruptedException e) {
+            for (Attempt<?> attempt : attempts) {
+                attempt.cancel();
+            }
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while reading from IPFS nodes");
+        }
+    }
+
+    private static IOException rethrow(Throwable error) {
+        if (error instanceof IOException) {
+            return (IOException) error;
+        }
+        if (error instanceof RuntimeException) {
+            throw (RuntimeException) error;
+        }
+        throw new IllegalStateException(error);
+    }
+
+    private <T> T call(IpfsNode node, IpfsNodeCall<T> call) throws IOException {
+        node.acquire();
+        try {
+            T result = call.call(node.client());
+            node.succeeded();
+            return result;
+        } catch (IOException | RuntimeException e) {
+            failed(node, e);
+            throw e;
+        } finally {
+            node.release();
+        }
+    }
+
+    private IpfsNode primaryNode() {
+        for (IpfsNode node : nodes) {
+            if (node.isHealthy()) {
+                return node;
+            }
+        }
+        return nodes.get(0);
+    }
+
+    private IpfsNode leastOutstandingNode(Set<IpfsNode> excluded) {
+        IpfsNode selected = leastOutstandingNode(excluded, true);
+        return selected != null ? selected : leastOutstandingNode(excluded, false);
+    }
+
+    private IpfsNode leastOutstandingNode(Set<IpfsNode> excluded, boolean healthy) {
+        // start from a rotating offset so that ties are spread over the nodes
+        int size = nodes.size();
+        int start = Math.floorMod(next.getAndIncrement(), size);
+        IpfsNode selected = null;
+        for (int i = 0; i < size; i++) {
+            IpfsNode node = nodes.get((start + i) % size);
+            if (excluded.contains(node) || (healthy && !node.isHealthy())) {
+                continue;
+            }
+            if (selected == null || node.getOutstanding() < selected.getOutstanding()) {
+                selected = node;
+            }
+        }
+        return selected;
+    }
+
+    /**
+     * @return true if the call failed because the node could not be reached, rather than because of the
+     * request, e.g. an unknown CID
+     */
+    private boolean failed(IpfsNode node, Throwable error) {
+        if (!isNodeFailure(error)) {
+            return false;
+        }
+        if (node.failed(failureThreshold)) {
+            ejected(node, error);
+        }
+        return true;
+    }
+
+    private void ejected(IpfsNode node, Throwable error) {
+        ejections.incrementAndGet();
+        log.warn("IPFS node {} ejected after {} failures: {}", node, failureThreshold, error.getMessage());
+    }
+
+    private void forEach(List<IpfsNode> targets, Consumer<IpfsNode> action) {
+        if (targets.size() == 1) {
+            action.accept(targets.get(0));
+            return;
+        }
+        CompletableFuture<?>[] futures = targets.stream()
+            .map(node -> CompletableFuture.runAsync(() -> action.accept(node), executor))
+            .toArray(CompletableFuture[]::new);
+        try {
+            CompletableFuture.allOf(futures).join();
+        } catch (CompletionException e) {
+            log.warn("Call to the IPFS nodes failed: {}", e.getMessage());
+        }
+    }
+
+    static boolean isNodeFailure(Throwable error) {
+        for (Throwable cause = error; cause != null; cause = cause.getCause()) {
+            if (cause instanceof SocketException || cause instanceof SocketTimeoutException) {
+                return true;
+            }
+            // the java client does not keep the ConnectException as the cause
+            if (cause.getMessage() != null && cause.getMessage().startsWith("Couldn't connect to IPFS daemon")) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * A call to one node of the pool.
+     */
+    @FunctionalInterface
+    public interface IpfsNodeCall<T> {
+        T call(IPFS ipfs) throws IOException;
+    }
+
+    /**
+     * Reads the response of an RPC command.
+     */
+    @FunctionalInterface
+    public interface ResponseReader<T> {
+        T read(InputStream in) throws IOException;
+    }
+
+    /**
+     * When to hedge a read, and what to record of it.
+     */
+    public interface Hedge {
+
+        /**
+         * @return the time after which the read is sent to a second node
+         */
+        long delayNanos();
+
+        void sent();
+
+        /**
+         * The second node answered first.
+         */
+        void won();
+    }
+
+    /**
+     * One request of a hedged read, running on the executor. Cancelling it closes its response stream,
+     * which aborts the request.
+     */
+    private class Attempt<T> implements Runnable {
+
+        private final IpfsNode node;
+        private final String command;
+        private final ResponseReader<T> reader;
+        private final CompletableFuture<T> result = new CompletableFuture<>();
+        private InputStream response;
+        private boolean cancelled;
+
+        Attempt(IpfsNode node, String command, ResponseReader<T> reader) {
+            this.node = node;
+            this.command = command;
+            this.reader = reader;
+        }
+
+        @Override
+        public void run() {
+            InputStream in = null;
+            try {
+                in = IpfsRpc.stream(node.client(), command);
+                synchronized (this) {
+                    if (cancelled) {
+                        return;
+                    }
+                    response = in;
+                }
+                T value = reader.read(in);
+                node.succeeded();
+                result.complete(value);
+            } catch (IOException | RuntimeException e) {
+                if (!isCancelled()) {
+                    failed(node, e);
+                }
+                result.completeExceptionally(e);
+            } finally {
+                closeQuietly(in);
+                node.release();
+            }
+        }
+
+        synchronized void cancel() {
+            cancelled = true;
+            closeQuietly(response);
+            result.cancel(false);
+        }
+
+        private synchronized boolean isCancelled() {
+            return cancelled;
+        }
+
+        private void closeQuietly(InputStream in) {
+            if (in == null) {
+                return;
+            }
+            try {
+                in.close();
+            } catch (IOException e) {
+                log.debug("Failed to close the response of IPFS node {}: {}", node, e.getMessage());
+            }
+        }
+    }
+
+    private static class ReleasingInputStream extends FilterInputStream {
+
+        private final IpfsNode node;
+        private boolean closed;
+
+        ReleasingInputStream(InputStream in, IpfsNode node) {
+            super(in);
+            this.node = node;
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            try {
+                super.close();
+            } finally {
+                node.release();
+            }
+        }
+    }
+
+}
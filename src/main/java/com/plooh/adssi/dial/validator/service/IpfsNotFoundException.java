@@ -0,0 +1,12 @@
+package com.plooh.adssi.dial.validator.service;
+
+/**
+ * The IPFS node does not have the requested content or pin.
+ */
+public class IpfsNotFoundException extends IpfsException {
+
+    public IpfsNotFoundException(String message, Throwable cause) {
+        super(message, cause);
+    }
+
+}
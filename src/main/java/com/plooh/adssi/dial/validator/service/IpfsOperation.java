@@ -0,0 +1,45 @@
+package com.plooh.adssi.dial.validator.service;
+
+/**
+ * Calls made to the IPFS node, as tagged in the metrics of {@link IpfsMetrics}, and the bulkhead of
+ * {@link IpfsGuard} limiting their concurrency.
+ */
+public enum IpfsOperation {
+    ADD("add", Bulkhead.WRITE),
+    CAT("cat", Bulkhead.READ),
+    LS("ls", Bulkhead.READ),
+    STAT("stat", Bulkhead.READ),
+    PIN_ADD("pin.add", Bulkhead.PIN),
+    PIN_RM("pin.rm", Bulkhead.PIN),
+    PIN_LS("pin.ls", Bulkhead.LIST);
+
+    private final String tag;
+    private final Bulkhead bulkhead;
+
+    IpfsOperation(String tag, Bulkhead bulkhead) {
+        this.tag = tag;
+        this.bulkhead = bulkhead;
+    }
+
+    public String getTag() {
+        return tag;
+    }
+
+    public Bulkhead getBulkhead() {
+        return bulkhead;
+    }
+
+    /**
+     * Classes of operations sharing a concurrency limit, so that e.g. slow pins cannot starve reads.
+     */
+    public enum Bulkhead {
+        READ,
+        WRITE,
+        PIN,
+        LIST;
+
+        public String getTag() {
+            return name().toLowerCase();
+        }
+    }
+}
@@ -0,0 +1,14 @@
+package com.plooh.adssi.dial.validator.service;
+
+import java.time.Duration;
+
+/**
+ * A call to the IPFS nodes did not complete within the timeout of its operation.
+ */
+public class IpfsTimeoutException extends IpfsException {
+
+    public IpfsTimeoutException(IpfsOperation operation, Duration timeout) {
+        super("IPFS " + operation.getTag() + " did not complete within " + timeout.toMillis() + "ms", null);
+    }
+
+}
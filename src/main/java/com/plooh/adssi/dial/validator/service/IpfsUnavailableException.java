@@ -0,0 +1,25 @@
+package com.plooh.adssi.dial.validator.service;
+
+import java.time.Duration;
+
+/**
+ * The IPFS nodes cannot take the call: they are unreachable, the circuit breaker is open or the bulkhead
+ * of the operation is full. The call may be retried after {@link #getRetryAfter()}.
+ */
+public class IpfsUnavailableException extends IpfsException {
+
+    private final Duration retryAfter;
+
+    public IpfsUnavailableException(String message, Throwable cause, Duration retryAfter) {
+        super(message, cause);
+        this.retryAfter = retryAfter;
+    }
+
+    /**
+     * @return when the call may be retried, or null if unknown
+     */
+    public Duration getRetryAfter() {
+        return retryAfter;
+    }
+
+}
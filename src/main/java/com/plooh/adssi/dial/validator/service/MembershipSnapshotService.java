@@ -0,0 +1,189 @@
+package com.plooh.adssi.dial.validator.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.plooh.adssi.dial.validator.model.MembershipSnapshot;
+import com.plooh.adssi.dial.validator.util.Jws;
+import com.plooh.adssi.dial.validator.util.Sha256;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import java.security.KeyPair;
+import java.security.interfaces.ECPublicKey;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Base64;
+import java.util.EnumMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedMap;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.StringUtils;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+/**
+ * Signed lists of the validators and of the routers, the declarations of type {@code validator} and
+ * {@code router} in the {@link DeclarationIndex}. Anybody can publish such a declaration, so only those
+ * signed by the keys of {@code validator.snapshots.authorized-keys}, or by the signing key of this
+ * validator, are members.
+ *
+ * Time is divided in windows of {@code validator.snapshots.window} since the epoch. The list of a
+ * membership is serialized and signed once per window, or once more when the membership changes, and the
+ * same bytes and ETag are served to every caller until then. The list of the next window is built in the
+ * background {@code validator.snapshots.lead-time} before the rollover, so that the first callers of the
+ * new window do not wait for a signature.
+ */
+@Slf4j
+@Service
+public class MembershipSnapshotService implements MeterBinder {
+
+    public enum Membership {
+        VALIDATORS("validator"), ROUTERS("router");
+
+        private final String type;
+
+        Membership(String type) {
+            this.type = type;
+        }
+
+        /**
+         * @return the type of the declarations of the members
+         */
+        public String getType() {
+            return type;
+        }
+    }
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+    private static final Base64.Encoder ENCODER = Base64.getUrlEncoder().withoutPadding();
+
+    private final DeclarationIndex declarationIndex;
+    private final KeyPair keyPair;
+    private final Set<String> authorizedKeys;
+    private final Clock clock;
+    private final long windowMillis;
+    private final long leadTimeMillis;
+    private final Map<Membership, Snapshots> snapshots = new EnumMap<>(Membership.class);
+
+    @Autowired
+    public MembershipSnapshotService(DeclarationIndex declarationIndex, KeyPair signingKeyPair,
+                                     @Value("${validator.snapshots.authorized-keys}") List<String> authorizedKeys,
+                                     @Value("${validator.snapshots.window}") Duration window,
+                                     @Value("${validator.snapshots.lead-time}") Duration leadTime) {
+        this(declarationIndex, signingKeyPair, authorizedKeys, window, leadTime, Clock.systemUTC());
+    }
+
+    public MembershipSnapshotService(DeclarationIndex declarationIndex, KeyPair keyPair, List<String> authorizedKeys,
+                                     Duration window, Duration leadTime, Clock clock) {
+        this.declarationIndex = declarationIndex;
+        this.keyPair = keyPair;
+        this.authorizedKeys = new HashSet<>();
+        authorizedKeys.stream().filter(StringUtils::isNotBlank).map(String::trim).forEach(this.authorizedKeys::add);
+        this.authorizedKeys.add(Jws.thumbprint((ECPublicKey) keyPair.getPublic()));
+        this.clock = clock;
+        this.windowMillis = window.toMillis();
+        this.leadTimeMillis = Math.min(leadTime.toMillis(), windowMillis);
+        for (Membership membership : Membership.values()) {
+            snapshots.put(membership, new Snapshots());
+        }
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        snapshots.forEach((membership, state) -> state.builds = Counter.builder("validator.snapshots.built")
+            .description("Signed membership lists built")
+            .tag("membership", membership.name().toLowerCase())
+            .register(registry));
+    }
+
+    /**
+     * @param membership
+     * @return the signed list of the members for the current window, built if the window has rolled over
+     *         without a prepared list or if the membership has changed
+     */
+    public MembershipSnapshot get(Membership membership) {
+        Snapshots state = snapshots.get(membership);
+        long window = Math.floorDiv(clock.millis(), windowMillis);
+        long version = declarationIndex.getModifications(membership.type, authorizedKeys);
+        MembershipSnapshot current = state.current;
+        if (isValid(current, window, version)) {
+            return current;
+        }
+        synchronized (state) {
+            current = state.current;
+            if (isValid(current, window, version)) {
+                return current;
+            }
+            MembershipSnapshot next = state.next;
+            state.current = isValid(next, window, version) ? next : build(membership, state, window, version);
+            return state.current;
+        }
+    }
+
+    /**
+     * Build the lists of the next window, when the rollover is closer than the lead time and they have not
+     * been built yet for the current membership.
+     */
+    @Scheduled(initialDelayString = "${validator.snapshots.prepare-interval}", fixedDelayString = "${validator.snapshots.prepare-interval}")
+    public void prepareNextWindow() {
+        long now = clock.millis();
+        long next = Math.floorDiv(now, windowMillis) + 1;
+        if (next * windowMillis - now > leadTimeMillis) {
+            return;
+        }
+        snapshots.forEach((membership, state) -> {
+            synchronized (state) {
+                long version = declarationIndex.getModifications(membership.type, authorizedKeys);
+                if (!isValid(state.next, next, version)) {
+                    state.next = build(membership, state, next, version);
+                }
+            }
+        });
+    }
+
+    private static boolean isValid(MembershipSnapshot snapshot, long window, long version) {
+        return snapshot != null && snapshot.getWindow() == window && snapshot.getVersion() == version;
+    }
+
+    private MembershipSnapshot build(Membership membership, Snapshots state, long window, long version) {
+        SortedMap<String, String> members = declarationIndex.getLatestByType(membership.type, authorizedKeys);
+        Instant notBefore = Instant.ofEpochMilli(window * windowMillis);
+        Instant notAfter = Instant.ofEpochMilli((window + 1) * windowMillis);
+        ObjectNode payload = MAPPER.createObjectNode()
+            .put("type", membership.name().toLowerCase())
+            .put("window", window)
+            .put("notBefore", notBefore.toString())
+            .put("notAfter", notAfter.toString());
+        ArrayNode list = payload.putArray("members");
+        members.forEach((id, hash) -> list.addObject().put("id", id).put("cid", hash));
+        try {
+            byte[] content = MAPPER.writeValueAsBytes(Jws.sign(keyPair, MAPPER.writeValueAsBytes(payload)));
+            String etag = "\"" + window + "-" + ENCODER.encodeToString(Sha256.digest(content)) + "\"";
+            if (state.builds != null) {
+                state.builds.increment();
+            }
+            log.debug("Signed {} {} for the window starting {}", members.size(), membership.name().toLowerCase(), notBefore);
+            return new MembershipSnapshot(window, notBefore, notAfter, version, members.size(), content, etag);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Cannot serialize the " + membership.name().toLowerCase(), e);
+        }
+    }
+
+    /**
+     * The list of a membership served in the current window, and the one prepared for the next window.
+     */
+    private static class Snapshots {
+        private volatile MembershipSnapshot current;
+        private volatile MembershipSnapshot next;
+        private volatile Counter builds;
+    }
+
+}
@@ -0,0 +1,237 @@
+package com.plooh.adssi.dial.validator.service;
+
+import com.plooh.adssi.dial.validator.util.LongOpenHashSet;
+import io.ipfs.multihash.Multihash;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * In-memory index of the CIDs pinned on the IPFS node, answering "is this CID pinned" without a call
+ * to the node.
+ *
+ * Each pin is stored as the first 8 bytes of its multihash digest in a primitive open-addressed table
+ * ({@link LongOpenHashSet}), about 11 bytes per pin at the average load instead of the few hundred bytes
+ * of a {@code HashSet<String>}, so tens of millions of pins fit in a few hundred MB of heap. The digest
+ * is a cryptographic hash, so its leading bytes are uniformly distributed; the chance that a CID which
+ * is not pinned shares them with one of n pinned CIDs is n / 2^64. The CID version and codec are not
+ * part of the key, so the CIDv0 and CIDv1 of a DAG are the same entry.
+ *
+ * The index is kept up to date by the pin, unpin and add calls of this service and reconciled with the
+ * node by {@link PinIndexReconciler}, one reconciliation at a time. Until the first reconciliation is
+ * complete it is not {@link #isReady() ready}, and a CID missing from it may still be pinned. An unpin
+ * only removes its roots and marks the index {@link #isStale() stale}: the blocks of the unpinned DAG are
+ * removed by the next reconciliation, unless another pin still holds them.
+ */
+@Slf4j
+@Component
+public class PinIndex implements MeterBinder {
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Lock reconciling = new ReentrantLock();
+    private LongOpenHashSet keys;
+    private List<Change> changes;
+    private volatile boolean ready;
+    private volatile boolean stale;
+
+    public PinIndex(@Value("${ipfs.pin.index.initial-capacity}") int initialCapacity) {
+        this.keys = new LongOpenHashSet(initialCapacity);
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        Gauge.builder("ipfs.pin.index.size", this, PinIndex::size)
+            .description("Number of pins in the index")
+            .register(registry);
+        Gauge.builder("ipfs.pin.index.footprint", this, PinIndex::footprint)
+            .description("Memory used by the pin index table")
+            .baseUnit("bytes")
+            .register(registry);
+    }
+
+    /**
+     * @return true once the index has been reconciled with the IPFS node
+     */
+    public boolean isReady() {
+        return ready;
+    }
+
+    /**
+     * @return true if pins may have been removed from the node since the last reconciliation began
+     */
+    public boolean isStale() {
+        return stale;
+    }
+
+    /**
+     * Mark the index for the next reconciliation, after pins whose blocks may not be pinned any more have
+     * been removed from the node.
+     */
+    public void markStale() {
+        stale = true;
+    }
+
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return keys.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public long footprint() {
+        lock.readLock().lock();
+        try {
+            return keys.footprint();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @param multihash
+     * @return true if the given multihash is pinned, directly, recursively or indirectly
+     */
+    public boolean contains(Multihash multihash) {
+        long key = key(multihash);
+        lock.readLock().lock();
+        try {
+            return keys.contains(key);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public void add(Multihash multihash) {
+        apply(new Change(key(multihash), true));
+    }
+
+    public void remove(Multihash multihash) {
+        apply(new Change(key(multihash), false));
+    }
+
+    /**
+     * Replace the content of the index with the pins listed by the given source. The listing is read
+     * without holding the lock; the pins added and removed meanwhile are replayed on the new table before
+     * it replaces the current one, so they are not lost whether or not the listing saw them. The
+     * reconciliations are serialized: one waits for the one in progress.
+     *
+     * @param source passes each pinned multihash to the given consumer
+     */
+    public void reconcile(Consumer<Consumer<Multihash>> source) {
+        reconciling.lock();
+        try {
+            stale = false;
+            replace(source);
+        } catch (RuntimeException e) {
+            stale = true;
+            throw e;
+        } finally {
+            reconciling.unlock();
+        }
+    }
+
+    /**
+     * Reconcile the index unless it is ready, once the reconciliation in progress, if any, is complete.
+     *
+     * @param source passes each pinned multihash to the given consumer
+     */
+    public void reconcileIfNotReady(Consumer<Consumer<Multihash>> source) {
+        reconciling.lock();
+        try {
+            if (!ready) {
+                reconcile(source);
+            }
+        } finally {
+            reconciling.unlock();
+        }
+    }
+
+    private void replace(Consumer<Consumer<Multihash>> source) {
+        int expected = size();
+        lock.writeLock().lock();
+        try {
+            changes = new ArrayList<>();
+        } finally {
+            lock.writeLock().unlock();
+        }
+
+        LongOpenHashSet fresh = new LongOpenHashSet(expected);
+        try {
+            source.accept(multihash -> fresh.add(key(multihash)));
+        } catch (RuntimeException e) {
+            lock.writeLock().lock();
+            try {
+                changes = null;
+            } finally {
+                lock.writeLock().unlock();
+            }
+            throw e;
+        }
+
+        lock.writeLock().lock();
+        try {
+            for (Change change : changes) {
+                change.applyTo(fresh);
+            }
+            log.info("Reconciled pin index: {} pins, {} before, {} changes during reconciliation.",
+                fresh.size(), keys.size(), changes.size());
+            keys = fresh;
+            changes = null;
+            ready = true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void apply(Change change) {
+        lock.writeLock().lock();
+        try {
+            change.applyTo(keys);
+            if (changes != null) {
+                changes.add(change);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * First 8 bytes of the digest, big endian and zero padded. Zero marks empty slots of the table and is
+     * mapped to one.
+     */
+    static long key(Multihash multihash) {
+        byte[] digest = multihash.getHash();
+        long key = 0;
+        for (int i = 0; i < Long.BYTES; i++) {
+            key = (key << 8) | (i < digest.length ? digest[i] & 0xFF : 0);
+        }
+        return key == 0 ? 1 : key;
+    }
+
+    @lombok.Value
+    private static class Change {
+        long key;
+        boolean added;
+
+        void applyTo(LongOpenHashSet set) {
+            if (added) {
+                set.add(key);
+            } else {
+                set.remove(key);
+            }
+        }
+    }
+
+}
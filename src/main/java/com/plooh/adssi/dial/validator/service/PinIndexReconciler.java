@@ -0,0 +1,35 @@
+package com.plooh.adssi.dial.validator.service;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+/**
+ * Periodically reloads the {@link PinIndex} from the pins of the IPFS node, to pick up the pins added
+ * and removed by other clients of the node, and sooner once the index is stale after an unpin.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class PinIndexReconciler {
+
+    private final IpfsApi ipfsApi;
+
+    @Scheduled(initialDelayString = "${ipfs.pin.index.initial-delay}", fixedDelayString = "${ipfs.pin.index.reconcile-interval}")
+    public void reconcile() {
+        try {
+            ipfsApi.reconcilePinIndex();
+        } catch (RuntimeException e) {
+            log.warn("Reconciliation of the pin index failed: {}", e.getMessage());
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${ipfs.pin.index.stale-check-interval}")
+    public void reconcileIfStale() {
+        if (ipfsApi.isPinIndexStale()) {
+            reconcile();
+        }
+    }
+
+}
@@ -0,0 +1,171 @@
+package com.plooh.adssi.dial.validator.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.plooh.adssi.dial.validator.model.PinAction;
+import com.plooh.adssi.dial.validator.model.PinJob;
+import com.plooh.adssi.dial.validator.util.IpfsUtil;
+import io.ipfs.multihash.Multihash;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+/**
+ * Runs bulk pin and unpin jobs in the background on a bounded worker pool, so that recursive pins of
+ * large DAGs do not hold request threads.
+ *
+ * A CID that is already queued or running for the same action is not sent to the IPFS node twice; the
+ * jobs asking for it share the result. A CID already in the {@link PinIndex} is not pinned again. When the
+ * {@link PinWriteBehind} is enabled, the pins are queued to it rather than run on the pool.
+ */
+@Slf4j
+@Service
+public class PinJobService {
+
+    private final IpfsApi ipfsApi;
+    private final PinIndex pinIndex;
+    private final PinWriteBehind pinWriteBehind;
+    private final ExecutorService executor;
+    private final Cache<String, PinJob> jobs;
+    private final Map<Task, CompletableFuture<List<String>>> inFlight = new ConcurrentHashMap<>();
+
+    public PinJobService(IpfsApi ipfsApi,
+                         PinIndex pinIndex,
+                         PinWriteBehind pinWriteBehind,
+                         @Value("${ipfs.pin.jobs.parallelism}") int parallelism,
+                         @Value("${ipfs.pin.jobs.queue-capacity}") int queueCapacity,
+                         @Value("${ipfs.pin.jobs.retention}") Duration retention) {
+        this.ipfsApi = ipfsApi;
+        this.pinIndex = pinIndex;
+        this.pinWriteBehind = pinWriteBehind;
+        AtomicInteger threads = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(parallelism, parallelism, 0L, TimeUnit.MILLISECONDS,
+            new ArrayBlockingQueue<>(queueCapacity), runnable -> {
+                Thread thread = new Thread(runnable, "pin-job-" + threads.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+        this.jobs = Caffeine.newBuilder()
+            .expireAfterWrite(retention)
+            .build();
+    }
+
+    /**
+     * Queue a job pinning or unpinning the given CIDs and return immediately.
+     *
+     * @param action
+     * @param cids
+     * @return the queued job
+     */
+    public PinJob submit(PinAction action, List<String> cids) {
+        PinJob job = new PinJob(UUID.randomUUID().toString(), action, cids);
+        jobs.put(job.getId(), job);
+        log.info("Queued {} job {} for {} CIDs.", action, job.getId(), job.getTotal());
+
+        for (String cid : job.getResults().keySet()) {
+            Multihash multihash;
+            try {
+                multihash = IpfsUtil.fromBase58(cid);
+            } catch (RuntimeException e) {
+                job.complete(cid, new PinJob.Result(PinJob.State.FAILED, List.of(), "Invalid CID: " + e.getMessage()));
+                continue;
+            }
+            if (action == PinAction.PIN && pinIndex.contains(multihash)) {
+                job.complete(cid, new PinJob.Result(PinJob.State.SKIPPED, List.of(), "Already pinned"));
+                continue;
+            }
+            schedule(new Task(action, multihash), cid).whenComplete((hashes, error) -> job.complete(cid, error == null
+                ? new PinJob.Result(PinJob.State.DONE, hashes, null)
+                : new PinJob.Result(PinJob.State.FAILED, List.of(), rootCause(error).getMessage())));
+        }
+        return job;
+    }
+
+    /**
+     * Get the job with the given id, if it is still retained.
+     *
+     * @param id
+     * @return the job
+     */
+    public Optional<PinJob> getJob(String id) {
+        return Optional.ofNullable(jobs.getIfPresent(id));
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    private CompletableFuture<List<String>> schedule(Task task, String cid) {
+        CompletableFuture<List<String>> future = new CompletableFuture<>();
+        CompletableFuture<List<String>> existing = inFlight.putIfAbsent(task, future);
+        if (existing != null) {
+            return existing;
+        }
+        if (task.action == PinAction.PIN && pinWriteBehind.isEnabled()) {
+            pinWriteBehind.pin(cid).whenComplete((hashes, error) -> {
+                inFlight.remove(task, future);
+                if (error != null) {
+                    log.warn("{} of {} failed: {}", task.action, cid, error.getMessage());
+                    future.completeExceptionally(error);
+                } else {
+                    future.complete(hashes);
+                }
+            });
+            return future;
+        }
+        try {
+            executor.execute(() -> run(task, cid, future));
+        } catch (RejectedExecutionException e) {
+            inFlight.remove(task, future);
+            future.completeExceptionally(new IllegalStateException("Pin queue is full", e));
+        }
+        return future;
+    }
+
+    private void run(Task task, String cid, CompletableFuture<List<String>> future) {
+        try {
+            List<String> hashes;
+            if (task.action == PinAction.PIN) {
+                hashes = ipfsApi.pinFileByHash(cid);
+            } else {
+                hashes = ipfsApi.unpinFileByHash(cid);
+            }
+            future.complete(hashes);
+        } catch (RuntimeException e) {
+            log.warn("{} of {} failed: {}", task.action, cid, e.getMessage());
+            future.completeExceptionally(e);
+        } finally {
+            inFlight.remove(task, future);
+        }
+    }
+
+    private static Throwable rootCause(Throwable error) {
+        Throwable cause = error;
+        while (cause.getCause() != null && cause.getCause() != cause) {
+            cause = cause.getCause();
+        }
+        return cause;
+    }
+
+    @lombok.Value
+    private static class Task {
+        PinAction action;
+        Multihash multihash;
+    }
+
+}
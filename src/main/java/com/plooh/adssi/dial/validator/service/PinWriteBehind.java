@@ -0,0 +1,436 @@
+package com.plooh.adssi.dial.validator.service;
+
+import com.plooh.adssi.dial.validator.util.IpfsUtil;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.LongAdder;
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+/**
+ * Write-behind of the pins, enabled by {@code ipfs.pin.write-behind.enabled}: instead of a call to the IPFS
+ * node per pin, the pins are queued and a single flusher pins them in groups of up to
+ * {@code ipfs.pin.write-behind.max-batch-size} CIDs, waiting at most {@code ipfs.pin.write-behind.max-delay}
+ * for a group to fill up. The callers do not wait for the group: they get a future completed once the
+ * node has pinned their CID, and a full queue ({@code ipfs.pin.write-behind.max-pending}) fails the pin at
+ * once rather than blocking.
+ *
+ * The queue is persisted in {@code ipfs.pin.write-behind.directory}: a pin is appended to a log before it is
+ * queued, the log is forced to disk once per group before the group is pinned, and the number of pins
+ * done is appended once the group is pinned. A restart pins again the pins logged after the last ones
+ * done, so a crash loses at most the pins queued since the last group, whose callers have not been
+ * answered. Pinning a CID twice is harmless. A stop fails the callers of the pins still queued with an
+ * {@link IpfsUnavailableException}, the log keeps them for the next start.
+ */
+@Slf4j
+@Service
+public class PinWriteBehind implements MeterBinder {
+
+    private static final String JOURNAL = "log";
+    private static final byte PIN = 1;
+    private static final byte DONE = 2;
+    private static final int MAX_HASH_LENGTH = IpfsUtil.MAX_CID_BYTES * 2;
+    // the log is rewritten with the pending pins only when it grows beyond this size
+    private static final long COMPACTION_THRESHOLD = 4L << 20;
+
+    private final IpfsApi ipfsApi;
+    private final boolean enabled;
+    private final Path directory;
+    private final int maxBatchSize;
+    private final Duration maxDelay;
+    private final int maxPending;
+
+    // guarded by this: the pins not yet handed to the flusher, in the order of the log
+    private final Deque<Pending> pending = new ArrayDeque<>();
+    // not a FileChannel, which an interrupted caller would close; null once stopped
+    private RandomAccessFile journal;
+    // guarded by this: the group being pinned by the flusher
+    private List<Pending> inFlight = List.of();
+    private int recovered;
+    private volatile boolean running;
+    private Thread flusher;
+
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+    private DistributionSummary groups;
+
+    public PinWriteBehind(IpfsApi ipfsApi,
+                          @Value("${ipfs.pin.write-behind.enabled}") boolean enabled,
+                          @Value("${ipfs.pin.write-behind.directory}") String directory,
+                          @Value("${ipfs.pin.write-behind.max-batch-size}") int maxBatchSize,
+                          @Value("${ipfs.pin.write-behind.max-delay}") Duration maxDelay,
+                          @Value("${ipfs.pin.write-behind.max-pending}") int maxPending) {
+        this.ipfsApi = ipfsApi;
+        this.enabled = enabled;
+        this.directory = Paths.get(directory);
+        this.maxBatchSize = Math.max(1, maxBatchSize);
+        this.maxDelay = maxDelay;
+        this.maxPending = Math.max(1, maxPending);
+        if (!enabled) {
+            return;
+        }
+        try {
+            Files.createDirectories(this.directory);
+            load();
+            this.journal = open(this.directory.resolve(JOURNAL));
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot open the pin queue in " + directory, e);
+        }
+    }
+
+    /**
+     * @return a write-behind which is not enabled, every pin is left to {@link IpfsApi#pinFileByHash(String)}
+     */
+    public static PinWriteBehind disabled() {
+        return new PinWriteBehind(null, false, ".", 1, Duration.ZERO, 1);
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        Gauge.builder("ipfs.pin.write-behind.pending", this, PinWriteBehind::pending)
+            .description("Pins queued and not pinned yet")
+            .register(registry);
+        groups = DistributionSummary.builder("ipfs.pin.write-behind.group.size")
+            .description("Distinct CIDs pinned by a single call to the IPFS node")
+            .register(registry);
+        FunctionCounter.builder("ipfs.pin.write-behind.rejected", rejected, LongAdder::sum)
+            .description("Pins rejected because the queue was full")
+            .register(registry);
+        FunctionCounter.builder("ipfs.pin.write-behind.failed", failed, LongAdder::sum)
+            .description("Pins which failed, after the group and then the pin alone failed")
+            .register(registry);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    @PostConstruct
+    public void start() {
+        if (!enabled) {
+            return;
+        }
+        running = true;
+        flusher = new Thread(this::flush, "pin-write-behind");
+        flusher.setDaemon(true);
+        flusher.start();
+        log.info("Pins are written behind in groups of up to {} CIDs, {} pins recovered from {}", maxBatchSize, recovered, directory);
+    }
+
+    @PreDestroy
+    public void stop() throws IOException {
+        if (!running) {
+            return;
+        }
+        synchronized (this) {
+            running = false;
+            notifyAll();
+        }
+        try {
+            // once stopped the flusher makes at most one more call to the node, see pin(List)
+            flusher.join(ipfsApi.timeout(IpfsOperation.PIN_ADD).toMillis() + 1000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        synchronized (this) {
+            // the pins still queued, and the group of a flusher still running, are pinned on the next start
+            IpfsUnavailableException stopped = new IpfsUnavailableException("The pin queue is stopped", null, maxDelay);
+            inFlight.forEach(entry -> entry.future.completeExceptionally(stopped));
+            pending.forEach(entry -> entry.future.completeExceptionally(stopped));
+            try {
+                journal.getFD().sync();
+            } finally {
+                journal.close();
+                journal = null;
+            }
+        }
+    }
+
+    /**
+     * Queue a pin, see {@link IpfsApi#pinFileByHash(String)}.
+     *
+     * @param hash
+     * @return the unique identifiers of the pinned files, once the IPFS node has pinned them
+     * @throws BadRequestException if the hash is not a valid CID
+     */
+    public CompletableFuture<List<String>> pin(String hash) {
+        if (!enabled) {
+            throw new IllegalStateException("The write-behind of the pins is not enabled");
+        }
+        String cid;
+        try {
+            // the same CID given in different bases is pinned once
+            cid = IpfsUtil.toBase58(IpfsUtil.fromBase58(hash));
+        } catch (RuntimeException e) {
+            throw new BadRequestException("Invalid CID: " + hash, e);
+        }
+        CompletableFuture<List<String>> future = new CompletableFuture<>();
+        synchronized (this) {
+            if (journal == null) {
+                future.completeExceptionally(new IpfsUnavailableException("The pin queue is stopped", null, maxDelay));
+                return future;
+            }
+            if (pending.size() >= maxPending) {
+                rejected.increment();
+                future.completeExceptionally(new IpfsUnavailableException("Too many pins are queued", null, maxDelay));
+                return future;
+            }
+            try {
+                append(record(PIN, cid));
+            } catch (IOException e) {
+                future.completeExceptionally(IpfsException.of("Error while queuing the pin", e));
+                return future;
+            }
+            pending.add(new Pending(cid, future));
+            // the flusher waits for a first pin, then for a full group
+            if (pending.size() == 1 || pending.size() >= maxBatchSize) {
+                notifyAll();
+            }
+        }
+        return future;
+    }
+
+    private void flush() {
+        while (true) {
+            List<Pending> group;
+            try {
+                group = nextGroup();
+            } catch (InterruptedException e) {
+                return;
+            }
+            if (group == null) {
+                return;
+            }
+            try {
+                synchronized (this) {
+                    if (journal == null) {
+                        return;
+                    }
+                    journal.getFD().sync();
+                }
+            } catch (IOException e) {
+                log.warn("Error while writing the pin queue, {} pins are not durable until pinned", group.size(), e);
+            }
+            pin(group);
+            synchronized (this) {
+                inFlight = List.of();
+                if (journal == null) {
+                    // stopped while pinning, the group is pinned again on the next start
+                    return;
+                }
+                try {
+                    append(record(DONE, group.size()));
+                    if (pending.isEmpty()) {
+                        journal.setLength(0);
+                    } else if (journal.length() > COMPACTION_THRESHOLD) {
+                        compact();
+                    }
+                } catch (IOException e) {
+                    log.warn("Error while writing the pin queue, {} pins may be pinned again on restart", group.size(), e);
+                }
+            }
+        }
+    }
+
+    /**
+     * Wait for the first pin, then for the group to fill up or for the max delay.
+     *
+     * @return the group, or null once stopped
+     */
+    private synchronized List<Pending> nextGroup() throws InterruptedException {
+        while (running && pending.isEmpty()) {
+            wait();
+        }
+        long deadline = System.nanoTime() + maxDelay.toNanos();
+        long remaining;
+        while (running && pending.size() < maxBatchSize && (remaining = deadline - System.nanoTime()) > 0) {
+            wait(Math.max(1, remaining / 1_000_000));
+        }
+        if (!running) {
+            return null;
+        }
+        List<Pending> group = new ArrayList<>(Math.min(pending.size(), maxBatchSize));
+        while (group.size() < maxBatchSize && !pending.isEmpty()) {
+            group.add(pending.poll());
+        }
+        inFlight = group;
+        return group;
+    }
+
+    private void pin(List<Pending> group) {
+        Map<String, List<CompletableFuture<List<String>>>> futures = new LinkedHashMap<>();
+        group.forEach(entry -> futures.computeIfAbsent(entry.hash, hash -> new ArrayList<>()).add(entry.future));
+        if (groups != null) {
+            groups.record(futures.size());
+        }
+        try {
+            ipfsApi.pinFilesByHash(new ArrayList<>(futures.keySet()));
+            futures.forEach((hash, waiting) -> waiting.forEach(future -> future.complete(List.of(hash))));
+            return;
+        } catch (RuntimeException e) {
+            if (futures.size() == 1) {
+                fail(futures.values().iterator().next(), e);
+                return;
+            }
+            log.debug("Pinning a group of {} CIDs failed, pinning them one by one: {}", futures.size(), e.getMessage());
+        }
+        // a CID which cannot be pinned does not fail the others
+        futures.forEach((hash, waiting) -> {
+            if (!running) {
+                // not one call per CID during a stop, they are pinned again on the next start
+                waiting.forEach(future -> future.completeExceptionally(
+                    new IpfsUnavailableException("The pin queue is stopped", null, maxDelay)));
+                return;
+            }
+            try {
+                List<String> pinned = ipfsApi.pinFileByHash(hash);
+                waiting.forEach(future -> future.complete(pinned));
+            } catch (RuntimeException e) {
+                fail(waiting, e);
+            }
+        });
+    }
+
+    private void fail(List<CompletableFuture<List<String>>> waiting, RuntimeException e) {
+        failed.add(waiting.size());
+        waiting.forEach(future -> future.completeExceptionally(e));
+    }
+
+    private synchronized int pending() {
+        return pending.size();
+    }
+
+    /**
+     * Rewrite the log with the pending pins only, the group being pinned is done.
+     */
+    private void compact() throws IOException {
+        Path file = directory.resolve(JOURNAL);
+        Path next = directory.resolve(JOURNAL + ".tmp");
+        try (FileChannel channel = FileChannel.open(next, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+            StandardOpenOption.TRUNCATE_EXISTING)) {
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(channel)));
+            for (Pending entry : pending) {
+                out.write(record(PIN, entry.hash));
+            }
+            out.flush();
+            channel.force(true);
+        }
+        Files.move(next, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        journal.close();
+        journal = open(file);
+    }
+
+    /**
+     * Queue again the pins logged after the ones done, up to the first incomplete record.
+     */
+    private void load() throws IOException {
+        Path file = directory.resolve(JOURNAL);
+        if (!Files.exists(file)) {
+            return;
+        }
+        List<String> logged = new ArrayList<>();
+        long done = 0;
+        long length = 0;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            while (true) {
+                try {
+                    byte type = in.readByte();
+                    if (type == PIN) {
+                        int hashLength = in.readInt();
+                        if (hashLength < 0 || hashLength > MAX_HASH_LENGTH) {
+                            break;
+                        }
+                        byte[] hash = new byte[hashLength];
+                        in.readFully(hash);
+                        logged.add(new String(hash, StandardCharsets.UTF_8));
+                        length += 5 + hashLength;
+                    } else if (type == DONE) {
+                        done += in.readInt();
+                        length += 5;
+                    } else {
+                        break;
+                    }
+                } catch (EOFException e) {
+                    break;
+                }
+            }
+        }
+        if (Files.size(file) > length) {
+            // a record interrupted by a crash is cut off, so that the next ones follow a whole record
+            try (RandomAccessFile journal = new RandomAccessFile(file.toFile(), "rw")) {
+                journal.setLength(length);
+            }
+        }
+        for (String hash : logged.subList((int) Math.min(done, logged.size()), logged.size())) {
+            pending.add(new Pending(hash, new CompletableFuture<>()));
+        }
+        recovered = pending.size();
+    }
+
+    private void append(byte[] record) throws IOException {
+        journal.write(record);
+    }
+
+    private static RandomAccessFile open(Path file) throws IOException {
+        RandomAccessFile journal = new RandomAccessFile(file.toFile(), "rw");
+        journal.seek(journal.length());
+        return journal;
+    }
+
+    private static byte[] record(byte type, String hash) throws IOException {
+        byte[] bytes = hash.getBytes(StandardCharsets.UTF_8);
+        ByteArrayOutputStream record = new ByteArrayOutputStream(5 + bytes.length);
+        DataOutputStream out = new DataOutputStream(record);
+        out.writeByte(type);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+        return record.toByteArray();
+    }
+
+    private static byte[] record(byte type, int count) {
+        return ByteBuffer.allocate(5).put(type).putInt(count).array();
+    }
+
+    private static class Pending {
+        private final String hash;
+        private final CompletableFuture<List<String>> future;
+
+        private Pending(String hash, CompletableFuture<List<String>> future) {
+            this.hash = hash;
+            this.future = future;
+        }
+    }
+
+}
@@ -0,0 +1,120 @@
+package com.plooh.adssi.dial.validator.service;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.plooh.adssi.dial.validator.model.Price;
+import com.plooh.adssi.dial.validator.util.Sha256;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+/**
+ * Prices the records of declarations.
+ *
+ * A record is priced in a single pass of a streaming parser over its bytes: the declarations are
+ * counted and measured without being decoded, so the cost depends on the size of the record only. Prices
+ * are memoized by the SHA-256 of the record, so pricing the same record again, or publishing the record
+ * just priced, costs a hash of the record.
+ */
+@Slf4j
+@Service
+public class PriceService implements MeterBinder {
+
+    private static final JsonFactory JSON = new JsonFactory();
+    private static final int KILOBYTE = 1024;
+
+    private final long perDeclaration;
+    private final long perKilobyte;
+    private final Cache<ByteBuffer, Price> prices;
+
+    public PriceService(@Value("${validator.price.per-declaration}") long perDeclaration,
+                        @Value("${validator.price.per-kilobyte}") long perKilobyte,
+                        @Value("${validator.price.cache-size}") long cacheSize) {
+        this.perDeclaration = perDeclaration;
+        this.perKilobyte = perKilobyte;
+        this.prices = Caffeine.newBuilder()
+            .maximumSize(cacheSize)
+            .recordStats()
+            .build();
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        CaffeineCacheMetrics.monitor(registry, prices, "validator.price");
+    }
+
+    /**
+     * @param record
+     * @return the price of the record
+     * @throws BadRequestException if the record is not a valid record
+     */
+    public Price price(byte[] record) {
+        return price(record, true);
+    }
+
+    /**
+     * @param record
+     * @param memoize false for a record which will not be priced again, like a batch of pubsub records,
+     *        priced without hashing it nor taking room in the cache
+     * @return the price of the record
+     * @throws BadRequestException if the record is not a valid record
+     */
+    public Price price(byte[] record, boolean memoize) {
+        if (!memoize) {
+            return compute(record);
+        }
+        return prices.get(ByteBuffer.wrap(Sha256.digest(record)), key -> compute(record));
+    }
+
+    private Price compute(byte[] record) {
+        try (JsonParser parser = JSON.createParser(record)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                throw new BadRequestException("The record is not a JSON object");
+            }
+            Price price = null;
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.getCurrentName();
+                JsonToken value = parser.nextToken();
+                if ("declarations".equals(field) && value == JsonToken.START_ARRAY) {
+                    price = priceDeclarations(parser);
+                } else {
+                    parser.skipChildren();
+                }
+            }
+            if (price == null) {
+                throw new BadRequestException("The record has no declarations array");
+            }
+            return price;
+        } catch (IOException e) {
+            throw new BadRequestException("The record is not valid JSON: " + e.getMessage(), e);
+        }
+    }
+
+    private Price priceDeclarations(JsonParser parser) throws IOException {
+        int declarations = 0;
+        long bytes = 0;
+        long amount = 0;
+        JsonToken token;
+        while ((token = parser.nextToken()) != JsonToken.END_ARRAY) {
+            if (token == null) {
+                throw new BadRequestException("The declarations array is not closed");
+            }
+            long start = parser.getTokenLocation().getByteOffset();
+            parser.skipChildren();
+            long size = parser.getCurrentLocation().getByteOffset() - start;
+            declarations++;
+            bytes += size;
+            amount += perDeclaration + perKilobyte * ((size + KILOBYTE - 1) / KILOBYTE);
+        }
+        return new Price(declarations, bytes, amount);
+    }
+
+}
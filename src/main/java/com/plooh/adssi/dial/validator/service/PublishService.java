@@ -0,0 +1,143 @@
+package com.plooh.adssi.dial.validator.service;
+
+import com.plooh.adssi.dial.validator.model.BatchAddResult;
+import com.plooh.adssi.dial.validator.model.Price;
+import com.plooh.adssi.dial.validator.model.PublishResult;
+import com.plooh.adssi.dial.validator.model.SignedDeclaration;
+import com.plooh.adssi.dial.validator.util.IpfsUtil;
+import io.ipfs.api.NamedStreamable;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.Collectors;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+
+/**
+ * Publishes the records of declarations: the declarations are validated by the
+ * {@link DeclarationValidator}, and the valid ones are added to IPFS with a single batched add, whatever
+ * their number. The invalid ones are rejected without failing the others. The price of the record comes
+ * from the {@link PriceService}, memoized when the record has just been priced.
+ *
+ * The published versions become the latest versions of their declarations in the {@link DeclarationIndex},
+ * and their content is put in the {@link IpfsContentCache}, so that they are served without calling IPFS.
+ * The versions of a declaration signed by another key than its first version are rejected.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class PublishService {
+
+    private final DeclarationValidator validator;
+    private final PriceService priceService;
+    private final IpfsAsyncApi ipfsAsyncApi;
+    private final DeclarationIndex declarationIndex;
+    private final IpfsContentCache contentCache;
+
+    /**
+     * @param record
+     * @return the result of every declaration of the record
+     * @throws BadRequestException if the record is not a valid record
+     */
+    public CompletableFuture<PublishResult> publish(String record) {
+        return publish(record, true);
+    }
+
+    /**
+     * @param record
+     * @param memoizePrice false for a record which will not be priced again, see {@link PriceService#price(byte[], boolean)}
+     * @return the result of every declaration of the record
+     * @throws BadRequestException if the record is not a valid record
+     */
+    public CompletableFuture<PublishResult> publish(String record, boolean memoizePrice) {
+        Price price = priceService.price(record.getBytes(StandardCharsets.UTF_8), memoizePrice);
+        return validator.validate(record).thenCompose(results -> {
+            Set<String> notOwned = new HashSet<>();
+            List<NamedStreamable> files = new ArrayList<>();
+            for (DeclarationValidator.Result result : results) {
+                SignedDeclaration declaration = result.getDeclaration();
+                if (declaration == null) {
+                    continue;
+                }
+                if (isOwner(declaration)) {
+                    files.add(new NamedStreamable.ByteArrayWrapper(fileName(declaration), declaration.getContent()));
+                } else {
+                    notOwned.add(fileName(declaration));
+                }
+            }
+            if (files.isEmpty()) {
+                return CompletableFuture.completedFuture(toPublishResult(results, Map.of(), notOwned, price));
+            }
+            return ipfsAsyncApi.addFiles(files, false).thenApply(added -> {
+                Map<String, String> hashes = added.getFiles().stream()
+                    .collect(Collectors.toMap(BatchAddResult.AddedFile::getName, BatchAddResult.AddedFile::getHash, (first, second) -> first));
+                index(results, hashes, notOwned);
+                PublishResult published = toPublishResult(results, hashes, notOwned, price);
+                log.debug("Published {} declarations, rejected {}", published.getPublished(), published.getRejected());
+                return published;
+            });
+        });
+    }
+
+    /**
+     * @param notOwned file names of the declarations belonging to another key, to which those found when
+     *                 indexing are added
+     */
+    private void index(List<DeclarationValidator.Result> results, Map<String, String> hashes, Set<String> notOwned) {
+        // in the order of the record, so that the last version of a declaration in the record is the latest
+        for (DeclarationValidator.Result result : results) {
+            SignedDeclaration declaration = result.getDeclaration();
+            String hash = declaration != null ? hashes.get(fileName(declaration)) : null;
+            if (hash == null) {
+                continue;
+            }
+            if (declarationIndex.update(declaration.getId(), declaration.getType(), hash, declaration.getKeyId())) {
+                contentCache.putContent(IpfsUtil.fromBase58(hash), declaration.getContent());
+            } else {
+                // another key published the first version since the check before the add, e.g. earlier in the record
+                notOwned.add(fileName(declaration));
+            }
+        }
+        declarationIndex.sync();
+    }
+
+    private boolean isOwner(SignedDeclaration declaration) {
+        String keyId = declarationIndex.getKeyId(declaration.getId());
+        return keyId == null || keyId.equals(declaration.getKeyId());
+    }
+
+    private static PublishResult toPublishResult(List<DeclarationValidator.Result> results, Map<String, String> hashes, Set<String> notOwned,
+        Price price) {
+        List<PublishResult.DeclarationResult> declarations = new ArrayList<>(results.size());
+        for (DeclarationValidator.Result result : results) {
+            SignedDeclaration declaration = result.getDeclaration();
+            if (declaration == null) {
+                declarations.add(new PublishResult.DeclarationResult(result.getIndex(), null, PublishResult.Status.REJECTED, null,
+                    result.getError()));
+                continue;
+            }
+            if (notOwned.contains(fileName(declaration))) {
+                declarations.add(new PublishResult.DeclarationResult(result.getIndex(), declaration.getId(), PublishResult.Status.REJECTED,
+                    null, "Declaration signed by another key than its first version"));
+                continue;
+            }
+            String hash = hashes.get(fileName(declaration));
+            declarations.add(hash != null
+                ? new PublishResult.DeclarationResult(result.getIndex(), declaration.getId(), PublishResult.Status.PUBLISHED, hash, null)
+                : new PublishResult.DeclarationResult(result.getIndex(), declaration.getId(), PublishResult.Status.REJECTED, null,
+                    "Not added by the IPFS node"));
+        }
+        return new PublishResult(declarations, price);
+    }
+
+    private static String fileName(SignedDeclaration declaration) {
+        // the position in the record, since a record may hold many versions of a declaration
+        return declaration.getIndex() + ".json";
+    }
+
+}
@@ -0,0 +1,448 @@
+package com.plooh.adssi.dial.validator.service;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.plooh.adssi.dial.validator.model.PublishResult;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.SocketTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.util.unit.DataSize;
+
+/**
+ * Ingests the records of declarations published on the IPFS pubsub topic {@code validator.pubsub.topic},
+ * like POST /publish does for the records posted to it.
+ *
+ * The messages go through a bounded pipeline: the subscriber reads them, up to
+ * {@code validator.pubsub.max-message-size} each, and decodes their records into the backlog, which holds
+ * at most {@code validator.pubsub.backlog-size} bytes of records. The dispatcher merges the records of the
+ * backlog into batches of up to {@code validator.pubsub.batch-size} records, each validated and added to
+ * IPFS by a single call to the {@link PublishService}, at most {@code validator.pubsub.parallelism} batches
+ * at a time. When the batches cannot keep up with a burst, the backlog fills up and the messages are either
+ * dropped, or deferred by no longer reading the subscription, leaving the daemon to buffer and drop them
+ * ({@code validator.pubsub.overflow}). Either way, the memory used is bounded.
+ */
+@Slf4j
+@Service
+public class PubsubIngestionService implements MeterBinder {
+
+    public enum Overflow {
+        DROP, DEFER
+    }
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+    private static final JsonFactory JSON = new JsonFactory();
+    // the fields of a message around its data: from, seqno and topicIDs
+    private static final int MAX_ENVELOPE_SIZE = 4096;
+    private static final byte[] RECORD_START = "{\"declarations\":[".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] RECORD_END = "]}".getBytes(StandardCharsets.UTF_8);
+
+    private final IpfsApi ipfsApi;
+    private final PublishService publishService;
+    private final boolean enabled;
+    private final String topic;
+    private final Duration idleTimeout;
+    private final Duration retryInterval;
+    private final long maxMessageSize;
+    private final Overflow overflow;
+    private final int batchSize;
+    private final Duration batchMaxDelay;
+    private final int parallelism;
+    private final int maxDeclarations;
+    private final BlockingQueue<Record> backlog = new LinkedBlockingQueue<>();
+    // bytes of the records of the backlog, taken by the subscriber and given back by the dispatcher
+    private final Semaphore backlogBytes;
+    private final int backlogSize;
+    private final Semaphore batches;
+
+    private final LongAdder accepted = new LongAdder();
+    private final LongAdder dropped = new LongAdder();
+    private final LongAdder invalid = new LongAdder();
+    private final LongAdder deferred = new LongAdder();
+    private final LongAdder published = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder failedBatches = new LongAdder();
+
+    private volatile boolean running;
+    private volatile InputStream subscription;
+    private Thread subscriber;
+    private Thread dispatcher;
+
+    public PubsubIngestionService(IpfsApi ipfsApi, PublishService publishService,
+                                  @Value("${validator.pubsub.enabled}") boolean enabled,
+                                  @Value("${validator.pubsub.topic}") String topic,
+                                  @Value("${validator.pubsub.idle-timeout}") Duration idleTimeout,
+                                  @Value("${validator.pubsub.retry-interval}") Duration retryInterval,
+                                  @Value("${validator.pubsub.max-message-size}") DataSize maxMessageSize,
+                                  @Value("${validator.pubsub.backlog-size}") DataSize backlogSize,
+                                  @Value("${validator.pubsub.overflow}") Overflow overflow,
+                                  @Value("${validator.pubsub.batch-size}") int batchSize,
+                                  @Value("${validator.pubsub.batch-max-delay}") Duration batchMaxDelay,
+                                  @Value("${validator.pubsub.parallelism}") int parallelism,
+                                  @Value("${validator.publish.max-declarations}") int maxDeclarations) {
+        this.ipfsApi = ipfsApi;
+        this.publishService = publishService;
+        this.enabled = enabled;
+        this.topic = topic;
+        this.idleTimeout = idleTimeout;
+        this.retryInterval = retryInterval;
+        this.maxMessageSize = maxMessageSize.toBytes();
+        this.overflow = overflow;
+        this.batchSize = Math.max(1, batchSize);
+        this.batchMaxDelay = batchMaxDelay;
+        this.parallelism = Math.max(1, parallelism);
+        this.maxDeclarations = maxDeclarations;
+        // room for a message of the maximum size at least
+        this.backlogSize = (int) Math.min(Integer.MAX_VALUE, Math.max(backlogSize.toBytes(), this.maxMessageSize));
+        this.backlogBytes = new Semaphore(this.backlogSize);
+        this.batches = new Semaphore(this.parallelism);
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        Gauge.builder("validator.pubsub.backlog", backlog, BlockingQueue::size)
+            .description("Records received from pubsub waiting for a batch")
+            .register(registry);
+        Gauge.builder("validator.pubsub.backlog.bytes", backlogBytes, semaphore -> backlogSize - semaphore.availablePermits())
+            .description("Bytes of the records received from pubsub waiting for a batch")
+            .baseUnit("bytes")
+            .register(registry);
+        Gauge.builder("validator.pubsub.batches.active", batches, semaphore -> parallelism - semaphore.availablePermits())
+            .description("Batches of records being validated and published")
+            .register(registry);
+        messages(registry, "accepted", accepted);
+        messages(registry, "dropped", dropped);
+        messages(registry, "invalid", invalid);
+        FunctionCounter.builder("validator.pubsub.deferred", deferred, LongAdder::sum)
+            .description("Messages which waited for room in the backlog, while the subscription was not read")
+            .register(registry);
+        declarations(registry, PublishResult.Status.PUBLISHED, published);
+        declarations(registry, PublishResult.Status.REJECTED, rejected);
+        FunctionCounter.builder("validator.pubsub.batches.failed", failedBatches, LongAdder::sum)
+            .description("Batches which could not be published")
+            .register(registry);
+    }
+
+    @PostConstruct
+    public void start() {
+        if (!enabled) {
+            return;
+        }
+        running = true;
+        subscriber = thread("pubsub-subscriber", this::subscribe);
+        dispatcher = thread("pubsub-dispatcher", this::dispatch);
+        log.info("Ingesting the declarations of the pubsub topic {}, backlog of {} bytes, {} on overflow", topic,
+            backlogSize, overflow.name().toLowerCase());
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (!running) {
+            return;
+        }
+        running = false;
+        closeSubscription();
+        subscriber.interrupt();
+        dispatcher.interrupt();
+    }
+
+    private void subscribe() {
+        while (running) {
+            try (InputStream in = ipfsApi.subscribe(topic, idleTimeout)) {
+                subscription = in;
+                // base64 data, 4 characters per 3 bytes
+                LineReader reader = new LineReader(in, (int) Math.min(Integer.MAX_VALUE - 8, (maxMessageSize + 2) / 3 * 4 + MAX_ENVELOPE_SIZE));
+                byte[] line;
+                while (running && (line = reader.readLine()) != null) {
+                    if (line == LineReader.TOO_LONG) {
+                        invalid.increment();
+                    } else if (line.length > 0) {
+                        receive(line);
+                    }
+                }
+            } catch (SocketTimeoutException e) {
+                log.debug("No message on {} for {}, subscribing again", topic, idleTimeout);
+                continue;
+            } catch (IOException | IpfsException e) {
+                if (running) {
+                    log.warn("Subscription to {} failed, subscribing again in {}: {}", topic, retryInterval, e.getMessage());
+                }
+            } catch (InterruptedException e) {
+                return;
+            } catch (RuntimeException e) {
+                // a bug must not stop the ingestion for good
+                log.error("Subscription to {} failed, subscribing again in {}", topic, retryInterval, e);
+            }
+            try {
+                Thread.sleep(retryInterval.toMillis());
+            } catch (InterruptedException e) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Decode a message into the backlog.
+     */
+    private void receive(byte[] line) throws InterruptedException {
+        Record record = decode(line);
+        if (record == null) {
+            invalid.increment();
+            return;
+        }
+        int size = record.bytes.length;
+        if (backlogBytes.tryAcquire(size)) {
+            accepted.increment();
+        } else if (overflow == Overflow.DEFER) {
+            deferred.increment();
+            backlogBytes.acquire(size);
+            accepted.increment();
+        } else {
+            dropped.increment();
+            return;
+        }
+        backlog.add(record);
+    }
+
+    /**
+     * @param line pubsub message, whose base64 data is a record
+     * @return the record, or null if the message is not a valid record
+     */
+    private Record decode(byte[] line) {
+        try {
+            String data = MAPPER.readTree(line).path("data").asText();
+            // checked before decoding, 4 characters of base64 per 3 bytes
+            if (data.isEmpty() || data.length() / 4L * 3 > maxMessageSize) {
+                return null;
+            }
+            Record record = Record.parse(Base64.getDecoder().decode(data));
+            if (record == null || record.declarations == 0 || record.declarations > maxDeclarations) {
+                return null;
+            }
+            return record;
+        } catch (IOException | IllegalArgumentException e) {
+            log.debug("Invalid message on {}: {}", topic, e.getMessage());
+            return null;
+        }
+    }
+
+    private void dispatch() {
+        Record carried = null;
+        while (running) {
+            try {
+                batches.acquire();
+                List<Record> batch = new ArrayList<>();
+                int declarations = 0;
+                Record next = carried != null ? carried : take(backlog.take());
+                carried = null;
+                long deadline = System.nanoTime() + batchMaxDelay.toNanos();
+                while (next != null) {
+                    if (!batch.isEmpty() && declarations + next.declarations > maxDeclarations) {
+                        // a record is not split, it starts the next batch
+                        carried = next;
+                        break;
+                    }
+                    batch.add(next);
+                    declarations += next.declarations;
+                    if (batch.size() >= batchSize) {
+                        break;
+                    }
+                    next = take(backlog.poll(deadline - System.nanoTime(), TimeUnit.NANOSECONDS));
+                }
+                publish(batch);
+            } catch (InterruptedException e) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * @return the record, taken out of the backlog
+     */
+    private Record take(Record record) {
+        if (record != null) {
+            backlogBytes.release(record.bytes.length);
+        }
+        return record;
+    }
+
+    private void publish(List<Record> batch) {
+        // the declarations of the records, copied as they were received
+        ByteArrayOutputStream record = new ByteArrayOutputStream();
+        record.writeBytes(RECORD_START);
+        for (int i = 0; i < batch.size(); i++) {
+            if (i > 0) {
+                record.write(',');
+            }
+            Record next = batch.get(i);
+            record.write(next.bytes, next.from, next.to - next.from);
+        }
+        record.writeBytes(RECORD_END);
+        try {
+            // a batch is published once, its price is not memoized
+            publishService.publish(record.toString(StandardCharsets.UTF_8), false).whenComplete((result, e) -> {
+                batches.release();
+                if (e != null) {
+                    failedBatches.increment();
+                    log.warn("Publishing {} records of {} failed: {}", batch.size(), topic, e.getMessage());
+                    return;
+                }
+                published.add(result.getPublished());
+                rejected.add(result.getRejected());
+            });
+        } catch (RuntimeException e) {
+            batches.release();
+            failedBatches.increment();
+            log.warn("Publishing {} records of {} failed: {}", batch.size(), topic, e.getMessage());
+        }
+    }
+
+    private void closeSubscription() {
+        InputStream in = subscription;
+        if (in != null) {
+            try {
+                in.close();
+            } catch (IOException e) {
+                log.debug("Error while closing the subscription to {}", topic, e);
+            }
+        }
+    }
+
+    /**
+     * A record of the backlog, with the span of the elements of its declarations array.
+     */
+    private static class Record {
+        private final byte[] bytes;
+        private final int from;
+        private final int to;
+        private final int declarations;
+
+        private Record(byte[] bytes, int from, int to, int declarations) {
+            this.bytes = bytes;
+            this.from = from;
+            this.to = to;
+            this.declarations = declarations;
+        }
+
+        /**
+         * Parse the record without decoding its declarations, like the {@link PriceService} does.
+         *
+         * @return the record, or null if it has no declarations array
+         * @throws IOException if the record is not valid JSON
+         */
+        static Record parse(byte[] bytes) throws IOException {
+            try (JsonParser parser = JSON.createParser(bytes)) {
+                if (parser.nextToken() != JsonToken.START_OBJECT) {
+                    return null;
+                }
+                Record record = null;
+                JsonToken token;
+                while ((token = parser.nextToken()) == JsonToken.FIELD_NAME) {
+                    String field = parser.getCurrentName();
+                    JsonToken value = parser.nextToken();
+                    if ("declarations".equals(field) && value == JsonToken.START_ARRAY) {
+                        int from = (int) parser.getCurrentLocation().getByteOffset();
+                        int declarations = 0;
+                        while (parser.nextToken() != JsonToken.END_ARRAY) {
+                            parser.skipChildren();
+                            declarations++;
+                        }
+                        record = new Record(bytes, from, (int) parser.getTokenLocation().getByteOffset(), declarations);
+                    } else {
+                        parser.skipChildren();
+                    }
+                }
+                if (token != JsonToken.END_OBJECT || parser.nextToken() != null) {
+                    throw new IOException("Unexpected content after the record");
+                }
+                return record;
+            }
+        }
+    }
+
+    /**
+     * Reads the newline delimited messages of the subscription, holding at most the maximum length of a
+     * message: the rest of a longer one is skipped without being held.
+     */
+    private static class LineReader {
+        private static final byte[] TOO_LONG = new byte[0];
+
+        private final InputStream in;
+        private final int maxLength;
+        private final ByteArrayOutputStream line = new ByteArrayOutputStream();
+
+        LineReader(InputStream in, int maxLength) {
+            this.in = new BufferedInputStream(in);
+            this.maxLength = maxLength;
+        }
+
+        /**
+         * @return the next line, {@link #TOO_LONG} if it is longer than the maximum length, or null at the
+         *         end of the stream
+         */
+        byte[] readLine() throws IOException {
+            line.reset();
+            boolean tooLong = false;
+            int b;
+            while ((b = in.read()) != '\n') {
+                if (b == -1) {
+                    return line.size() > 0 || tooLong ? (tooLong ? TOO_LONG : line.toByteArray()) : null;
+                }
+                if (tooLong) {
+                    continue;
+                }
+                if (line.size() == maxLength) {
+                    tooLong = true;
+                    line.reset();
+                    continue;
+                }
+                line.write(b);
+            }
+            return tooLong ? TOO_LONG : line.toByteArray();
+        }
+    }
+
+    private static Thread thread(String name, Runnable task) {
+        Thread thread = new Thread(task, name);
+        thread.setDaemon(true);
+        thread.start();
+        return thread;
+    }
+
+    private static void messages(MeterRegistry registry, String result, LongAdder count) {
+        FunctionCounter.builder("validator.pubsub.messages", count, LongAdder::sum)
+            .description("Messages received from pubsub")
+            .tag("result", result)
+            .register(registry);
+    }
+
+    private static void declarations(MeterRegistry registry, PublishResult.Status status, LongAdder count) {
+        FunctionCounter.builder("validator.pubsub.declarations", count, LongAdder::sum)
+            .description("Declarations received from pubsub, by result of their validation and publication")
+            .tag("status", status.name().toLowerCase())
+            .register(registry);
+    }
+
+}
@@ -0,0 +1,160 @@
+package com.plooh.adssi.dial.validator.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.plooh.adssi.dial.validator.util.Jws;
+import com.plooh.adssi.dial.validator.util.Sha256;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import java.nio.ByteBuffer;
+import java.security.interfaces.ECPublicKey;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.function.IntFunction;
+import javax.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+/**
+ * Verifies the ES256 signatures of the declarations (see {@link Jws}).
+ *
+ * Verifying a signature is CPU bound, so the verifications of a record run in batches of
+ * {@code validator.signatures.batch-size} on a fork-join pool of {@code validator.signatures.parallelism}
+ * threads, the number of cores by default. The same keys and declarations come back again and again, so
+ * the public keys are cached decoded by key id, and the valid signatures by key id and SHA-256 of the
+ * signing input and signature: a declaration verified once is not verified again while it is cached.
+ * Invalid signatures are not cached.
+ */
+@Slf4j
+@Service
+public class SignatureVerifier implements MeterBinder {
+
+    private final ForkJoinPool pool;
+    private final int batchSize;
+    private final Cache<String, ECPublicKey> keys;
+    private final Cache<VerifiedSignature, Boolean> verified;
+    private Counter valid;
+    private Counter invalid;
+
+    public SignatureVerifier(@Value("${validator.signatures.parallelism}") int parallelism,
+                             @Value("${validator.signatures.batch-size}") int batchSize,
+                             @Value("${validator.signatures.key-cache-size}") long keyCacheSize,
+                             @Value("${validator.signatures.result-cache-size}") long resultCacheSize) {
+        int threads = parallelism > 0 ? parallelism : Runtime.getRuntime().availableProcessors();
+        this.pool = new ForkJoinPool(threads, pool -> {
+            ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+            thread.setName("signature-verifier-" + thread.getPoolIndex());
+            thread.setDaemon(true);
+            return thread;
+        }, null, false);
+        this.batchSize = Math.max(1, batchSize);
+        this.keys = Caffeine.newBuilder()
+            .maximumSize(keyCacheSize)
+            .recordStats()
+            .build();
+        // 0 disables the cache, a cache of size 0 may still hold an entry until it is evicted
+        this.verified = resultCacheSize > 0 ? Caffeine.newBuilder()
+            .maximumSize(resultCacheSize)
+            .recordStats()
+            .build() : null;
+        log.info("Signatures are verified by {} threads in batches of {}, verified signature cache size: {}", threads,
+            this.batchSize, resultCacheSize);
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        CaffeineCacheMetrics.monitor(registry, keys, "validator.signatures.keys");
+        if (verified != null) {
+            CaffeineCacheMetrics.monitor(registry, verified, "validator.signatures.verified");
+        }
+        valid = counter(registry, "valid");
+        invalid = counter(registry, "invalid");
+    }
+
+    /**
+     * Run verifications on the pool, in batches.
+     *
+     * @param count number of verifications
+     * @param verification the verification of an index, from 0 to count - 1, usually calling
+     *     {@link #verify(String, JsonNode, byte[], byte[])}
+     * @return the results of the verifications, in the order of the indexes
+     */
+    public <R> CompletableFuture<List<R>> verifyAll(int count, IntFunction<R> verification) {
+        List<CompletableFuture<List<R>>> batches = new ArrayList<>((count + batchSize - 1) / batchSize);
+        for (int start = 0; start < count; start += batchSize) {
+            int from = start;
+            int to = Math.min(count, start + batchSize);
+            batches.add(CompletableFuture.supplyAsync(() -> {
+                List<R> results = new ArrayList<>(to - from);
+                for (int index = from; index < to; index++) {
+                    results.add(verification.apply(index));
+                }
+                return results;
+            }, pool));
+        }
+        return CompletableFuture.allOf(batches.toArray(new CompletableFuture<?>[0])).thenApply(done -> {
+            List<R> results = new ArrayList<>(count);
+            batches.forEach(batch -> results.addAll(batch.join()));
+            return results;
+        });
+    }
+
+    /**
+     * Verify an ES256 signature, unless it has been found valid before.
+     *
+     * @param keyId RFC 7638 thumbprint of the key
+     * @param jwk the key, decoded only if the key id is not cached
+     * @param signingInput
+     * @param signature raw R || S signature
+     * @return true if the signature is valid
+     * @throws IllegalArgumentException if the key is not a valid P-256 key or the key id is not its thumbprint
+     */
+    public boolean verify(String keyId, JsonNode jwk, byte[] signingInput, byte[] signature) {
+        VerifiedSignature cacheKey = verified != null ? new VerifiedSignature(keyId, ByteBuffer.wrap(Sha256.digest(signingInput, signature))) : null;
+        if (cacheKey != null && verified.getIfPresent(cacheKey) != null) {
+            return true;
+        }
+        ECPublicKey key = keys.get(keyId, id -> {
+            // a key is only cached under its own thumbprint
+            if (!Jws.thumbprint(jwk).equals(id)) {
+                throw new IllegalArgumentException("The key id is not the thumbprint of the key");
+            }
+            return Jws.publicKey(jwk);
+        });
+        boolean result = Jws.verify(key, signingInput, signature);
+        if (result && cacheKey != null) {
+            verified.put(cacheKey, Boolean.TRUE);
+        }
+        Counter counter = result ? valid : invalid;
+        if (counter != null) {
+            counter.increment();
+        }
+        return result;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        pool.shutdownNow();
+    }
+
+    private static Counter counter(MeterRegistry registry, String result) {
+        return Counter.builder("validator.signatures.verifications")
+            .description("Signatures verified, i.e. not found in the cache of the verified signatures")
+            .tag("result", result)
+            .register(registry);
+    }
+
+    @lombok.Value
+    private static class VerifiedSignature {
+        String keyId;
+        ByteBuffer digest;
+    }
+
+}
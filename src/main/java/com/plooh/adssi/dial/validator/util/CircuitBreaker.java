@@ -0,0 +1,149 @@
+package com.plooh.adssi.dial.validator.util;
+
+import java.time.Duration;
+
+/**
+ * Count based circuit breaker.
+ *
+ * While closed, the outcomes of the last {@code windowSize} calls are kept, and the breaker opens when
+ * at least {@code minimumCalls} of them were recorded and the failure rate reaches the threshold. While
+ * open, calls are rejected. After the open duration the breaker lets {@code halfOpenCalls} trial calls
+ * through: it closes if they all succeed and opens again at the first failure.
+ */
+public class CircuitBreaker {
+
+    public enum State {
+        CLOSED,
+        OPEN,
+        HALF_OPEN
+    }
+
+    private final boolean[] window;
+    private final int minimumCalls;
+    private final double failureRateThreshold;
+    private final long openNanos;
+    private final int halfOpenCalls;
+
+    private State state = State.CLOSED;
+    private int position;
+    private int calls;
+    private int failures;
+    private long openedAt;
+    private int halfOpenPermits;
+    private int halfOpenSuccesses;
+
+    /**
+     * @param windowSize number of calls of which the failure rate is computed
+     * @param minimumCalls calls needed before the breaker can open
+     * @param failureRateThreshold failure rate, from 0 to 1, opening the breaker
+     * @param openDuration time during which calls are rejected
+     * @param halfOpenCalls trial calls needed to close the breaker again
+     */
+    public CircuitBreaker(int windowSize, int minimumCalls, double failureRateThreshold, Duration openDuration, int halfOpenCalls) {
+        if (windowSize < 1 || minimumCalls < 1 || minimumCalls > windowSize || halfOpenCalls < 1) {
+            throw new IllegalArgumentException("Invalid circuit breaker window");
+        }
+        this.window = new boolean[windowSize];
+        this.minimumCalls = minimumCalls;
+        this.failureRateThreshold = failureRateThreshold;
+        this.openNanos = openDuration.toNanos();
+        this.halfOpenCalls = halfOpenCalls;
+    }
+
+    /**
+     * @return true if the call may proceed, in which case its outcome must be recorded with
+     * {@link #onSuccess()}, {@link #onFailure()} or {@link #release()}
+     */
+    public synchronized boolean tryAcquire() {
+        if (state == State.OPEN) {
+            if (System.nanoTime() - openedAt < openNanos) {
+                return false;
+            }
+            state = State.HALF_OPEN;
+            halfOpenPermits = halfOpenCalls;
+            halfOpenSuccesses = 0;
+        }
+        if (state == State.HALF_OPEN) {
+            if (halfOpenPermits == 0) {
+                return false;
+            }
+            halfOpenPermits--;
+        }
+        return true;
+    }
+
+    public synchronized void onSuccess() {
+        if (state == State.HALF_OPEN) {
+            if (++halfOpenSuccesses == halfOpenCalls) {
+                close();
+            }
+            return;
+        }
+        record(false);
+    }
+
+    public synchronized void onFailure() {
+        if (state == State.HALF_OPEN) {
+            open();
+            return;
+        }
+        record(true);
+        if (state == State.CLOSED && calls >= minimumCalls && failures >= failureRateThreshold * calls) {
+            open();
+        }
+    }
+
+    /**
+     * Give back an acquired permit without an outcome, e.g. when the call could not be started.
+     */
+    public synchronized void release() {
+        if (state == State.HALF_OPEN && halfOpenPermits < halfOpenCalls - halfOpenSuccesses) {
+            halfOpenPermits++;
+        }
+    }
+
+    public synchronized State getState() {
+        if (state == State.OPEN && System.nanoTime() - openedAt >= openNanos) {
+            return State.HALF_OPEN;
+        }
+        return state;
+    }
+
+    /**
+     * @return the time left before the breaker lets trial calls through, zero unless open
+     */
+    public synchronized Duration getRetryAfter() {
+        if (state != State.OPEN) {
+            return Duration.ZERO;
+        }
+        return Duration.ofNanos(Math.max(0, openNanos - (System.nanoTime() - openedAt)));
+    }
+
+    private void record(boolean failure) {
+        if (calls == window.length) {
+            if (window[position]) {
+                failures--;
+            }
+        } else {
+            calls++;
+        }
+        window[position] = failure;
+        if (failure) {
+            failures++;
+        }
+        position = (position + 1) % window.length;
+    }
+
+    private void open() {
+        state = State.OPEN;
+        openedAt = System.nanoTime();
+    }
+
+    private void close() {
+        state = State.CLOSED;
+        calls = 0;
+        failures = 0;
+        position = 0;
+    }
+
+}
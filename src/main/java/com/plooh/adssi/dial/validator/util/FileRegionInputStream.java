@@ -0,0 +1,88 @@
+package com.plooh.adssi.dial.validator.util;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * Stream over a region of a memory-mapped file. Reads are served from the mapping, and
+ * {@link #transferTo(OutputStream)} hands the rest of the region to {@link FileChannel#transferTo}, so the
+ * content is not copied through a buffer of the stream.
+ */
+public class FileRegionInputStream extends InputStream {
+
+    private final FileChannel channel;
+    private final long position;
+    private final ByteBuffer region;
+    private final Runnable onClose;
+    private boolean closed;
+
+    /**
+     * @param channel channel of the file
+     * @param position position of the region in the file
+     * @param region mapping of the region, read from its position to its limit
+     * @param onClose run once when the stream is closed
+     */
+    public FileRegionInputStream(FileChannel channel, long position, ByteBuffer region, Runnable onClose) {
+        this.channel = channel;
+        this.position = position;
+        this.region = region;
+        this.onClose = onClose;
+    }
+
+    @Override
+    public int read() {
+        return region.hasRemaining() ? region.get() & 0xFF : -1;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) {
+        if (len == 0) {
+            return 0;
+        }
+        if (!region.hasRemaining()) {
+            return -1;
+        }
+        int read = Math.min(len, region.remaining());
+        region.get(b, off, read);
+        return read;
+    }
+
+    @Override
+    public long skip(long n) {
+        int skipped = (int) Math.max(0, Math.min(n, region.remaining()));
+        region.position(region.position() + skipped);
+        return skipped;
+    }
+
+    @Override
+    public int available() {
+        return region.remaining();
+    }
+
+    @Override
+    public long transferTo(OutputStream out) throws IOException {
+        WritableByteChannel target = Channels.newChannel(out);
+        long from = position + region.position();
+        long remaining = region.remaining();
+        long total = 0;
+        while (total < remaining) {
+            total += channel.transferTo(from + total, remaining - total, target);
+        }
+        region.position(region.limit());
+        return total;
+    }
+
+    @Override
+    public void close() {
+        if (!closed) {
+            closed = true;
+            onClose.run();
+        }
+    }
+
+}
@@ -0,0 +1,44 @@
+package com.plooh.adssi.dial.validator.util;
+
+import io.ipfs.api.NamedStreamable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+import java.util.Optional;
+import org.springframework.core.io.InputStreamSource;
+
+/**
+ * {@link NamedStreamable} reading its content from an {@link InputStreamSource}, such as an uploaded
+ * multipart file, instead of holding it in a byte array.
+ */
+public class InputStreamSourceWrapper implements NamedStreamable {
+
+    private final Optional<String> name;
+    private final InputStreamSource source;
+
+    public InputStreamSourceWrapper(String name, InputStreamSource source) {
+        this.name = Optional.ofNullable(name);
+        this.source = source;
+    }
+
+    @Override
+    public InputStream getInputStream() throws IOException {
+        return source.getInputStream();
+    }
+
+    @Override
+    public Optional<String> getName() {
+        return name;
+    }
+
+    @Override
+    public List<NamedStreamable> getChildren() {
+        return List.of();
+    }
+
+    @Override
+    public boolean isDirectory() {
+        return false;
+    }
+
+}
@@ -0,0 +1,253 @@
+package com.plooh.adssi.dial.validator.util;
+
+import io.ipfs.api.IPFS;
+import io.ipfs.api.JSONParser;
+import io.ipfs.api.MerkleNode;
+import io.ipfs.api.Multipart;
+import io.ipfs.api.NamedStreamable;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.function.LongConsumer;
+import java.util.function.Predicate;
+
+/**
+ * Direct calls to the HTTP RPC API of an IPFS node, for the arguments the java client does not expose
+ * (e.g. offset and length of a cat) or where its request handling buffers the content.
+ */
+public class IpfsRpc {
+
+    public static final String API_PATH = "/api/v0/";
+
+    private static final int CONNECT_TIMEOUT_MILLIS = 10_000;
+    private static final int READ_TIMEOUT_MILLIS = 60_000;
+    private static final int CHUNK_SIZE = 8192;
+
+    /**
+     * Call the given RPC command and return the response body as a stream. The caller must close it.
+     *
+     * @param ipfs node to call
+     * @param command command and query string, e.g. {@code cat?arg=...&offset=0}
+     * @return response body
+     */
+    public static InputStream stream(IPFS ipfs, String command) throws IOException {
+        return stream(ipfs, command, CONNECT_TIMEOUT_MILLIS, READ_TIMEOUT_MILLIS);
+    }
+
+    /**
+     * Call the given RPC command and return the response body as a stream, failing if no byte is received
+     * for the given timeout, e.g. for the long-lived responses of pubsub/sub. The caller must close it.
+     *
+     * @param ipfs node to call
+     * @param command command and query string
+     * @param readTimeoutMillis read timeout
+     * @return response body
+     */
+    public static InputStream stream(IPFS ipfs, String command, int readTimeoutMillis) throws IOException {
+        return stream(ipfs, command, CONNECT_TIMEOUT_MILLIS, readTimeoutMillis);
+    }
+
+    private static InputStream stream(IPFS ipfs, String command, int connectTimeoutMillis, int readTimeoutMillis) throws IOException {
+        URL url = new URL(ipfs.protocol, ipfs.host, ipfs.port, API_PATH + command);
+        HttpURLConnection conn = (HttpURLConnection) url.openConnection();
+        conn.setRequestMethod("POST");
+        conn.setConnectTimeout(connectTimeoutMillis);
+        conn.setReadTimeout(readTimeoutMillis);
+        return response(conn, command);
+    }
+
+    /**
+     * Add the given files with a single streamed multipart request. Unlike the java client, which lets
+     * {@link HttpURLConnection} buffer the whole request body, the content is sent in chunks as it is
+     * read from the files, so the memory used does not depend on the size of the upload.
+     *
+     * @param ipfs node to call
+     * @param files files and directories to add
+     * @param options add options, e.g. {@link io.ipfs.api.Options#RAW_LEAVES}
+     * @return one node per added file and directory, plus the wrapping directory if requested
+     */
+    public static List<MerkleNode> add(IPFS ipfs, List<NamedStreamable> files, Map<String, String> options) throws IOException {
+        return add(ipfs, files, options, bytes -> { });
+    }
+
+    /**
+     * Add the given files with a single streamed multipart request, see {@link #add(IPFS, List, Map)}.
+     *
+     * @param ipfs node to call
+     * @param files files and directories to add
+     * @param options add options
+     * @param sent receives the number of content bytes sent, once the request has been written
+     * @return one node per added file and directory, plus the wrapping directory if requested
+     */
+    public static List<MerkleNode> add(IPFS ipfs, List<NamedStreamable> files, Map<String, String> options, LongConsumer sent) throws IOException {
+        return add(ipfs, files, options, READ_TIMEOUT_MILLIS, sent);
+    }
+
+    /**
+     * Add the given files with a single streamed multipart request, see {@link #add(IPFS, List, Map)}.
+     *
+     * @param ipfs node to call
+     * @param files files and directories to add
+     * @param options add options
+     * @param readTimeoutMillis read timeout, the node answers once the whole request has been added
+     * @param sent receives the number of content bytes sent, once the request has been written
+     * @return one node per added file and directory, plus the wrapping directory if requested
+     */
+    public static List<MerkleNode> add(IPFS ipfs, List<NamedStreamable> files, Map<String, String> options, int readTimeoutMillis,
+                                       LongConsumer sent) throws IOException {
+        StringBuilder command = new StringBuilder("add?stream-channels=true");
+        options.forEach((key, value) -> command.append('&').append(key).append('=').append(encode(value)));
+
+        String boundary = Multipart.createBoundary();
+        URL url = new URL(ipfs.protocol, ipfs.host, ipfs.port, API_PATH + command);
+        HttpURLConnection conn = (HttpURLConnection) url.openConnection();
+        conn.setRequestMethod("POST");
+        conn.setConnectTimeout(CONNECT_TIMEOUT_MILLIS);
+        conn.setReadTimeout(readTimeoutMillis);
+        conn.setDoOutput(true);
+        conn.setChunkedStreamingMode(CHUNK_SIZE);
+        conn.setRequestProperty("Content-Type", "multipart/form-data; boundary=" + boundary);
+
+        long content = 0;
+        try (OutputStream out = conn.getOutputStream()) {
+            for (NamedStreamable file : files) {
+                content += writePart(out, boundary, file.getName().orElse(""), file);
+            }
+            out.write(("--" + boundary + "--\r\n").getBytes(StandardCharsets.UTF_8));
+        }
+        sent.accept(content);
+
+        List<MerkleNode> nodes = new ArrayList<>();
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(response(conn, "add"), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (!line.isBlank()) {
+                    nodes.add(MerkleNode.fromJSON(JSONParser.parse(line)));
+                }
+            }
+        }
+        return nodes;
+    }
+
+    /**
+     * Call the given RPC command and pass each object of its newline delimited JSON response to the
+     * consumer as soon as it is read, until the consumer returns false.
+     *
+     * @param ipfs node to call
+     * @param command command and query string, e.g. "pin/ls?stream=true"
+     * @param consumer receives each object, returns false to stop reading
+     */
+    public static void forEach(IPFS ipfs, String command, Predicate<Map<String, Object>> consumer) throws IOException {
+        forEach(stream(ipfs, command), consumer);
+    }
+
+    /**
+     * Pass each object of the given newline delimited JSON response to the consumer as soon as it is
+     * read, until the consumer returns false, then close the response.
+     *
+     * @param in response of the command
+     * @param consumer receives each object, returns false to stop reading
+     */
+    @SuppressWarnings("unchecked")
+    public static void forEach(InputStream in, Predicate<Map<String, Object>> consumer) throws IOException {
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (!line.isBlank() && !consumer.test((Map<String, Object>) JSONParser.parse(line))) {
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * Call the given RPC command and parse its JSON response into a map.
+     *
+     * @param ipfs node to call
+     * @param command command and query string
+     * @return parsed response
+     */
+    public static Map<String, Object> map(IPFS ipfs, String command) throws IOException {
+        return map(ipfs, command, READ_TIMEOUT_MILLIS);
+    }
+
+    /**
+     * Call the given RPC command and parse its JSON response into a map, failing if the node does not
+     * answer within the given timeout, e.g. for health checks, or for the commands which answer once done
+     * like pin/add.
+     *
+     * @param ipfs node to call
+     * @param command command and query string
+     * @param timeoutMillis connect and read timeout
+     * @return parsed response
+     */
+    @SuppressWarnings("unchecked")
+    public static Map<String, Object> map(IPFS ipfs, String command, int timeoutMillis) throws IOException {
+        try (InputStream in = stream(ipfs, command, Math.min(timeoutMillis, CONNECT_TIMEOUT_MILLIS), timeoutMillis)) {
+            return (Map<String, Object>) JSONParser.parse(new String(in.readAllBytes(), StandardCharsets.UTF_8));
+        }
+    }
+
+    /**
+     * Parse the response of an ls command into the links of the listed objects, as
+     * {@link IPFS#ls(io.ipfs.multihash.Multihash)} does.
+     *
+     * @param in response of the command
+     * @return links of the objects
+     */
+    @SuppressWarnings("unchecked")
+    public static List<MerkleNode> links(InputStream in) throws IOException {
+        Map<String, Object> json = (Map<String, Object>) JSONParser.parse(new String(in.readAllBytes(), StandardCharsets.UTF_8));
+        List<MerkleNode> links = new ArrayList<>();
+        for (Object object : (List<Object>) json.get("Objects")) {
+            for (Object link : (List<Object>) ((Map<String, Object>) object).get("Links")) {
+                links.add(MerkleNode.fromJSON(link));
+            }
+        }
+        return links;
+    }
+
+    private static long writePart(OutputStream out, String boundary, String path, NamedStreamable file) throws IOException {
+        String part = "--" + boundary + "\r\n"
+            + "Content-Disposition: file; filename=\"" + encode(path) + "\"\r\n"
+            + "Content-Type: " + (file.isDirectory() ? "application/x-directory" : "application/octet-stream") + "\r\n\r\n";
+        out.write(part.getBytes(StandardCharsets.UTF_8));
+        long content = 0;
+        if (!file.isDirectory()) {
+            try (InputStream in = file.getInputStream()) {
+                content = IpfsUtil.copy(in, out);
+            }
+        }
+        out.write("\r\n".getBytes(StandardCharsets.UTF_8));
+        if (file.isDirectory()) {
+            for (NamedStreamable child : file.getChildren()) {
+                content += writePart(out, boundary, path + "/" + child.getName().orElse(""), child);
+            }
+        }
+        return content;
+    }
+
+    private static InputStream response(HttpURLConnection conn, String command) throws IOException {
+        try {
+            return conn.getInputStream();
+        } catch (IOException e) {
+            InputStream error = conn.getErrorStream();
+            String message = error == null ? e.getMessage() : new String(error.readAllBytes(), StandardCharsets.UTF_8);
+            throw new IOException("IPFS node returned " + conn.getResponseCode() + " for " + command + ": " + message, e);
+        }
+    }
+
+    private static String encode(String value) {
+        return URLEncoder.encode(value, StandardCharsets.UTF_8);
+    }
+
+}
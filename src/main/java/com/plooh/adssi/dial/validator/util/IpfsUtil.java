@@ -3,16 +3,416 @@ package com.plooh.adssi.dial.validator.util;
 import io.ipfs.cid.Cid;
 import io.ipfs.multibase.Multibase;
 import io.ipfs.multihash.Multihash;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
 
+/**
+ * CID and stream helpers.
+ *
+ * The CID codec handles base58btc (including bare CIDv0 "Qm..." strings) and base32 CIDv0 and CIDv1
+ * with plain carry loops over byte arrays instead of the {@link java.math.BigInteger} arithmetic and
+ * intermediate arrays of {@link Cid#decode(String)} and {@link Multibase#encode(Multibase.Base, byte[])}.
+ * Scratch buffers are reused per thread, and callers that handle many CIDs can pass their own buffers
+ * to {@link #decode(CharSequence, byte[])} and {@link #encode(Multibase.Base, byte[], int, int, StringBuilder)}.
+ * Anything the codec does not handle, including invalid input, is passed on to the library, so the
+ * results and errors are the same.
+ */
 public class IpfsUtil {
 
+    /**
+     * Large enough for the binary form of any CID with a digest of up to 200 bytes.
+     */
+    public static final int MAX_CID_BYTES = 256;
+
+    private static final int COPY_BUFFER_SIZE = 8192;
+
+    private static final char[] BASE58_ALPHABET = "123456789ABCDEFGHJKLMNPQRSTUVWXYZabcdefghijkmnopqrstuvwxyz".toCharArray();
+    private static final char[] BASE32_ALPHABET = "abcdefghijklmnopqrstuvwxyz234567".toCharArray();
+    private static final byte[] BASE58_INDEXES = indexes(BASE58_ALPHABET);
+    private static final byte[] BASE32_INDEXES = indexes(BASE32_ALPHABET);
+
+    private static final int DIGITS_PER_WORD = 5;
+    private static final long BASE58_WORD = 58L * 58 * 58 * 58 * 58;
+
+    private static final int CIDV0_LENGTH = 46;
+    private static final int SHA2_256 = 0x12;
+    private static final int SHA2_256_LENGTH = 32;
+
+    private static final ThreadLocal<byte[]> COPY_BUFFER = ThreadLocal.withInitial(() -> new byte[COPY_BUFFER_SIZE]);
+    private static final ThreadLocal<Buffers> CODEC_BUFFERS = ThreadLocal.withInitial(Buffers::new);
+
+    /**
+     * Decode a CID given in base58btc, base32 or as a bare CIDv0.
+     *
+     * @param base58String
+     * @return the decoded CID, equal to the one of {@link Cid#decode(String)}
+     */
     public static Multihash fromBase58(String base58String){
-        Cid cid = Cid.decode(base58String);
-        return cid;
+        byte[] bytes = CODEC_BUFFERS.get().bytes;
+        int length = decode(base58String, bytes);
+        if (length > 0) {
+            Cid cid = fromBytes(bytes, 0, length);
+            if (cid != null) {
+                return cid;
+            }
+        }
+        return Cid.decode(base58String);
     }
 
+    /**
+     * Encode the multihash, or the CID, in base58btc with its "z" multibase prefix.
+     *
+     * @param multihash
+     * @return the encoded multihash, equal to the one of {@link Multibase#encode(Multibase.Base, byte[])}
+     */
     public static String toBase58(Multihash multihash){
-        return Multibase.encode(Multibase.Base.Base58BTC, multihash.toBytes());
+        return toString(Multibase.Base.Base58BTC, multihash);
+    }
+
+    /**
+     * Encode the multihash, or the CID, in lower case base32 with its "b" multibase prefix.
+     *
+     * @param multihash
+     * @return the encoded multihash
+     */
+    public static String toBase32(Multihash multihash) {
+        return toString(Multibase.Base.Base32, multihash);
+    }
+
+    /**
+     * Decode the multibase text of a CID into its binary form.
+     *
+     * @param cid base58btc ("z"), base32 ("b" or "B") or bare CIDv0 text
+     * @param out buffer receiving the binary CID
+     * @return number of bytes written to the buffer, or -1 if the text is not valid or not handled here,
+     * or does not fit the buffer
+     */
+    public static int decode(CharSequence cid, byte[] out) {
+        int length = cid.length();
+        if (length == CIDV0_LENGTH && cid.charAt(0) == 'Q' && cid.charAt(1) == 'm') {
+            return decodeBase58(cid, 0, length, out);
+        }
+        if (length < 2) {
+            return -1;
+        }
+        switch (cid.charAt(0)) {
+            case 'z':
+                return decodeBase58(cid, 1, length, out);
+            case 'b':
+            case 'B':
+                return decodeBase32(cid, 1, length, out);
+            default:
+                return -1;
+        }
+    }
+
+    /**
+     * Append the multibase text of the given bytes, prefix included, to the builder.
+     *
+     * @param base multibase to use; bases other than base58btc and base32 are encoded by the library
+     * @param bytes
+     * @param offset
+     * @param length
+     * @param out builder receiving the text
+     */
+    public static void encode(Multibase.Base base, byte[] bytes, int offset, int length, StringBuilder out) {
+        switch (base) {
+            case Base58BTC:
+                out.append(base.prefix);
+                encodeBase58(bytes, offset, length, out);
+                break;
+            case Base32:
+                out.append(base.prefix);
+                encodeBase32(bytes, offset, length, out);
+                break;
+            default:
+                out.append(Multibase.encode(base, Arrays.copyOfRange(bytes, offset, offset + length)));
+        }
+    }
+
+    /**
+     * Parse a binary CID.
+     *
+     * @param bytes
+     * @param offset
+     * @param length
+     * @return the CID, or null if the bytes are not a CIDv0 or CIDv1 of a known codec and hash type
+     */
+    public static Cid fromBytes(byte[] bytes, int offset, int length) {
+        int end = offset + length;
+        if (length == SHA2_256_LENGTH + 2 && bytes[offset] == SHA2_256 && bytes[offset + 1] == SHA2_256_LENGTH) {
+            return new Cid(0, Cid.Codec.DagProtobuf, Multihash.Type.sha2_256,
+                Arrays.copyOfRange(bytes, offset + 2, end));
+        }
+        // version, codec, hash type and digest length, as unsigned varints
+        int position = offset;
+        long version = readVarint(bytes, position, end);
+        position += varintSize(bytes, position, end);
+        long codec = readVarint(bytes, position, end);
+        position += varintSize(bytes, position, end);
+        long type = readVarint(bytes, position, end);
+        position += varintSize(bytes, position, end);
+        long digestLength = readVarint(bytes, position, end);
+        position += varintSize(bytes, position, end);
+        if (version != 1 || codec < 0 || type < 0 || type > Integer.MAX_VALUE || digestLength != end - position) {
+            return null;
+        }
+        try {
+            return new Cid(1, Cid.Codec.lookup(codec), Multihash.Type.lookup((int) type),
+                Arrays.copyOfRange(bytes, position, end));
+        } catch (RuntimeException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Write the binary form of the multihash, or of the CID, as returned by {@link Multihash#toBytes()}.
+     *
+     * @param multihash
+     * @param out buffer receiving the bytes
+     * @return number of bytes written
+     */
+    public static int toBytes(Multihash multihash, byte[] out) {
+        return toBytes(multihash, multihash.getHash(), out);
+    }
+
+    /**
+     * Copy the stream through a small buffer reused by the calling thread, so downloads never hold
+     * more than one buffer of content on the heap. Streams over a file region are transferred by the file
+     * channel instead.
+     *
+     * @param in
+     * @param out
+     * @return number of bytes copied
+     */
+    public static long copy(InputStream in, OutputStream out) throws IOException {
+        if (in instanceof FileRegionInputStream) {
+            return in.transferTo(out);
+        }
+        byte[] buffer = COPY_BUFFER.get();
+        long total = 0;
+        int read;
+        while ((read = in.read(buffer)) != -1) {
+            out.write(buffer, 0, read);
+            total += read;
+        }
+        return total;
+    }
+
+    private static String toString(Multibase.Base base, Multihash multihash) {
+        byte[] digest = multihash.getHash();
+        if (digest.length > MAX_CID_BYTES - 32) {
+            return Multibase.encode(base, multihash.toBytes());
+        }
+        Buffers buffers = CODEC_BUFFERS.get();
+        int length = toBytes(multihash, digest, buffers.bytes);
+        StringBuilder text = buffers.text;
+        text.setLength(0);
+        encode(base, buffers.bytes, 0, length, text);
+        return text.toString();
+    }
+
+    private static int toBytes(Multihash multihash, byte[] digest, byte[] out) {
+        int position = 0;
+        if (multihash instanceof Cid && ((Cid) multihash).version != 0) {
+            position = putVarint(out, position, ((Cid) multihash).version);
+            position = putVarint(out, position, ((Cid) multihash).codec.type);
+        }
+        position = putVarint(out, position, multihash.getType().index);
+        position = putVarint(out, position, digest.length);
+        System.arraycopy(digest, 0, out, position, digest.length);
+        return position + digest.length;
+    }
+
+    private static int decodeBase58(CharSequence in, int from, int to, byte[] out) {
+        int zeros = 0;
+        while (from + zeros < to && in.charAt(from + zeros) == '1') {
+            zeros++;
+        }
+        // accumulate the number in little endian 32 bit words, five digits (one multiplication) at a time
+        int[] words = words(out.length / Integer.BYTES + 1);
+        int size = 0;
+        for (int i = from + zeros; i < to; ) {
+            long multiplier = 1;
+            long carry = 0;
+            for (int end = Math.min(i + DIGITS_PER_WORD, to); i < end; i++) {
+                char c = in.charAt(i);
+                int digit = c < 128 ? BASE58_INDEXES[c] : -1;
+                if (digit < 0) {
+                    return -1;
+                }
+                carry = carry * 58 + digit;
+                multiplier *= 58;
+            }
+            for (int j = 0; j < size; j++) {
+                long value = (words[j] & 0xFFFFFFFFL) * multiplier + carry;
+                words[j] = (int) value;
+                carry = value >>> 32;
+            }
+            if (carry != 0) {
+                if (size == words.length) {
+                    return -1;
+                }
+                words[size++] = (int) carry;
+            }
+        }
+        int topBytes = size == 0 ? 0 : Integer.BYTES - Integer.numberOfLeadingZeros(words[size - 1]) / 8;
+        int length = zeros + (size == 0 ? 0 : (size - 1) * Integer.BYTES + topBytes);
+        if (length > out.length) {
+            return -1;
+        }
+        Arrays.fill(out, 0, zeros, (byte) 0);
+        int position = zeros;
+        for (int j = size - 1; j >= 0; j--) {
+            for (int k = j == size - 1 ? topBytes - 1 : Integer.BYTES - 1; k >= 0; k--) {
+                out[position++] = (byte) (words[j] >>> (k * 8));
+            }
+        }
+        return length;
+    }
+
+    private static void encodeBase58(byte[] bytes, int offset, int length, StringBuilder out) {
+        int zeros = 0;
+        while (zeros < length && bytes[offset + zeros] == 0) {
+            zeros++;
+        }
+        // load the number in big endian 32 bit words
+        int significant = length - zeros;
+        int count = (significant + Integer.BYTES - 1) / Integer.BYTES;
+        int[] words = words(count);
+        int position = offset + zeros;
+        for (int j = 0; j < count; j++) {
+            int take = j == 0 ? significant - (count - 1) * Integer.BYTES : Integer.BYTES;
+            int word = 0;
+            for (int k = 0; k < take; k++) {
+                word = (word << 8) | (bytes[position++] & 0xFF);
+            }
+            words[j] = word;
+        }
+        // divide by 58^5 until zero, each remainder gives five digits, least significant first
+        Buffers buffers = CODEC_BUFFERS.get();
+        int capacity = (significant * 137 / 100 / DIGITS_PER_WORD + 1) * DIGITS_PER_WORD;
+        byte[] digits = capacity <= buffers.digits.length ? buffers.digits : new byte[capacity];
+        int size = 0;
+        for (int start = 0; start < count; ) {
+            long remainder = 0;
+            for (int j = start; j < count; j++) {
+                long value = (remainder << 32) | (words[j] & 0xFFFFFFFFL);
+                words[j] = (int) (value / BASE58_WORD);
+                remainder = value % BASE58_WORD;
+            }
+            while (start < count && words[start] == 0) {
+                start++;
+            }
+            for (int k = 0; k < DIGITS_PER_WORD; k++) {
+                digits[size++] = (byte) (remainder % 58);
+                remainder /= 58;
+            }
+        }
+        while (size > 0 && digits[size - 1] == 0) {
+            size--;
+        }
+        for (int i = 0; i < zeros; i++) {
+            out.append('1');
+        }
+        for (int j = size - 1; j >= 0; j--) {
+            out.append(BASE58_ALPHABET[digits[j]]);
+        }
+    }
+
+    private static int[] words(int count) {
+        int[] words = CODEC_BUFFERS.get().words;
+        return count <= words.length ? words : new int[count];
+    }
+
+    private static int decodeBase32(CharSequence in, int from, int to, byte[] out) {
+        int buffer = 0;
+        int bits = 0;
+        int size = 0;
+        for (int i = from; i < to; i++) {
+            char c = in.charAt(i);
+            int value = c < 128 ? BASE32_INDEXES[Character.toLowerCase(c)] : -1;
+            if (value < 0) {
+                return -1;
+            }
+            buffer = (buffer << 5) | value;
+            bits += 5;
+            if (bits >= 8) {
+                if (size == out.length) {
+                    return -1;
+                }
+                bits -= 8;
+                out[size++] = (byte) (buffer >> bits);
+            }
+        }
+        return size;
+    }
+
+    private static void encodeBase32(byte[] bytes, int offset, int length, StringBuilder out) {
+        int buffer = 0;
+        int bits = 0;
+        for (int i = offset; i < offset + length; i++) {
+            buffer = (buffer << 8) | (bytes[i] & 0xFF);
+            bits += 8;
+            while (bits >= 5) {
+                bits -= 5;
+                out.append(BASE32_ALPHABET[(buffer >> bits) & 31]);
+            }
+        }
+        if (bits > 0) {
+            out.append(BASE32_ALPHABET[(buffer << (5 - bits)) & 31]);
+        }
+    }
+
+    /**
+     * @return the unsigned varint at the given position, or -1 if it is truncated or too long
+     */
+    private static long readVarint(byte[] bytes, int position, int end) {
+        long value = 0;
+        for (int shift = 0; shift <= 56 && position < end; shift += 7) {
+            int b = bytes[position++] & 0xFF;
+            value |= (long) (b & 0x7F) << shift;
+            if (b < 0x80) {
+                return value;
+            }
+        }
+        return -1;
+    }
+
+    private static int varintSize(byte[] bytes, int position, int end) {
+        int size = 1;
+        while (position < end - 1 && bytes[position] < 0) {
+            position++;
+            size++;
+        }
+        return size;
+    }
+
+    private static int putVarint(byte[] out, int position, long value) {
+        while (value >= 0x80) {
+            out[position++] = (byte) (value | 0x80);
+            value >>>= 7;
+        }
+        out[position++] = (byte) value;
+        return position;
+    }
+
+    private static byte[] indexes(char[] alphabet) {
+        byte[] indexes = new byte[128];
+        Arrays.fill(indexes, (byte) -1);
+        for (int i = 0; i < alphabet.length; i++) {
+            indexes[alphabet[i]] = (byte) i;
+        }
+        return indexes;
+    }
+
+    private static class Buffers {
+        final byte[] bytes = new byte[MAX_CID_BYTES];
+        final byte[] digits = new byte[(MAX_CID_BYTES * 137 / 100 / DIGITS_PER_WORD + 1) * DIGITS_PER_WORD];
+        final int[] words = new int[MAX_CID_BYTES / Integer.BYTES + 1];
+        final StringBuilder text = new StringBuilder(2 * MAX_CID_BYTES);
     }
 
 }
@@ -0,0 +1,265 @@
+package com.plooh.adssi.dial.validator.util;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import java.io.IOException;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.security.AlgorithmParameters;
+import java.security.GeneralSecurityException;
+import java.security.KeyFactory;
+import java.security.KeyPair;
+import java.security.Signature;
+import java.security.interfaces.ECPublicKey;
+import java.security.spec.ECGenParameterSpec;
+import java.security.spec.ECParameterSpec;
+import java.security.spec.ECPoint;
+import java.security.spec.ECPublicKeySpec;
+import java.util.Base64;
+
+/**
+ * Signed declarations in the flattened JSON serialization of JWS (RFC 7515): an object of the base64url
+ * {@code protected} header, {@code payload} and {@code signature}.
+ *
+ * Only ES256 is supported. The header carries the public key as a JWK and its RFC 7638 thumbprint as
+ * {@code kid}, so that a key id always designates the same key.
+ */
+public final class Jws {
+
+    public static final String ES256 = "ES256";
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+    private static final Base64.Encoder ENCODER = Base64.getUrlEncoder().withoutPadding();
+    private static final Base64.Decoder DECODER = Base64.getUrlDecoder();
+    private static final int COORDINATE_LENGTH = 32;
+    private static final ECParameterSpec P256 = p256();
+
+    private Jws() {
+    }
+
+    /**
+     * Sign the payload with the key pair, a P-256 key pair.
+     *
+     * @param keyPair
+     * @param payload
+     * @return the signed payload, in the flattened JSON serialization
+     */
+    public static ObjectNode sign(KeyPair keyPair, byte[] payload) {
+        ObjectNode jwk = jwk((ECPublicKey) keyPair.getPublic());
+        ObjectNode header = MAPPER.createObjectNode().put("alg", ES256).put("kid", thumbprint(jwk));
+        header.set("jwk", jwk);
+        try {
+            String encodedHeader = ENCODER.encodeToString(MAPPER.writeValueAsBytes(header));
+            String encodedPayload = ENCODER.encodeToString(payload);
+            Signature signature = Signature.getInstance("SHA256withECDSA");
+            signature.initSign(keyPair.getPrivate());
+            signature.update(signingInput(encodedHeader, encodedPayload));
+            return MAPPER.createObjectNode()
+                .put("protected", encodedHeader)
+                .put("payload", encodedPayload)
+                .put("signature", ENCODER.encodeToString(toRaw(signature.sign())));
+        } catch (IOException | GeneralSecurityException e) {
+            throw new IllegalStateException("Error while signing", e);
+        }
+    }
+
+    /**
+     * @param jws signed payload, in the flattened JSON serialization
+     * @return the decoded protected header
+     * @throws IllegalArgumentException if the header is missing or is not a JSON object
+     */
+    public static JsonNode header(JsonNode jws) {
+        return decodeObject(jws, "protected");
+    }
+
+    /**
+     * @param jws signed payload, in the flattened JSON serialization
+     * @return the decoded payload, which must be a JSON object
+     * @throws IllegalArgumentException if the payload is missing or is not a JSON object
+     */
+    public static JsonNode payload(JsonNode jws) {
+        return decodeObject(jws, "payload");
+    }
+
+    /**
+     * @return the bytes the signature is computed over: the encoded header, a dot and the encoded payload
+     */
+    public static byte[] signingInput(JsonNode jws) {
+        return signingInput(text(jws, "protected"), text(jws, "payload"));
+    }
+
+    /**
+     * @return the decoded signature, in the raw R || S form of JWS
+     */
+    public static byte[] signature(JsonNode jws) {
+        return decode(text(jws, "signature"), "signature");
+    }
+
+    /**
+     * @param jwk P-256 JWK
+     * @return the public key
+     * @throws IllegalArgumentException if the JWK is not a valid P-256 key
+     */
+    public static ECPublicKey publicKey(JsonNode jwk) {
+        if (!"EC".equals(jwk.path("kty").asText()) || !"P-256".equals(jwk.path("crv").asText())) {
+            throw new IllegalArgumentException("Only P-256 keys are supported");
+        }
+        BigInteger x = new BigInteger(1, decode(text(jwk, "x"), "x"));
+        BigInteger y = new BigInteger(1, decode(text(jwk, "y"), "y"));
+        try {
+            return (ECPublicKey) KeyFactory.getInstance("EC").generatePublic(new ECPublicKeySpec(new ECPoint(x, y), P256));
+        } catch (GeneralSecurityException e) {
+            throw new IllegalArgumentException("Invalid key: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * @param jwk P-256 JWK
+     * @return the RFC 7638 thumbprint of the key, base64url encoded
+     */
+    public static String thumbprint(JsonNode jwk) {
+        // the required members only, in lexicographic order and without whitespace
+        String canonical = "{\"crv\":\"" + text(jwk, "crv") + "\",\"kty\":\"" + text(jwk, "kty")
+            + "\",\"x\":\"" + text(jwk, "x") + "\",\"y\":\"" + text(jwk, "y") + "\"}";
+        return ENCODER.encodeToString(Sha256.digest(canonical.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    /**
+     * @param key P-256 public key
+     * @return the RFC 7638 thumbprint of the key, base64url encoded, the {@code kid} of its signatures
+     */
+    public static String thumbprint(ECPublicKey key) {
+        return thumbprint(jwk(key));
+    }
+
+    /**
+     * Verify an ES256 signature.
+     *
+     * @param key
+     * @param signingInput
+     * @param signature raw R || S signature
+     * @return true if the signature is valid
+     */
+    public static boolean verify(ECPublicKey key, byte[] signingInput, byte[] signature) {
+        if (signature.length != 2 * COORDINATE_LENGTH) {
+            return false;
+        }
+        try {
+            Signature verifier = Signature.getInstance("SHA256withECDSA");
+            verifier.initVerify(key);
+            verifier.update(signingInput);
+            return verifier.verify(toDer(signature));
+        } catch (GeneralSecurityException e) {
+            return false;
+        }
+    }
+
+    static ObjectNode jwk(ECPublicKey key) {
+        return MAPPER.createObjectNode()
+            .put("kty", "EC")
+            .put("crv", "P-256")
+            .put("x", ENCODER.encodeToString(unsigned(key.getW().getAffineX())))
+            .put("y", ENCODER.encodeToString(unsigned(key.getW().getAffineY())));
+    }
+
+    /**
+     * Convert a raw R || S signature to the DER sequence of the JCA.
+     */
+    static byte[] toDer(byte[] raw) {
+        byte[] r = derInteger(raw, 0);
+        byte[] s = derInteger(raw, COORDINATE_LENGTH);
+        byte[] der = new byte[6 + r.length + s.length];
+        der[0] = 0x30;
+        der[1] = (byte) (4 + r.length + s.length);
+        der[2] = 0x02;
+        der[3] = (byte) r.length;
+        System.arraycopy(r, 0, der, 4, r.length);
+        der[4 + r.length] = 0x02;
+        der[5 + r.length] = (byte) s.length;
+        System.arraycopy(s, 0, der, 6 + r.length, s.length);
+        return der;
+    }
+
+    /**
+     * Convert a DER sequence of the JCA to a raw R || S signature.
+     */
+    static byte[] toRaw(byte[] der) {
+        byte[] raw = new byte[2 * COORDINATE_LENGTH];
+        int position = der[1] == (byte) 0x81 ? 3 : 2;
+        for (int i = 0; i < 2; i++) {
+            int length = der[position + 1];
+            int start = position + 2;
+            // a leading zero keeps a high bit integer positive
+            int skip = Math.max(0, length - COORDINATE_LENGTH);
+            System.arraycopy(der, start + skip, raw, (i + 1) * COORDINATE_LENGTH - (length - skip), length - skip);
+            position = start + length;
+        }
+        return raw;
+    }
+
+    private static byte[] derInteger(byte[] raw, int offset) {
+        int start = offset;
+        while (start < offset + COORDINATE_LENGTH - 1 && raw[start] == 0) {
+            start++;
+        }
+        int padding = (raw[start] & 0x80) != 0 ? 1 : 0;
+        byte[] integer = new byte[padding + offset + COORDINATE_LENGTH - start];
+        System.arraycopy(raw, start, integer, padding, offset + COORDINATE_LENGTH - start);
+        return integer;
+    }
+
+    private static byte[] unsigned(BigInteger value) {
+        byte[] bytes = value.toByteArray();
+        if (bytes.length == COORDINATE_LENGTH) {
+            return bytes;
+        }
+        byte[] coordinate = new byte[COORDINATE_LENGTH];
+        int length = Math.min(bytes.length, COORDINATE_LENGTH);
+        System.arraycopy(bytes, bytes.length - length, coordinate, COORDINATE_LENGTH - length, length);
+        return coordinate;
+    }
+
+    private static byte[] signingInput(String encodedHeader, String encodedPayload) {
+        return (encodedHeader + "." + encodedPayload).getBytes(StandardCharsets.US_ASCII);
+    }
+
+    private static JsonNode decodeObject(JsonNode jws, String field) {
+        try {
+            JsonNode node = MAPPER.readTree(decode(text(jws, field), field));
+            if (node == null || !node.isObject()) {
+                throw new IllegalArgumentException("The " + field + " is not a JSON object");
+            }
+            return node;
+        } catch (IOException e) {
+            throw new IllegalArgumentException("The " + field + " is not valid JSON", e);
+        }
+    }
+
+    private static String text(JsonNode node, String field) {
+        JsonNode value = node.get(field);
+        if (value == null || !value.isTextual()) {
+            throw new IllegalArgumentException("Missing " + field);
+        }
+        return value.asText();
+    }
+
+    private static byte[] decode(String value, String field) {
+        try {
+            return DECODER.decode(value);
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("The " + field + " is not base64url encoded", e);
+        }
+    }
+
+    private static ECParameterSpec p256() {
+        try {
+            AlgorithmParameters parameters = AlgorithmParameters.getInstance("EC");
+            parameters.init(new ECGenParameterSpec("secp256r1"));
+            return parameters.getParameterSpec(ECParameterSpec.class);
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("P-256 is not supported", e);
+        }
+    }
+
+}
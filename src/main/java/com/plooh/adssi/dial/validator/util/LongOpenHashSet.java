@@ -0,0 +1,133 @@
+package com.plooh.adssi.dial.validator.util;
+
+import java.util.Arrays;
+
+/**
+ * Set of primitive longs in a single open-addressed array with linear probing, using 8 bytes per slot
+ * and no object per entry. Zero is used to mark empty slots and can not be stored. Not thread safe.
+ */
+public class LongOpenHashSet {
+
+    private static final float MAX_LOAD_FACTOR = 0.75f;
+    private static final int MIN_CAPACITY = 16;
+
+    private long[] slots;
+    private int mask;
+    private int size;
+
+    public LongOpenHashSet(int expectedSize) {
+        int capacity = Math.max(MIN_CAPACITY, Integer.highestOneBit((int) Math.min(1 << 30, (long) (expectedSize / MAX_LOAD_FACTOR) + 1)) << 1);
+        this.slots = new long[capacity];
+        this.mask = capacity - 1;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return number of bytes used by the slots of the set
+     */
+    public long footprint() {
+        return (long) slots.length * Long.BYTES;
+    }
+
+    public boolean contains(long key) {
+        checkKey(key);
+        for (int i = slot(key); ; i = (i + 1) & mask) {
+            long current = slots[i];
+            if (current == key) {
+                return true;
+            }
+            if (current == 0) {
+                return false;
+            }
+        }
+    }
+
+    public boolean add(long key) {
+        checkKey(key);
+        for (int i = slot(key); ; i = (i + 1) & mask) {
+            long current = slots[i];
+            if (current == key) {
+                return false;
+            }
+            if (current == 0) {
+                slots[i] = key;
+                if (++size > slots.length * MAX_LOAD_FACTOR) {
+                    resize(slots.length << 1);
+                }
+                return true;
+            }
+        }
+    }
+
+    public boolean remove(long key) {
+        checkKey(key);
+        for (int i = slot(key); ; i = (i + 1) & mask) {
+            long current = slots[i];
+            if (current == 0) {
+                return false;
+            }
+            if (current == key) {
+                shiftBack(i);
+                size--;
+                return true;
+            }
+        }
+    }
+
+    public void clear() {
+        Arrays.fill(slots, 0);
+        size = 0;
+    }
+
+    /**
+     * Fill the slot freed at the given index with a following entry of the same probe sequence, so
+     * that lookups never stop early at the freed slot (no tombstones needed).
+     */
+    private void shiftBack(int free) {
+        int i = free;
+        while (true) {
+            i = (i + 1) & mask;
+            long current = slots[i];
+            if (current == 0) {
+                slots[free] = 0;
+                return;
+            }
+            int home = slot(current);
+            // move the entry if its home slot is not between the freed slot and its position
+            if (((i - home) & mask) >= ((i - free) & mask)) {
+                slots[free] = current;
+                free = i;
+            }
+        }
+    }
+
+    private void resize(int capacity) {
+        long[] old = slots;
+        slots = new long[capacity];
+        mask = capacity - 1;
+        for (long key : old) {
+            if (key != 0) {
+                int i = slot(key);
+                while (slots[i] != 0) {
+                    i = (i + 1) & mask;
+                }
+                slots[i] = key;
+            }
+        }
+    }
+
+    private int slot(long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32)) & mask;
+    }
+
+    private static void checkKey(long key) {
+        if (key == 0) {
+            throw new IllegalArgumentException("Zero can not be stored");
+        }
+    }
+
+}
@@ -0,0 +1,37 @@
+package com.plooh.adssi.dial.validator.util;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * SHA-256, which every Java platform is required to support.
+ */
+public final class Sha256 {
+
+    private Sha256() {
+    }
+
+    /**
+     * @return a new SHA-256 digest, e.g. to hash content read in chunks
+     */
+    public static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not supported", e);
+        }
+    }
+
+    /**
+     * @param parts content to hash, one after the other
+     * @return the SHA-256 of the concatenated parts
+     */
+    public static byte[] digest(byte[]... parts) {
+        MessageDigest digest = newDigest();
+        for (byte[] part : parts) {
+            digest.update(part);
+        }
+        return digest.digest();
+    }
+
+}
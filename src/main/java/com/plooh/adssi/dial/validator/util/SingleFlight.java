@@ -0,0 +1,94 @@
+package com.plooh.adssi.dial.validator.util;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Collapses concurrent calls with the same key into one: the first caller runs the call, and the callers
+ * arriving while it is in flight wait for it and get its result, or its exception. Nothing is kept once
+ * the call has completed, so a later call runs again.
+ *
+ * @param <K> key of the calls, with value based equality
+ * @param <V> result of the calls
+ */
+public class SingleFlight<K, V> {
+
+    private final ConcurrentMap<K, CompletableFuture<V>> inFlight = new ConcurrentHashMap<>();
+
+    /**
+     * @param key
+     * @param call run unless a call with the same key is in flight
+     * @return the result of the call, or of the call in flight
+     * @throws IOException if the call failed
+     */
+    public V execute(K key, Call<V> call) throws IOException {
+        return execute(key, call, null);
+    }
+
+    /**
+     * @param key
+     * @param call run unless a call with the same key is in flight
+     * @param onShared run when the result of the call in flight is shared instead
+     * @return the result of the call, or of the call in flight
+     * @throws IOException if the call failed
+     */
+    public V execute(K key, Call<V> call, Runnable onShared) throws IOException {
+        CompletableFuture<V> flight = new CompletableFuture<>();
+        CompletableFuture<V> leader = inFlight.putIfAbsent(key, flight);
+        if (leader != null) {
+            if (onShared != null) {
+                onShared.run();
+            }
+            return await(leader);
+        }
+        try {
+            V result = call.call();
+            flight.complete(result);
+            return result;
+        } catch (IOException | RuntimeException | Error e) {
+            flight.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(key, flight);
+        }
+    }
+
+    /**
+     * @return the number of calls in flight
+     */
+    public int size() {
+        return inFlight.size();
+    }
+
+    private static <V> V await(CompletableFuture<V> leader) throws IOException {
+        try {
+            return leader.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for the call in flight");
+        } catch (ExecutionException e) {
+            // the waiters get the exception of the leader, so that it is handled the same way
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw (Error) cause;
+        }
+    }
+
+    /**
+     * A call which may be shared.
+     */
+    @FunctionalInterface
+    public interface Call<V> {
+        V call() throws IOException;
+    }
+
+}
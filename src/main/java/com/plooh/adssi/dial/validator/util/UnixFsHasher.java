@@ -0,0 +1,161 @@
+package com.plooh.adssi.dial.validator.util;
+
+import io.ipfs.cid.Cid;
+import io.ipfs.multihash.Multihash;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Computes locally the CID the IPFS daemon gives to a file added with the options of
+ * {@link com.plooh.adssi.dial.validator.service.IpfsApi}: the default {@code size-262144} chunker, the
+ * balanced layout, raw leaves and sha2-256.
+ *
+ * A file of a single chunk is a raw leaf, identified by a CIDv1 with the raw codec. A larger file is a
+ * tree of UnixFS dag-pb nodes of at most {@value #MAX_LINKS} links over its raw leaves, identified by the
+ * CIDv0 of its root. The nodes are encoded as the daemon encodes them (links before data, empty link
+ * names written), since a single byte of difference changes the CID.
+ */
+public final class UnixFsHasher {
+
+    public static final int CHUNK_SIZE = 262_144;
+
+    static final int MAX_LINKS = 174;
+
+    private static final int RAW_CODEC = 0x55;
+    private static final int SHA2_256 = 0x12;
+    private static final int SHA2_256_LENGTH = 32;
+    private static final int UNIXFS_FILE = 2;
+
+    private UnixFsHasher() {
+    }
+
+    public static Multihash hash(byte[] content) {
+        try {
+            return hash(new ByteArrayInputStream(content));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * @param in content of the file, read to the end but not closed
+     * @return the CID of the file
+     */
+    public static Multihash hash(InputStream in) throws IOException {
+        MessageDigest sha256 = Sha256.newDigest();
+        byte[] chunk = new byte[CHUNK_SIZE];
+        List<Link> links = new ArrayList<>();
+        int read;
+        do {
+            read = in.readNBytes(chunk, 0, CHUNK_SIZE);
+            if (read > 0 || links.isEmpty()) {
+                sha256.update(chunk, 0, read);
+                links.add(new Link(rawCid(sha256.digest()), read, read));
+            }
+        } while (read == CHUNK_SIZE);
+
+        if (links.size() == 1) {
+            return Cid.buildCidV1(Cid.Codec.Raw, Multihash.Type.sha2_256, digestOf(links.get(0).cid));
+        }
+        // the balanced layout fills each node with MAX_LINKS children before starting the next one, so
+        // every level is the previous one cut in groups of MAX_LINKS
+        do {
+            List<Link> parents = new ArrayList<>((links.size() + MAX_LINKS - 1) / MAX_LINKS);
+            for (int from = 0; from < links.size(); from += MAX_LINKS) {
+                parents.add(node(links.subList(from, Math.min(from + MAX_LINKS, links.size())), sha256));
+            }
+            links = parents;
+        } while (links.size() > 1);
+        return Cid.buildCidV0(new Multihash(Multihash.Type.sha2_256, digestOf(links.get(0).cid)));
+    }
+
+    private static Link node(List<Link> children, MessageDigest sha256) {
+        ByteArrayOutputStream unixfs = new ByteArrayOutputStream();
+        long fileSize = 0;
+        for (Link child : children) {
+            fileSize += child.fileSize;
+        }
+        writeTag(unixfs, 1, 0);
+        writeVarint(unixfs, UNIXFS_FILE);
+        writeTag(unixfs, 3, 0);
+        writeVarint(unixfs, fileSize);
+        for (Link child : children) {
+            writeTag(unixfs, 4, 0);
+            writeVarint(unixfs, child.fileSize);
+        }
+
+        ByteArrayOutputStream node = new ByteArrayOutputStream();
+        long treeSize = 0;
+        for (Link child : children) {
+            ByteArrayOutputStream link = new ByteArrayOutputStream();
+            writeBytes(link, 1, child.cid);
+            writeBytes(link, 2, new byte[0]);
+            writeTag(link, 3, 0);
+            writeVarint(link, child.treeSize);
+            writeBytes(node, 2, link.toByteArray());
+            treeSize += child.treeSize;
+        }
+        writeBytes(node, 1, unixfs.toByteArray());
+
+        byte[] encoded = node.toByteArray();
+        byte[] cid = new byte[2 + SHA2_256_LENGTH];
+        cid[0] = SHA2_256;
+        cid[1] = SHA2_256_LENGTH;
+        System.arraycopy(sha256.digest(encoded), 0, cid, 2, SHA2_256_LENGTH);
+        return new Link(cid, treeSize + encoded.length, fileSize);
+    }
+
+    private static byte[] rawCid(byte[] digest) {
+        byte[] cid = new byte[4 + SHA2_256_LENGTH];
+        cid[0] = 1;
+        cid[1] = RAW_CODEC;
+        cid[2] = SHA2_256;
+        cid[3] = SHA2_256_LENGTH;
+        System.arraycopy(digest, 0, cid, 4, SHA2_256_LENGTH);
+        return cid;
+    }
+
+    private static byte[] digestOf(byte[] cid) {
+        byte[] digest = new byte[SHA2_256_LENGTH];
+        System.arraycopy(cid, cid.length - SHA2_256_LENGTH, digest, 0, SHA2_256_LENGTH);
+        return digest;
+    }
+
+    private static void writeBytes(ByteArrayOutputStream out, int field, byte[] bytes) {
+        writeTag(out, field, 2);
+        writeVarint(out, bytes.length);
+        out.writeBytes(bytes);
+    }
+
+    private static void writeTag(ByteArrayOutputStream out, int field, int wireType) {
+        out.write(field << 3 | wireType);
+    }
+
+    private static void writeVarint(ByteArrayOutputStream out, long value) {
+        while ((value & ~0x7FL) != 0) {
+            out.write((int) (value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.write((int) value);
+    }
+
+    private static class Link {
+
+        private final byte[] cid;
+        private final long treeSize;
+        private final long fileSize;
+
+        Link(byte[] cid, long treeSize, long fileSize) {
+            this.cid = cid;
+            this.treeSize = treeSize;
+            this.fileSize = fileSize;
+        }
+    }
+
+}
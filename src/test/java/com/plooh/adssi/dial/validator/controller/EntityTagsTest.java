@@ -0,0 +1,35 @@
+package com.plooh.adssi.dial.validator.controller;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+
+public class EntityTagsTest {
+
+    @Test
+    void shouldMatchStrongAndWeakTags() {
+        HttpHeaders strong = new HttpHeaders();
+        strong.setIfNoneMatch("\"first\"");
+        HttpHeaders weak = new HttpHeaders();
+        weak.setIfNoneMatch(EntityTags.weak(EntityTags.of("second")));
+
+        assertThat(EntityTags.isNotModified(strong, EntityTags.of("first"))).isTrue();
+        assertThat(EntityTags.isNotModified(weak, EntityTags.of("first"), EntityTags.of("second"))).isTrue();
+        assertThat(EntityTags.isNotModified(weak, EntityTags.of("first"))).isFalse();
+        assertThat(EntityTags.isNotModified(new HttpHeaders(), EntityTags.of("first"))).isFalse();
+    }
+
+    @Test
+    void shouldMatchAnyTagWithWildcard() {
+        HttpHeaders any = new HttpHeaders();
+        any.setIfNoneMatch("*");
+        HttpHeaders weak = new HttpHeaders();
+        weak.setIfNoneMatch(EntityTags.weak(EntityTags.of("second")));
+
+        assertThat(EntityTags.match(any, EntityTags.of("first"), EntityTags.of("second"))).isEqualTo(EntityTags.of("first"));
+        assertThat(EntityTags.match(weak, EntityTags.of("first"), EntityTags.of("second"))).isEqualTo(EntityTags.of("second"));
+        assertThat(EntityTags.match(new HttpHeaders(), EntityTags.of("first"))).isNull();
+    }
+
+}
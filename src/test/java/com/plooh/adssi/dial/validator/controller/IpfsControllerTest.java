@@ -1,44 +1,72 @@
 package com.plooh.adssi.dial.validator.controller;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.*;
 import static org.mockito.Mockito.*;
 
+import com.plooh.adssi.dial.validator.model.BatchAddResult;
+import com.plooh.adssi.dial.validator.model.Pin;
+import com.plooh.adssi.dial.validator.model.PinPage;
+import com.plooh.adssi.dial.validator.service.ArchiveExtractor;
+import com.plooh.adssi.dial.validator.service.GzipContentCache;
 import com.plooh.adssi.dial.validator.service.IpfsApi;
+import com.plooh.adssi.dial.validator.service.IpfsAsyncApi;
+import com.plooh.adssi.dial.validator.service.IpfsContentCache;
+import com.plooh.adssi.dial.validator.service.IpfsNotFoundException;
+import com.plooh.adssi.dial.validator.service.PinWriteBehind;
+import com.plooh.adssi.dial.validator.util.IpfsUtil;
 import io.ipfs.api.IPFS;
 import io.ipfs.api.MerkleNode;
-import io.ipfs.multihash.Multihash;
+import io.ipfs.api.NamedStreamable;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.nio.charset.StandardCharsets;
 import java.util.List;
-import java.util.Map;
 import java.util.Optional;
+import java.util.function.Predicate;
+import java.util.zip.GZIPInputStream;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
-import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.util.unit.DataSize;
 import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 public class IpfsControllerTest {
 
     public static final String HELLO_WORLD_HASH = "QmfM2r8seH2GiRaC4esTjeraXEachRt8ZsSeGaWTPLyMoG";
     public static final String HELLO_WORLD_CONTENT = "Hello World!";
     public static final String HELLO_WORLD_FILENAME = "hello-world.txt";
+    public static final String OTHER_HASH = "zb2rhfE3SX3q7Ha6UErfMqQReKsmLn73BvdDRagHDM6X1eRFN";
     public static final byte[] HELLO_WORLD_CONTENT_AS_BYTES = HELLO_WORLD_CONTENT.getBytes(StandardCharsets.UTF_8);
 
     @Mock
     private IpfsApi ipfsApi;
 
+    @Mock
+    private ArchiveExtractor archiveExtractor;
+
     @Mock
     private MultipartFile multipartFile;
 
-    @InjectMocks
+    private final IpfsContentCache contentCache = new IpfsContentCache(true, DataSize.ofKilobytes(64), DataSize.ofKilobytes(16), DataSize.ofKilobytes(64));
+    private final GzipContentCache gzipContentCache = new GzipContentCache(true, DataSize.ofKilobytes(64), DataSize.ofBytes(256), contentCache);
+
     private IpfsController uut;
 
     @BeforeEach
     public void setUp() {
         MockitoAnnotations.initMocks(this);
+        uut = new IpfsController(ipfsApi, new IpfsAsyncApi(ipfsApi, Runnable::run), archiveExtractor,
+            gzipContentCache,
+            PinWriteBehind.disabled());
     }
 
     @Test
@@ -67,22 +95,22 @@ public class IpfsControllerTest {
     @Test
     public void shouldAddFile() throws IOException {
         when(multipartFile.isEmpty()).thenReturn(false);
-        when(multipartFile.getBytes()).thenReturn(HELLO_WORLD_CONTENT_AS_BYTES);
         when(multipartFile.getOriginalFilename()).thenReturn(HELLO_WORLD_FILENAME);
-        when(ipfsApi.addFile(HELLO_WORLD_CONTENT_AS_BYTES, HELLO_WORLD_FILENAME)).thenReturn(HELLO_WORLD_HASH);
+        when(ipfsApi.addFile(multipartFile, HELLO_WORLD_FILENAME)).thenReturn(HELLO_WORLD_HASH);
 
-        var actual = uut.addFile(multipartFile);
+        var actual = uut.addFile(multipartFile).join();
 
         assertThat(actual.getBody()).isEqualTo(HELLO_WORLD_HASH);
         assertThat(actual.getStatusCode()).isEqualTo(HttpStatus.CREATED);
-        verify(ipfsApi, times(1)).addFile(HELLO_WORLD_CONTENT_AS_BYTES, HELLO_WORLD_FILENAME);
+        verify(ipfsApi, times(1)).addFile(multipartFile, HELLO_WORLD_FILENAME);
+        verify(multipartFile, times(0)).getBytes();
     }
 
     @Test
     public void shouldNotAddFileBecauseEmpty() {
         when(multipartFile.isEmpty()).thenReturn(true);
 
-        var actual = uut.addFile(multipartFile);
+        var actual = uut.addFile(multipartFile).join();
 
         assertThat(actual.getBody()).isNull();
         assertThat(actual.getStatusCode()).isEqualTo(HttpStatus.BAD_REQUEST);
@@ -90,33 +118,183 @@ public class IpfsControllerTest {
     }
 
     @Test
-    public void shouldGetFileByHash() {
-        when(ipfsApi.getFileByHash(HELLO_WORLD_HASH)).thenReturn(HELLO_WORLD_CONTENT_AS_BYTES);
+    public void shouldHashFileWithoutStoringIt() throws IOException {
+        when(multipartFile.isEmpty()).thenReturn(false);
+        when(ipfsApi.hashFile(multipartFile)).thenReturn(IpfsUtil.fromBase58(HELLO_WORLD_HASH));
+
+        var actual = uut.hashFile(multipartFile);
+
+        assertThat(actual.getStatusCode()).isEqualTo(HttpStatus.OK);
+        assertThat(actual.getBody()).isEqualTo(IpfsUtil.toBase58(IpfsUtil.fromBase58(HELLO_WORLD_HASH)));
+        verify(ipfsApi, times(0)).addFile(any(MultipartFile.class), any());
+    }
+
+    @Test
+    public void shouldAddFiles() {
+        var expected = new BatchAddResult(List.of(new BatchAddResult.AddedFile(HELLO_WORLD_FILENAME, HELLO_WORLD_HASH, 12L)), null);
+        when(multipartFile.isEmpty()).thenReturn(false);
+        when(multipartFile.getOriginalFilename()).thenReturn(HELLO_WORLD_FILENAME);
+        when(ipfsApi.addFiles(anyList(), eq(false))).thenReturn(expected);
+
+        var actual = uut.addFiles(List.of(multipartFile), null, false).join();
+
+        assertThat(actual.getStatusCode()).isEqualTo(HttpStatus.CREATED);
+        assertThat(actual.getBody()).isEqualTo(expected);
+        verify(ipfsApi, times(1)).addFiles(argThat(files -> files.size() == 1
+            && files.get(0).getName().equals(Optional.of(HELLO_WORLD_FILENAME))), eq(false));
+    }
+
+    @Test
+    public void shouldAddArchive() throws IOException {
+        var entries = List.<NamedStreamable>of(new NamedStreamable.ByteArrayWrapper(HELLO_WORLD_FILENAME, HELLO_WORLD_CONTENT_AS_BYTES));
+        when(multipartFile.isEmpty()).thenReturn(false);
+        when(archiveExtractor.extract(multipartFile)).thenReturn(entries);
+        when(ipfsApi.addFiles(entries, true)).thenReturn(new BatchAddResult(List.of(), HELLO_WORLD_HASH));
+
+        var actual = uut.addFiles(null, multipartFile, true).join();
+
+        assertThat(actual.getStatusCode()).isEqualTo(HttpStatus.CREATED);
+        assertThat(actual.getBody().getRoot()).isEqualTo(HELLO_WORLD_HASH);
+    }
+
+    @Test
+    public void shouldNotAddEmptyBatch() {
+        var actual = uut.addFiles(List.of(), null, false).join();
+
+        assertThat(actual.getStatusCode()).isEqualTo(HttpStatus.BAD_REQUEST);
+        verify(ipfsApi, times(0)).addFiles(anyList(), anyBoolean());
+    }
+
+    @Test
+    public void shouldGetFileByHash() throws IOException {
+        when(ipfsApi.getFileStreamByHash(HELLO_WORLD_HASH)).thenReturn(new ByteArrayInputStream(HELLO_WORLD_CONTENT_AS_BYTES));
 
-        var actual = uut.getFileByHash(HELLO_WORLD_HASH);
+        var actual = uut.getFileByHash(HELLO_WORLD_HASH, new HttpHeaders()).join();
 
-        assertThat(actual.getBody()).isEqualTo(HELLO_WORLD_CONTENT_AS_BYTES);
         assertThat(actual.getStatusCode()).isEqualTo(HttpStatus.OK);
-        verify(ipfsApi, times(1)).getFileByHash(HELLO_WORLD_HASH);
+        assertThat(actual.getHeaders().getFirst(HttpHeaders.ACCEPT_RANGES)).isEqualTo("bytes");
+        assertThat(write(actual.getBody())).isEqualTo(HELLO_WORLD_CONTENT_AS_BYTES);
+        verify(ipfsApi, times(1)).getFileStreamByHash(HELLO_WORLD_HASH);
+    }
+
+    @Test
+    public void shouldServeFileAsImmutable() throws IOException {
+        when(ipfsApi.getFileStreamByHash(HELLO_WORLD_HASH)).thenReturn(new ByteArrayInputStream(HELLO_WORLD_CONTENT_AS_BYTES));
+
+        var actual = uut.getFileByHash(HELLO_WORLD_HASH, new HttpHeaders()).join();
+
+        assertThat(actual.getHeaders().getETag()).isEqualTo("\"" + HELLO_WORLD_HASH + "\"");
+        assertThat(actual.getHeaders().getCacheControl()).isEqualTo("public, max-age=31536000, immutable");
+    }
+
+    @Test
+    public void shouldAnswerNotModifiedWithoutCallingIpfs() {
+        var headers = new HttpHeaders();
+        headers.setIfNoneMatch(List.of("\"" + OTHER_HASH + "\"", "W/\"" + HELLO_WORLD_HASH + "\""));
+
+        var file = uut.getFileByHash(HELLO_WORLD_HASH, headers).join();
+        var info = uut.getFileInfoByHash(HELLO_WORLD_HASH, headers).join();
+
+        assertThat(file.getStatusCode()).isEqualTo(HttpStatus.NOT_MODIFIED);
+        assertThat(file.getHeaders().getETag()).isEqualTo("\"" + HELLO_WORLD_HASH + "\"");
+        assertThat(info.getStatusCode()).isEqualTo(HttpStatus.NOT_MODIFIED);
+        assertThat(info.getHeaders().getETag()).isEqualTo("W/\"" + HELLO_WORLD_HASH + "\"");
+        verifyNoInteractions(ipfsApi);
+    }
+
+    @Test
+    public void shouldServeCachedGzipVariantOfHotContent() throws IOException {
+        byte[] content = "{\"declaration\":\"hello\"}\n".repeat(100).getBytes(StandardCharsets.UTF_8);
+        contentCache.putContent(IpfsUtil.fromBase58(HELLO_WORLD_HASH), content);
+        var headers = new HttpHeaders();
+        headers.set(HttpHeaders.ACCEPT_ENCODING, "br;q=1.0, gzip;q=0.8");
+
+        var actual = uut.getFileByHash(HELLO_WORLD_HASH, headers).join();
+
+        assertThat(actual.getHeaders().getFirst(HttpHeaders.CONTENT_ENCODING)).isEqualTo("gzip");
+        assertThat(actual.getHeaders().getETag()).isEqualTo("\"" + HELLO_WORLD_HASH + "-gzip\"");
+        assertThat(actual.getHeaders().getContentLength()).isLessThan(content.length / 10);
+        assertThat(new GZIPInputStream(new ByteArrayInputStream(write(actual.getBody()))).readAllBytes()).isEqualTo(content);
+        verifyNoInteractions(ipfsApi);
+
+        headers.set(HttpHeaders.ACCEPT_ENCODING, "gzip;q=0");
+        assertThat(uut.getFileByHash(HELLO_WORLD_HASH, headers).join().getHeaders().getFirst(HttpHeaders.CONTENT_ENCODING)).isNull();
+    }
+
+    @Test
+    public void shouldAnswerNotModifiedWithoutCompressing() {
+        contentCache.putContent(IpfsUtil.fromBase58(HELLO_WORLD_HASH), "{\"declaration\":\"hello\"}\n".repeat(100).getBytes(StandardCharsets.UTF_8));
+        MeterRegistry registry = new SimpleMeterRegistry();
+        gzipContentCache.bindTo(registry);
+        var headers = new HttpHeaders();
+        headers.set(HttpHeaders.ACCEPT_ENCODING, "gzip");
+        headers.setIfNoneMatch("\"" + HELLO_WORLD_HASH + "-gzip\"");
+
+        var actual = uut.getFileByHash(HELLO_WORLD_HASH, headers).join();
+
+        assertThat(actual.getStatusCode()).isEqualTo(HttpStatus.NOT_MODIFIED);
+        assertThat(actual.getHeaders().getETag()).isEqualTo("\"" + HELLO_WORLD_HASH + "-gzip\"");
+        assertThat(registry.get("cache.size").tag("cache", "ipfs.content.gzip").gauge().value()).isZero();
+
+        headers.setIfNoneMatch("*");
+        assertThat(uut.getFileByHash(HELLO_WORLD_HASH, headers).join().getStatusCode()).isEqualTo(HttpStatus.NOT_MODIFIED);
+        verifyNoInteractions(ipfsApi);
+    }
+
+    @Test
+    public void shouldGetFileRangeByHash() throws IOException {
+        var headers = new HttpHeaders();
+        headers.set(HttpHeaders.RANGE, "bytes=6-");
+        when(ipfsApi.getFileSizeByHash(HELLO_WORLD_HASH)).thenReturn((long) HELLO_WORLD_CONTENT_AS_BYTES.length);
+        when(ipfsApi.getFileStreamByHash(HELLO_WORLD_HASH, 6, 6)).thenReturn(new ByteArrayInputStream(HELLO_WORLD_CONTENT_AS_BYTES, 6, 6));
+
+        var actual = uut.getFileByHash(HELLO_WORLD_HASH, headers).join();
+
+        assertThat(actual.getStatusCode()).isEqualTo(HttpStatus.PARTIAL_CONTENT);
+        assertThat(actual.getHeaders().getFirst(HttpHeaders.CONTENT_RANGE)).isEqualTo("bytes 6-11/12");
+        assertThat(actual.getHeaders().getContentLength()).isEqualTo(6);
+        assertThat(new String(write(actual.getBody()), StandardCharsets.UTF_8)).isEqualTo("World!");
+        verify(ipfsApi, times(0)).getFileStreamByHash(HELLO_WORLD_HASH);
+    }
+
+    @Test
+    public void shouldNotGetFileRangeBeyondContent() {
+        var headers = new HttpHeaders();
+        headers.set(HttpHeaders.RANGE, "bytes=12-20");
+        when(ipfsApi.getFileSizeByHash(HELLO_WORLD_HASH)).thenReturn((long) HELLO_WORLD_CONTENT_AS_BYTES.length);
+
+        var actual = uut.getFileByHash(HELLO_WORLD_HASH, headers).join();
+
+        assertThat(actual.getStatusCode()).isEqualTo(HttpStatus.REQUESTED_RANGE_NOT_SATISFIABLE);
+        assertThat(actual.getHeaders().getFirst(HttpHeaders.CONTENT_RANGE)).isEqualTo("bytes */12");
     }
 
     @Test
     void shouldGetFileInfoByHash() {
         when(ipfsApi.getFileInfoByHash(HELLO_WORLD_HASH)).thenReturn(List.of(new MerkleNode(HELLO_WORLD_HASH, Optional.of(HELLO_WORLD_FILENAME))));
 
-        var actual = uut.getFileInfoByHash(HELLO_WORLD_HASH);
+        var actual = uut.getFileInfoByHash(HELLO_WORLD_HASH, new HttpHeaders()).join();
 
         assertThat(actual.getBody()).isNotEmpty();
         assertThat(actual.getBody().get(0).hash.toBase58()).isEqualTo(HELLO_WORLD_HASH);
         verify(ipfsApi, times(1)).getFileInfoByHash(HELLO_WORLD_HASH);
     }
 
+    @Test
+    void shouldFailFutureWithErrorOfIpfsNode() {
+        when(ipfsApi.getFileInfoByHash(HELLO_WORLD_HASH)).thenThrow(new IpfsNotFoundException("merkledag: not found", null));
+
+        var actual = uut.getFileInfoByHash(HELLO_WORLD_HASH, new HttpHeaders());
+
+        assertThatThrownBy(actual::join).hasCauseInstanceOf(IpfsNotFoundException.class);
+    }
+
     @Test
     void shouldPinFileByHash() {
         var expected = List.of(HELLO_WORLD_HASH);
         when(ipfsApi.pinFileByHash(HELLO_WORLD_HASH)).thenReturn(expected);
 
-        var actual = uut.pinFileByHash(HELLO_WORLD_HASH);
+        var actual = uut.pinFileByHash(HELLO_WORLD_HASH).join();
 
         assertThat(actual.getBody()).isNotEmpty();
         assertThat(actual.getBody()).isEqualTo(expected);
@@ -128,23 +306,72 @@ public class IpfsControllerTest {
         var expected = List.of(HELLO_WORLD_HASH);
         when(ipfsApi.unpinFileByHash(HELLO_WORLD_HASH)).thenReturn(expected);
 
-        var actual = uut.unpinFileByHash(HELLO_WORLD_HASH);
+        var actual = uut.unpinFileByHash(HELLO_WORLD_HASH).join();
 
         assertThat(actual.getBody()).isNotEmpty();
         assertThat(actual.getBody()).isEqualTo(expected);
         verify(ipfsApi, times(1)).unpinFileByHash(HELLO_WORLD_HASH);
     }
 
+    @Test
+    void shouldCheckFileIsPinned() {
+        when(ipfsApi.isPinned(HELLO_WORLD_HASH)).thenReturn(true);
+        when(ipfsApi.isPinned(OTHER_HASH)).thenReturn(false);
+
+        assertThat(uut.isFilePinned(HELLO_WORLD_HASH).join().getStatusCode()).isEqualTo(HttpStatus.OK);
+        assertThat(uut.isFilePinned(OTHER_HASH).join().getStatusCode()).isEqualTo(HttpStatus.NOT_FOUND);
+    }
+
     @Test
     void shouldListAllFiles() {
-        var expected = Map.of(Multihash.fromBase58(HELLO_WORLD_HASH), (Object) IPFS.PinType.all);
-        when(ipfsApi.listAllFiles()).thenReturn(List.of(HELLO_WORLD_HASH));
+        var expected = new PinPage(List.of(new Pin(HELLO_WORLD_HASH, "recursive")), "Mg");
+        when(ipfsApi.listFiles(IPFS.PinType.all, null, 1)).thenReturn(expected);
 
-        var actual = uut.getAllFiles();
+        var actual = uut.getAllFiles(IPFS.PinType.all, null, 1).join();
 
-        assertThat(actual.getBody()).isNotEmpty();
-        assertThat(actual.getBody()).isEqualTo(List.of(HELLO_WORLD_HASH));
-        verify(ipfsApi, times(1)).listAllFiles();
+        assertThat(actual.getBody()).isEqualTo(expected);
+        verify(ipfsApi, times(1)).listFiles(IPFS.PinType.all, null, 1);
+    }
+
+    @Test
+    void shouldNotPinAnInvalidCid() {
+        var actual = uut.pinFileByHash("not a cid").join();
+
+        assertThat(actual.getStatusCode()).isEqualTo(HttpStatus.BAD_REQUEST);
+        verify(ipfsApi, times(0)).pinFileByHash("not a cid");
+    }
+
+    @Test
+    void shouldNotListMoreThanMaxPageSize() {
+        var actual = uut.getAllFiles(IPFS.PinType.all, null, 100_000).join();
+
+        assertThat(actual.getStatusCode()).isEqualTo(HttpStatus.BAD_REQUEST);
+        verify(ipfsApi, times(0)).listFiles(any(), any(), anyInt());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void shouldStreamAllFilesAsNdjson() throws IOException {
+        doAnswer(invocation -> {
+            Predicate<Pin> consumer = invocation.getArgument(1);
+            consumer.test(new Pin(HELLO_WORLD_HASH, "recursive"));
+            consumer.test(new Pin(HELLO_WORLD_HASH, "direct"));
+            consumer.test(new Pin(HELLO_WORLD_HASH, "in\"direct\n"));
+            return null;
+        }).when(ipfsApi).streamFiles(eq(IPFS.PinType.all), any(Predicate.class));
+
+        var actual = uut.streamAllFiles(IPFS.PinType.all);
+
+        assertThat(new String(write(actual.getBody()), StandardCharsets.UTF_8)).isEqualTo(
+            "{\"hash\":\"" + HELLO_WORLD_HASH + "\",\"type\":\"recursive\"}\n"
+                + "{\"hash\":\"" + HELLO_WORLD_HASH + "\",\"type\":\"direct\"}\n"
+                + "{\"hash\":\"" + HELLO_WORLD_HASH + "\",\"type\":\"in\\\"direct\\n\"}\n");
+    }
+
+    private static byte[] write(StreamingResponseBody body) throws IOException {
+        var out = new ByteArrayOutputStream();
+        body.writeTo(out);
+        return out.toByteArray();
     }
 
 }
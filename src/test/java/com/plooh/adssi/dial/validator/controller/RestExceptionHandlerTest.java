@@ -0,0 +1,47 @@
+package com.plooh.adssi.dial.validator.controller;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.plooh.adssi.dial.validator.service.BadRequestException;
+import com.plooh.adssi.dial.validator.service.IpfsException;
+import com.plooh.adssi.dial.validator.service.IpfsNotFoundException;
+import com.plooh.adssi.dial.validator.service.IpfsOperation;
+import com.plooh.adssi.dial.validator.service.IpfsTimeoutException;
+import com.plooh.adssi.dial.validator.service.IpfsUnavailableException;
+import java.io.IOException;
+import java.time.Duration;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+
+public class RestExceptionHandlerTest {
+
+    private final RestExceptionHandler uut = new RestExceptionHandler();
+
+    @Test
+    void shouldAnswerUnavailableWithRetryAfter() {
+        var actual = uut.handleIpfsUnavailable(new IpfsUnavailableException("circuit breaker is open", null, Duration.ofMillis(1500)));
+
+        assertThat(actual.getStatusCode()).isEqualTo(HttpStatus.SERVICE_UNAVAILABLE);
+        assertThat(actual.getHeaders().getFirst(HttpHeaders.RETRY_AFTER)).isEqualTo("2");
+    }
+
+    @Test
+    void shouldAnswerBadRequestsWith400() {
+        var actual = uut.handleBadRequest(new BadRequestException("Invalid cursor: x"));
+
+        assertThat(actual.getStatusCode()).isEqualTo(HttpStatus.BAD_REQUEST);
+        assertThat(actual.getBody()).isEqualTo("Invalid cursor: x");
+    }
+
+    @Test
+    void shouldMapIpfsErrors() {
+        assertThat(uut.handleIpfsNotFound(new IpfsNotFoundException("merkledag: not found", null)).getStatusCode())
+            .isEqualTo(HttpStatus.NOT_FOUND);
+        assertThat(uut.handleIpfsTimeout(new IpfsTimeoutException(IpfsOperation.CAT, Duration.ofSeconds(30))).getStatusCode())
+            .isEqualTo(HttpStatus.GATEWAY_TIMEOUT);
+        assertThat(uut.handleIpfs(IpfsException.of("Error", new IOException("IPFS node returned 500"))).getStatusCode())
+            .isEqualTo(HttpStatus.BAD_GATEWAY);
+    }
+
+}
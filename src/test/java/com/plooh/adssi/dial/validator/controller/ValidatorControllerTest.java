@@ -0,0 +1,99 @@
+package com.plooh.adssi.dial.validator.controller;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.plooh.adssi.dial.validator.service.DeclarationIndex;
+import com.plooh.adssi.dial.validator.service.IpfsApi;
+import com.plooh.adssi.dial.validator.service.IpfsAsyncApi;
+import com.plooh.adssi.dial.validator.service.MembershipSnapshotService;
+import com.plooh.adssi.dial.validator.service.PriceService;
+import com.plooh.adssi.dial.validator.service.PublishService;
+import com.plooh.adssi.dial.validator.util.JwsTest;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.security.GeneralSecurityException;
+import java.time.Duration;
+import java.util.List;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+
+public class ValidatorControllerTest {
+
+    private final IpfsApi ipfsApi = mock(IpfsApi.class);
+    private DeclarationIndex declarationIndex;
+    private ValidatorController uut;
+
+    @BeforeEach
+    void setUp(@TempDir Path directory) throws GeneralSecurityException {
+        declarationIndex = new DeclarationIndex(directory.toString());
+        uut = new ValidatorController(mock(PublishService.class), new PriceService(100, 10, 100), declarationIndex,
+            new IpfsAsyncApi(ipfsApi, Runnable::run),
+            new MembershipSnapshotService(declarationIndex, JwsTest.keyPair(), List.of("key-1"), Duration.ofHours(1),
+                Duration.ofMinutes(1)));
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        declarationIndex.close();
+    }
+
+    @Test
+    void shouldGetTheLatestVersionOfADeclaration() {
+        declarationIndex.update("declaration-1", null, IpfsControllerTest.HELLO_WORLD_HASH, "key-1");
+        when(ipfsApi.getFileByHash(IpfsControllerTest.HELLO_WORLD_HASH)).thenReturn(IpfsControllerTest.HELLO_WORLD_CONTENT_AS_BYTES);
+
+        var actual = uut.getDeclaration("declaration-1", new HttpHeaders()).join();
+
+        assertThat(actual.getStatusCode()).isEqualTo(HttpStatus.OK);
+        assertThat(actual.getHeaders().getETag()).isEqualTo("W/\"" + IpfsControllerTest.HELLO_WORLD_HASH + "\"");
+        assertThat(actual.getBody()).isEqualTo(IpfsControllerTest.HELLO_WORLD_CONTENT_AS_BYTES);
+    }
+
+    @Test
+    void shouldNotReadTheLatestVersionHeldByTheClient() {
+        declarationIndex.update("declaration-1", null, IpfsControllerTest.HELLO_WORLD_HASH, "key-1");
+        HttpHeaders headers = new HttpHeaders();
+        headers.setIfNoneMatch("\"" + IpfsControllerTest.HELLO_WORLD_HASH + "\"");
+
+        var actual = uut.getDeclaration("declaration-1", headers).join();
+
+        assertThat(actual.getStatusCode()).isEqualTo(HttpStatus.NOT_MODIFIED);
+        verify(ipfsApi, never()).getFileByHash(anyString());
+    }
+
+    @Test
+    void shouldNotFindADeclarationNeverPublished() {
+        var actual = uut.getDeclaration("declaration-1", new HttpHeaders()).join();
+
+        assertThat(actual.getStatusCode()).isEqualTo(HttpStatus.NOT_FOUND);
+        verify(ipfsApi, never()).getFileByHash(anyString());
+    }
+
+    @Test
+    void shouldServeTheSameSignedListToEveryCaller() {
+        declarationIndex.update("validator-1", "validator", IpfsControllerTest.HELLO_WORLD_HASH, "key-1");
+
+        var first = uut.getValidators(new HttpHeaders());
+        var second = uut.getValidators(new HttpHeaders());
+        HttpHeaders headers = new HttpHeaders();
+        headers.setIfNoneMatch(first.getHeaders().getETag());
+        var notModified = uut.getValidators(headers);
+
+        assertThat(first.getStatusCode()).isEqualTo(HttpStatus.OK);
+        assertThat(second.getBody()).isSameAs(first.getBody());
+        assertThat(second.getHeaders().getETag()).isEqualTo(first.getHeaders().getETag());
+        assertThat(notModified.getStatusCode()).isEqualTo(HttpStatus.NOT_MODIFIED);
+        assertThat(notModified.getBody()).isNull();
+        assertThat(uut.getRouters(headers).getStatusCode()).isEqualTo(HttpStatus.OK);
+    }
+
+}
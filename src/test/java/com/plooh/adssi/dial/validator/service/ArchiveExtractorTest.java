@@ -0,0 +1,125 @@
+package com.plooh.adssi.dial.validator.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import io.ipfs.api.NamedStreamable;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
+import org.apache.commons.compress.archivers.tar.TarArchiveOutputStream;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.io.ByteArrayResource;
+import org.springframework.util.unit.DataSize;
+
+public class ArchiveExtractorTest {
+
+    public static final byte[] HELLO_WORLD_CONTENT = "Hello World!".getBytes(StandardCharsets.UTF_8);
+
+    private final ArchiveExtractor uut = new ArchiveExtractor(DataSize.ofKilobytes(1));
+
+    @Test
+    void shouldExtractZipWithDirectories() throws IOException {
+        var bytes = new ByteArrayOutputStream();
+        try (var zip = new ZipOutputStream(bytes)) {
+            zip.putNextEntry(new ZipEntry("hello-world.txt"));
+            zip.write(HELLO_WORLD_CONTENT);
+            zip.putNextEntry(new ZipEntry("declarations/a.json"));
+            zip.write("{}".getBytes(StandardCharsets.UTF_8));
+        }
+
+        var actual = uut.extract(new ByteArrayResource(bytes.toByteArray()));
+
+        assertThat(actual).hasSize(2);
+        assertThat(actual.get(0).getName()).contains("hello-world.txt");
+        assertThat(actual.get(0).getContents()).isEqualTo(HELLO_WORLD_CONTENT);
+        NamedStreamable directory = actual.get(1);
+        assertThat(directory.isDirectory()).isTrue();
+        assertThat(directory.getName()).contains("declarations");
+        assertThat(directory.getChildren()).hasSize(1);
+        assertThat(directory.getChildren().get(0).getName()).contains("a.json");
+    }
+
+    @Test
+    void shouldExtractCompressedTar() throws IOException {
+        var bytes = new ByteArrayOutputStream();
+        try (var tar = new TarArchiveOutputStream(new GZIPOutputStream(bytes))) {
+            var entry = new TarArchiveEntry("hello-world.txt");
+            entry.setSize(HELLO_WORLD_CONTENT.length);
+            tar.putArchiveEntry(entry);
+            tar.write(HELLO_WORLD_CONTENT);
+            tar.closeArchiveEntry();
+        }
+
+        var actual = uut.extract(new ByteArrayResource(bytes.toByteArray()));
+
+        assertThat(actual).hasSize(1);
+        assertThat(actual.get(0).getContents()).isEqualTo(HELLO_WORLD_CONTENT);
+    }
+
+    @Test
+    void shouldRejectArchiveLargerThanMaxSize() throws IOException {
+        var bytes = new ByteArrayOutputStream();
+        try (var zip = new ZipOutputStream(bytes)) {
+            zip.putNextEntry(new ZipEntry("large.bin"));
+            zip.write(new byte[2048]);
+        }
+
+        assertThatThrownBy(() -> uut.extract(new ByteArrayResource(bytes.toByteArray())))
+            .isInstanceOf(IOException.class)
+            .hasMessageContaining("maximum size");
+    }
+
+    @Test
+    void shouldRejectParentSegments() throws IOException {
+        var bytes = new ByteArrayOutputStream();
+        try (var zip = new ZipOutputStream(bytes)) {
+            zip.putNextEntry(new ZipEntry("declarations/../../a.json"));
+            zip.write("{}".getBytes(StandardCharsets.UTF_8));
+        }
+
+        assertThatThrownBy(() -> uut.extract(new ByteArrayResource(bytes.toByteArray())))
+            .isInstanceOf(IOException.class)
+            .hasMessageContaining("Invalid archive entry path");
+    }
+
+    @Test
+    void shouldRejectFileReplacingADirectory() throws IOException {
+        var bytes = new ByteArrayOutputStream();
+        try (var zip = new ZipOutputStream(bytes)) {
+            zip.putNextEntry(new ZipEntry("declarations/"));
+            zip.putNextEntry(new ZipEntry("declarations"));
+            zip.write("{}".getBytes(StandardCharsets.UTF_8));
+        }
+
+        assertThatThrownBy(() -> uut.extract(new ByteArrayResource(bytes.toByteArray())))
+            .isInstanceOf(IOException.class)
+            .hasMessageContaining("both a file and a directory");
+    }
+
+    @Test
+    void shouldRejectDuplicateFiles() throws IOException {
+        var bytes = new ByteArrayOutputStream();
+        try (var zip = new ZipOutputStream(bytes)) {
+            zip.putNextEntry(new ZipEntry("declarations/a.json"));
+            zip.write("{}".getBytes(StandardCharsets.UTF_8));
+            zip.putNextEntry(new ZipEntry("declarations/./a.json"));
+            zip.write("[]".getBytes(StandardCharsets.UTF_8));
+        }
+
+        assertThatThrownBy(() -> uut.extract(new ByteArrayResource(bytes.toByteArray())))
+            .isInstanceOf(IOException.class)
+            .hasMessageContaining("Duplicate archive entry");
+    }
+
+    @Test
+    void shouldRejectUnknownFormat() {
+        assertThatThrownBy(() -> uut.extract(new ByteArrayResource(HELLO_WORLD_CONTENT)))
+            .isInstanceOf(IOException.class);
+    }
+
+}
@@ -0,0 +1,99 @@
+package com.plooh.adssi.dial.validator.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.entry;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Set;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class DeclarationIndexTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void shouldReplayTheLogAfterCrash() {
+        DeclarationIndex index = new DeclarationIndex(directory.toString());
+        index.update("declaration-1", null, "QmFirst", "key-1");
+        index.update("declaration-2", null, "QmSecond", "key-1");
+        index.update("declaration-1", null, "QmThird", "key-1");
+
+        // without the compaction of close
+        DeclarationIndex restarted = new DeclarationIndex(directory.toString());
+
+        assertThat(restarted.getLatest("declaration-1")).isEqualTo("QmThird");
+        assertThat(restarted.getLatest("declaration-2")).isEqualTo("QmSecond");
+        assertThat(restarted.getLatest("declaration-3")).isNull();
+        assertThat(restarted.size()).isEqualTo(2);
+    }
+
+    @Test
+    void shouldCompactTheLogIntoASnapshot() throws IOException {
+        DeclarationIndex index = new DeclarationIndex(directory.toString());
+        index.update("declaration-1", null, "QmFirst", "key-1");
+        index.update("declaration-1", null, "QmSecond", "key-1");
+        index.compact();
+        index.update("declaration-2", null, "QmThird", "key-1");
+        index.close();
+
+        assertThat(Files.size(directory.resolve("log"))).isZero();
+        DeclarationIndex restarted = new DeclarationIndex(directory.toString());
+        assertThat(restarted.getLatest("declaration-1")).isEqualTo("QmSecond");
+        assertThat(restarted.getLatest("declaration-2")).isEqualTo("QmThird");
+    }
+
+    @Test
+    void shouldListTheDeclarationsOfAType() {
+        DeclarationIndex index = new DeclarationIndex(directory.toString());
+        index.update("validator-2", "validator", "QmFirst", "key-1");
+        index.update("validator-1", "validator", "QmSecond", "key-1");
+        index.update("router-1", "router", "QmThird", "key-1");
+        index.update("validator-2", "router", "QmFourth", "key-1");
+        index.update("validator-3", "validator", "QmFifth", "key-2");
+
+        DeclarationIndex restarted = new DeclarationIndex(directory.toString());
+
+        assertThat(index.getModifications("validator", Set.of("key-1"))).isEqualTo(3);
+        assertThat(index.getModifications("validator", Set.of("key-1", "key-2"))).isEqualTo(4);
+        assertThat(index.getModifications("router", Set.of("key-1"))).isEqualTo(2);
+        assertThat(index.getModifications("router", Set.of("key-2"))).isZero();
+        assertThat(restarted.getLatestByType("validator", Set.of("key-1"))).containsExactly(entry("validator-1", "QmSecond"));
+        assertThat(restarted.getLatestByType("router", Set.of("key-1"))).containsExactly(entry("router-1", "QmThird"), entry("validator-2", "QmFourth"));
+    }
+
+    @Test
+    void shouldRejectUpdatesSignedByAnotherKey() {
+        DeclarationIndex index = new DeclarationIndex(directory.toString());
+        assertThat(index.update("declaration-1", null, "QmFirst", "key-1")).isTrue();
+        assertThat(index.update("declaration-1", null, "QmSecond", "key-2")).isFalse();
+
+        DeclarationIndex restarted = new DeclarationIndex(directory.toString());
+
+        assertThat(restarted.getLatest("declaration-1")).isEqualTo("QmFirst");
+        assertThat(restarted.getKeyId("declaration-1")).isEqualTo("key-1");
+        assertThat(restarted.update("declaration-1", null, "QmSecond", "key-2")).isFalse();
+        assertThat(restarted.update("declaration-1", null, "QmThird", "key-1")).isTrue();
+    }
+
+    @Test
+    void shouldCutOffAnUpdateInterruptedByACrash() throws IOException {
+        DeclarationIndex index = new DeclarationIndex(directory.toString());
+        index.update("declaration-1", null, "QmFirst", "key-1");
+        long length = Files.size(directory.resolve("log"));
+        // the length of the id of a second record, and half of the id
+        Files.write(directory.resolve("log"), new byte[] {0, 0, 0, 13, 'd', 'e', 'c'}, StandardOpenOption.APPEND);
+
+        DeclarationIndex restarted = new DeclarationIndex(directory.toString());
+        restarted.update("declaration-2", null, "QmSecond", "key-1");
+
+        assertThat(restarted.getLatest("declaration-1")).isEqualTo("QmFirst");
+        assertThat(Files.size(directory.resolve("log"))).isGreaterThan(length);
+        assertThat(new DeclarationIndex(directory.toString()).getLatest("declaration-2")).isEqualTo("QmSecond");
+    }
+
+}
@@ -0,0 +1,92 @@
+package com.plooh.adssi.dial.validator.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.plooh.adssi.dial.validator.util.Jws;
+import com.plooh.adssi.dial.validator.util.JwsTest;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.KeyPair;
+import java.util.List;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+public class DeclarationValidatorTest {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    private final SignatureVerifier verifier = new SignatureVerifier(2, 2, 100, 100);
+    private final DeclarationValidator uut = new DeclarationValidator(verifier, 100);
+
+    @AfterEach
+    void tearDown() {
+        verifier.shutdown();
+    }
+
+    @Test
+    void shouldValidateEveryDeclarationOfRecord() throws GeneralSecurityException {
+        KeyPair keyPair = JwsTest.keyPair();
+        ObjectNode valid = declaration(keyPair, "declaration-1", "validator");
+        ObjectNode tampered = declaration(keyPair, "declaration-2", "router");
+        tampered.put("signature", declaration(keyPair, "declaration-3", "router").get("signature").asText());
+
+        List<DeclarationValidator.Result> actual = uut.validate(record(
+            valid,
+            tampered,
+            Jws.sign(keyPair, "{\"type\":\"router\"}".getBytes(StandardCharsets.UTF_8)),
+            MAPPER.createObjectNode().put("payload", "e30"))).join();
+
+        assertThat(actual).extracting(DeclarationValidator.Result::getIndex).containsExactly(0, 1, 2, 3);
+        assertThat(actual.get(0).isValid()).isTrue();
+        assertThat(actual.get(0).getDeclaration().getId()).isEqualTo("declaration-1");
+        assertThat(actual.get(0).getDeclaration().getType()).isEqualTo("validator");
+        assertThat(actual.get(0).getDeclaration().getKeyId()).isEqualTo(Jws.header(valid).get("kid").asText());
+        assertThat(actual.get(0).getDeclaration().getContent()).isEqualTo(valid.toString().getBytes(StandardCharsets.UTF_8));
+        assertThat(actual.get(1).getError()).isEqualTo("Invalid signature");
+        assertThat(actual.get(2).getError()).isEqualTo("The declaration has no id");
+        assertThat(actual.get(3).getError()).isEqualTo("Missing protected");
+    }
+
+    @Test
+    void shouldRejectDeclarationSignedWithAnotherKeyThanItsKeyId() throws GeneralSecurityException {
+        ObjectNode declaration = declaration(JwsTest.keyPair(), "declaration-1", null);
+        ObjectNode other = declaration(JwsTest.keyPair(), "declaration-1", null);
+        declaration.put("protected", other.get("protected").asText());
+
+        List<DeclarationValidator.Result> actual = uut.validate(record(declaration)).join();
+
+        assertThat(actual.get(0).getError()).isEqualTo("Invalid signature");
+    }
+
+    @Test
+    void shouldRejectInvalidRecord() {
+        assertThatThrownBy(() -> uut.validate("{\"declarations\":")).isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> uut.validate("{}")).isInstanceOf(IllegalArgumentException.class)
+            .hasMessage("The record has no declarations array");
+        assertThatThrownBy(() -> new DeclarationValidator(verifier, 1).validate("{\"declarations\":[{},{}]}"))
+            .isInstanceOf(IllegalArgumentException.class)
+            .hasMessage("The record has more than 1 declarations");
+    }
+
+    static ObjectNode declaration(KeyPair keyPair, String id, String type) {
+        ObjectNode payload = MAPPER.createObjectNode().put("id", id);
+        if (type != null) {
+            payload.put("type", type);
+        }
+        return Jws.sign(keyPair, payload.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    static String record(ObjectNode... declarations) {
+        ObjectNode record = MAPPER.createObjectNode();
+        ArrayNode array = record.putArray("declarations");
+        for (ObjectNode declaration : declarations) {
+            array.add(declaration);
+        }
+        return record.toString();
+    }
+
+}
@@ -0,0 +1,166 @@
+package com.plooh.adssi.dial.validator.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.plooh.adssi.dial.validator.util.IpfsUtil;
+import com.plooh.adssi.dial.validator.util.UnixFsHasher;
+import io.ipfs.multihash.Multihash;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.util.unit.DataSize;
+
+public class DiskContentCacheTest {
+
+    private static final byte[] CONTENT = "Hello World!".getBytes(StandardCharsets.UTF_8);
+    private static final Multihash CONTENT_HASH = UnixFsHasher.hash(CONTENT);
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void shouldServeContentAfterRestart() throws IOException {
+        DiskContentCache cache = open(DataSize.ofMegabytes(2), DataSize.ofMegabytes(1));
+        cache.put(CONTENT_HASH, CONTENT);
+        cache.close();
+
+        DiskContentCache restarted = open(DataSize.ofMegabytes(2), DataSize.ofMegabytes(1));
+
+        assertThat(restarted.get(CONTENT_HASH)).isEqualTo(CONTENT);
+        assertThat(restarted.size(CONTENT_HASH)).isEqualTo(CONTENT.length);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (InputStream in = restarted.getStream(CONTENT_HASH)) {
+            IpfsUtil.copy(in, out);
+        }
+        assertThat(out.toByteArray()).isEqualTo(CONTENT);
+        try (InputStream in = restarted.getStream(CONTENT_HASH, 6, 100)) {
+            assertThat(new String(in.readAllBytes(), StandardCharsets.UTF_8)).isEqualTo("World!");
+        }
+    }
+
+    @Test
+    void shouldNotStoreContentNotMatchingItsCid() {
+        DiskContentCache cache = open(DataSize.ofMegabytes(2), DataSize.ofMegabytes(1));
+
+        cache.put(CONTENT_HASH, "Hello World?".getBytes(StandardCharsets.UTF_8));
+
+        assertThat(cache.size(CONTENT_HASH)).isEqualTo(-1);
+        assertThat(cache.get(CONTENT_HASH)).isNull();
+    }
+
+    @Test
+    void shouldEvictCorruptedContent() throws IOException {
+        DiskContentCache cache = open(DataSize.ofMegabytes(2), DataSize.ofMegabytes(1));
+        cache.put(CONTENT_HASH, CONTENT);
+        cache.close();
+        try (RandomAccessFile segment = new RandomAccessFile(directory.resolve("segment-00000000.dat").toFile(), "rw")) {
+            // the content follows the header and the 34 bytes of the sha2-256 multihash
+            segment.seek(10 + 34);
+            segment.write('J');
+        }
+
+        DiskContentCache restarted = open(DataSize.ofMegabytes(2), DataSize.ofMegabytes(1));
+        MeterRegistry registry = new SimpleMeterRegistry();
+        restarted.bindTo(registry);
+
+        assertThat(restarted.get(CONTENT_HASH)).isNull();
+        assertThat(restarted.size(CONTENT_HASH)).isEqualTo(-1);
+        assertThat(registry.get("ipfs.content.disk.corrupted").functionCounter().count()).isEqualTo(1);
+    }
+
+    @Test
+    void shouldRecycleOldestSegmentKeepingContentReadSinceWritten() throws IOException {
+        // records of 344 bytes, two per segment of 1KB, at most two segments
+        DiskContentCache cache = open(DataSize.ofKilobytes(2), DataSize.ofKilobytes(1));
+        byte[][] contents = new byte[5][];
+        for (int i = 0; i < contents.length; i++) {
+            contents[i] = new byte[300];
+            Arrays.fill(contents[i], (byte) i);
+        }
+        cache.put(UnixFsHasher.hash(contents[0]), contents[0]);
+        cache.put(UnixFsHasher.hash(contents[1]), contents[1]);
+        cache.get(UnixFsHasher.hash(contents[0]));
+        cache.put(UnixFsHasher.hash(contents[2]), contents[2]);
+        cache.put(UnixFsHasher.hash(contents[3]), contents[3]);
+
+        cache.put(UnixFsHasher.hash(contents[4]), contents[4]);
+
+        assertThat(cache.get(UnixFsHasher.hash(contents[0]))).isEqualTo(contents[0]);
+        assertThat(cache.get(UnixFsHasher.hash(contents[1]))).isNull();
+        assertThat(cache.get(UnixFsHasher.hash(contents[2]))).isEqualTo(contents[2]);
+        assertThat(cache.get(UnixFsHasher.hash(contents[4]))).isEqualTo(contents[4]);
+        try (var files = Files.list(directory)) {
+            assertThat(files.count()).isEqualTo(2);
+        }
+    }
+
+    @Test
+    void shouldNotRecycleContentBeyondTheRoomOfTheNextRecord() throws IOException {
+        DiskContentCache cache = open(DataSize.ofMegabytes(2), DataSize.ofMegabytes(1));
+        byte[] first = content(400 * 1024, 1);
+        byte[] second = content(700 * 1024, 2);
+        byte[] third = content(700 * 1024, 3);
+        cache.put(UnixFsHasher.hash(first), first);
+        cache.get(UnixFsHasher.hash(first));
+        cache.put(UnixFsHasher.hash(second), second);
+
+        // the read first object would fill the segment of the third one
+        cache.put(UnixFsHasher.hash(third), third);
+
+        assertThat(cache.get(UnixFsHasher.hash(third))).isEqualTo(third);
+        assertThat(cache.get(UnixFsHasher.hash(second))).isEqualTo(second);
+        assertThat(cache.get(UnixFsHasher.hash(first))).isNull();
+        try (var files = Files.list(directory)) {
+            assertThat(files.mapToLong(file -> file.toFile().length())).allMatch(length -> length <= DataSize.ofMegabytes(1).toBytes());
+        }
+    }
+
+    @Test
+    void shouldCacheStreamReadToTheEnd() throws IOException {
+        DiskContentCache cache = open(DataSize.ofMegabytes(2), DataSize.ofMegabytes(1));
+
+        try (InputStream in = cache.readThrough(CONTENT_HASH, new ByteArrayInputStream(CONTENT))) {
+            assertThat(in.readAllBytes()).isEqualTo(CONTENT);
+        }
+
+        assertThat(cache.get(CONTENT_HASH)).isEqualTo(CONTENT);
+        try (var files = Files.list(directory)) {
+            assertThat(files.count()).isEqualTo(1);
+        }
+    }
+
+    @Test
+    void shouldNotCacheStreamClosedBeforeTheEnd() throws IOException {
+        DiskContentCache cache = open(DataSize.ofMegabytes(2), DataSize.ofMegabytes(1));
+
+        try (InputStream in = cache.readThrough(CONTENT_HASH, new ByteArrayInputStream(CONTENT))) {
+            assertThat(in.readNBytes(5)).hasSize(5);
+        }
+
+        assertThat(cache.get(CONTENT_HASH)).isNull();
+        try (var files = Files.list(directory)) {
+            assertThat(files.count()).isZero();
+        }
+    }
+
+    private static byte[] content(int length, int value) {
+        byte[] content = new byte[length];
+        Arrays.fill(content, (byte) value);
+        return content;
+    }
+
+    private DiskContentCache open(DataSize maxSize, DataSize segmentSize) {
+        return new DiskContentCache(true, directory.toString(), maxSize, segmentSize);
+    }
+
+}
@@ -1,70 +1,178 @@
 package com.plooh.adssi.dial.validator.service;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.Mockito.*;
 import static org.mockito.Mockito.times;
 
+import com.plooh.adssi.dial.validator.model.BatchAddResult;
+import com.plooh.adssi.dial.validator.model.Pin;
+import com.plooh.adssi.dial.validator.model.PinPage;
+import com.plooh.adssi.dial.validator.util.CircuitBreaker;
 import com.plooh.adssi.dial.validator.util.IpfsUtil;
-import com.plooh.adssi.dial.validator.util.ReflectionUtils;
+import com.plooh.adssi.dial.validator.util.StubIpfsDaemon;
+import com.plooh.adssi.dial.validator.util.UnixFsHasher;
 import io.ipfs.api.IPFS;
 import io.ipfs.api.MerkleNode;
 import io.ipfs.api.NamedStreamable;
+import io.ipfs.cid.Cid;
 import io.ipfs.multihash.Multihash;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.nio.charset.Charset;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.EnumMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 import lombok.extern.slf4j.Slf4j;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
-import org.mockito.InjectMocks;
+import org.junit.jupiter.api.io.TempDir;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
+import org.mockito.Spy;
+import org.springframework.util.unit.DataSize;
 
 @Slf4j
 public class IpfsApiTest {
 
     public static final String HELLO_WORLD_HASH = "zb2rhfE3SX3q7Ha6UErfMqQReKsmLn73BvdDRagHDM6X1eRFN";
     public static final String HELLO_WORLD_CONTENT = "Hello World!";
+    public static final String DIRECTORY_HASH = "QmfM2r8seH2GiRaC4esTjeraXEachRt8ZsSeGaWTPLyMoG";
+    public static final String OTHER_HASH = "QmNLei78zWmzUdbeRB3CiUfAizWUrbeeZh5K1rhAQKCh51";
     public static final String HELLO_WORLD_FILENAME = "hello-world.txt";
 
     @Mock
     private IPFS ipfs;
 
-    @Mock
-    public IPFS.Pin pin;
+    @Spy
+    private IpfsContentCache cache = new IpfsContentCache(true, DataSize.ofKilobytes(64), DataSize.ofBytes(16), DataSize.ofKilobytes(64));
+
+    @Spy
+    private PinIndex pinIndex = new PinIndex(16);
+
+    private final MeterRegistry registry = new SimpleMeterRegistry();
+
+    @Spy
+    private IpfsMetrics metrics = new IpfsMetrics(registry);
 
-    @InjectMocks
     private IpfsApi uut;
 
     @BeforeEach
     void setUp() {
         MockitoAnnotations.initMocks(this);
 
-        ReflectionUtils.setFinalFieldValue(ipfs, "pin", pin);
+        uut = new IpfsApi(IpfsNodePool.of(ipfs), cache, DiskContentCache.disabled(), pinIndex, metrics, IpfsGuard.unlimited());
     }
 
     @Test
     void shouldAddFileAsBytes() throws IOException {
-        when(ipfs.add(any(NamedStreamable.class), any(Map.class))).thenReturn(List.of(new MerkleNode(HELLO_WORLD_HASH, Optional.of(HELLO_WORLD_FILENAME))));
+        try (var daemon = new StubIpfsDaemon()) {
+            daemon.respond("add", "{\"Name\":\"hello-world.txt\",\"Hash\":\"" + HELLO_WORLD_HASH + "\",\"Size\":\"12\"}\n");
+            var api = new IpfsApi(IpfsNodePool.of(daemon.ipfs()), cache, DiskContentCache.disabled(), pinIndex, metrics, IpfsGuard.unlimited());
 
-        var actual = uut.addFile(HELLO_WORLD_CONTENT.getBytes(StandardCharsets.UTF_8), HELLO_WORLD_FILENAME);
+            var actual = api.addFile(HELLO_WORLD_CONTENT.getBytes(StandardCharsets.UTF_8), HELLO_WORLD_FILENAME);
 
-        assertThat(actual).isEqualTo(HELLO_WORLD_HASH);
-        verify(ipfs, times(1)).add(any(NamedStreamable.class), any(Map.class));
+            assertThat(actual).isEqualTo(HELLO_WORLD_HASH);
+            assertThat(daemon.requests()).extracting(request -> request.command).endsWith("add");
+            assertThat(registry.get("ipfs.client.sent").tag("op", "add").counter().count()).isEqualTo(HELLO_WORLD_CONTENT.length());
+        }
     }
 
     @Test
     void shouldAddFileAsString() throws IOException {
-        when(ipfs.add(any(NamedStreamable.class), any(Map.class))).thenReturn(List.of(new MerkleNode(HELLO_WORLD_HASH, Optional.of(HELLO_WORLD_FILENAME))));
+        try (var daemon = new StubIpfsDaemon()) {
+            daemon.respond("add", "{\"Name\":\"hello-world.txt\",\"Hash\":\"" + HELLO_WORLD_HASH + "\",\"Size\":\"12\"}\n");
+            var api = new IpfsApi(IpfsNodePool.of(daemon.ipfs()), cache, DiskContentCache.disabled(), pinIndex, metrics, IpfsGuard.unlimited());
+
+            var actual = api.addFile(HELLO_WORLD_CONTENT, HELLO_WORLD_FILENAME);
+
+            assertThat(actual).isEqualTo(HELLO_WORLD_HASH);
+            assertThat(daemon.requests()).extracting(request -> request.command).endsWith("add");
+        }
+    }
+
+    @Test
+    void shouldNotUploadContentAlreadyStored() throws IOException {
+        try (var daemon = new StubIpfsDaemon()) {
+            daemon.respond("block/stat", "{\"Key\":\"" + HELLO_WORLD_HASH + "\",\"Size\":12}");
+            var api = new IpfsApi(IpfsNodePool.of(daemon.ipfs()), cache, DiskContentCache.disabled(), pinIndex, metrics, IpfsGuard.unlimited());
+            byte[] content = HELLO_WORLD_CONTENT.getBytes(StandardCharsets.UTF_8);
+            pinIndex.add(UnixFsHasher.hash(content));
+
+            var actual = api.addFile(content, HELLO_WORLD_FILENAME);
+
+            assertThat(actual).isEqualTo(HELLO_WORLD_HASH);
+            assertThat(daemon.requests()).extracting(request -> request.command).endsWith("block/stat").doesNotContain("add");
+            assertThat(registry.get("ipfs.client.deduplicated").tag("op", "add").counter().count()).isEqualTo(1);
+        }
+    }
+
+    @Test
+    void shouldUploadContentOfAStalePinIndexEntry() throws IOException {
+        try (var daemon = new StubIpfsDaemon()) {
+            daemon.respond("block/stat", request -> {
+                throw StubIpfsDaemon.error("block was not found locally (offline): ipld: could not find " + HELLO_WORLD_HASH);
+            });
+            daemon.respond("add", "{\"Name\":\"hello-world.txt\",\"Hash\":\"" + HELLO_WORLD_HASH + "\",\"Size\":\"12\"}\n");
+            var api = new IpfsApi(IpfsNodePool.of(daemon.ipfs()), cache, DiskContentCache.disabled(), pinIndex, metrics, IpfsGuard.unlimited());
+            byte[] content = HELLO_WORLD_CONTENT.getBytes(StandardCharsets.UTF_8);
+            pinIndex.add(UnixFsHasher.hash(content));
+
+            var actual = api.addFile(content, HELLO_WORLD_FILENAME);
+
+            assertThat(actual).isEqualTo(HELLO_WORLD_HASH);
+            assertThat(daemon.requests()).extracting(request -> request.command).endsWith("block/stat", "add");
+            assertThat(pinIndex.contains(UnixFsHasher.hash(content))).isTrue();
+        }
+    }
+
+    @Test
+    void shouldAddFilesWrappedWithDirectory() throws IOException {
+        try (var daemon = new StubIpfsDaemon()) {
+            daemon.respond("add", "{\"Name\":\"hello-world.txt\",\"Hash\":\"" + HELLO_WORLD_HASH + "\",\"Size\":\"12\"}\n"
+                + "{\"Name\":\"\",\"Hash\":\"" + DIRECTORY_HASH + "\",\"Size\":\"71\"}\n");
+            var api = new IpfsApi(IpfsNodePool.of(daemon.ipfs()), cache, DiskContentCache.disabled(), pinIndex, metrics, IpfsGuard.unlimited());
+
+            var actual = api.addFiles(List.of(new NamedStreamable.ByteArrayWrapper(HELLO_WORLD_FILENAME,
+                HELLO_WORLD_CONTENT.getBytes(StandardCharsets.UTF_8))), true);
+
+            assertThat(actual.getRoot()).isEqualTo(IpfsUtil.toBase58(IpfsUtil.fromBase58(DIRECTORY_HASH)));
+            assertThat(actual.getFiles()).containsExactly(new BatchAddResult.AddedFile(HELLO_WORLD_FILENAME, HELLO_WORLD_HASH, 12L));
+            assertThat(daemon.requests().get(daemon.requests().size() - 1).query).contains("wrap-with-directory=true");
+        }
+    }
+
+    @Test
+    void shouldCoalesceConcurrentReadsOfSameMultihash() throws Exception {
+        Multihash multihash = IpfsUtil.fromBase58(DIRECTORY_HASH);
+        String cidV1 = IpfsUtil.toBase32(Cid.buildCidV1(Cid.Codec.DagProtobuf, multihash.getType(), multihash.getHash()));
+        CountDownLatch release = new CountDownLatch(1);
+        when(ipfs.cat(any(Multihash.class))).thenAnswer(invocation -> {
+            release.await(5, TimeUnit.SECONDS);
+            return HELLO_WORLD_CONTENT.getBytes(StandardCharsets.UTF_8);
+        });
 
-        var actual = uut.addFile(HELLO_WORLD_CONTENT, HELLO_WORLD_FILENAME);
+        var first = CompletableFuture.supplyAsync(() -> uut.getFileByHash(DIRECTORY_HASH));
+        var second = CompletableFuture.supplyAsync(() -> uut.getFileByHash(cidV1));
+        while (registry.get("ipfs.client.coalesced").tag("op", "cat").counter().count() < 1) {
+            Thread.sleep(1);
+        }
+        release.countDown();
 
-        assertThat(actual).isEqualTo(HELLO_WORLD_HASH);
-        verify(ipfs, times(1)).add(any(NamedStreamable.class), any(Map.class));
+        assertThat(first.get(5, TimeUnit.SECONDS)).isEqualTo(HELLO_WORLD_CONTENT.getBytes(StandardCharsets.UTF_8));
+        assertThat(second.get(5, TimeUnit.SECONDS)).isSameAs(first.get());
+        verify(ipfs, times(1)).cat(any(Multihash.class));
     }
 
     @Test
@@ -77,6 +185,99 @@ public class IpfsApiTest {
         verify(ipfs, times(1)).cat(any(Multihash.class));
     }
 
+    @Test
+    void shouldRecordMetricsOfCalls() throws IOException {
+        when(ipfs.cat(any(Multihash.class))).thenReturn(HELLO_WORLD_CONTENT.getBytes(StandardCharsets.UTF_8));
+        when(ipfs.ls(any(Multihash.class))).thenThrow(new IOException("timeout"));
+
+        uut.getFileByHash(HELLO_WORLD_HASH);
+        assertThatThrownBy(() -> uut.getFileInfoByHash(HELLO_WORLD_HASH)).isInstanceOf(RuntimeException.class);
+
+        assertThat(registry.get("ipfs.client.requests").tags("op", "cat", "outcome", "success").timer().count()).isEqualTo(1);
+        assertThat(registry.get("ipfs.client.received").tag("op", "cat").counter().count()).isEqualTo(12);
+        assertThat(registry.get("ipfs.client.errors").tags("op", "ls", "exception", "IOException").counter().count()).isEqualTo(1);
+    }
+
+    @Test
+    void shouldGetFileByHashFromCache() throws IOException {
+        when(ipfs.cat(any(Multihash.class))).thenReturn(HELLO_WORLD_CONTENT.getBytes(StandardCharsets.UTF_8));
+
+        uut.getFileByHash(HELLO_WORLD_HASH);
+        var actual = uut.getFileByHash(HELLO_WORLD_HASH);
+
+        assertThat(new String(actual, StandardCharsets.UTF_8)).isEqualTo(HELLO_WORLD_CONTENT);
+        verify(ipfs, times(1)).cat(any(Multihash.class));
+    }
+
+    @Test
+    void shouldNotCacheFileLargerThanMaxObjectSize() throws IOException {
+        when(ipfs.cat(any(Multihash.class))).thenReturn("Hello World! Hello World!".getBytes(StandardCharsets.UTF_8));
+
+        uut.getFileByHash(HELLO_WORLD_HASH);
+        uut.getFileByHash(HELLO_WORLD_HASH);
+
+        verify(ipfs, times(2)).cat(any(Multihash.class));
+    }
+
+    @Test
+    void shouldGetFileByHashFromDiskCacheAfterRestart(@TempDir Path directory) throws IOException {
+        when(ipfs.cat(any(Multihash.class))).thenReturn(HELLO_WORLD_CONTENT.getBytes(StandardCharsets.UTF_8));
+        var diskCache = new DiskContentCache(true, directory.toString(), DataSize.ofMegabytes(2), DataSize.ofMegabytes(1));
+        new IpfsApi(IpfsNodePool.of(ipfs), cache, diskCache, pinIndex, metrics, IpfsGuard.unlimited()).getFileByHash(HELLO_WORLD_HASH);
+        diskCache.close();
+
+        var restarted = new IpfsApi(IpfsNodePool.of(ipfs), new IpfsContentCache(true, DataSize.ofKilobytes(64), DataSize.ofBytes(16),
+            DataSize.ofKilobytes(64)), new DiskContentCache(true, directory.toString(), DataSize.ofMegabytes(2), DataSize.ofMegabytes(1)),
+            pinIndex, metrics, IpfsGuard.unlimited());
+        var actual = restarted.getFileByHash(HELLO_WORLD_HASH);
+
+        assertThat(new String(actual, StandardCharsets.UTF_8)).isEqualTo(HELLO_WORLD_CONTENT);
+        verify(ipfs, times(1)).cat(any(Multihash.class));
+    }
+
+    @Test
+    void shouldGetFileStreamByHashAndCacheIt() throws IOException {
+        when(ipfs.catStream(any(Multihash.class))).thenReturn(new ByteArrayInputStream(HELLO_WORLD_CONTENT.getBytes(StandardCharsets.UTF_8)));
+
+        try (var actual = uut.getFileStreamByHash(HELLO_WORLD_HASH)) {
+            assertThat(new String(actual.readAllBytes(), StandardCharsets.UTF_8)).isEqualTo(HELLO_WORLD_CONTENT);
+        }
+        var cached = uut.getFileByHash(HELLO_WORLD_HASH);
+
+        assertThat(new String(cached, StandardCharsets.UTF_8)).isEqualTo(HELLO_WORLD_CONTENT);
+        verify(ipfs, times(1)).catStream(any(Multihash.class));
+        verify(ipfs, times(0)).cat(any(Multihash.class));
+    }
+
+    @Test
+    void shouldGetFileRangeFromCache() throws IOException {
+        when(ipfs.cat(any(Multihash.class))).thenReturn(HELLO_WORLD_CONTENT.getBytes(StandardCharsets.UTF_8));
+        uut.getFileByHash(HELLO_WORLD_HASH);
+
+        try (var actual = uut.getFileStreamByHash(HELLO_WORLD_HASH, 6, 100)) {
+            assertThat(new String(actual.readAllBytes(), StandardCharsets.UTF_8)).isEqualTo("World!");
+        }
+        assertThat(uut.getFileSizeByHash(HELLO_WORLD_HASH)).isEqualTo(12);
+    }
+
+    @Test
+    void shouldGetFileInfoByHashFromCache() throws IOException {
+        when(ipfs.ls(any(Multihash.class))).thenReturn(List.of(new MerkleNode(HELLO_WORLD_HASH, Optional.of(HELLO_WORLD_FILENAME))));
+
+        uut.getFileInfoByHash(HELLO_WORLD_HASH);
+        var actual = uut.getFileInfoByHash(HELLO_WORLD_HASH);
+
+        assertThat(actual).hasSize(1);
+        verify(ipfs, times(1)).ls(any(Multihash.class));
+    }
+
+    @Test
+    void shouldThrowNotFoundForUnknownPath() throws IOException {
+        when(ipfs.ls(any(Multihash.class))).thenThrow(new RuntimeException("IOException contacting IPFS daemon.\nno link named \"missing\""));
+
+        assertThatThrownBy(() -> uut.getFileInfoByHash(HELLO_WORLD_HASH)).isInstanceOf(IpfsNotFoundException.class);
+    }
+
     @Test
     void shouldGetFileInfoByHash() throws IOException {
         when(ipfs.ls(any(Multihash.class))).thenReturn(List.of(new MerkleNode(HELLO_WORLD_HASH, Optional.of(HELLO_WORLD_FILENAME))));
@@ -90,38 +291,119 @@ public class IpfsApiTest {
 
     @Test
     void shouldPinFileByHash() throws IOException {
-        var expected = List.of(IpfsUtil.fromBase58(HELLO_WORLD_HASH));
-        when(ipfs.pin.add(any(Multihash.class))).thenReturn(expected);
+        try (var daemon = new StubIpfsDaemon()) {
+            daemon.respond("pin/add", "{\"Pins\":[\"" + HELLO_WORLD_HASH + "\"]}");
+            var api = new IpfsApi(IpfsNodePool.of(daemon.ipfs()), cache, DiskContentCache.disabled(), pinIndex, metrics, IpfsGuard.unlimited());
 
-        var actual = uut.pinFileByHash(HELLO_WORLD_HASH);
+            var actual = api.pinFileByHash(HELLO_WORLD_HASH);
 
-        assertThat(actual).isNotEmpty();
-        assertThat(actual).isEqualTo(List.of(HELLO_WORLD_HASH));
-        verify(ipfs.pin, times(1)).add(any(Multihash.class));
+            assertThat(actual).isEqualTo(List.of(HELLO_WORLD_HASH));
+            assertThat(pinIndex.contains(IpfsUtil.fromBase58(HELLO_WORLD_HASH))).isTrue();
+            assertThat(daemon.requests()).extracting(request -> request.command).endsWith("pin/add");
+        }
     }
 
     @Test
     void shouldUnpinFileByHash() throws IOException {
-        var expected = List.of(IpfsUtil.fromBase58(HELLO_WORLD_HASH));
-        when(ipfs.pin.rm(any(Multihash.class))).thenReturn(expected);
+        try (var daemon = new StubIpfsDaemon()) {
+            // HELLO_WORLD_HASH is a block of the unpinned DAG, removed by the next reconciliation only
+            daemon.respond("pin/rm", "{\"Pins\":[\"" + DIRECTORY_HASH + "\"]}");
+            List.of(DIRECTORY_HASH, HELLO_WORLD_HASH).forEach(hash -> pinIndex.add(IpfsUtil.fromBase58(hash)));
+            var api = new IpfsApi(IpfsNodePool.of(daemon.ipfs()), cache, DiskContentCache.disabled(), pinIndex, metrics, IpfsGuard.unlimited());
 
-        var actual = uut.unpinFileByHash(HELLO_WORLD_HASH);
+            var actual = api.unpinFileByHash(DIRECTORY_HASH);
 
-        assertThat(actual).isNotEmpty();
-        assertThat(actual).isEqualTo(List.of(HELLO_WORLD_HASH));
-        verify(ipfs.pin, times(1)).rm(any(Multihash.class));
+            assertThat(actual).containsExactly(IpfsUtil.toBase58(IpfsUtil.fromBase58(DIRECTORY_HASH)));
+            assertThat(pinIndex.contains(IpfsUtil.fromBase58(DIRECTORY_HASH))).isFalse();
+            assertThat(pinIndex.contains(IpfsUtil.fromBase58(HELLO_WORLD_HASH))).isTrue();
+            assertThat(api.isPinIndexStale()).isTrue();
+            assertThat(daemon.requests()).extracting(request -> request.command).containsExactly("version", "pin/rm");
+        }
     }
 
     @Test
-    void shouldListAllFiles() throws IOException {
-        var expected = Map.of(IpfsUtil.fromBase58(HELLO_WORLD_HASH), (Object)IPFS.PinType.all);
-        when(ipfs.pin.ls(IPFS.PinType.all)).thenReturn(expected);
+    void shouldCheckPinInIndexOnceReconciled() throws IOException {
+        try (var daemon = new StubIpfsDaemon()) {
+            daemon.respond("pin/ls", "{\"Cid\":\"" + DIRECTORY_HASH + "\",\"Type\":\"recursive\"}\n");
+            var api = new IpfsApi(IpfsNodePool.of(daemon.ipfs()), cache, DiskContentCache.disabled(), pinIndex, metrics, IpfsGuard.unlimited());
 
-        var actual = uut.listAllFiles();
+            api.reconcilePinIndex();
+            int requests = daemon.requests().size();
 
-        assertThat(actual).isNotEmpty();
-        assertThat(actual).isEqualTo(List.of(HELLO_WORLD_HASH));
-        verify(ipfs.pin, times(1)).ls(IPFS.PinType.all);
+            assertThat(api.isPinned(DIRECTORY_HASH)).isTrue();
+            assertThat(api.isPinned(HELLO_WORLD_HASH)).isFalse();
+            assertThat(daemon.requests()).hasSize(requests);
+        }
+    }
+
+    @Test
+    void shouldLoadIndexBeforeFirstCheck() throws IOException {
+        try (var daemon = new StubIpfsDaemon()) {
+            daemon.respond("pin/ls", "{\"Cid\":\"" + DIRECTORY_HASH + "\",\"Type\":\"recursive\"}\n");
+            var api = new IpfsApi(IpfsNodePool.of(daemon.ipfs()), cache, DiskContentCache.disabled(), pinIndex, metrics, IpfsGuard.unlimited());
+
+            assertThat(api.isPinned(DIRECTORY_HASH)).isTrue();
+            assertThat(api.isPinned(HELLO_WORLD_HASH)).isFalse();
+            assertThat(pinIndex.isReady()).isTrue();
+            assertThat(daemon.requests()).filteredOn(request -> request.command.equals("pin/ls"))
+                .extracting(request -> request.query).containsExactly("stream=true&type=all");
+        }
+    }
+
+    @Test
+    void shouldStreamFilesOutsideTheBulkheadAndDeadline() throws Exception {
+        try (var daemon = new StubIpfsDaemon()) {
+            daemon.respond("pin/ls", "{\"Cid\":\"" + HELLO_WORLD_HASH + "\",\"Type\":\"recursive\"}\n"
+                + "{\"Cid\":\"" + DIRECTORY_HASH + "\",\"Type\":\"recursive\"}\n");
+            Map<IpfsOperation, Duration> timeouts = new EnumMap<>(IpfsOperation.class);
+            for (IpfsOperation operation : IpfsOperation.values()) {
+                timeouts.put(operation, Duration.ofMillis(200));
+            }
+            IpfsGuard guard = new IpfsGuard(timeouts, 1, 1, new CircuitBreaker(1, 1, 2, Duration.ZERO, 1));
+            var api = new IpfsApi(IpfsNodePool.of(daemon.ipfs()), cache, DiskContentCache.disabled(), pinIndex, metrics, guard);
+            List<Pin> streamed = new ArrayList<>();
+            List<PinPage> pages = new ArrayList<>();
+
+            // a slow client: another listing needs the only thread of the bulkhead, the deadline passes
+            api.streamFiles(IPFS.PinType.all, pin -> {
+                if (streamed.isEmpty()) {
+                    pages.add(api.listFiles(IPFS.PinType.all, null, 1));
+                    sleep(Duration.ofMillis(300));
+                }
+                return streamed.add(pin);
+            });
+
+            assertThat(streamed).hasSize(2);
+            assertThat(pages.get(0).getPins()).hasSize(1);
+            guard.shutdown();
+        }
+    }
+
+    @Test
+    void shouldListFilesPageByPage() throws IOException {
+        try (var daemon = new StubIpfsDaemon()) {
+            daemon.respond("pin/ls", "{\"Cid\":\"" + HELLO_WORLD_HASH + "\",\"Type\":\"recursive\"}\n"
+                + "{\"Cid\":\"" + DIRECTORY_HASH + "\",\"Type\":\"recursive\"}\n"
+                + "{\"Cid\":\"" + HELLO_WORLD_HASH + "\",\"Type\":\"direct\"}\n");
+            var api = new IpfsApi(IpfsNodePool.of(daemon.ipfs()), cache, DiskContentCache.disabled(), pinIndex, metrics, IpfsGuard.unlimited());
+
+            var first = api.listFiles(IPFS.PinType.all, null, 2);
+            var second = api.listFiles(IPFS.PinType.all, first.getNext(), 2);
+
+            assertThat(first.getPins()).extracting(Pin::getType).containsExactly("recursive", "recursive");
+            assertThat(first.getNext()).isNotNull();
+            assertThat(second.getPins()).containsExactly(new Pin(HELLO_WORLD_HASH, "direct"));
+            assertThat(second.getNext()).isNull();
+            assertThat(daemon.requests().get(daemon.requests().size() - 1).query).isEqualTo("stream=true&type=all");
+        }
+    }
+
+    private static void sleep(Duration duration) {
+        try {
+            Thread.sleep(duration.toMillis());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
     }
 
 }
@@ -0,0 +1,51 @@
+package com.plooh.adssi.dial.validator.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import org.junit.jupiter.api.Test;
+
+public class IpfsAsyncApiTest {
+
+    private static final String HASH = "QmfM2r8seH2GiRaC4esTjeraXEachRt8ZsSeGaWTPLyMoG";
+
+    private final IpfsApi ipfsApi = mock(IpfsApi.class);
+
+    @Test
+    void shouldCallIpfsOnExecutor() {
+        ExecutorService executor = Executors.newSingleThreadExecutor(runnable -> new Thread(runnable, "ipfs-async-test"));
+        var uut = new IpfsAsyncApi(ipfsApi, executor);
+        when(ipfsApi.pinFileByHash(HASH)).thenAnswer(invocation -> List.of(Thread.currentThread().getName()));
+
+        List<String> actual = uut.pinFileByHash(HASH).join();
+
+        assertThat(actual).containsExactly("ipfs-async-test");
+        executor.shutdown();
+    }
+
+    @Test
+    void shouldFailWhenExecutorRejectsCall() {
+        var uut = new IpfsAsyncApi(ipfsApi, runnable -> {
+            throw new RejectedExecutionException("full");
+        });
+
+        assertThatThrownBy(() -> uut.isPinned(HASH).join())
+            .hasCauseInstanceOf(IpfsUnavailableException.class);
+    }
+
+    @Test
+    void shouldFallBackToFixedPoolWithoutVirtualThreads() {
+        var uut = new IpfsAsyncApi(ipfsApi, IpfsAsyncApi.ExecutorType.VIRTUAL, 2, 4);
+        when(ipfsApi.getFileSizeByHash(HASH)).thenReturn(12L);
+
+        assertThat(uut.getFileSizeByHash(HASH).join()).isEqualTo(12L);
+        uut.shutdown();
+    }
+
+}
@@ -0,0 +1,106 @@
+package com.plooh.adssi.dial.validator.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import com.plooh.adssi.dial.validator.util.CircuitBreaker;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.io.IOException;
+import java.net.ConnectException;
+import java.time.Duration;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+public class IpfsGuardTest {
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    private final CountDownLatch release = new CountDownLatch(1);
+    private IpfsGuard uut;
+
+    @AfterEach
+    void tearDown() {
+        release.countDown();
+        uut.shutdown();
+    }
+
+    @Test
+    void shouldTimeOutSlowCall() {
+        uut = guard(Duration.ofMillis(50), 1, 0, new CircuitBreaker(10, 10, 0.5, Duration.ofMinutes(1), 1));
+
+        assertThatThrownBy(() -> uut.call(IpfsOperation.PIN_ADD, this::block))
+            .isInstanceOf(IpfsTimeoutException.class)
+            .hasMessage("IPFS pin.add did not complete within 50ms");
+        assertThat(registry.get("ipfs.client.timeouts").counter().count()).isEqualTo(1);
+    }
+
+    @Test
+    void shouldRejectCallWhenBulkheadIsFull() throws IOException {
+        uut = guard(Duration.ofMillis(50), 1, 0, new CircuitBreaker(10, 10, 0.5, Duration.ofMinutes(1), 1));
+        assertThatThrownBy(() -> uut.call(IpfsOperation.PIN_ADD, this::block)).isInstanceOf(IpfsTimeoutException.class);
+
+        assertThatThrownBy(() -> uut.call(IpfsOperation.PIN_RM, () -> "unpinned"))
+            .isInstanceOfSatisfying(IpfsUnavailableException.class, e -> assertThat(e.getRetryAfter()).isPositive());
+        assertThat(uut.call(IpfsOperation.CAT, () -> "read")).isEqualTo("read");
+        assertThat(registry.get("ipfs.client.rejected").tags("bulkhead", "pin", "reason", "bulkhead-full").counter().count()).isEqualTo(1);
+    }
+
+    @Test
+    void shouldFailFastOnceCircuitIsOpen() {
+        uut = guard(Duration.ofSeconds(10), 4, 4, new CircuitBreaker(2, 2, 0.5, Duration.ofMinutes(1), 1));
+        AtomicInteger calls = new AtomicInteger();
+        IpfsMetrics.IpfsCall<String> unreachable = () -> {
+            calls.incrementAndGet();
+            throw new ConnectException("Connection refused");
+        };
+        assertThatThrownBy(() -> uut.call(IpfsOperation.CAT, unreachable)).isInstanceOf(ConnectException.class);
+        assertThatThrownBy(() -> uut.call(IpfsOperation.CAT, unreachable)).isInstanceOf(ConnectException.class);
+
+        assertThatThrownBy(() -> uut.call(IpfsOperation.CAT, unreachable))
+            .isInstanceOfSatisfying(IpfsUnavailableException.class,
+                e -> assertThat(e.getRetryAfter()).isGreaterThan(Duration.ofSeconds(50)));
+        assertThat(calls).hasValue(2);
+        assertThat(uut.getCircuitState()).isEqualTo(CircuitBreaker.State.OPEN);
+    }
+
+    @Test
+    void shouldNotCountErrorsOfRequestsAsFailures() {
+        uut = guard(Duration.ofSeconds(10), 4, 4, new CircuitBreaker(2, 2, 0.5, Duration.ofMinutes(1), 1));
+
+        for (int i = 0; i < 3; i++) {
+            assertThatThrownBy(() -> uut.call(IpfsOperation.LS, () -> {
+                throw new RuntimeException("IOException contacting IPFS daemon.\nno link named \"missing\"");
+            })).isInstanceOf(IOException.class).hasMessageContaining("no link named");
+        }
+
+        assertThat(uut.getCircuitState()).isEqualTo(CircuitBreaker.State.CLOSED);
+    }
+
+    private IpfsGuard guard(Duration timeout, int maxConcurrent, int queueCapacity, CircuitBreaker circuitBreaker) {
+        Map<IpfsOperation, Duration> timeouts = new EnumMap<>(IpfsOperation.class);
+        for (IpfsOperation operation : IpfsOperation.values()) {
+            timeouts.put(operation, timeout);
+        }
+        IpfsGuard guard = new IpfsGuard(timeouts, maxConcurrent, queueCapacity, circuitBreaker);
+        guard.bindTo(registry);
+        return guard;
+    }
+
+    private String block() throws IOException {
+        try {
+            release.await();
+        } catch (InterruptedException e) {
+            // the abandoned call keeps its thread until the node answers, as a blocking socket read would
+            try {
+                release.await();
+            } catch (InterruptedException again) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        return "done";
+    }
+
+}
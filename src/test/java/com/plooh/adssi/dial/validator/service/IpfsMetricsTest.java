@@ -0,0 +1,67 @@
+package com.plooh.adssi.dial.validator.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.time.Duration;
+import org.junit.jupiter.api.Test;
+
+public class IpfsMetricsTest {
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+
+    private final IpfsMetrics uut = new IpfsMetrics(registry);
+
+    @Test
+    void shouldTimeSuccessfulCall() throws IOException {
+        var actual = uut.record(IpfsOperation.PIN_ADD, () -> "pinned");
+
+        assertThat(actual).isEqualTo("pinned");
+        assertThat(registry.get("ipfs.client.requests").tags("op", "pin.add", "outcome", "success").timer().count()).isEqualTo(1);
+        assertThat(registry.get("ipfs.client.requests.active").tag("op", "pin.add").gauge().value()).isZero();
+    }
+
+    @Test
+    void shouldCountFailedCall() {
+        assertThatThrownBy(() -> uut.record(IpfsOperation.ADD, () -> {
+            throw new IOException("connection refused");
+        })).isInstanceOf(IOException.class);
+
+        assertThat(registry.get("ipfs.client.requests").tags("op", "add", "outcome", "error").timer().count()).isEqualTo(1);
+        assertThat(registry.get("ipfs.client.errors").tags("op", "add", "exception", "IOException").counter().count()).isEqualTo(1);
+    }
+
+    @Test
+    void shouldRecordStreamWhenClosed() throws IOException {
+        InputStream in = uut.recordStream(IpfsOperation.CAT, () -> new ByteArrayInputStream(new byte[100]));
+
+        assertThat(registry.get("ipfs.client.requests.active").tag("op", "cat").gauge().value()).isEqualTo(1);
+        in.readAllBytes();
+        in.close();
+        in.close();
+
+        assertThat(registry.get("ipfs.client.requests.active").tag("op", "cat").gauge().value()).isZero();
+        assertThat(registry.get("ipfs.client.requests").tags("op", "cat", "outcome", "success").timer().count()).isEqualTo(1);
+        assertThat(registry.get("ipfs.client.received").tag("op", "cat").counter().count()).isEqualTo(100);
+    }
+
+    @Test
+    void shouldHedgeAfterLatencyPercentile() {
+        var timer = registry.get("ipfs.client.requests").tags("op", "cat", "outcome", "success").timer();
+        for (int i = 1; i <= 100; i++) {
+            timer.record(Duration.ofMillis(i));
+        }
+
+        assertThat(uut.hedge(IpfsOperation.CAT).delayNanos()).isBetween(Duration.ofMillis(90).toNanos(), Duration.ofMillis(100).toNanos());
+
+        uut.hedge(IpfsOperation.CAT).sent();
+        uut.hedge(IpfsOperation.CAT).won();
+        assertThat(registry.get("ipfs.client.hedges").tag("op", "cat").counter().count()).isEqualTo(1);
+        assertThat(registry.get("ipfs.client.hedges.won").tag("op", "cat").counter().count()).isEqualTo(1);
+    }
+
+}
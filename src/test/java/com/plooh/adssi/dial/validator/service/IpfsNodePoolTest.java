@@ -0,0 +1,214 @@
+package com.plooh.adssi.dial.validator.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.Mockito.mock;
+
+import com.plooh.adssi.dial.validator.util.StubIpfsDaemon;
+import io.ipfs.api.IPFS;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.ConnectException;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import org.junit.jupiter.api.Test;
+
+public class IpfsNodePoolTest {
+
+    private static final String HASH = "zb2rhfE3SX3q7Ha6UErfMqQReKsmLn73BvdDRagHDM6X1eRFN";
+
+    private final IPFS first = mock(IPFS.class);
+    private final IPFS second = mock(IPFS.class);
+    private final IPFS third = mock(IPFS.class);
+
+    @Test
+    void shouldReadFromNodeWithFewestOutstandingRequests() throws IOException {
+        IpfsNodePool pool = pool(IpfsNodePool.WritePolicy.PRIMARY, 1, first, second);
+
+        InputStream held = pool.readStream(ipfs -> new ByteArrayInputStream(new byte[0]));
+        IpfsNode busy = pool.getNodes().get(0).getOutstanding() == 1 ? pool.getNodes().get(0) : pool.getNodes().get(1);
+        IPFS idle = busy == pool.getNodes().get(0) ? second : first;
+        for (int i = 0; i < 4; i++) {
+            IPFS read = pool.read(ipfs -> ipfs);
+            assertThat(read).isSameAs(idle);
+        }
+        held.close();
+        held.close();
+
+        assertThat(busy.getOutstanding()).isZero();
+    }
+
+    @Test
+    void shouldRetryReadOnAnotherNodeAndEjectFailingNode() throws IOException {
+        IpfsNodePool pool = pool(IpfsNodePool.WritePolicy.PRIMARY, 1, first, second);
+
+        for (int i = 0; i < 4; i++) {
+            IPFS read = pool.read(ipfs -> {
+                if (ipfs == first) {
+                    throw new ConnectException("Connection refused");
+                }
+                return ipfs;
+            });
+            assertThat(read).isSameAs(second);
+        }
+
+        assertThat(pool.getHealthyNodes()).extracting(IpfsNode::getName).containsExactly("second");
+    }
+
+    @Test
+    void shouldNotRetryFailedRequest() {
+        IpfsNodePool pool = pool(IpfsNodePool.WritePolicy.PRIMARY, 1, first, second);
+        List<IPFS> called = new CopyOnWriteArrayList<>();
+
+        assertThatThrownBy(() -> pool.read(ipfs -> {
+            called.add(ipfs);
+            throw new IOException("IPFS node returned 500 for pin/ls: not pinned");
+        })).hasMessageContaining("not pinned");
+
+        assertThat(called).hasSize(1);
+        assertThat(pool.getHealthyNodes()).hasSize(2);
+    }
+
+    @Test
+    void shouldReplicateWriteToOtherNodes() throws IOException {
+        IpfsNodePool pool = pool(IpfsNodePool.WritePolicy.REPLICATE, 2, first, second, third);
+        List<IPFS> replicas = new CopyOnWriteArrayList<>();
+
+        IPFS written = pool.write(ipfs -> ipfs, result -> ipfs -> replicas.add(ipfs));
+
+        assertThat(written).isSameAs(first);
+        assertThat(replicas).containsExactly(second);
+    }
+
+    @Test
+    void shouldNotReplicateWriteWithPrimaryPolicy() throws IOException {
+        IpfsNodePool pool = pool(IpfsNodePool.WritePolicy.PRIMARY, 2, first, second);
+        List<IPFS> replicas = new CopyOnWriteArrayList<>();
+
+        pool.write(ipfs -> ipfs, result -> ipfs -> replicas.add(ipfs));
+
+        assertThat(replicas).isEmpty();
+    }
+
+    @Test
+    void shouldWriteEverywhere() throws IOException {
+        IpfsNodePool pool = pool(IpfsNodePool.WritePolicy.PRIMARY, 1, first, second, third);
+        List<IPFS> called = new CopyOnWriteArrayList<>();
+
+        IPFS written = pool.writeEverywhere(ipfs -> {
+            called.add(ipfs);
+            if (ipfs == third) {
+                throw new IOException("not pinned");
+            }
+            return ipfs;
+        });
+
+        assertThat(written).isSameAs(first);
+        assertThat(called).containsExactlyInAnyOrder(first, second, third);
+    }
+
+    @Test
+    void shouldEjectAndConnectNodesOnHealthCheck() throws IOException {
+        try (var daemon = new StubIpfsDaemon(); var down = new StubIpfsDaemon()) {
+            IPFS downIpfs = down.ipfs();
+            down.close();
+            IpfsNodePool pool = new IpfsNodePool(List.of(IpfsNode.of(downIpfs),
+                new IpfsNode("lazy", daemon::ipfs)), IpfsNodePool.WritePolicy.PRIMARY, 1, 1, Duration.ofSeconds(1));
+            assertThat(pool.getHealthyNodes()).hasSize(1);
+
+            pool.checkHealth();
+
+            assertThat(pool.getHealthyNodes()).extracting(IpfsNode::getName).containsExactly("lazy");
+            int port = pool.primary(ipfs -> ipfs.port);
+            assertThat(port).isEqualTo(daemon.port());
+            assertThat(pool.getPrimaryHost()).isEqualTo("localhost");
+        }
+    }
+
+    @Test
+    void shouldHedgeSlowReadOnAnotherNode() throws IOException {
+        try (var slow = new StubIpfsDaemon(); var fast = new StubIpfsDaemon()) {
+            slow.respond("cat", request -> {
+                try {
+                    Thread.sleep(5_000);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return "slow".getBytes(StandardCharsets.UTF_8);
+            });
+            fast.respond("cat", "fast");
+            IpfsNodePool pool = new IpfsNodePool(List.of(IpfsNode.of(slow.ipfs()), IpfsNode.of(fast.ipfs())),
+                IpfsNodePool.WritePolicy.PRIMARY, 1, 3, Duration.ofSeconds(1), true, Duration.ZERO, Duration.ofSeconds(1));
+            var hedge = new CountingHedge(Duration.ofMillis(50));
+
+            long start = System.nanoTime();
+            byte[] actual = pool.hedgedRead(ipfs -> ipfs.cat(null), "cat?arg=" + HASH, InputStream::readAllBytes, hedge);
+
+            assertThat(new String(actual, StandardCharsets.UTF_8)).isEqualTo("fast");
+            assertThat(Duration.ofNanos(System.nanoTime() - start)).isLessThan(Duration.ofSeconds(4));
+            assertThat(hedge.sent).isEqualTo(1);
+            assertThat(hedge.won).isEqualTo(1);
+            assertThat(pool.getHealthyNodes()).hasSize(2);
+        }
+    }
+
+    @Test
+    void shouldNotHedgeReadAnsweredBeforeDelay() throws IOException {
+        try (var first = new StubIpfsDaemon(); var second = new StubIpfsDaemon()) {
+            first.respond("cat", "first");
+            second.respond("cat", "second");
+            IpfsNodePool pool = new IpfsNodePool(List.of(IpfsNode.of(first.ipfs()), IpfsNode.of(second.ipfs())),
+                IpfsNodePool.WritePolicy.PRIMARY, 1, 3, Duration.ofSeconds(1), true, Duration.ZERO, Duration.ofSeconds(1));
+            var hedge = new CountingHedge(Duration.ofSeconds(1));
+
+            byte[] actual = pool.hedgedRead(ipfs -> ipfs.cat(null), "cat?arg=" + HASH, InputStream::readAllBytes, hedge);
+
+            assertThat(new String(actual, StandardCharsets.UTF_8)).isIn("first", "second");
+            assertThat(hedge.sent).isZero();
+            assertThat(first.requests().size() + second.requests().size()).isEqualTo(3);
+        }
+    }
+
+    private static IpfsNodePool pool(IpfsNodePool.WritePolicy writePolicy, int replicas, IPFS... clients) {
+        String[] names = {"first", "second", "third"};
+        List<IpfsNode> nodes = new ArrayList<>();
+        for (int i = 0; i < clients.length; i++) {
+            IPFS client = clients[i];
+            nodes.add(new IpfsNode(names[i], () -> client));
+        }
+        IpfsNodePool pool = new IpfsNodePool(nodes, writePolicy, replicas, 1, Duration.ofSeconds(1));
+        pool.checkHealth();
+        return pool;
+    }
+
+    private static class CountingHedge implements IpfsNodePool.Hedge {
+
+        private final Duration delay;
+        private int sent;
+        private int won;
+
+        CountingHedge(Duration delay) {
+            this.delay = delay;
+        }
+
+        @Override
+        public long delayNanos() {
+            return delay.toNanos();
+        }
+
+        @Override
+        public void sent() {
+            sent++;
+        }
+
+        @Override
+        public void won() {
+            won++;
+        }
+    }
+
+}
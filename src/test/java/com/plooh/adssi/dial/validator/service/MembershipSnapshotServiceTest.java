@@ -0,0 +1,154 @@
+package com.plooh.adssi.dial.validator.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.plooh.adssi.dial.validator.model.MembershipSnapshot;
+import com.plooh.adssi.dial.validator.util.Jws;
+import com.plooh.adssi.dial.validator.util.JwsTest;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.security.GeneralSecurityException;
+import java.security.KeyPair;
+import java.security.interfaces.ECPublicKey;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.List;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class MembershipSnapshotServiceTest {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+    private static final Instant WINDOW_START = Instant.parse("2026-01-01T10:00:00Z");
+
+    private final MutableClock clock = new MutableClock(WINDOW_START);
+    private final MeterRegistry registry = new SimpleMeterRegistry();
+    private KeyPair keyPair;
+    private DeclarationIndex declarationIndex;
+    private MembershipSnapshotService uut;
+
+    @BeforeEach
+    void setUp(@TempDir Path directory) throws GeneralSecurityException {
+        keyPair = JwsTest.keyPair();
+        declarationIndex = new DeclarationIndex(directory.toString());
+        uut = new MembershipSnapshotService(declarationIndex, keyPair, List.of("key-1"), Duration.ofHours(1), Duration.ofMinutes(1),
+            clock);
+        uut.bindTo(registry);
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        declarationIndex.close();
+    }
+
+    @Test
+    void shouldSignTheListOnceUntilTheMembershipChanges() throws IOException {
+        declarationIndex.update("validator-1", "validator", "QmFirst", "key-1");
+        declarationIndex.update("router-1", "router", "QmSecond", "key-1");
+
+        MembershipSnapshot first = uut.get(MembershipSnapshotService.Membership.VALIDATORS);
+        clock.instant = WINDOW_START.plusSeconds(60);
+        MembershipSnapshot second = uut.get(MembershipSnapshotService.Membership.VALIDATORS);
+        declarationIndex.update("declaration-1", null, "QmThird", "key-1");
+        // anybody can publish a validator declaration, which is not listed
+        declarationIndex.update("validator-3", "validator", "QmFifth", "key-2");
+        MembershipSnapshot third = uut.get(MembershipSnapshotService.Membership.VALIDATORS);
+        declarationIndex.update("validator-2", "validator", "QmFourth", "key-1");
+        MembershipSnapshot changed = uut.get(MembershipSnapshotService.Membership.VALIDATORS);
+
+        assertThat(second).isSameAs(first);
+        assertThat(third).isSameAs(first);
+        assertThat(changed.getEtag()).isNotEqualTo(first.getEtag());
+        assertThat(builds("validators")).isEqualTo(2);
+        JsonNode jws = MAPPER.readTree(changed.getContent());
+        assertThat(Jws.verify((ECPublicKey) keyPair.getPublic(), Jws.signingInput(jws), Jws.signature(jws))).isTrue();
+        JsonNode payload = Jws.payload(jws);
+        assertThat(payload.get("notBefore").asText()).isEqualTo("2026-01-01T10:00:00Z");
+        assertThat(payload.get("notAfter").asText()).isEqualTo("2026-01-01T11:00:00Z");
+        assertThat(payload.get("members")).hasSize(2);
+        assertThat(payload.get("members").get(1).get("id").asText()).isEqualTo("validator-2");
+        assertThat(payload.get("members").get(1).get("cid").asText()).isEqualTo("QmFourth");
+    }
+
+    @Test
+    void shouldPrepareTheNextWindowBeforeTheRollover() {
+        declarationIndex.update("router-1", "router", "QmFirst", "key-1");
+        MembershipSnapshot current = uut.get(MembershipSnapshotService.Membership.ROUTERS);
+        clock.instant = WINDOW_START.plus(Duration.ofMinutes(50));
+        uut.prepareNextWindow();
+        assertThat(builds("routers")).isEqualTo(1);
+
+        clock.instant = WINDOW_START.plus(Duration.ofMinutes(59).plusSeconds(30));
+        uut.prepareNextWindow();
+        assertThat(builds("routers")).isEqualTo(2);
+        clock.instant = WINDOW_START.plus(Duration.ofHours(1));
+        MembershipSnapshot next = uut.get(MembershipSnapshotService.Membership.ROUTERS);
+
+        assertThat(builds("routers")).isEqualTo(2);
+        assertThat(next.getWindow()).isEqualTo(current.getWindow() + 1);
+        assertThat(next.getNotBefore()).isEqualTo(current.getNotAfter());
+        assertThat(next.getMembers()).isEqualTo(1);
+    }
+
+    @Test
+    void shouldNotServeAPreparedListOfAChangedMembership() {
+        clock.instant = WINDOW_START.plus(Duration.ofMinutes(59).plusSeconds(30));
+        uut.prepareNextWindow();
+        declarationIndex.update("router-1", "router", "QmFirst", "key-1");
+        clock.instant = WINDOW_START.plus(Duration.ofHours(1));
+
+        MembershipSnapshot actual = uut.get(MembershipSnapshotService.Membership.ROUTERS);
+
+        assertThat(actual.getMembers()).isEqualTo(1);
+        assertThat(builds("routers")).isEqualTo(2);
+    }
+
+    @Test
+    void shouldListTheDeclarationsOfTheAuthorizedKeysOnly() throws IOException {
+        declarationIndex.update("validator-1", "validator", "QmFirst", "key-1");
+        declarationIndex.update("validator-2", "validator", "QmSecond", "key-2");
+        declarationIndex.update("validator-3", "validator", "QmThird", Jws.thumbprint((ECPublicKey) keyPair.getPublic()));
+
+        MembershipSnapshot actual = uut.get(MembershipSnapshotService.Membership.VALIDATORS);
+
+        JsonNode members = Jws.payload(MAPPER.readTree(actual.getContent())).get("members");
+        assertThat(members).extracting(member -> member.get("id").asText()).containsExactly("validator-1", "validator-3");
+    }
+
+    private double builds(String membership) {
+        return registry.get("validator.snapshots.built").tag("membership", membership).counter().count();
+    }
+
+    private static class MutableClock extends Clock {
+        private volatile Instant instant;
+
+        MutableClock(Instant instant) {
+            this.instant = instant;
+        }
+
+        @Override
+        public ZoneId getZone() {
+            return ZoneOffset.UTC;
+        }
+
+        @Override
+        public Clock withZone(ZoneId zone) {
+            return this;
+        }
+
+        @Override
+        public Instant instant() {
+            return instant;
+        }
+    }
+
+}
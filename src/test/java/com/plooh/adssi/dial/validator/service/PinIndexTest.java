@@ -0,0 +1,101 @@
+package com.plooh.adssi.dial.validator.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.plooh.adssi.dial.validator.util.IpfsUtil;
+import io.ipfs.multihash.Multihash;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.Test;
+
+public class PinIndexTest {
+
+    public static final Multihash HELLO_WORLD = IpfsUtil.fromBase58("zb2rhfE3SX3q7Ha6UErfMqQReKsmLn73BvdDRagHDM6X1eRFN");
+    public static final Multihash DIRECTORY = IpfsUtil.fromBase58("QmfM2r8seH2GiRaC4esTjeraXEachRt8ZsSeGaWTPLyMoG");
+
+    private final PinIndex uut = new PinIndex(16);
+
+    @Test
+    void shouldAddAndRemovePins() {
+        uut.add(HELLO_WORLD);
+
+        assertThat(uut.contains(HELLO_WORLD)).isTrue();
+        assertThat(uut.contains(DIRECTORY)).isFalse();
+
+        uut.remove(HELLO_WORLD);
+
+        assertThat(uut.contains(HELLO_WORLD)).isFalse();
+        assertThat(uut.size()).isZero();
+    }
+
+    @Test
+    void shouldReplaceContentWhenReconciled() {
+        uut.add(HELLO_WORLD);
+
+        uut.reconcile(consumer -> consumer.accept(DIRECTORY));
+
+        assertThat(uut.isReady()).isTrue();
+        assertThat(uut.contains(DIRECTORY)).isTrue();
+        assertThat(uut.contains(HELLO_WORLD)).isFalse();
+    }
+
+    @Test
+    void shouldKeepChangesMadeDuringReconciliation() {
+        uut.add(DIRECTORY);
+
+        uut.reconcile(consumer -> {
+            consumer.accept(DIRECTORY);
+            uut.add(HELLO_WORLD);
+            uut.remove(DIRECTORY);
+        });
+
+        assertThat(uut.contains(HELLO_WORLD)).isTrue();
+        assertThat(uut.contains(DIRECTORY)).isFalse();
+    }
+
+    @Test
+    void shouldReconcileOneAtATime() throws Exception {
+        CountDownLatch listing = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        CompletableFuture<Void> first = CompletableFuture.runAsync(() -> uut.reconcile(consumer -> {
+            listing.countDown();
+            await(release);
+            consumer.accept(DIRECTORY);
+        }));
+        assertThat(listing.await(5, TimeUnit.SECONDS)).isTrue();
+        // pinned during the first listing, listed by the second one
+        uut.add(HELLO_WORLD);
+        CompletableFuture<Void> second = CompletableFuture.runAsync(() -> uut.reconcile(consumer -> {
+            consumer.accept(DIRECTORY);
+            consumer.accept(HELLO_WORLD);
+        }));
+        release.countDown();
+
+        first.get(5, TimeUnit.SECONDS);
+        second.get(5, TimeUnit.SECONDS);
+
+        assertThat(uut.contains(DIRECTORY)).isTrue();
+        assertThat(uut.contains(HELLO_WORLD)).isTrue();
+    }
+
+    @Test
+    void shouldBeStaleUntilReconciled() {
+        uut.markStale();
+
+        assertThat(uut.isStale()).isTrue();
+
+        uut.reconcile(consumer -> consumer.accept(DIRECTORY));
+
+        assertThat(uut.isStale()).isFalse();
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+}
@@ -0,0 +1,98 @@
+package com.plooh.adssi.dial.validator.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.*;
+
+import com.plooh.adssi.dial.validator.model.PinAction;
+import com.plooh.adssi.dial.validator.model.PinJob;
+import com.plooh.adssi.dial.validator.util.IpfsUtil;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+public class PinJobServiceTest {
+
+    public static final String HELLO_WORLD_HASH = "zb2rhfE3SX3q7Ha6UErfMqQReKsmLn73BvdDRagHDM6X1eRFN";
+    public static final String OTHER_HASH = "QmfM2r8seH2GiRaC4esTjeraXEachRt8ZsSeGaWTPLyMoG";
+
+    @Mock
+    private IpfsApi ipfsApi;
+
+    private PinIndex pinIndex;
+
+    private PinJobService uut;
+
+    @BeforeEach
+    void setUp() {
+        MockitoAnnotations.initMocks(this);
+        pinIndex = new PinIndex(16);
+        uut = new PinJobService(ipfsApi, pinIndex, PinWriteBehind.disabled(), 2, 100, Duration.ofMinutes(1));
+    }
+
+    @AfterEach
+    void tearDown() {
+        uut.shutdown();
+    }
+
+    @Test
+    void shouldPinAllCids() throws Exception {
+        when(ipfsApi.pinFileByHash(HELLO_WORLD_HASH)).thenReturn(List.of(HELLO_WORLD_HASH));
+        when(ipfsApi.pinFileByHash(OTHER_HASH)).thenReturn(List.of(OTHER_HASH));
+
+        var job = uut.submit(PinAction.PIN, List.of(HELLO_WORLD_HASH, OTHER_HASH));
+        var actual = job.getCompletion().get(5, TimeUnit.SECONDS);
+
+        assertThat(actual.getStatus()).isEqualTo(PinJob.Status.COMPLETED);
+        assertThat(actual.getResults().get(HELLO_WORLD_HASH).getState()).isEqualTo(PinJob.State.DONE);
+        assertThat(actual.getResults().get(OTHER_HASH).getHashes()).containsExactly(OTHER_HASH);
+        assertThat(uut.getJob(job.getId())).contains(job);
+    }
+
+    @Test
+    void shouldSkipCidAlreadyPinned() throws Exception {
+        pinIndex.add(IpfsUtil.fromBase58(HELLO_WORLD_HASH));
+
+        var actual = uut.submit(PinAction.PIN, List.of(HELLO_WORLD_HASH)).getCompletion().get(5, TimeUnit.SECONDS);
+
+        assertThat(actual.getResults().get(HELLO_WORLD_HASH).getState()).isEqualTo(PinJob.State.SKIPPED);
+        verify(ipfsApi, never()).pinFileByHash(HELLO_WORLD_HASH);
+    }
+
+    @Test
+    void shouldShareCidAlreadyQueued() throws Exception {
+        var started = new CountDownLatch(1);
+        var release = new CountDownLatch(1);
+        when(ipfsApi.pinFileByHash(HELLO_WORLD_HASH)).thenAnswer(invocation -> {
+            started.countDown();
+            release.await(5, TimeUnit.SECONDS);
+            return List.of(HELLO_WORLD_HASH);
+        });
+
+        var first = uut.submit(PinAction.PIN, List.of(HELLO_WORLD_HASH));
+        started.await(5, TimeUnit.SECONDS);
+        var second = uut.submit(PinAction.PIN, List.of(HELLO_WORLD_HASH));
+        release.countDown();
+
+        assertThat(first.getCompletion().get(5, TimeUnit.SECONDS).getResults().get(HELLO_WORLD_HASH).getState()).isEqualTo(PinJob.State.DONE);
+        assertThat(second.getCompletion().get(5, TimeUnit.SECONDS).getResults().get(HELLO_WORLD_HASH).getState()).isEqualTo(PinJob.State.DONE);
+        verify(ipfsApi, times(1)).pinFileByHash(HELLO_WORLD_HASH);
+    }
+
+    @Test
+    void shouldReportFailedAndInvalidCids() throws Exception {
+        when(ipfsApi.unpinFileByHash(HELLO_WORLD_HASH)).thenThrow(new RuntimeException("not pinned"));
+
+        var actual = uut.submit(PinAction.UNPIN, List.of(HELLO_WORLD_HASH, "not-a-cid")).getCompletion().get(5, TimeUnit.SECONDS);
+
+        assertThat(actual.getFailed()).isEqualTo(2);
+        assertThat(actual.getResults().get(HELLO_WORLD_HASH).getMessage()).isEqualTo("not pinned");
+        assertThat(actual.getResults().get("not-a-cid").getMessage()).startsWith("Invalid CID");
+    }
+
+}
@@ -0,0 +1,192 @@
+package com.plooh.adssi.dial.validator.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import com.plooh.adssi.dial.validator.util.IpfsUtil;
+import com.plooh.adssi.dial.validator.util.StubIpfsDaemon;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.util.unit.DataSize;
+
+public class PinWriteBehindTest {
+
+    private static final String FIRST = "QmfM2r8seH2GiRaC4esTjeraXEachRt8ZsSeGaWTPLyMoG";
+    private static final String SECOND = "QmNLei78zWmzUdbeRB3CiUfAizWUrbeeZh5K1rhAQKCh51";
+    private static final String THIRD = "zb2rhfE3SX3q7Ha6UErfMqQReKsmLn73BvdDRagHDM6X1eRFN";
+
+    @TempDir
+    Path directory;
+
+    private final MeterRegistry registry = new SimpleMeterRegistry();
+    private final PinIndex pinIndex = new PinIndex(16);
+    private StubIpfsDaemon daemon;
+    private IpfsApi ipfsApi;
+    private PinWriteBehind uut;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        daemon = new StubIpfsDaemon().respond("pin/add", request -> {
+            List<String> args = args(request);
+            // a group with THIRD fails, THIRD alone fails
+            if (args.contains(cid(THIRD))) {
+                return null;
+            }
+            return args.stream().collect(Collectors.joining("\",\"", "{\"Pins\":[\"", "\"]}")).getBytes(StandardCharsets.UTF_8);
+        });
+        ipfsApi = new IpfsApi(IpfsNodePool.of(daemon.ipfs()), new IpfsContentCache(false, DataSize.ofKilobytes(64),
+            DataSize.ofBytes(16), DataSize.ofKilobytes(64)), DiskContentCache.disabled(), pinIndex,
+            new IpfsMetrics(new SimpleMeterRegistry()), IpfsGuard.unlimited());
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        if (uut != null) {
+            uut.stop();
+        }
+        daemon.close();
+    }
+
+    @Test
+    void shouldPinTheQueuedPinsInOneCall() throws Exception {
+        uut = writeBehind(10, Duration.ofMillis(500), 100);
+        uut.start();
+
+        CompletableFuture<List<String>> first = uut.pin(FIRST);
+        CompletableFuture<List<String>> second = uut.pin(SECOND);
+        CompletableFuture<List<String>> again = uut.pin(FIRST);
+
+        assertThat(first.get(5, TimeUnit.SECONDS)).containsExactly(cid(FIRST));
+        assertThat(second.get(5, TimeUnit.SECONDS)).containsExactly(cid(SECOND));
+        assertThat(again.get(5, TimeUnit.SECONDS)).containsExactly(cid(FIRST));
+        assertThat(pinRequests()).containsExactly(List.of(cid(FIRST), cid(SECOND)));
+        assertThat(pinIndex.contains(IpfsUtil.fromBase58(SECOND))).isTrue();
+        assertThat(registry.get("ipfs.pin.write-behind.group.size").summary().max()).isEqualTo(2);
+    }
+
+    @Test
+    void shouldFlushAFullGroupWithoutWaiting() throws Exception {
+        uut = writeBehind(2, Duration.ofMinutes(1), 100);
+        uut.start();
+
+        CompletableFuture<List<String>> first = uut.pin(FIRST);
+        CompletableFuture<List<String>> second = uut.pin(SECOND);
+
+        assertThat(first.get(5, TimeUnit.SECONDS)).containsExactly(cid(FIRST));
+        assertThat(second.get(5, TimeUnit.SECONDS)).containsExactly(cid(SECOND));
+    }
+
+    @Test
+    void shouldNotFailTheGroupForOneCid() throws Exception {
+        uut = writeBehind(10, Duration.ofMillis(500), 100);
+        uut.start();
+
+        CompletableFuture<List<String>> first = uut.pin(FIRST);
+        CompletableFuture<List<String>> third = uut.pin(THIRD);
+
+        assertThat(first.get(5, TimeUnit.SECONDS)).containsExactly(cid(FIRST));
+        assertThatThrownBy(third::join).isInstanceOf(CompletionException.class).hasCauseInstanceOf(IpfsException.class);
+        assertThat(registry.get("ipfs.pin.write-behind.failed").functionCounter().count()).isEqualTo(1);
+    }
+
+    @Test
+    void shouldPinThePendingPinsAfterARestart() throws Exception {
+        // not started: the pins stay in the log, as if the process crashed before flushing them
+        PinWriteBehind crashed = writeBehind(10, Duration.ofMillis(10), 100);
+        crashed.pin(FIRST);
+        crashed.pin(SECOND);
+
+        uut = writeBehind(10, Duration.ofMillis(10), 100);
+        assertThat(registry.get("ipfs.pin.write-behind.pending").gauge().value()).isEqualTo(2);
+        uut.start();
+
+        awaitPending(0);
+        assertThat(pinRequests()).containsExactly(List.of(cid(FIRST), cid(SECOND)));
+
+        // done pins are not pinned again
+        uut.stop();
+        uut = writeBehind(10, Duration.ofMillis(10), 100);
+        assertThat(registry.get("ipfs.pin.write-behind.pending").gauge().value()).isZero();
+    }
+
+    @Test
+    void shouldFailTheQueuedPinsOnStop() throws Exception {
+        // the flusher waits for the group to fill up
+        uut = writeBehind(10, Duration.ofMinutes(1), 100);
+        uut.start();
+        CompletableFuture<List<String>> first = uut.pin(FIRST);
+
+        uut.stop();
+
+        assertThatThrownBy(() -> first.get(5, TimeUnit.SECONDS)).hasCauseInstanceOf(IpfsUnavailableException.class);
+        assertThatThrownBy(uut.pin(SECOND)::join).hasCauseInstanceOf(IpfsUnavailableException.class);
+        assertThat(pinRequests()).isEmpty();
+
+        // the failed pin is still in the log
+        uut = writeBehind(10, Duration.ofMillis(10), 100);
+        assertThat(registry.get("ipfs.pin.write-behind.pending").gauge().value()).isEqualTo(1);
+    }
+
+    @Test
+    void shouldRejectPinsBeyondTheQueue() {
+        uut = writeBehind(10, Duration.ofMillis(10), 1);
+
+        uut.pin(FIRST);
+        CompletableFuture<List<String>> rejected = uut.pin(SECOND);
+
+        assertThat(rejected).isCompletedExceptionally();
+        assertThatThrownBy(rejected::join).hasCauseInstanceOf(IpfsUnavailableException.class);
+        assertThatThrownBy(() -> uut.pin("not a cid")).isInstanceOf(IllegalArgumentException.class);
+    }
+
+    private PinWriteBehind writeBehind(int maxBatchSize, Duration maxDelay, int maxPending) {
+        PinWriteBehind writeBehind = new PinWriteBehind(ipfsApi, true, directory.toString(), maxBatchSize, maxDelay, maxPending);
+        registry.clear();
+        writeBehind.bindTo(registry);
+        return writeBehind;
+    }
+
+    private List<List<String>> pinRequests() {
+        return daemon.requests().stream()
+            .filter(request -> request.command.equals("pin/add"))
+            .map(PinWriteBehindTest::args)
+            .collect(Collectors.toList());
+    }
+
+    private void awaitPending(int pending) throws InterruptedException {
+        long deadline = System.nanoTime() + Duration.ofSeconds(5).toNanos();
+        while (registry.get("ipfs.pin.write-behind.pending").gauge().value() != pending || pinRequests().isEmpty()) {
+            assertThat(System.nanoTime()).as("pins not flushed in 5s").isLessThan(deadline);
+            Thread.sleep(10);
+        }
+    }
+
+    /**
+     * @return the CID in the base of the results
+     */
+    private static String cid(String hash) {
+        return IpfsUtil.toBase58(IpfsUtil.fromBase58(hash));
+    }
+
+    private static List<String> args(StubIpfsDaemon.Request request) {
+        return Arrays.stream(request.query.split("&"))
+            .filter(parameter -> parameter.startsWith("arg="))
+            .map(parameter -> cid(parameter.substring(4)))
+            .collect(Collectors.toList());
+    }
+
+}
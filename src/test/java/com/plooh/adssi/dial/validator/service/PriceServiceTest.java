@@ -0,0 +1,71 @@
+package com.plooh.adssi.dial.validator.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import com.plooh.adssi.dial.validator.model.Price;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.nio.charset.StandardCharsets;
+import org.junit.jupiter.api.Test;
+
+public class PriceServiceTest {
+
+    private final PriceService uut = new PriceService(100, 10, 16);
+
+    @Test
+    void shouldPriceDeclarationsBySize() {
+        String large = "{\"payload\":\"" + "a".repeat(1500) + "\"}";
+
+        Price actual = uut.price(bytes("{\"version\":1,\"meta\":{\"declarations\":[{}]},\"declarations\":[{\"payload\":\"e30\"}, "
+            + large + "]}"));
+
+        assertThat(actual.getDeclarations()).isEqualTo(2);
+        assertThat(actual.getBytes()).isEqualTo("{\"payload\":\"e30\"}".length() + large.length());
+        // one started kilobyte for the first declaration, two for the second
+        assertThat(actual.getAmount()).isEqualTo(100 + 10 + 100 + 20);
+    }
+
+    @Test
+    void shouldMemoizePriceOfSameRecord() {
+        MeterRegistry registry = new SimpleMeterRegistry();
+        uut.bindTo(registry);
+        String record = "{\"declarations\":[{\"payload\":\"e30\"}]}";
+
+        Price first = uut.price(bytes(record));
+        Price second = uut.price(bytes(record));
+        uut.price(bytes(record + " "));
+
+        assertThat(second).isSameAs(first);
+        assertThat(registry.get("cache.gets").tags("cache", "validator.price", "result", "hit").functionCounter().count()).isEqualTo(1);
+        assertThat(registry.get("cache.gets").tags("cache", "validator.price", "result", "miss").functionCounter().count()).isEqualTo(2);
+    }
+
+    @Test
+    void shouldNotMemoizePriceOfOneOffRecord() {
+        MeterRegistry registry = new SimpleMeterRegistry();
+        uut.bindTo(registry);
+        String record = "{\"declarations\":[{\"payload\":\"e30\"}]}";
+
+        Price actual = uut.price(bytes(record), false);
+        uut.price(bytes(record));
+
+        assertThat(actual.getAmount()).isEqualTo(100 + 10);
+        assertThat(registry.get("cache.gets").tags("cache", "validator.price", "result", "miss").functionCounter().count()).isEqualTo(1);
+        assertThat(registry.get("cache.gets").tags("cache", "validator.price", "result", "hit").functionCounter().count()).isZero();
+    }
+
+    @Test
+    void shouldRejectInvalidRecord() {
+        assertThatThrownBy(() -> uut.price(bytes("{\"declarations\":[{}"))).isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> uut.price(bytes("[]"))).isInstanceOf(IllegalArgumentException.class)
+            .hasMessage("The record is not a JSON object");
+        assertThatThrownBy(() -> uut.price(bytes("{\"declarations\":{}}"))).isInstanceOf(IllegalArgumentException.class)
+            .hasMessage("The record has no declarations array");
+    }
+
+    private static byte[] bytes(String record) {
+        return record.getBytes(StandardCharsets.UTF_8);
+    }
+
+}
@@ -0,0 +1,144 @@
+package com.plooh.adssi.dial.validator.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.plooh.adssi.dial.validator.model.BatchAddResult;
+import com.plooh.adssi.dial.validator.model.PublishResult;
+import com.plooh.adssi.dial.validator.util.IpfsUtil;
+import com.plooh.adssi.dial.validator.util.JwsTest;
+import io.ipfs.api.NamedStreamable;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.security.GeneralSecurityException;
+import java.security.KeyPair;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.ArgumentCaptor;
+import org.springframework.util.unit.DataSize;
+
+public class PublishServiceTest {
+
+    private static final String FIRST = "QmfM2r8seH2GiRaC4esTjeraXEachRt8ZsSeGaWTPLyMoG";
+    private static final String THIRD = "QmNLei78zWmzUdbeRB3CiUfAizWUrbeeZh5K1rhAQKCh51";
+
+    private final SignatureVerifier verifier = new SignatureVerifier(2, 2, 100, 100);
+    private final DeclarationValidator validator = new DeclarationValidator(verifier, 100);
+    private final IpfsAsyncApi ipfsAsyncApi = mock(IpfsAsyncApi.class);
+    private final IpfsContentCache contentCache = new IpfsContentCache(true, DataSize.ofKilobytes(64), DataSize.ofKilobytes(16),
+        DataSize.ofKilobytes(64));
+    private DeclarationIndex declarationIndex;
+    private PublishService uut;
+
+    @BeforeEach
+    void setUp(@TempDir Path directory) {
+        declarationIndex = new DeclarationIndex(directory.toString());
+        uut = new PublishService(validator, new PriceService(100, 10, 100), ipfsAsyncApi, declarationIndex, contentCache);
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        verifier.shutdown();
+        declarationIndex.close();
+    }
+
+    @Test
+    void shouldPublishValidDeclarationsInOneBatchedAdd() throws GeneralSecurityException {
+        KeyPair keyPair = JwsTest.keyPair();
+        ObjectNode invalid = DeclarationValidatorTest.declaration(keyPair, "declaration-2", null);
+        invalid.put("signature", "AAAA");
+        when(ipfsAsyncApi.addFiles(anyList(), eq(false))).thenReturn(CompletableFuture.completedFuture(new BatchAddResult(List.of(
+            new BatchAddResult.AddedFile("0.json", FIRST, 300L),
+            new BatchAddResult.AddedFile("2.json", THIRD, 300L)), null)));
+
+        PublishResult actual = uut.publish(DeclarationValidatorTest.record(
+            DeclarationValidatorTest.declaration(keyPair, "declaration-1", null),
+            invalid,
+            DeclarationValidatorTest.declaration(keyPair, "declaration-3", null))).join();
+
+        @SuppressWarnings("unchecked")
+        ArgumentCaptor<List<NamedStreamable>> files = ArgumentCaptor.forClass(List.class);
+        verify(ipfsAsyncApi).addFiles(files.capture(), eq(false));
+        assertThat(files.getValue()).hasSize(2);
+        assertThat(actual.getDeclarations()).containsExactly(
+            new PublishResult.DeclarationResult(0, "declaration-1", PublishResult.Status.PUBLISHED, FIRST, null),
+            new PublishResult.DeclarationResult(1, null, PublishResult.Status.REJECTED, null, "Invalid signature"),
+            new PublishResult.DeclarationResult(2, "declaration-3", PublishResult.Status.PUBLISHED, THIRD, null));
+        assertThat(actual.getPublished()).isEqualTo(2);
+        assertThat(actual.getRejected()).isEqualTo(1);
+        assertThat(actual.getPrice().getDeclarations()).isEqualTo(3);
+        assertThat(declarationIndex.getLatest("declaration-1")).isEqualTo(FIRST);
+        assertThat(declarationIndex.getLatest("declaration-2")).isNull();
+        assertThat(declarationIndex.getLatest("declaration-3")).isEqualTo(THIRD);
+        assertThat(contentCache.getContent(IpfsUtil.fromBase58(THIRD))).isNotNull();
+    }
+
+    @Test
+    void shouldIndexTheLastVersionOfADeclarationInTheRecord() throws GeneralSecurityException {
+        KeyPair keyPair = JwsTest.keyPair();
+        when(ipfsAsyncApi.addFiles(anyList(), eq(false))).thenReturn(CompletableFuture.completedFuture(new BatchAddResult(List.of(
+            new BatchAddResult.AddedFile("0.json", FIRST, 300L),
+            new BatchAddResult.AddedFile("1.json", THIRD, 300L)), null)));
+
+        uut.publish(DeclarationValidatorTest.record(
+            DeclarationValidatorTest.declaration(keyPair, "declaration-1", null),
+            DeclarationValidatorTest.declaration(keyPair, "declaration-1", "update"))).join();
+
+        assertThat(declarationIndex.getLatest("declaration-1")).isEqualTo(THIRD);
+    }
+
+    @Test
+    void shouldRejectVersionsSignedByAnotherKey() throws GeneralSecurityException {
+        KeyPair owner = JwsTest.keyPair();
+        KeyPair other = JwsTest.keyPair();
+        when(ipfsAsyncApi.addFiles(anyList(), eq(false))).thenReturn(CompletableFuture.completedFuture(new BatchAddResult(List.of(
+            new BatchAddResult.AddedFile("0.json", FIRST, 300L),
+            new BatchAddResult.AddedFile("1.json", THIRD, 300L)), null)));
+        uut.publish(DeclarationValidatorTest.record(DeclarationValidatorTest.declaration(owner, "declaration-1", null))).join();
+
+        PublishResult actual = uut.publish(DeclarationValidatorTest.record(
+            DeclarationValidatorTest.declaration(other, "declaration-1", "hijack"))).join();
+
+        assertThat(actual.getDeclarations()).containsExactly(new PublishResult.DeclarationResult(0, "declaration-1",
+            PublishResult.Status.REJECTED, null, "Declaration signed by another key than its first version"));
+        assertThat(declarationIndex.getLatest("declaration-1")).isEqualTo(FIRST);
+        verify(ipfsAsyncApi, times(1)).addFiles(anyList(), eq(false));
+    }
+
+    @Test
+    void shouldRejectVersionsOfAnotherKeyInTheSameRecord() throws GeneralSecurityException {
+        KeyPair owner = JwsTest.keyPair();
+        KeyPair other = JwsTest.keyPair();
+        when(ipfsAsyncApi.addFiles(anyList(), eq(false))).thenReturn(CompletableFuture.completedFuture(new BatchAddResult(List.of(
+            new BatchAddResult.AddedFile("0.json", FIRST, 300L),
+            new BatchAddResult.AddedFile("1.json", THIRD, 300L)), null)));
+
+        PublishResult actual = uut.publish(DeclarationValidatorTest.record(
+            DeclarationValidatorTest.declaration(owner, "declaration-1", null),
+            DeclarationValidatorTest.declaration(other, "declaration-1", "hijack"))).join();
+
+        assertThat(actual.getDeclarations()).extracting(PublishResult.DeclarationResult::getStatus)
+            .containsExactly(PublishResult.Status.PUBLISHED, PublishResult.Status.REJECTED);
+        assertThat(declarationIndex.getLatest("declaration-1")).isEqualTo(FIRST);
+    }
+
+    @Test
+    void shouldNotCallIpfsWhenNoDeclarationIsValid() {
+        PublishResult actual = uut.publish("{\"declarations\":[{}]}").join();
+
+        assertThat(actual.getRejected()).isEqualTo(1);
+        verify(ipfsAsyncApi, never()).addFiles(anyList(), eq(false));
+    }
+
+}
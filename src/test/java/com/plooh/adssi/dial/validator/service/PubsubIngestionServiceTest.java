@@ -0,0 +1,197 @@
+package com.plooh.adssi.dial.validator.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.plooh.adssi.dial.validator.model.PublishResult;
+import com.plooh.adssi.dial.validator.util.StubIpfsDaemon;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.BooleanSupplier;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.util.unit.DataSize;
+
+public class PubsubIngestionServiceTest {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+    private static final String TOPIC = "dial-declarations";
+    private static final int MAX_MESSAGE_SIZE = 64;
+    // a record of one declaration, two of them exceed the backlog
+    private static final int RECORD_SIZE = record(1).length();
+
+    private final PublishService publishService = mock(PublishService.class);
+    private final MeterRegistry registry = new SimpleMeterRegistry();
+    private StubIpfsDaemon daemon;
+    private PubsubIngestionService uut;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        daemon = new StubIpfsDaemon();
+    }
+
+    @AfterEach
+    void tearDown() {
+        if (uut != null) {
+            uut.stop();
+        }
+        daemon.close();
+    }
+
+    @Test
+    void shouldPublishTheRecordsOfTheTopicInBatches() throws IOException {
+        publishOnce(message(record(1)), message(record(2)), "{\"data\":\"not base64\"}", message("{\"other\":[]}"));
+        when(publishService.publish(anyString(), eq(false))).thenReturn(CompletableFuture.completedFuture(result(3)));
+        start(PubsubIngestionService.Overflow.DROP, 1024, 10, 1);
+
+        ArgumentCaptor<String> record = ArgumentCaptor.forClass(String.class);
+        verify(publishService, timeout(5000)).publish(record.capture(), eq(false));
+
+        assertThat(MAPPER.readTree(record.getValue()).get("declarations")).hasSize(3);
+        assertThat(daemon.requests().stream().filter(request -> request.command.equals("pubsub/sub")).findFirst().get().query)
+            .isEqualTo("arg=" + TOPIC);
+        eventually(() -> count("validator.pubsub.declarations", "status", "published") == 3);
+        assertThat(count("validator.pubsub.messages", "result", "accepted")).isEqualTo(2);
+        assertThat(count("validator.pubsub.messages", "result", "invalid")).isEqualTo(2);
+    }
+
+    @Test
+    void shouldDropMessagesBeyondTheBacklog() {
+        publishOnce(message(record(1)), message(record(1)), message(record(1)), message(record(1)), message(record(1)));
+        when(publishService.publish(anyString(), eq(false))).thenReturn(new CompletableFuture<>());
+        start(PubsubIngestionService.Overflow.DROP, RECORD_SIZE, 1, 1);
+
+        eventually(() -> count("validator.pubsub.messages", "result", "accepted")
+            + count("validator.pubsub.messages", "result", "dropped") == 5);
+
+        // one batch in progress and one record in the backlog at most
+        assertThat(count("validator.pubsub.messages", "result", "dropped")).isGreaterThanOrEqualTo(3);
+        assertThat(registry.get("validator.pubsub.backlog").gauge().value()).isLessThanOrEqualTo(1);
+        eventually(() -> registry.get("validator.pubsub.batches.active").gauge().value() == 1);
+    }
+
+    @Test
+    void shouldDeferMessagesBeyondTheBacklog() {
+        publishOnce(message(record(1)), message(record(1)), message(record(1)), message(record(1)));
+        CompletableFuture<PublishResult> first = new CompletableFuture<>();
+        when(publishService.publish(anyString(), eq(false))).thenReturn(first, CompletableFuture.completedFuture(result(1)));
+        start(PubsubIngestionService.Overflow.DEFER, RECORD_SIZE, 1, 1);
+
+        eventually(() -> count("validator.pubsub.deferred", null, null) >= 1);
+        first.complete(result(1));
+
+        verify(publishService, timeout(5000).times(4)).publish(anyString(), eq(false));
+        assertThat(count("validator.pubsub.messages", "result", "accepted")).isEqualTo(4);
+        assertThat(count("validator.pubsub.messages", "result", "dropped")).isZero();
+    }
+
+    @Test
+    void shouldSkipMessagesLongerThanTheMaximumSize() throws IOException {
+        String tooLong = "{\"data\":\"" + "A".repeat(100_000) + "\"}";
+        publishOnce(tooLong, message(record(10)), message(record(2)));
+        when(publishService.publish(anyString(), eq(false))).thenReturn(CompletableFuture.completedFuture(result(2)));
+        start(PubsubIngestionService.Overflow.DROP, 1024, 10, 1);
+
+        ArgumentCaptor<String> record = ArgumentCaptor.forClass(String.class);
+        verify(publishService, timeout(5000)).publish(record.capture(), eq(false));
+
+        assertThat(MAPPER.readTree(record.getValue())).isEqualTo(MAPPER.readTree(record(2)));
+        assertThat(count("validator.pubsub.messages", "result", "invalid")).isEqualTo(2);
+    }
+
+    @Test
+    void shouldSubscribeAgainAfterAnUnexpectedError() {
+        IpfsApi ipfsApi = mock(IpfsApi.class);
+        when(ipfsApi.subscribe(eq(TOPIC), any()))
+            .thenThrow(new IllegalStateException("unexpected"))
+            .thenReturn(new ByteArrayInputStream((message(record(1)) + "\n").getBytes(StandardCharsets.UTF_8)))
+            .thenReturn(new ByteArrayInputStream(new byte[0]));
+        when(publishService.publish(anyString(), eq(false))).thenReturn(CompletableFuture.completedFuture(result(1)));
+        start(ipfsApi, PubsubIngestionService.Overflow.DROP, 1024, 10, 1);
+
+        verify(publishService, timeout(5000)).publish(anyString(), eq(false));
+        assertThat(count("validator.pubsub.messages", "result", "accepted")).isEqualTo(1);
+    }
+
+    private void start(PubsubIngestionService.Overflow overflow, int backlogSize, int batchSize, int parallelism) {
+        start(new IpfsApi(IpfsNodePool.of(daemon.ipfs()), new IpfsContentCache(false, DataSize.ofKilobytes(64),
+            DataSize.ofBytes(16), DataSize.ofKilobytes(64)), DiskContentCache.disabled(), new PinIndex(16),
+            new IpfsMetrics(new SimpleMeterRegistry()), IpfsGuard.unlimited()), overflow, backlogSize, batchSize, parallelism);
+    }
+
+    private void start(IpfsApi ipfsApi, PubsubIngestionService.Overflow overflow, int backlogSize, int batchSize, int parallelism) {
+        uut = new PubsubIngestionService(ipfsApi, publishService, true, TOPIC, Duration.ofMinutes(1), Duration.ofMillis(50),
+            DataSize.ofBytes(MAX_MESSAGE_SIZE), DataSize.ofBytes(backlogSize), overflow, batchSize, Duration.ofMillis(500),
+            parallelism, 100);
+        uut.bindTo(registry);
+        uut.start();
+    }
+
+    /**
+     * The first subscription receives the messages, the next ones none.
+     */
+    private void publishOnce(String... messages) {
+        AtomicBoolean sent = new AtomicBoolean();
+        byte[] body = (String.join("\n", messages) + "\n").getBytes(StandardCharsets.UTF_8);
+        daemon.respond("pubsub/sub", request -> sent.getAndSet(true) ? new byte[0] : body);
+    }
+
+    private double count(String name, String tag, String value) {
+        var search = tag == null ? registry.get(name) : registry.get(name).tag(tag, value);
+        return search.functionCounter().count();
+    }
+
+    private static String message(String data) {
+        return "{\"from\":\"EiBFjBVxSVuKDHyJC5F6WUkuBgSzD6yIsiGMcM9jUB9g\",\"data\":\""
+            + Base64.getEncoder().encodeToString(data.getBytes(StandardCharsets.UTF_8))
+            + "\",\"seqno\":\"FqRcJBaxD2Q=\",\"topicIDs\":[\"" + TOPIC + "\"]}";
+    }
+
+    private static String record(int declarations) {
+        StringBuilder record = new StringBuilder("{\"declarations\":[");
+        for (int i = 0; i < declarations; i++) {
+            record.append(i > 0 ? "," : "").append("{\"payload\":\"e30\"}");
+        }
+        return record.append("]}").toString();
+    }
+
+    private static PublishResult result(int published) {
+        List<PublishResult.DeclarationResult> declarations = new ArrayList<>();
+        for (int i = 0; i < published; i++) {
+            declarations.add(new PublishResult.DeclarationResult(i, "declaration-" + i, PublishResult.Status.PUBLISHED, "Qm" + i, null));
+        }
+        return new PublishResult(declarations, null);
+    }
+
+    private static void eventually(BooleanSupplier condition) {
+        long deadline = System.nanoTime() + Duration.ofSeconds(5).toNanos();
+        while (!condition.getAsBoolean()) {
+            assertThat(System.nanoTime()).as("condition not met in 5s").isLessThan(deadline);
+            try {
+                Thread.sleep(10);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+}
@@ -0,0 +1,87 @@
+package com.plooh.adssi.dial.validator.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.plooh.adssi.dial.validator.util.Jws;
+import com.plooh.adssi.dial.validator.util.JwsTest;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.security.GeneralSecurityException;
+import java.security.KeyPair;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+public class SignatureVerifierTest {
+
+    private final SignatureVerifier uut = new SignatureVerifier(2, 4, 100, 100);
+    private final MeterRegistry registry = new SimpleMeterRegistry();
+
+    @BeforeEach
+    void setUp() {
+        uut.bindTo(registry);
+    }
+
+    @AfterEach
+    void tearDown() {
+        uut.shutdown();
+    }
+
+    @Test
+    void shouldNotVerifyAValidSignatureAgain() throws GeneralSecurityException {
+        ObjectNode declaration = DeclarationValidatorTest.declaration(JwsTest.keyPair(), "declaration-1", null);
+
+        assertThat(verify(declaration)).isTrue();
+        assertThat(verify(declaration)).isTrue();
+
+        assertThat(verifications("valid")).isEqualTo(1);
+        assertThat(registry.get("cache.gets").tag("cache", "validator.signatures.verified").tag("result", "hit")
+            .functionCounter().count()).isEqualTo(1);
+    }
+
+    @Test
+    void shouldVerifyAnInvalidSignatureAgain() throws GeneralSecurityException {
+        KeyPair keyPair = JwsTest.keyPair();
+        ObjectNode declaration = DeclarationValidatorTest.declaration(keyPair, "declaration-1", null);
+        declaration.put("signature", DeclarationValidatorTest.declaration(keyPair, "declaration-2", null).get("signature").asText());
+
+        assertThat(verify(declaration)).isFalse();
+        assertThat(verify(declaration)).isFalse();
+
+        assertThat(verifications("invalid")).isEqualTo(2);
+    }
+
+    @Test
+    void shouldNotCacheAKeyUnderTheIdOfAnotherKey() throws GeneralSecurityException {
+        ObjectNode declaration = DeclarationValidatorTest.declaration(JwsTest.keyPair(), "declaration-1", null);
+        JsonNode other = Jws.header(DeclarationValidatorTest.declaration(JwsTest.keyPair(), "declaration-1", null)).get("jwk");
+        String keyId = Jws.header(declaration).get("kid").asText();
+
+        assertThatThrownBy(() -> uut.verify(keyId, other, Jws.signingInput(declaration), Jws.signature(declaration)))
+            .isInstanceOf(IllegalArgumentException.class)
+            .hasMessage("The key id is not the thumbprint of the key");
+        assertThat(verify(declaration)).isTrue();
+    }
+
+    @Test
+    void shouldVerifyAllInBatchesInOrder() {
+        assertThat(uut.verifyAll(10, index -> index).join())
+            .isEqualTo(IntStream.range(0, 10).boxed().collect(Collectors.toList()));
+        assertThat(uut.verifyAll(0, index -> index).join()).isEmpty();
+    }
+
+    private boolean verify(JsonNode declaration) {
+        JsonNode header = Jws.header(declaration);
+        return uut.verify(header.get("kid").asText(), header.get("jwk"), Jws.signingInput(declaration), Jws.signature(declaration));
+    }
+
+    private double verifications(String result) {
+        return registry.get("validator.signatures.verifications").tag("result", result).counter().count();
+    }
+
+}
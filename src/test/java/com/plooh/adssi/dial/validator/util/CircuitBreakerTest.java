@@ -0,0 +1,78 @@
+package com.plooh.adssi.dial.validator.util;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.time.Duration;
+import org.junit.jupiter.api.Test;
+
+public class CircuitBreakerTest {
+
+    @Test
+    void shouldOpenAtFailureRate() {
+        var uut = new CircuitBreaker(10, 4, 0.5, Duration.ofMinutes(1), 1);
+
+        record(uut, true, false, true);
+        assertThat(uut.getState()).isEqualTo(CircuitBreaker.State.CLOSED);
+        record(uut, true);
+
+        assertThat(uut.getState()).isEqualTo(CircuitBreaker.State.OPEN);
+        assertThat(uut.tryAcquire()).isFalse();
+        assertThat(uut.getRetryAfter()).isPositive().isLessThanOrEqualTo(Duration.ofMinutes(1));
+    }
+
+    @Test
+    void shouldForgetOutcomesOutsideOfWindow() {
+        var uut = new CircuitBreaker(4, 4, 0.75, Duration.ofMinutes(1), 1);
+
+        record(uut, true, true, false, false, false, true);
+
+        assertThat(uut.getState()).isEqualTo(CircuitBreaker.State.CLOSED);
+        record(uut, true);
+        assertThat(uut.getState()).isEqualTo(CircuitBreaker.State.CLOSED);
+        record(uut, true);
+        assertThat(uut.getState()).isEqualTo(CircuitBreaker.State.OPEN);
+    }
+
+    @Test
+    void shouldCloseAfterSuccessfulTrialCalls() {
+        var uut = new CircuitBreaker(2, 2, 0.5, Duration.ZERO, 2);
+        record(uut, true, true);
+
+        assertThat(uut.getState()).isEqualTo(CircuitBreaker.State.HALF_OPEN);
+        assertThat(uut.tryAcquire()).isTrue();
+        assertThat(uut.tryAcquire()).isTrue();
+        assertThat(uut.tryAcquire()).isFalse();
+        uut.onSuccess();
+        uut.onSuccess();
+
+        assertThat(uut.getState()).isEqualTo(CircuitBreaker.State.CLOSED);
+        assertThat(uut.tryAcquire()).isTrue();
+    }
+
+    @Test
+    void shouldOpenAgainWhenTrialCallFails() {
+        var uut = new CircuitBreaker(2, 2, 0.5, Duration.ZERO, 2);
+        record(uut, true, true);
+
+        assertThat(uut.tryAcquire()).isTrue();
+        uut.onFailure();
+
+        assertThat(uut.getRetryAfter()).isZero();
+        assertThat(uut.tryAcquire()).isTrue();
+        assertThat(uut.tryAcquire()).isTrue();
+        uut.release();
+        assertThat(uut.tryAcquire()).isTrue();
+    }
+
+    private static void record(CircuitBreaker uut, boolean... failures) {
+        for (boolean failure : failures) {
+            assertThat(uut.tryAcquire()).isTrue();
+            if (failure) {
+                uut.onFailure();
+            } else {
+                uut.onSuccess();
+            }
+        }
+    }
+
+}
@@ -0,0 +1,87 @@
+package com.plooh.adssi.dial.validator.util;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import io.ipfs.api.NamedStreamable;
+import io.ipfs.api.Options;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.io.ByteArrayResource;
+
+public class IpfsRpcTest {
+
+    public static final String HELLO_WORLD_HASH = "zb2rhfE3SX3q7Ha6UErfMqQReKsmLn73BvdDRagHDM6X1eRFN";
+    public static final String HELLO_WORLD_CONTENT = "Hello World!";
+    public static final String HELLO_WORLD_FILENAME = "hello world.txt";
+
+    private StubIpfsDaemon daemon;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        daemon = new StubIpfsDaemon();
+    }
+
+    @AfterEach
+    void tearDown() {
+        daemon.close();
+    }
+
+    @Test
+    void shouldStreamFilesToAdd() throws IOException {
+        daemon.respond("add", "{\"Name\":\"hello world.txt\",\"Hash\":\"" + HELLO_WORLD_HASH + "\",\"Size\":\"12\"}\n");
+        NamedStreamable file = new InputStreamSourceWrapper(HELLO_WORLD_FILENAME,
+            new ByteArrayResource(HELLO_WORLD_CONTENT.getBytes(StandardCharsets.UTF_8)));
+
+        var actual = IpfsRpc.add(daemon.ipfs(), List.of(file), Map.of(Options.RAW_LEAVES, "true"));
+
+        assertThat(actual).hasSize(1);
+        assertThat(IpfsUtil.toBase58(actual.get(0).hash)).isEqualTo(HELLO_WORLD_HASH);
+        assertThat(actual.get(0).name).contains(HELLO_WORLD_FILENAME);
+        var request = daemon.requests().get(daemon.requests().size() - 1);
+        assertThat(request.query).contains("raw-leaves=true");
+        assertThat(request.bodyAsString())
+            .contains("filename=\"hello+world.txt\"")
+            .contains(HELLO_WORLD_CONTENT);
+    }
+
+    @Test
+    void shouldStreamCommandResponse() throws IOException {
+        daemon.respond("cat", HELLO_WORLD_CONTENT);
+
+        try (var actual = IpfsRpc.stream(daemon.ipfs(), "cat?arg=" + HELLO_WORLD_HASH + "&offset=6&length=6")) {
+            assertThat(new String(actual.readAllBytes(), StandardCharsets.UTF_8)).isEqualTo(HELLO_WORLD_CONTENT);
+        }
+        var request = daemon.requests().get(daemon.requests().size() - 1);
+        assertThat(request.query).isEqualTo("arg=" + HELLO_WORLD_HASH + "&offset=6&length=6");
+    }
+
+    @Test
+    void shouldReportNodeErrors() {
+        assertThatThrownBy(() -> IpfsRpc.map(daemon.ipfs(), "files/stat?arg=/ipfs/" + HELLO_WORLD_HASH))
+            .isInstanceOf(IOException.class)
+            .hasMessageContaining("500")
+            .hasMessageContaining("no stub response for files/stat");
+    }
+
+    @Test
+    void shouldReadLinksLikeTheClient() throws IOException {
+        String response = "{\"Objects\":[{\"Hash\":\"QmfM2r8seH2GiRaC4esTjeraXEachRt8ZsSeGaWTPLyMoG\",\"Links\":["
+            + "{\"Name\":\"hello world.txt\",\"Hash\":\"" + HELLO_WORLD_HASH + "\",\"Size\":12,\"Type\":2}]}]}";
+        daemon.respond("ls", response);
+
+        var expected = daemon.ipfs().ls(IpfsUtil.fromBase58(HELLO_WORLD_HASH));
+        try (var in = IpfsRpc.stream(daemon.ipfs(), "ls?arg=" + HELLO_WORLD_HASH)) {
+            var actual = IpfsRpc.links(in);
+
+            assertThat(actual).hasSize(1);
+            assertThat(actual.get(0).toJSON()).isEqualTo(expected.get(0).toJSON());
+        }
+    }
+
+}
@@ -0,0 +1,90 @@
+package com.plooh.adssi.dial.validator.util;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import io.ipfs.cid.Cid;
+import io.ipfs.multibase.Multibase;
+import io.ipfs.multihash.Multihash;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import org.junit.jupiter.api.Test;
+
+public class IpfsUtilTest {
+
+    public static final String HELLO_WORLD_HASH = "zb2rhfE3SX3q7Ha6UErfMqQReKsmLn73BvdDRagHDM6X1eRFN";
+    public static final String DIRECTORY_HASH = "QmfM2r8seH2GiRaC4esTjeraXEachRt8ZsSeGaWTPLyMoG";
+
+    @Test
+    void shouldDecodeLikeTheLibrary() {
+        for (Cid cid : randomCids()) {
+            for (String text : List.of(
+                Multibase.encode(Multibase.Base.Base58BTC, cid.toBytes()),
+                Multibase.encode(Multibase.Base.Base32, cid.toBytes()),
+                Multibase.encode(Multibase.Base.Base32Upper, cid.toBytes()))) {
+                assertThat(IpfsUtil.fromBase58(text)).as(text).isEqualTo(Cid.decode(text));
+            }
+        }
+        assertThat(IpfsUtil.fromBase58(DIRECTORY_HASH)).isEqualTo(Cid.decode(DIRECTORY_HASH));
+        assertThat(IpfsUtil.fromBase58(HELLO_WORLD_HASH)).isEqualTo(Cid.decode(HELLO_WORLD_HASH));
+    }
+
+    @Test
+    void shouldEncodeLikeTheLibrary() {
+        for (Cid cid : randomCids()) {
+            assertThat(IpfsUtil.toBase58(cid)).isEqualTo(Multibase.encode(Multibase.Base.Base58BTC, cid.toBytes()));
+            assertThat(IpfsUtil.toBase32(cid)).isEqualTo(Multibase.encode(Multibase.Base.Base32, cid.toBytes()));
+        }
+        // leading zero bytes are encoded as leading '1's
+        var identity = new Multihash(Multihash.Type.id, new byte[] {0, 0, 1, 2});
+        assertThat(IpfsUtil.toBase58(identity)).isEqualTo(Multibase.encode(Multibase.Base.Base58BTC, identity.toBytes()));
+        assertThat(IpfsUtil.toBase58(IpfsUtil.fromBase58(DIRECTORY_HASH))).isEqualTo("z" + DIRECTORY_HASH);
+    }
+
+    @Test
+    void shouldDecodeIntoCallerBuffer() {
+        var cid = Cid.decode(HELLO_WORLD_HASH);
+        var buffer = new byte[IpfsUtil.MAX_CID_BYTES];
+
+        int length = IpfsUtil.decode(HELLO_WORLD_HASH, buffer);
+
+        assertThat(Arrays.copyOf(buffer, length)).isEqualTo(cid.toBytes());
+        assertThat(IpfsUtil.fromBytes(buffer, 0, length)).isEqualTo(cid);
+        assertThat(IpfsUtil.decode(HELLO_WORLD_HASH, new byte[8])).isEqualTo(-1);
+    }
+
+    @Test
+    void shouldEncodeIntoCallerBuilder() {
+        var cid = Cid.decode(HELLO_WORLD_HASH);
+        var buffer = new byte[IpfsUtil.MAX_CID_BYTES];
+        var builder = new StringBuilder("cid:");
+
+        IpfsUtil.encode(Multibase.Base.Base58BTC, buffer, 0, IpfsUtil.toBytes(cid, buffer), builder);
+
+        assertThat(builder.toString()).isEqualTo("cid:" + HELLO_WORLD_HASH);
+    }
+
+    @Test
+    void shouldFailLikeTheLibrary() {
+        assertThatThrownBy(() -> IpfsUtil.fromBase58("not-a-cid")).isInstanceOf(RuntimeException.class);
+        assertThatThrownBy(() -> IpfsUtil.fromBase58("z0OIl")).isInstanceOf(RuntimeException.class);
+    }
+
+    private static List<Cid> randomCids() {
+        var random = new Random(42);
+        var cids = new ArrayList<Cid>();
+        for (int i = 0; i < 200; i++) {
+            byte[] digest = new byte[32];
+            random.nextBytes(digest);
+            // also cover digests with leading zero bytes
+            Arrays.fill(digest, 0, i % 4, (byte) 0);
+            cids.add(Cid.buildCidV0(new Multihash(Multihash.Type.sha2_256, digest)));
+            cids.add(Cid.buildCidV1(Cid.Codec.Raw, Multihash.Type.sha2_256, digest));
+            cids.add(Cid.buildCidV1(Cid.Codec.DagProtobuf, Multihash.Type.sha2_256, digest));
+        }
+        return cids;
+    }
+
+}
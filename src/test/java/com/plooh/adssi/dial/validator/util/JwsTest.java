@@ -0,0 +1,77 @@
+package com.plooh.adssi.dial.validator.util;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.interfaces.ECPublicKey;
+import java.security.spec.ECGenParameterSpec;
+import java.util.Arrays;
+import java.util.Base64;
+import org.junit.jupiter.api.Test;
+
+public class JwsTest {
+
+    private static final byte[] PAYLOAD = "{\"id\":\"declaration-1\"}".getBytes(StandardCharsets.UTF_8);
+
+    @Test
+    void shouldVerifySignedPayload() throws GeneralSecurityException {
+        KeyPair keyPair = keyPair();
+        ObjectNode jws = Jws.sign(keyPair, PAYLOAD);
+
+        JsonNode header = Jws.header(jws);
+        ECPublicKey key = Jws.publicKey(header.get("jwk"));
+
+        assertThat(header.get("alg").asText()).isEqualTo(Jws.ES256);
+        assertThat(header.get("kid").asText()).isEqualTo(Jws.thumbprint(header.get("jwk")));
+        assertThat(key).isEqualTo(keyPair.getPublic());
+        assertThat(Jws.payload(jws).get("id").asText()).isEqualTo("declaration-1");
+        assertThat(Jws.verify(key, Jws.signingInput(jws), Jws.signature(jws))).isTrue();
+    }
+
+    @Test
+    void shouldNotVerifyTamperedPayload() throws GeneralSecurityException {
+        KeyPair keyPair = keyPair();
+        ObjectNode jws = Jws.sign(keyPair, PAYLOAD);
+        jws.put("payload", Base64.getUrlEncoder().withoutPadding().encodeToString("{\"id\":\"declaration-2\"}".getBytes(StandardCharsets.UTF_8)));
+
+        assertThat(Jws.verify((ECPublicKey) keyPair.getPublic(), Jws.signingInput(jws), Jws.signature(jws))).isFalse();
+        assertThat(Jws.verify((ECPublicKey) keyPair.getPublic(), Jws.signingInput(jws), new byte[12])).isFalse();
+    }
+
+    @Test
+    void shouldConvertSignaturesBetweenRawAndDer() {
+        byte[] raw = new byte[64];
+        // R with its high bit set, which needs a leading zero in DER, and S with leading zeros
+        Arrays.fill(raw, 0, 32, (byte) 0xF0);
+        raw[62] = 1;
+        raw[63] = 2;
+
+        byte[] der = Jws.toDer(raw);
+
+        assertThat(der[3]).isEqualTo((byte) 33);
+        assertThat(der[4 + 33 + 1]).isEqualTo((byte) 2);
+        assertThat(Jws.toRaw(der)).isEqualTo(raw);
+    }
+
+    @Test
+    void shouldRejectMalformedJws() {
+        ObjectNode jws = new ObjectMapper().createObjectNode().put("protected", "not base64!");
+
+        assertThatThrownBy(() -> Jws.header(jws)).isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> Jws.payload(jws)).isInstanceOf(IllegalArgumentException.class).hasMessage("Missing payload");
+    }
+
+    public static KeyPair keyPair() throws GeneralSecurityException {
+        KeyPairGenerator generator = KeyPairGenerator.getInstance("EC");
+        generator.initialize(new ECGenParameterSpec("secp256r1"));
+        return generator.generateKeyPair();
+    }
+
+}
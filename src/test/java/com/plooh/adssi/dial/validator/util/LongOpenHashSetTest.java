@@ -0,0 +1,62 @@
+package com.plooh.adssi.dial.validator.util;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+import org.junit.jupiter.api.Test;
+
+public class LongOpenHashSetTest {
+
+    @Test
+    void shouldBehaveLikeHashSet() {
+        var uut = new LongOpenHashSet(0);
+        var expected = new HashSet<Long>();
+        var random = new Random(42);
+
+        for (int i = 0; i < 200_000; i++) {
+            // small key range so that adds, removes and lookups hit existing keys and collide often
+            long key = random.nextInt(5_000) + 1;
+            switch (random.nextInt(3)) {
+                case 0:
+                    assertThat(uut.add(key)).isEqualTo(expected.add(key));
+                    break;
+                case 1:
+                    assertThat(uut.remove(key)).isEqualTo(expected.remove(key));
+                    break;
+                default:
+                    assertThat(uut.contains(key)).isEqualTo(expected.contains(key));
+            }
+        }
+
+        assertThat(uut.size()).isEqualTo(expected.size());
+        for (long key = 1; key <= 5_000; key++) {
+            assertThat(uut.contains(key)).isEqualTo(expected.contains(key));
+        }
+    }
+
+    @Test
+    void shouldGrowAndKeepAllKeys() {
+        var uut = new LongOpenHashSet(16);
+        Set<Long> keys = new HashSet<>();
+        var random = new Random(7);
+        while (keys.size() < 100_000) {
+            long key = random.nextLong();
+            if (key != 0 && keys.add(key)) {
+                uut.add(key);
+            }
+        }
+
+        assertThat(uut.size()).isEqualTo(100_000);
+        assertThat(keys).allMatch(uut::contains);
+        assertThat(uut.footprint()).isEqualTo(262_144L * Long.BYTES);
+    }
+
+    @Test
+    void shouldRejectZero() {
+        assertThatThrownBy(() -> new LongOpenHashSet(16).add(0)).isInstanceOf(IllegalArgumentException.class);
+    }
+
+}
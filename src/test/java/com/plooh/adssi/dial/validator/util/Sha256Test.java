@@ -0,0 +1,19 @@
+package com.plooh.adssi.dial.validator.util;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.nio.charset.StandardCharsets;
+import org.junit.jupiter.api.Test;
+
+public class Sha256Test {
+
+    @Test
+    void shouldDigestTheConcatenatedParts() {
+        byte[] abc = "abc".getBytes(StandardCharsets.UTF_8);
+
+        assertThat(Sha256.digest(abc)).isEqualTo(Sha256.digest("a".getBytes(StandardCharsets.UTF_8), "bc".getBytes(StandardCharsets.UTF_8)));
+        // FIPS 180-2 test vector
+        assertThat(Sha256.digest(abc)).startsWith((byte) 0xba, (byte) 0x78, (byte) 0x16, (byte) 0xbf);
+    }
+
+}
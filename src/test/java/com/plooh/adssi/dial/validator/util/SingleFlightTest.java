@@ -0,0 +1,93 @@
+package com.plooh.adssi.dial.validator.util;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+public class SingleFlightTest {
+
+    private final SingleFlight<String, String> uut = new SingleFlight<>();
+    private final ExecutorService executor = Executors.newCachedThreadPool();
+    private final CountDownLatch started = new CountDownLatch(1);
+    private final CountDownLatch release = new CountDownLatch(1);
+    private final AtomicInteger calls = new AtomicInteger();
+    private final AtomicInteger shared = new AtomicInteger();
+
+    @AfterEach
+    void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    void shouldShareCallInFlight() throws Exception {
+        List<Future<String>> results = new ArrayList<>();
+        results.add(executor.submit(() -> uut.execute("cid", this::blockingCall, shared::incrementAndGet)));
+        started.await(5, TimeUnit.SECONDS);
+        for (int i = 0; i < 8; i++) {
+            results.add(executor.submit(() -> uut.execute("cid", this::blockingCall, shared::incrementAndGet)));
+        }
+        while (shared.get() < 8) {
+            Thread.sleep(1);
+        }
+        release.countDown();
+
+        for (Future<String> result : results) {
+            assertThat(result.get(5, TimeUnit.SECONDS)).isEqualTo("content-1");
+        }
+        assertThat(calls).hasValue(1);
+        assertThat(uut.size()).isZero();
+        assertThat(uut.execute("cid", () -> "again")).isEqualTo("again");
+    }
+
+    @Test
+    void shouldShareExceptionOfCallInFlight() throws Exception {
+        Future<String> leader = executor.submit(() -> uut.execute("cid", () -> {
+            started.countDown();
+            await(release);
+            throw new IOException("merkledag: not found");
+        }));
+        started.await(5, TimeUnit.SECONDS);
+        Future<String> follower = executor.submit(() -> uut.execute("cid", this::blockingCall, shared::incrementAndGet));
+        while (shared.get() < 1) {
+            Thread.sleep(1);
+        }
+        release.countDown();
+
+        assertThatThrownBy(leader::get).hasCauseInstanceOf(IOException.class);
+        assertThatThrownBy(follower::get).hasCauseInstanceOf(IOException.class).hasMessageContaining("not found");
+        assertThat(calls).hasValue(0);
+    }
+
+    @Test
+    void shouldNotShareCallsOfDifferentKeys() throws IOException {
+        assertThat(uut.execute("a", () -> "a")).isEqualTo("a");
+        assertThat(uut.execute("b", () -> "b")).isEqualTo("b");
+    }
+
+    private String blockingCall() {
+        int call = calls.incrementAndGet();
+        started.countDown();
+        await(release);
+        return "content-" + call;
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+}
@@ -0,0 +1,151 @@
+package com.plooh.adssi.dial.validator.util;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import io.ipfs.api.IPFS;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Function;
+
+/**
+ * In-process stub of the HTTP RPC API of an IPFS node. Every command answers with the response
+ * registered for it, and the received requests are recorded for assertions.
+ */
+public class StubIpfsDaemon implements AutoCloseable {
+
+    static {
+        // like the go daemon, answer without waiting for the client to acknowledge the headers
+        System.setProperty("sun.net.httpserver.nodelay", "true");
+    }
+
+    private final HttpServer server;
+    private final ExecutorService executor = Executors.newCachedThreadPool();
+    private final Map<String, Function<Request, byte[]>> responses = new ConcurrentHashMap<>();
+    private final CopyOnWriteArrayList<Request> requests = new CopyOnWriteArrayList<>();
+    private volatile boolean recording = true;
+    private volatile Duration latency = Duration.ZERO;
+
+    public StubIpfsDaemon() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext(IpfsRpc.API_PATH, this::handle);
+        server.setExecutor(executor);
+        respond("version", "{\"Version\":\"0.9.0\",\"Commit\":\"\",\"Repo\":\"11\",\"System\":\"amd64/linux\",\"Golang\":\"go1.16.5\"}");
+        server.start();
+    }
+
+    public StubIpfsDaemon respond(String command, String body) {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        return respond(command, request -> bytes);
+    }
+
+    public StubIpfsDaemon respond(String command, Function<Request, byte[]> handler) {
+        responses.put(command, handler);
+        return this;
+    }
+
+    /**
+     * Stop or restart recording the received requests, e.g. for long running benchmarks.
+     */
+    public StubIpfsDaemon recording(boolean recording) {
+        this.recording = recording;
+        return this;
+    }
+
+    /**
+     * Delay every response by the given latency, e.g. to simulate a remote daemon under load.
+     */
+    public StubIpfsDaemon latency(Duration latency) {
+        this.latency = latency;
+        return this;
+    }
+
+    /**
+     * Error to throw from a handler to answer 500 with the given message, like the errors of the daemon,
+     * e.g. {@code not pinned}.
+     */
+    public static RuntimeException error(String message) {
+        return new Failure(message);
+    }
+
+    public IPFS ipfs() {
+        return new IPFS("localhost", port());
+    }
+
+    public int port() {
+        return server.getAddress().getPort();
+    }
+
+    public CopyOnWriteArrayList<Request> requests() {
+        return requests;
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        String command = exchange.getRequestURI().getPath().substring(IpfsRpc.API_PATH.length());
+        Request request = new Request(command, exchange.getRequestURI().getRawQuery(),
+            exchange.getRequestBody().readAllBytes());
+        if (recording) {
+            requests.add(request);
+        }
+        if (!latency.isZero()) {
+            try {
+                Thread.sleep(latency.toMillis());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        Function<Request, byte[]> handler = responses.get(command);
+        String error = "no stub response for " + command;
+        byte[] body;
+        try {
+            body = handler == null ? null : handler.apply(request);
+        } catch (Failure e) {
+            error = e.getMessage();
+            body = null;
+        }
+        int status = body == null ? 500 : 200;
+        if (body == null) {
+            body = ("{\"Message\":\"" + error + "\",\"Code\":0,\"Type\":\"error\"}").getBytes(StandardCharsets.UTF_8);
+        }
+        exchange.sendResponseHeaders(status, body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+
+    private static class Failure extends RuntimeException {
+        Failure(String message) {
+            super(message);
+        }
+    }
+
+    public static class Request {
+        public final String command;
+        public final String query;
+        public final byte[] body;
+
+        Request(String command, String query, byte[] body) {
+            this.command = command;
+            this.query = query;
+            this.body = body;
+        }
+
+        public String bodyAsString() {
+            return new String(body, StandardCharsets.UTF_8);
+        }
+    }
+
+}
@@ -0,0 +1,118 @@
+package com.plooh.adssi.dial.validator.util;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+import io.ipfs.api.IPFS;
+import io.ipfs.api.MerkleNode;
+import io.ipfs.api.NamedStreamable;
+import io.ipfs.api.Options;
+import io.ipfs.cid.Cid;
+import io.ipfs.multihash.Multihash;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import org.junit.jupiter.api.Test;
+
+public class UnixFsHasherTest {
+
+    // CIDs given by the daemon to the same content added with raw leaves
+    private static final String HELLO_WORLD_HASH = "zb2rhfE3SX3q7Ha6UErfMqQReKsmLn73BvdDRagHDM6X1eRFN";
+    private static final String EMPTY_HASH = "bafkreihdwdcefgh4dqkjv67uzcmw7ojee6xedzdetojuzjevtenxquvyku";
+    // CIDs of the pattern content, byte i = i % 251, of one chunk, of one chunk and a byte, and of 175 chunks
+    // and a byte, a tree of two levels of nodes. No daemon was reachable to record them: they were computed
+    // by an encoder of the balanced layout independent of UnixFsHasher, giving the well-known CIDs of the
+    // empty file and directory, and are checked against a daemon by shouldComputeCidOfDaemon.
+    private static final String ONE_CHUNK_HASH = "zb2rhZz2RUqNF5HtfPef7k7yqDg7bMumHQYWcok23cf9B1ha5";
+    private static final String TWO_CHUNKS_HASH = "QmYWva9EpT9EDJtdehdyQSBfq6iUrm2kiVQkYZw1wBTgxH";
+    private static final String TWO_LEVELS_HASH = "QmS12LDq7xV7q6oTceChgNbd9LqLUvA3jgyyiRK3uiDS8u";
+    private static final int TWO_LEVELS_SIZE = (UnixFsHasher.MAX_LINKS + 1) * UnixFsHasher.CHUNK_SIZE + 1;
+
+    @Test
+    void shouldHashSingleChunkAsRawLeaf() {
+        Multihash actual = UnixFsHasher.hash("Hello World!".getBytes(StandardCharsets.UTF_8));
+
+        assertThat(actual).isEqualTo(IpfsUtil.fromBase58(HELLO_WORLD_HASH));
+        assertThat(IpfsUtil.toBase58(actual)).isEqualTo(HELLO_WORLD_HASH);
+    }
+
+    @Test
+    void shouldHashEmptyContentAsRawLeaf() {
+        Multihash actual = UnixFsHasher.hash(new byte[0]);
+
+        assertThat(IpfsUtil.toBase32(actual)).isEqualTo(EMPTY_HASH);
+    }
+
+    @Test
+    void shouldHashLargerContentAsDagOfChunks() throws IOException {
+        byte[] content = random(UnixFsHasher.CHUNK_SIZE + 1);
+
+        Multihash actual = UnixFsHasher.hash(content);
+
+        assertThat(actual).isInstanceOfSatisfying(Cid.class, cid -> {
+            assertThat(cid.version).isZero();
+            assertThat(cid.codec).isEqualTo(Cid.Codec.DagProtobuf);
+        });
+        assertThat(UnixFsHasher.hash(new ByteArrayInputStream(content))).isEqualTo(actual);
+        content[content.length - 1]++;
+        assertThat(UnixFsHasher.hash(content)).isNotEqualTo(actual);
+    }
+
+    @Test
+    void shouldComputeKnownCidsOfChunkedContent() throws IOException {
+        assertThat(UnixFsHasher.hash(pattern(UnixFsHasher.CHUNK_SIZE))).isEqualTo(IpfsUtil.fromBase58(ONE_CHUNK_HASH));
+        assertThat(UnixFsHasher.hash(pattern(UnixFsHasher.CHUNK_SIZE + 1)))
+            .isEqualTo(IpfsUtil.fromBase58(TWO_CHUNKS_HASH));
+
+        byte[] content = pattern(TWO_LEVELS_SIZE);
+        assertThat(UnixFsHasher.hash(content)).isEqualTo(IpfsUtil.fromBase58(TWO_LEVELS_HASH));
+        assertThat(UnixFsHasher.hash(new ByteArrayInputStream(content))).isEqualTo(IpfsUtil.fromBase58(TWO_LEVELS_HASH));
+    }
+
+    /**
+     * Compares with a running daemon, e.g. {@code IPFS_API=/ip4/127.0.0.1/tcp/5001}: sizes of one chunk,
+     * of a node of leaves, and of a tree of two levels of nodes.
+     */
+    @Test
+    void shouldComputeCidOfDaemon() throws IOException {
+        String api = System.getenv("IPFS_API");
+        assumeTrue(api != null && !api.isBlank(), "IPFS_API is not set");
+        IPFS ipfs = new IPFS(api);
+
+        for (int size : new int[]{0, 1_000, UnixFsHasher.CHUNK_SIZE, 3 * UnixFsHasher.CHUNK_SIZE + 7,
+            (UnixFsHasher.MAX_LINKS + 1) * UnixFsHasher.CHUNK_SIZE}) {
+            byte[] content = random(size);
+            List<MerkleNode> added = ipfs.add(new NamedStreamable.ByteArrayWrapper("content", content),
+                Map.of(Options.RAW_LEAVES, "true", Options.ONLY_HASH, "true"));
+
+            assertThat(UnixFsHasher.hash(content)).as("size %d", size).isEqualTo(added.get(0).hash);
+        }
+
+        String[] known = {ONE_CHUNK_HASH, TWO_CHUNKS_HASH, TWO_LEVELS_HASH};
+        int[] sizes = {UnixFsHasher.CHUNK_SIZE, UnixFsHasher.CHUNK_SIZE + 1, TWO_LEVELS_SIZE};
+        for (int i = 0; i < known.length; i++) {
+            List<MerkleNode> added = ipfs.add(new NamedStreamable.ByteArrayWrapper("content", pattern(sizes[i])),
+                Map.of(Options.RAW_LEAVES, "true", Options.ONLY_HASH, "true"));
+
+            assertThat(added.get(0).hash).as("size %d", sizes[i]).isEqualTo(IpfsUtil.fromBase58(known[i]));
+        }
+    }
+
+    private static byte[] pattern(int size) {
+        byte[] content = new byte[size];
+        for (int i = 0; i < size; i++) {
+            content[i] = (byte) (i % 251);
+        }
+        return content;
+    }
+
+    private static byte[] random(int size) {
+        byte[] content = new byte[size];
+        new Random(size).nextBytes(content);
+        return content;
+    }
+
+}